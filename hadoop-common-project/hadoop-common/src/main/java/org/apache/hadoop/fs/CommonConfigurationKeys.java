@@ -58,6 +58,14 @@ public class CommonConfigurationKeys extends CommonConfigurationKeysPublic {
   /** Default value for IPC_SERVER_RPC_MAX_RESPONSE_SIZE_KEY */
   public static final int     IPC_SERVER_RPC_MAX_RESPONSE_SIZE_DEFAULT =
     1024*1024;
+  /**
+   * Successful responses up to this size are serialized into pooled direct
+   * buffers; 0 disables the pooling.
+   */
+  public static final String  IPC_SERVER_RESPONSE_POOLED_BUFFER_MAX_SIZE_KEY =
+    "ipc.server.response.pooled-buffer.max-size";
+  /** Default value for IPC_SERVER_RESPONSE_POOLED_BUFFER_MAX_SIZE_KEY */
+  public static final int IPC_SERVER_RESPONSE_POOLED_BUFFER_MAX_SIZE_DEFAULT = 0;
   /** Number of threads in RPC server reading from the socket */
   public static final String  IPC_SERVER_RPC_READ_THREADS_KEY =
     "ipc.server.read.threadpool.size";
@@ -143,7 +151,10 @@ public class CommonConfigurationKeys extends CommonConfigurationKeysPublic {
   /** Supported erasure codec classes */
   public static final String IO_ERASURECODE_CODECS_KEY = "io.erasurecode.codecs";
 
-  /** Raw coder factory for the RS codec. */
+  /**
+   * Raw coder factory for the RS codec, such as the table driven
+   * FastRSRawErasureCoderFactory.
+   */
   public static final String IO_ERASURECODE_CODEC_RS_RAWCODER_KEY =
       "io.erasurecode.codec.rs.rawcoder";
 
@@ -229,6 +229,11 @@ public class CommonConfigurationKeysPublic {
   /** Default value of IPC_CLIENT_LOW_LATENCY */
   public static final boolean  IPC_CLIENT_LOW_LATENCY_DEFAULT = false;
   /** See <a href="{@docRoot}/../core-default.html">core-default.xml</a> */
+  public static final String  IPC_CLIENT_ASYNC_CALLS_MAX_KEY =
+    "ipc.client.async.calls.max";
+  /** Default value for IPC_CLIENT_ASYNC_CALLS_MAX_KEY */
+  public static final int     IPC_CLIENT_ASYNC_CALLS_MAX_DEFAULT = 100;
+  /** See <a href="{@docRoot}/../core-default.html">core-default.xml</a> */
   public static final String  IPC_SERVER_LISTEN_QUEUE_SIZE_KEY =
     "ipc.server.listen.queue.size";
   /** Default value for IPC_SERVER_LISTEN_QUEUE_SIZE_KEY */
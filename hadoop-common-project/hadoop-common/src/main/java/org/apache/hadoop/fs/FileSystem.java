@@ -1771,6 +1771,48 @@ public FileStatus next() throws IOException {
     };
   }
 
+  /**
+   * List the statuses of the files in many paths at once. The iterator
+   * returns one or more {@link PartialListing}s for each path, in the order
+   * of the paths. For a file, the listing has the status of the file itself.
+   *
+   * An error listing a path, e.g. because it does not exist or access is
+   * denied, is thrown by {@link PartialListing#get()} of its listing instead
+   * of failing the whole iteration.
+   *
+   * The default implementation lists the paths one at a time. File systems
+   * which can list many paths in one call should override this method.
+   *
+   * @param paths the paths to list
+   * @return remote iterator over the partial listings
+   */
+  @InterfaceStability.Unstable
+  public RemoteIterator<PartialListing<FileStatus>> batchedListStatusIterator(
+      final List<Path> paths) throws IOException {
+    return new RemoteIterator<PartialListing<FileStatus>>() {
+      private int i = 0;
+
+      @Override
+      public boolean hasNext() {
+        return i < paths.size();
+      }
+
+      @Override
+      public PartialListing<FileStatus> next() throws IOException {
+        if (!hasNext()) {
+          throw new NoSuchElementException("No more listing");
+        }
+        final Path p = paths.get(i++);
+        try {
+          return new PartialListing<FileStatus>(p,
+              Arrays.asList(listStatus(p)));
+        } catch (FileNotFoundException | AccessControlException e) {
+          return new PartialListing<FileStatus>(p, e);
+        }
+      }
+    };
+  }
+
   /**
    * List the statuses and block locations of the files in the given path.
    * Does not guarantee to return the iterator that traverses statuses
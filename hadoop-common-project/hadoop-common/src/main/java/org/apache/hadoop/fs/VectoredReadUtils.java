@@ -0,0 +1,184 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.fs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Helpers for implementing {@link VectoredReadable}: the ranges are sorted
+ * and the nearby ones merged, so that each merged range costs a single
+ * positional read.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+public final class VectoredReadUtils {
+  /** Ranges closer than this are read together by default. */
+  public static final int DEFAULT_MIN_SEEK = 4 * 1024;
+  /** The default maximum size of merged ranges. */
+  public static final int DEFAULT_MAX_MERGED_SIZE = 1024 * 1024;
+
+  private VectoredReadUtils() {
+  }
+
+  /**
+   * Ranges which are read with a single positional read. The bytes between
+   * them are read and dropped.
+   */
+  public static final class CombinedFileRange {
+    private final long offset;
+    private long end;
+    private final List<FileRange> ranges = new ArrayList<FileRange>();
+
+    private CombinedFileRange(FileRange first) {
+      offset = first.getOffset();
+      end = offset + first.getLength();
+      ranges.add(first);
+    }
+
+    /**
+     * Add a range, if it is close enough and the merged range does not get
+     * too large.
+     */
+    private boolean merge(FileRange range, int minSeek, int maxMergedSize) {
+      final long rangeEnd = range.getOffset() + range.getLength();
+      if (range.getOffset() - end > minSeek
+          || Math.max(end, rangeEnd) - offset > maxMergedSize) {
+        return false;
+      }
+      end = Math.max(end, rangeEnd);
+      ranges.add(range);
+      return true;
+    }
+
+    public long getOffset() {
+      return offset;
+    }
+
+    public int getLength() {
+      return (int) (end - offset);
+    }
+
+    @VisibleForTesting
+    public List<FileRange> getRanges() {
+      return ranges;
+    }
+
+    @Override
+    public String toString() {
+      return "combined[" + offset + ", " + end + ") of " + ranges.size()
+          + " ranges";
+    }
+  }
+
+  /**
+   * Validate the ranges, start their reads and merge them.
+   *
+   * @param ranges        the ranges to read
+   * @param minSeek       ranges closer than this are merged
+   * @param maxMergedSize the maximum size of the merged ranges, unless a
+   *                      single range is larger
+   * @return the merged ranges, sorted by offset
+   */
+  public static List<CombinedFileRange> prepareRanges(
+      List<? extends FileRange> ranges, int minSeek, int maxMergedSize) {
+    final List<FileRange> sorted = new ArrayList<FileRange>(ranges);
+    for (FileRange range : sorted) {
+      if (range.getOffset() < 0 || range.getLength() < 0) {
+        throw new IllegalArgumentException("Invalid " + range);
+      }
+    }
+    Collections.sort(sorted, new Comparator<FileRange>() {
+      @Override
+      public int compare(FileRange a, FileRange b) {
+        return Long.compare(a.getOffset(), b.getOffset());
+      }
+    });
+    final List<CombinedFileRange> combined =
+        new ArrayList<CombinedFileRange>();
+    CombinedFileRange current = null;
+    for (FileRange range : sorted) {
+      range.startRead();
+      if (current == null
+          || !current.merge(range, minSeek, maxMergedSize)) {
+        current = new CombinedFileRange(range);
+        combined.add(current);
+      }
+    }
+    return combined;
+  }
+
+  /**
+   * Read a merged range and deliver the data of its ranges. If the merged
+   * read fails, for example as one of the ranges ends past the end of the
+   * file, the ranges are read one by one so that only the bad ones fail.
+   */
+  public static void readCombinedRange(PositionedReadable in,
+      CombinedFileRange combined) {
+    try {
+      final byte[] buffer = new byte[combined.getLength()];
+      in.readFully(combined.getOffset(), buffer, 0, buffer.length);
+      for (FileRange range : combined.ranges) {
+        range.completeRead(ByteBuffer.wrap(buffer,
+            (int) (range.getOffset() - combined.getOffset()),
+            range.getLength()).slice());
+      }
+    } catch (IOException | RuntimeException e) {
+      if (combined.ranges.size() == 1) {
+        combined.ranges.get(0).failRead(e);
+        return;
+      }
+      for (FileRange range : combined.ranges) {
+        readRange(in, range);
+      }
+    }
+  }
+
+  private static void readRange(PositionedReadable in, FileRange range) {
+    try {
+      final byte[] buffer = new byte[range.getLength()];
+      in.readFully(range.getOffset(), buffer, 0, buffer.length);
+      range.completeRead(ByteBuffer.wrap(buffer));
+    } catch (IOException | RuntimeException e) {
+      range.failRead(e);
+    }
+  }
+
+  /**
+   * Read the ranges one merged range after the other, with positional reads
+   * on the given stream. This is the fallback for the streams which have no
+   * better way.
+   */
+  public static void readVectored(PositionedReadable in,
+      List<? extends FileRange> ranges) {
+    for (CombinedFileRange combined : prepareRanges(ranges,
+        DEFAULT_MIN_SEEK, DEFAULT_MAX_MERGED_SIZE)) {
+      readCombinedRange(in, combined);
+    }
+  }
+}
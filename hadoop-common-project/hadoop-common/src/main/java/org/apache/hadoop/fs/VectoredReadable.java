@@ -0,0 +1,47 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.fs;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * Stream that can read many ranges of a file in one call.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public interface VectoredReadable {
+  /**
+   * Start reading the given ranges of the file. The data of each range is
+   * delivered through {@link FileRange#getData()}; a failed read fails the
+   * future of the range. Nearby ranges may be read together, and the ranges
+   * may be read concurrently. This does not change the current offset of
+   * the stream, and is thread-safe.
+   *
+   * @param ranges   The ranges to read. They may overlap.
+   * @throws IOException  If the reads could not be started.
+   *         IllegalArgumentException  If a range has a negative offset or
+   *                                   length.
+   */
+  public void readVectored(List<? extends FileRange> ranges)
+      throws IOException;
+}
@@ -0,0 +1,141 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.erasurecode.rawcoder;
+
+import org.apache.hadoop.HadoopIllegalArgumentException;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.io.erasurecode.rawcoder.util.GF256;
+import org.apache.hadoop.io.erasurecode.rawcoder.util.RSUtil;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A raw erasure decoder in RS code scheme in pure Java, for the units encoded
+ * by {@link FastRSRawEncoder} or {@link RSRawEncoder}. The erased units are
+ * recovered from the first numDataUnits valid inputs only, as the linear
+ * combinations of them given by inverting their rows of the generator matrix.
+ * Units which are not read are not computed unless erased. The decoding
+ * matrix is kept for as long as the erasures do not change.
+ */
+@InterfaceAudience.Private
+public class FastRSRawDecoder extends AbstractRawErasureDecoder {
+  private final byte[][] parityMatrix;
+
+  // The erasures the decoding matrix was computed for
+  private int[] cachedValidIndexes;
+  private int[] cachedErasedIndexes;
+  // decodeMatrix[i][j] is the coefficient of valid unit j in erased unit i
+  private byte[][] decodeMatrix;
+
+  public FastRSRawDecoder(int numDataUnits, int numParityUnits) {
+    super(numDataUnits, numParityUnits);
+    if (numDataUnits + numParityUnits >= RSUtil.GF.getFieldSize()) {
+      throw new HadoopIllegalArgumentException(
+          "Invalid numDataUnits and numParityUnits");
+    }
+    parityMatrix = RSUtil.getParityMatrix(numDataUnits, numParityUnits);
+  }
+
+  @Override
+  protected void doDecode(ByteBuffer[] inputs, int[] erasedIndexes,
+                          ByteBuffer[] outputs) {
+    int[] validIndexes = getValidIndexes(inputs, erasedIndexes);
+    prepareDecodeMatrix(validIndexes, erasedIndexes);
+
+    ByteBuffer[] validInputs = new ByteBuffer[validIndexes.length];
+    for (int i = 0; i < validIndexes.length; i++) {
+      validInputs[i] = inputs[validIndexes[i]];
+    }
+    GF256.codeChunks(decodeMatrix, validInputs, outputs);
+  }
+
+  @Override
+  protected void doDecode(byte[][] inputs, int[] inputOffsets,
+                          int dataLen, int[] erasedIndexes,
+                          byte[][] outputs, int[] outputOffsets) {
+    int[] validIndexes = getValidIndexes(inputs, erasedIndexes);
+    prepareDecodeMatrix(validIndexes, erasedIndexes);
+
+    byte[][] validInputs = new byte[validIndexes.length][];
+    int[] validOffsets = new int[validIndexes.length];
+    for (int i = 0; i < validIndexes.length; i++) {
+      validInputs[i] = inputs[validIndexes[i]];
+      validOffsets[i] = inputOffsets[validIndexes[i]];
+    }
+    GF256.codeChunks(decodeMatrix, validInputs, validOffsets, dataLen,
+        outputs, outputOffsets);
+  }
+
+  /**
+   * @return the indexes of the first numDataUnits valid inputs
+   */
+  private <T> int[] getValidIndexes(T[] inputs, int[] erasedIndexes) {
+    for (int erased : erasedIndexes) {
+      if (inputs[erased] != null) {
+        throw new HadoopIllegalArgumentException(
+            "Inputs not fully corresponding to erasedIndexes in null places");
+      }
+    }
+
+    int[] validIndexes = new int[getNumDataUnits()];
+    int idx = 0;
+    for (int i = 0; i < inputs.length && idx < validIndexes.length; i++) {
+      if (inputs[i] != null) {
+        validIndexes[idx++] = i;
+      }
+    }
+    return validIndexes;
+  }
+
+  private void prepareDecodeMatrix(int[] validIndexes, int[] erasedIndexes) {
+    if (Arrays.equals(validIndexes, cachedValidIndexes) &&
+        Arrays.equals(erasedIndexes, cachedErasedIndexes)) {
+      return;
+    }
+
+    // The rows of the generator matrix of the valid units, inverted to get
+    // the data units from them
+    byte[][] validRows = new byte[validIndexes.length][];
+    for (int i = 0; i < validIndexes.length; i++) {
+      validRows[i] = getGeneratorRow(validIndexes[i]);
+    }
+    byte[][] inverse = GF256.invertMatrix(validRows);
+
+    byte[][] matrix = new byte[erasedIndexes.length][];
+    for (int i = 0; i < erasedIndexes.length; i++) {
+      matrix[i] = GF256.multiply(getGeneratorRow(erasedIndexes[i]), inverse);
+    }
+
+    decodeMatrix = matrix;
+    cachedValidIndexes = validIndexes;
+    cachedErasedIndexes = erasedIndexes.clone();
+  }
+
+  /**
+   * @return the coefficients of the data units in a unit
+   */
+  private byte[] getGeneratorRow(int unit) {
+    if (unit >= getNumDataUnits()) {
+      return parityMatrix[unit - getNumDataUnits()];
+    }
+    byte[] row = new byte[getNumDataUnits()];
+    row[unit] = 1;
+    return row;
+  }
+}
@@ -36,18 +36,9 @@ public RSRawEncoder(int numDataUnits, int numParityUnits) {
 
     assert (getNumDataUnits() + getNumParityUnits() < RSUtil.GF.getFieldSize());
 
-    int[] primitivePower = RSUtil.getPrimitivePower(numDataUnits,
-        numParityUnits);
-    // compute generating polynomial
-    int[] gen = {1};
-    int[] poly = new int[2];
-    for (int i = 0; i < numParityUnits; i++) {
-      poly[0] = primitivePower[i];
-      poly[1] = 1;
-      gen = RSUtil.GF.multiply(gen, poly);
-    }
     // generating polynomial has all generating roots
-    generatingPolynomial = gen;
+    generatingPolynomial = RSUtil.getGeneratingPolynomial(numDataUnits,
+        numParityUnits);
   }
 
   @Override
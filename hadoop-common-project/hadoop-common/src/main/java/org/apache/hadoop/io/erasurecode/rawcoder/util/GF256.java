@@ -0,0 +1,246 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.erasurecode.rawcoder.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.apache.hadoop.HadoopIllegalArgumentException;
+import org.apache.hadoop.classification.InterfaceAudience;
+
+/**
+ * Table driven arithmetic in the byte field of {@link RSUtil#GF}, to code
+ * whole chunks with a matrix of coefficients. Each output chunk is the sum of
+ * the input chunks multiplied by their coefficients, looking up the products
+ * in the row of the multiplication table of each coefficient rather than
+ * computing them a byte at a time.
+ */
+@InterfaceAudience.Private
+public final class GF256 {
+  /** MUL_TABLE[a][b] is the product of a and b. */
+  private static final byte[][] MUL_TABLE = new byte[256][256];
+
+  /**
+   * The chunks are coded by stripes of this many bytes, so that the stripe
+   * of every output stays in the CPU cache while the inputs are added to it.
+   */
+  private static final int STRIPE_SIZE = 4096;
+
+  static {
+    for (int a = 0; a < 256; a++) {
+      for (int b = 0; b < 256; b++) {
+        MUL_TABLE[a][b] = (byte) RSUtil.GF.multiply(a, b);
+      }
+    }
+  }
+
+  private GF256() {}
+
+  public static byte mul(byte a, byte b) {
+    return MUL_TABLE[a & 0xff][b & 0xff];
+  }
+
+  public static byte inverse(byte a) {
+    if (a == 0) {
+      throw new ArithmeticException("Zero has no inverse");
+    }
+    return (byte) RSUtil.GF.divide(1, a & 0xff);
+  }
+
+  /**
+   * Invert a square matrix by Gauss-Jordan elimination.
+   *
+   * @param matrix the matrix, which is left unchanged
+   * @return the inverse of the matrix
+   * @throws HadoopIllegalArgumentException if the matrix is singular
+   */
+  public static byte[][] invertMatrix(byte[][] matrix) {
+    final int n = matrix.length;
+    byte[][] work = new byte[n][];
+    byte[][] inverse = new byte[n][n];
+    for (int i = 0; i < n; i++) {
+      work[i] = matrix[i].clone();
+      inverse[i][i] = 1;
+    }
+
+    for (int col = 0; col < n; col++) {
+      int pivot = col;
+      while (pivot < n && work[pivot][col] == 0) {
+        pivot++;
+      }
+      if (pivot == n) {
+        throw new HadoopIllegalArgumentException("Singular matrix");
+      }
+      swap(work, col, pivot);
+      swap(inverse, col, pivot);
+
+      byte[] scale = MUL_TABLE[inverse(work[col][col]) & 0xff];
+      for (int j = 0; j < n; j++) {
+        work[col][j] = scale[work[col][j] & 0xff];
+        inverse[col][j] = scale[inverse[col][j] & 0xff];
+      }
+
+      for (int row = 0; row < n; row++) {
+        if (row == col || work[row][col] == 0) {
+          continue;
+        }
+        byte[] factor = MUL_TABLE[work[row][col] & 0xff];
+        for (int j = 0; j < n; j++) {
+          work[row][j] ^= factor[work[col][j] & 0xff];
+          inverse[row][j] ^= factor[inverse[col][j] & 0xff];
+        }
+      }
+    }
+    return inverse;
+  }
+
+  private static void swap(byte[][] rows, int i, int j) {
+    byte[] row = rows[i];
+    rows[i] = rows[j];
+    rows[j] = row;
+  }
+
+  /**
+   * @return the product of a row vector and a matrix
+   */
+  public static byte[] multiply(byte[] row, byte[][] matrix) {
+    byte[] result = new byte[matrix[0].length];
+    for (int i = 0; i < row.length; i++) {
+      byte[] table = MUL_TABLE[row[i] & 0xff];
+      for (int j = 0; j < result.length; j++) {
+        result[j] ^= table[matrix[i][j] & 0xff];
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Code bytes array chunks: outputs[i] is overwritten with the sum of
+   * coefs[i][j] * inputs[j].
+   */
+  public static void codeChunks(byte[][] coefs, byte[][] inputs,
+      int[] inputOffsets, int dataLen, byte[][] outputs,
+      int[] outputOffsets) {
+    for (int start = 0; start < dataLen; start += STRIPE_SIZE) {
+      final int len = Math.min(STRIPE_SIZE, dataLen - start);
+      for (int j = 0; j < inputs.length; j++) {
+        for (int i = 0; i < outputs.length; i++) {
+          codeStripe(MUL_TABLE[coefs[i][j] & 0xff],
+              inputs[j], inputOffsets[j] + start,
+              outputs[i], outputOffsets[i] + start, len, j == 0);
+        }
+      }
+    }
+  }
+
+  private static void codeStripe(byte[] table, byte[] in, int inPos,
+      byte[] out, int outPos, int len, boolean overwrite) {
+    final int end = inPos + (len & ~7);
+    int i = inPos;
+    int o = outPos;
+    if (overwrite) {
+      for (; i < end; i += 8, o += 8) {
+        out[o] = table[in[i] & 0xff];
+        out[o + 1] = table[in[i + 1] & 0xff];
+        out[o + 2] = table[in[i + 2] & 0xff];
+        out[o + 3] = table[in[i + 3] & 0xff];
+        out[o + 4] = table[in[i + 4] & 0xff];
+        out[o + 5] = table[in[i + 5] & 0xff];
+        out[o + 6] = table[in[i + 6] & 0xff];
+        out[o + 7] = table[in[i + 7] & 0xff];
+      }
+      for (; i < inPos + len; i++, o++) {
+        out[o] = table[in[i] & 0xff];
+      }
+    } else {
+      for (; i < end; i += 8, o += 8) {
+        out[o] ^= table[in[i] & 0xff];
+        out[o + 1] ^= table[in[i + 1] & 0xff];
+        out[o + 2] ^= table[in[i + 2] & 0xff];
+        out[o + 3] ^= table[in[i + 3] & 0xff];
+        out[o + 4] ^= table[in[i + 4] & 0xff];
+        out[o + 5] ^= table[in[i + 5] & 0xff];
+        out[o + 6] ^= table[in[i + 6] & 0xff];
+        out[o + 7] ^= table[in[i + 7] & 0xff];
+      }
+      for (; i < inPos + len; i++, o++) {
+        out[o] ^= table[in[i] & 0xff];
+      }
+    }
+  }
+
+  /**
+   * Code ByteBuffer chunks from their positions, which are left unchanged:
+   * outputs[i] is overwritten with the sum of coefs[i][j] * inputs[j]. The
+   * chunks are read and written as long words.
+   */
+  public static void codeChunks(byte[][] coefs, ByteBuffer[] inputs,
+      ByteBuffer[] outputs) {
+    final int dataLen = inputs[0].remaining();
+    // The bytes of a word are coded independently, so the byte order only
+    // matters for the speed of the word accesses
+    ByteBuffer[] in = nativeOrder(inputs);
+    ByteBuffer[] out = nativeOrder(outputs);
+    for (int start = 0; start < dataLen; start += STRIPE_SIZE) {
+      final int len = Math.min(STRIPE_SIZE, dataLen - start);
+      for (int j = 0; j < in.length; j++) {
+        for (int i = 0; i < out.length; i++) {
+          codeStripe(MUL_TABLE[coefs[i][j] & 0xff],
+              in[j], in[j].position() + start,
+              out[i], out[i].position() + start, len, j == 0);
+        }
+      }
+    }
+  }
+
+  private static ByteBuffer[] nativeOrder(ByteBuffer[] buffers) {
+    ByteBuffer[] result = new ByteBuffer[buffers.length];
+    for (int i = 0; i < buffers.length; i++) {
+      result[i] = buffers[i].duplicate().order(ByteOrder.nativeOrder());
+    }
+    return result;
+  }
+
+  private static void codeStripe(byte[] table, ByteBuffer in, int inPos,
+      ByteBuffer out, int outPos, int len, boolean overwrite) {
+    final int words = len & ~7;
+    int k = 0;
+    for (; k < words; k += 8) {
+      final long v = in.getLong(inPos + k);
+      long r = (table[(int) v & 0xff] & 0xffL)
+          | (table[(int) (v >>> 8) & 0xff] & 0xffL) << 8
+          | (table[(int) (v >>> 16) & 0xff] & 0xffL) << 16
+          | (table[(int) (v >>> 24) & 0xff] & 0xffL) << 24
+          | (table[(int) (v >>> 32) & 0xff] & 0xffL) << 32
+          | (table[(int) (v >>> 40) & 0xff] & 0xffL) << 40
+          | (table[(int) (v >>> 48) & 0xff] & 0xffL) << 48
+          | (table[(int) (v >>> 56) & 0xff] & 0xffL) << 56;
+      if (!overwrite) {
+        r ^= out.getLong(outPos + k);
+      }
+      out.putLong(outPos + k, r);
+    }
+    for (; k < len; k++) {
+      byte b = table[in.get(inPos + k) & 0xff];
+      if (!overwrite) {
+        b ^= out.get(outPos + k);
+      }
+      out.put(outPos + k, b);
+    }
+  }
+}
@@ -17,6 +17,8 @@
  */
 package org.apache.hadoop.io.erasurecode.rawcoder.util;
 
+import java.util.Arrays;
+
 import org.apache.hadoop.classification.InterfaceAudience;
 
 /**
@@ -39,4 +41,45 @@ public static int[] getPrimitivePower(int numDataUnits, int numParityUnits) {
     return primitivePower;
   }
 
+  /**
+   * Compute the generating polynomial, which has the first numParityUnits
+   * powers of the primitive root as roots.
+   */
+  public static int[] getGeneratingPolynomial(int numDataUnits,
+                                              int numParityUnits) {
+    int[] primitivePower = getPrimitivePower(numDataUnits, numParityUnits);
+    int[] gen = {1};
+    int[] poly = new int[2];
+    for (int i = 0; i < numParityUnits; i++) {
+      poly[0] = primitivePower[i];
+      poly[1] = 1;
+      gen = GF.multiply(gen, poly);
+    }
+    return gen;
+  }
+
+  /**
+   * Compute the coefficients of the data units in the parity units, so that
+   * parity unit i is the sum of matrix[i][j] * data unit j. Those are the
+   * remainders of the polynomial of each data unit by the generating
+   * polynomial, hence the parity is the same as computed by
+   * {@link GaloisField#remainder(int[], int[])}.
+   *
+   * @return the numParityUnits x numDataUnits parity matrix
+   */
+  public static byte[][] getParityMatrix(int numDataUnits,
+                                         int numParityUnits) {
+    int[] gen = getGeneratingPolynomial(numDataUnits, numParityUnits);
+    byte[][] matrix = new byte[numParityUnits][numDataUnits];
+    int[] dividend = new int[numDataUnits + numParityUnits];
+    for (int j = 0; j < numDataUnits; j++) {
+      Arrays.fill(dividend, 0);
+      dividend[numParityUnits + j] = 1;
+      GF.remainder(dividend, gen);
+      for (int i = 0; i < numParityUnits; i++) {
+        matrix[i][j] = (byte) dividend[i];
+      }
+    }
+    return matrix;
+  }
 }
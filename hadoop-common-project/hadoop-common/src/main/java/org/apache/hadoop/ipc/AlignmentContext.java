@@ -0,0 +1,68 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.ipc;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcRequestHeaderProto;
+import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcResponseHeaderProto;
+
+/**
+ * Keeps clients and servers aligned on the state of a replicated service,
+ * e.g. the transaction id of the namespace of the NameNodes, through the
+ * state id of the RPC headers.
+ *
+ * A client sends the last state it has seen with each request and updates
+ * it from each response. A server only processes a request once its own
+ * state has caught up with the state of the request, so a client reading
+ * from a server which lags behind still sees its previous writes.
+ */
+@InterfaceAudience.LimitedPrivate({"HDFS"})
+@InterfaceStability.Evolving
+public interface AlignmentContext {
+
+  /**
+   * Server side: set the state of the server in the header of a response.
+   * @param header the header of the response
+   */
+  void updateResponseState(RpcResponseHeaderProto.Builder header);
+
+  /**
+   * Client side: update the state of the client from a response.
+   * @param header the header of the response
+   */
+  void receiveResponseState(RpcResponseHeaderProto header);
+
+  /**
+   * Client side: set the state of the client in the header of a request.
+   * @param header the header of the request
+   */
+  void updateRequestState(RpcRequestHeaderProto.Builder header);
+
+  /**
+   * Server side: read the state of the client from a request.
+   * @param header the header of the request
+   * @return the state the server must reach before processing the request
+   */
+  long receiveRequestState(RpcRequestHeaderProto header);
+
+  /**
+   * @return the state of the server, or the last state seen by the client
+   */
+  long getLastSeenStateId();
+}
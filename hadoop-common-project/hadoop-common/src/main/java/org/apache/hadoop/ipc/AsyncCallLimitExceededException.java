@@ -0,0 +1,37 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.ipc;
+
+import java.io.IOException;
+
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * Exception thrown by a client making an asynchronous call when it already
+ * has the maximum number of outstanding asynchronous calls, see
+ * {@link Client#setAsynchronousMode(boolean)}. The call may be retried once
+ * some of the outstanding calls complete.
+ */
+@InterfaceStability.Unstable
+public class AsyncCallLimitExceededException extends IOException {
+  private static final long serialVersionUID = -5866416263590624839L;
+
+  public AsyncCallLimitExceededException(String msg) {
+    super(msg);
+  }
+}
@@ -132,10 +132,33 @@ public E take() throws InterruptedException {
     return e;
   }
 
+  /**
+   * Retrieve an E from the backing queue, waiting up to the given time.
+   * Return null if none is available in time, or if the queue changes.
+   */
+  public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+    return takeRef.get().poll(timeout, unit);
+  }
+
   public int size() {
     return takeRef.get().size();
   }
 
+  /**
+   * Account the cost of a processed call, if the backing queue schedules
+   * calls by cost.
+   * @see RpcScheduler#addCallCost(Schedulable, long, long, long)
+   */
+  @SuppressWarnings("unchecked")
+  public void addCallCost(E e, long processingNanos, long lockSharedNanos,
+      long lockExclusiveNanos) {
+    BlockingQueue<E> q = takeRef.get();
+    if (q instanceof FairCallQueue) {
+      ((FairCallQueue<Schedulable>) q).addCallCost((Schedulable) e,
+          processingNanos, lockSharedNanos, lockExclusiveNanos);
+    }
+  }
+
   /**
    * Replaces active queue with the newly requested one and transfers
    * all calls to the newQ before returning.
@@ -96,6 +96,8 @@
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.protobuf.CodedOutputStream;
 
@@ -127,6 +129,51 @@ public static void setCallIdAndRetryCount(int cid, int rc) {
     retryCount.set(rc);
   }
 
+  private static final ThreadLocal<Boolean> asynchronousMode =
+      new ThreadLocal<Boolean>() {
+        @Override
+        protected Boolean initialValue() {
+          return false;
+        }
+      };
+  private static final ThreadLocal<ListenableFuture<Writable>>
+      asyncRpcResponse = new ThreadLocal<ListenableFuture<Writable>>();
+
+  /**
+   * Set whether the calls made by the current thread are asynchronous.
+   * An asynchronous call returns null as soon as its request is sent, and
+   * its response is then obtained from {@link #getAsyncRpcResponse()}.
+   * Many asynchronous calls may be outstanding on the same connection, so
+   * a single thread can drive many concurrent calls.
+   */
+  @InterfaceStability.Unstable
+  public static void setAsynchronousMode(boolean async) {
+    asynchronousMode.set(async);
+  }
+
+  /** @return whether the calls made by the current thread are asynchronous */
+  @InterfaceStability.Unstable
+  public static boolean isAsynchronousMode() {
+    return asynchronousMode.get();
+  }
+
+  /**
+   * Get the future response of the last asynchronous call made by the
+   * current thread, and forget it. The future is completed by the thread
+   * receiving the responses of the connection, so listeners run with a
+   * same-thread executor must not block.
+   *
+   * @return the future response, or null if the current thread has made no
+   *         asynchronous call since the last call to this method.
+   */
+  @InterfaceStability.Unstable
+  @SuppressWarnings("unchecked")
+  public static <T extends Writable> ListenableFuture<T> getAsyncRpcResponse() {
+    final ListenableFuture<?> future = asyncRpcResponse.get();
+    asyncRpcResponse.remove();
+    return (ListenableFuture<T>) future;
+  }
+
   private ConcurrentMap<ConnectionId, Connection> connections =
       new ConcurrentHashMap<>();
 
@@ -140,6 +187,8 @@ public static void setCallIdAndRetryCount(int cid, int rc) {
   private final int connectionTimeout;
 
   private final boolean fallbackAllowed;
+  private final int maxAsyncCalls;
+  private final AtomicInteger asyncCallCounter = new AtomicInteger(0);
   private final byte[] clientId;
   
   /**
@@ -319,6 +368,8 @@ static class Call {
     IOException error;          // exception, null if success
     final RPC.RpcKind rpcKind;      // Rpc EngineKind
     boolean done;               // true when call is done
+    private AsyncCallFuture future; // completed with an asynchronous call
+    AlignmentContext alignmentContext; // null if the client is not aligned
 
     private Call(RPC.RpcKind rpcKind, Writable param) {
       this.rpcKind = rpcKind;
@@ -342,9 +393,31 @@ private Call(RPC.RpcKind rpcKind, Writable param) {
 
     /** Indicate when the call is complete and the
      * value or error are available.  Notifies by default.  */
-    protected synchronized void callComplete() {
-      this.done = true;
-      notify();                                 // notify caller
+    protected void callComplete() {
+      final AsyncCallFuture f;
+      synchronized (this) {
+        this.done = true;
+        notify();                                 // notify caller
+        f = future;
+        future = null;
+      }
+      if (f != null) {
+        f.complete();
+      }
+    }
+
+    /**
+     * Complete the given future when the call is complete, or now if it
+     * already is.
+     */
+    void setFuture(AsyncCallFuture f) {
+      synchronized (this) {
+        if (!done) {
+          future = f;
+          return;
+        }
+      }
+      f.complete();
     }
 
     /** Set the exception when there is an error.
@@ -352,8 +425,10 @@ protected synchronized void callComplete() {
      * 
      * @param error exception thrown by the call; either local or remote
      */
-    public synchronized void setException(IOException error) {
-      this.error = error;
+    public void setException(IOException error) {
+      synchronized (this) {
+        this.error = error;
+      }
       callComplete();
     }
     
@@ -362,8 +437,10 @@ public synchronized void setException(IOException error) {
      * 
      * @param rpcResponse return value of the rpc call.
      */
-    public synchronized void setRpcResponse(Writable rpcResponse) {
-      this.rpcResponse = rpcResponse;
+    public void setRpcResponse(Writable rpcResponse) {
+      synchronized (this) {
+        this.rpcResponse = rpcResponse;
+      }
       callComplete();
     }
     
@@ -1045,7 +1122,7 @@ public void sendRpcRequest(final Call call)
       final DataOutputBuffer d = new DataOutputBuffer();
       RpcRequestHeaderProto header = ProtoUtil.makeRpcRequestHeader(
           call.rpcKind, OperationProto.RPC_FINAL_PACKET, call.id, call.retry,
-          clientId);
+          clientId, call.alignmentContext);
       header.writeDelimitedTo(d);
       call.rpcRequest.write(d);
 
@@ -1120,6 +1197,9 @@ private void receiveRpcResponse() {
           LOG.debug(getName() + " got value #" + callId);
 
         Call call = calls.get(callId);
+        if (call != null && call.alignmentContext != null) {
+          call.alignmentContext.receiveResponseState(header);
+        }
         RpcStatusProto status = header.getStatus();
         if (status == RpcStatusProto.SUCCESS) {
           Writable value = ReflectionUtils.newInstance(valueClass, conf);
@@ -1239,6 +1319,9 @@ public Client(Class<? extends Writable> valueClass, Configuration conf,
         CommonConfigurationKeys.IPC_CLIENT_CONNECT_TIMEOUT_DEFAULT);
     this.fallbackAllowed = conf.getBoolean(CommonConfigurationKeys.IPC_CLIENT_FALLBACK_TO_SIMPLE_AUTH_ALLOWED_KEY,
         CommonConfigurationKeys.IPC_CLIENT_FALLBACK_TO_SIMPLE_AUTH_ALLOWED_DEFAULT);
+    this.maxAsyncCalls = conf.getInt(
+        CommonConfigurationKeysPublic.IPC_CLIENT_ASYNC_CALLS_MAX_KEY,
+        CommonConfigurationKeysPublic.IPC_CLIENT_ASYNC_CALLS_MAX_DEFAULT);
     this.clientId = ClientId.getClientId();
     this.sendParamsExecutor = clientExcecutorFactory.refAndGetInstance();
   }
@@ -1420,17 +1503,62 @@ public Writable call(RPC.RpcKind rpcKind, Writable rpcRequest,
   public Writable call(RPC.RpcKind rpcKind, Writable rpcRequest,
       ConnectionId remoteId, int serviceClass,
       AtomicBoolean fallbackToSimpleAuth) throws IOException {
+    return call(rpcKind, rpcRequest, remoteId, serviceClass,
+        fallbackToSimpleAuth, null);
+  }
+
+  /**
+   * Make a call, passing <code>rpcRequest</code>, to the IPC server defined by
+   * <code>remoteId</code>, returning the rpc response.
+   *
+   * @param rpcKind
+   * @param rpcRequest -  contains serialized method and method parameters
+   * @param remoteId - the target rpc server
+   * @param serviceClass - service class for RPC
+   * @param fallbackToSimpleAuth - set to true or false during this method to
+   *   indicate if a secure client falls back to simple auth
+   * @param alignmentContext - state of the client to send with the request
+   *   and to update from the response, or null
+   * @returns the rpc response
+   * Throws exceptions if there are network problems or if the remote code
+   * threw an exception.
+   */
+  public Writable call(RPC.RpcKind rpcKind, Writable rpcRequest,
+      ConnectionId remoteId, int serviceClass,
+      AtomicBoolean fallbackToSimpleAuth, AlignmentContext alignmentContext)
+      throws IOException {
     final Call call = createCall(rpcKind, rpcRequest);
-    Connection connection = getConnection(remoteId, call, serviceClass,
-      fallbackToSimpleAuth);
+    call.alignmentContext = alignmentContext;
+    final boolean async = isAsynchronousMode();
+    if (async) {
+      acquireAsyncCall();
+    }
+    final Connection connection;
+    boolean sent = false;
     try {
-      connection.sendRpcRequest(call);                 // send the rpc request
-    } catch (RejectedExecutionException e) {
-      throw new IOException("connection has been closed", e);
-    } catch (InterruptedException e) {
-      Thread.currentThread().interrupt();
-      LOG.warn("interrupted waiting to send rpc request to server", e);
-      throw new IOException(e);
+      connection = getConnection(remoteId, call, serviceClass,
+          fallbackToSimpleAuth);
+      try {
+        connection.sendRpcRequest(call);                 // send the rpc request
+      } catch (RejectedExecutionException e) {
+        throw new IOException("connection has been closed", e);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        LOG.warn("interrupted waiting to send rpc request to server", e);
+        throw new IOException(e);
+      }
+      sent = true;
+    } finally {
+      if (async && !sent) {
+        asyncCallCounter.decrementAndGet();
+      }
+    }
+
+    if (async) {
+      final AsyncCallFuture future = new AsyncCallFuture(call, connection);
+      asyncRpcResponse.set(future);
+      call.setFuture(future);
+      return null;
     }
 
     synchronized (call) {
@@ -1444,23 +1572,71 @@ public Writable call(RPC.RpcKind rpcKind, Writable rpcRequest,
       }
 
       if (call.error != null) {
-        if (call.error instanceof RemoteException) {
-          call.error.fillInStackTrace();
-          throw call.error;
-        } else { // local exception
-          InetSocketAddress address = connection.getRemoteAddress();
-          throw NetUtils.wrapException(address.getHostName(),
-                  address.getPort(),
-                  NetUtils.getHostname(),
-                  0,
-                  call.error);
-        }
+        throw getCallError(call, connection);
       } else {
         return call.getRpcResponse();
       }
     }
   }
 
+  /** @return the exception to report for a call that failed */
+  private static IOException getCallError(Call call, Connection connection) {
+    if (call.error instanceof RemoteException) {
+      call.error.fillInStackTrace();
+      return call.error;
+    } else { // local exception
+      InetSocketAddress address = connection.getRemoteAddress();
+      return NetUtils.wrapException(address.getHostName(),
+              address.getPort(),
+              NetUtils.getHostname(),
+              0,
+              call.error);
+    }
+  }
+
+  /**
+   * Count a new asynchronous call.
+   * @throws AsyncCallLimitExceededException if there are already
+   *         {@link #maxAsyncCalls} outstanding asynchronous calls.
+   */
+  private void acquireAsyncCall() throws AsyncCallLimitExceededException {
+    if (asyncCallCounter.incrementAndGet() > maxAsyncCalls) {
+      asyncCallCounter.decrementAndGet();
+      throw new AsyncCallLimitExceededException("Exceeded the limit of "
+          + maxAsyncCalls + " outstanding asynchronous calls, see "
+          + CommonConfigurationKeysPublic.IPC_CLIENT_ASYNC_CALLS_MAX_KEY);
+    }
+  }
+
+  @VisibleForTesting
+  int getAsyncCallCount() {
+    return asyncCallCounter.get();
+  }
+
+  /**
+   * The future response of an asynchronous call, completed by the thread
+   * receiving the responses of the connection when the call completes.
+   */
+  private class AsyncCallFuture extends AbstractFuture<Writable> {
+    private final Call call;
+    private final Connection connection;
+
+    AsyncCallFuture(Call call, Connection connection) {
+      this.call = call;
+      this.connection = connection;
+    }
+
+    /** Complete this future with the value or error of the call. */
+    void complete() {
+      asyncCallCounter.decrementAndGet();
+      if (call.error != null) {
+        setException(getCallError(call, connection));
+      } else {
+        set(call.getRpcResponse());
+      }
+    }
+  }
+
   // for unit testing only
   @InterfaceAudience.Private
   @InterfaceStability.Unstable
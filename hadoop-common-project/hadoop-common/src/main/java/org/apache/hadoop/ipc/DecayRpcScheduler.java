@@ -27,6 +27,7 @@
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -77,6 +78,32 @@ public class DecayRpcScheduler implements RpcScheduler, DecayRpcSchedulerMXBean
   public static final String IPC_CALLQUEUE_DECAYSCHEDULER_THRESHOLDS_KEY =
     "faircallqueue.decay-scheduler.thresholds";
 
+  /**
+   * In cost-based mode identities are ranked by the cost of their calls
+   * instead of their number of calls. The cost of a call is its processing
+   * time in microseconds, where the time spent holding the lock of the
+   * service is weighted by the lock weights below, since it also delays the
+   * other handlers.
+   */
+  public static final String IPC_CALLQUEUE_DECAYSCHEDULER_COST_BASED_KEY =
+    "faircallqueue.decay-scheduler.cost-based";
+  public static final boolean IPC_CALLQUEUE_DECAYSCHEDULER_COST_BASED_DEFAULT =
+    false;
+
+  /** Weight of the time holding the lock in shared mode. */
+  public static final String
+      IPC_CALLQUEUE_DECAYSCHEDULER_LOCK_SHARED_WEIGHT_KEY =
+    "faircallqueue.decay-scheduler.cost.lock-shared.weight";
+  public static final int
+      IPC_CALLQUEUE_DECAYSCHEDULER_LOCK_SHARED_WEIGHT_DEFAULT = 10;
+
+  /** Weight of the time holding the lock in exclusive mode. */
+  public static final String
+      IPC_CALLQUEUE_DECAYSCHEDULER_LOCK_EXCLUSIVE_WEIGHT_KEY =
+    "faircallqueue.decay-scheduler.cost.lock-exclusive.weight";
+  public static final int
+      IPC_CALLQUEUE_DECAYSCHEDULER_LOCK_EXCLUSIVE_WEIGHT_DEFAULT = 100;
+
   // Specifies the identity to use when the IdentityProvider cannot handle
   // a schedulable.
   public static final String DECAYSCHEDULER_UNKNOWN_IDENTITY =
@@ -84,7 +111,8 @@ public class DecayRpcScheduler implements RpcScheduler, DecayRpcSchedulerMXBean
 
   public static final Log LOG = LogFactory.getLog(DecayRpcScheduler.class);
 
-  // Track the number of calls for each schedulable identity
+  // Track the number of calls, or their cost in cost-based mode, for each
+  // schedulable identity
   private final ConcurrentHashMap<Object, AtomicLong> callCounts =
     new ConcurrentHashMap<Object, AtomicLong>();
 
@@ -102,6 +130,9 @@ public class DecayRpcScheduler implements RpcScheduler, DecayRpcSchedulerMXBean
   private final int numQueues; // affects scheduling decisions, from 0 to numQueues - 1
   private final double[] thresholds;
   private final IdentityProvider identityProvider;
+  private final boolean costBased;
+  private final int lockSharedWeight;
+  private final int lockExclusiveWeight;
 
   /**
    * This TimerTask will call decayCurrentCounts until
@@ -147,6 +178,15 @@ public DecayRpcScheduler(int numQueues, String ns, Configuration conf) {
     this.decayPeriodMillis = parseDecayPeriodMillis(ns, conf);
     this.identityProvider = this.parseIdentityProvider(ns, conf);
     this.thresholds = parseThresholds(ns, conf, numQueues);
+    this.costBased = conf.getBoolean(ns + "." +
+        IPC_CALLQUEUE_DECAYSCHEDULER_COST_BASED_KEY,
+        IPC_CALLQUEUE_DECAYSCHEDULER_COST_BASED_DEFAULT);
+    this.lockSharedWeight = conf.getInt(ns + "." +
+        IPC_CALLQUEUE_DECAYSCHEDULER_LOCK_SHARED_WEIGHT_KEY,
+        IPC_CALLQUEUE_DECAYSCHEDULER_LOCK_SHARED_WEIGHT_DEFAULT);
+    this.lockExclusiveWeight = conf.getInt(ns + "." +
+        IPC_CALLQUEUE_DECAYSCHEDULER_LOCK_EXCLUSIVE_WEIGHT_KEY,
+        IPC_CALLQUEUE_DECAYSCHEDULER_LOCK_EXCLUSIVE_WEIGHT_DEFAULT);
 
     // Setup delay timer
     Timer timer = new Timer();
@@ -299,6 +339,16 @@ private void recomputeScheduleCache() {
    * @return the value before incrementation
    */
   private long getAndIncrement(Object identity) throws InterruptedException {
+    return getAndAdd(identity, 1);
+  }
+
+  /**
+   * Get the number of occurrences or cost and add to it atomically.
+   * @param identity the identity of the user to add to
+   * @param delta the number of occurrences or cost to add
+   * @return the value before the addition
+   */
+  private long getAndAdd(Object identity, long delta) {
     // We will increment the count, or create it if no such count exists
     AtomicLong count = this.callCounts.get(identity);
     if (count == null) {
@@ -313,12 +363,12 @@ private long getAndIncrement(Object identity) throws InterruptedException {
     }
 
     // Update the total
-    totalCalls.getAndIncrement();
+    totalCalls.getAndAdd(delta);
 
     // At this point value is guaranteed to be not null. It may however have
     // been clobbered from callCounts. Nonetheless, we return what
     // we have.
-    return count.getAndIncrement();
+    return count.getAndAdd(delta);
   }
 
   /**
@@ -353,7 +403,14 @@ private int computePriorityLevel(long occurrences) {
    */
   private int cachedOrComputedPriorityLevel(Object identity) {
     try {
-      long occurrences = this.getAndIncrement(identity);
+      long occurrences;
+      if (costBased) {
+        // The cost is accounted once the call is processed
+        AtomicLong cost = callCounts.get(identity);
+        occurrences = cost == null ? 0 : cost.get();
+      } else {
+        occurrences = this.getAndIncrement(identity);
+      }
 
       // Try the cache
       Map<Object, Integer> scheduleCache = scheduleCacheRef.get();
@@ -389,6 +446,41 @@ public int getPriorityLevel(Schedulable obj) {
     return cachedOrComputedPriorityLevel(identity);
   }
 
+  /**
+   * In cost-based mode, account the weighted processing time of the call
+   * to its identity; otherwise calls were already counted when scheduled.
+   */
+  @Override
+  public void addCallCost(Schedulable obj, long processingNanos,
+      long lockSharedNanos, long lockExclusiveNanos) {
+    if (!costBased) {
+      return;
+    }
+    String identity = this.identityProvider.makeIdentity(obj);
+    if (identity == null) {
+      identity = DECAYSCHEDULER_UNKNOWN_IDENTITY;
+    }
+    getAndAdd(identity, computeCost(processingNanos, lockSharedNanos,
+        lockExclusiveNanos));
+  }
+
+  /**
+   * @return the cost of a call in weighted microseconds, at least 1 so that
+   *         every call counts.
+   */
+  @VisibleForTesting
+  long computeCost(long processingNanos, long lockSharedNanos,
+      long lockExclusiveNanos) {
+    long lockFreeNanos = Math.max(0,
+        processingNanos - lockSharedNanos - lockExclusiveNanos);
+    long cost = lockFreeNanos + lockSharedWeight * lockSharedNanos
+        + lockExclusiveWeight * lockExclusiveNanos;
+    return Math.max(1, TimeUnit.NANOSECONDS.toMicros(cost));
+  }
+
+  @VisibleForTesting
+  public boolean isCostBased() { return costBased; }
+
   // For testing
   @VisibleForTesting
   public double getDecayFactor() { return decayFactor; }
@@ -140,6 +140,16 @@ private BlockingQueue<E> getFirstNonEmptyQueue(int startIdx) {
     return null;
   }
 
+  /**
+   * Account the cost of a processed call to the scheduler.
+   * @see RpcScheduler#addCallCost(Schedulable, long, long, long)
+   */
+  public void addCallCost(E e, long processingNanos, long lockSharedNanos,
+      long lockExclusiveNanos) {
+    scheduler.addCallCost(e, processingNanos, lockSharedNanos,
+        lockExclusiveNanos);
+  }
+
   /* AbstractQueue and BlockingQueue methods */
 
   /**
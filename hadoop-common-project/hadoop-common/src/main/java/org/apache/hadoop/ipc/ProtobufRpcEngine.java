@@ -53,6 +53,9 @@
 import org.apache.htrace.core.Tracer;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.protobuf.BlockingService;
 import com.google.protobuf.CodedOutputStream;
 import com.google.protobuf.Descriptors.MethodDescriptor;
@@ -76,6 +79,27 @@ public class ProtobufRpcEngine implements RpcEngine {
 
   private static final ClientCache CLIENTS = new ClientCache();
 
+  private static final ThreadLocal<ListenableFuture<Message>>
+      ASYNC_RETURN_MESSAGE = new ThreadLocal<ListenableFuture<Message>>();
+
+  /**
+   * Get the future return message of the last call made by the current
+   * thread through a protobuf proxy in asynchronous mode, and forget it.
+   * The proxy method itself returns null in asynchronous mode.
+   * A failed call completes the future with the {@link IOException} of the
+   * call, e.g. a {@link RemoteException}, as the cause.
+   *
+   * @see Client#setAsynchronousMode(boolean)
+   * @return the future return message, or null if the current thread has
+   *         made no asynchronous call since the last call to this method.
+   */
+  @InterfaceStability.Unstable
+  public static ListenableFuture<Message> getAsyncReturnMessage() {
+    final ListenableFuture<Message> future = ASYNC_RETURN_MESSAGE.get();
+    ASYNC_RETURN_MESSAGE.remove();
+    return future;
+  }
+
   public <T> ProtocolProxy<T> getProxy(Class<T> protocol, long clientVersion,
       InetSocketAddress addr, UserGroupInformation ticket, Configuration conf,
       SocketFactory factory, int rpcTimeout) throws IOException {
@@ -93,14 +117,25 @@ public <T> ProtocolProxy<T> getProxy(Class<T> protocol, long clientVersion,
   }
 
   @Override
-  @SuppressWarnings("unchecked")
   public <T> ProtocolProxy<T> getProxy(Class<T> protocol, long clientVersion,
       InetSocketAddress addr, UserGroupInformation ticket, Configuration conf,
       SocketFactory factory, int rpcTimeout, RetryPolicy connectionRetryPolicy,
       AtomicBoolean fallbackToSimpleAuth) throws IOException {
+    return getProxy(protocol, clientVersion, addr, ticket, conf, factory,
+        rpcTimeout, connectionRetryPolicy, fallbackToSimpleAuth, null);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> ProtocolProxy<T> getProxy(Class<T> protocol, long clientVersion,
+      InetSocketAddress addr, UserGroupInformation ticket, Configuration conf,
+      SocketFactory factory, int rpcTimeout, RetryPolicy connectionRetryPolicy,
+      AtomicBoolean fallbackToSimpleAuth, AlignmentContext alignmentContext)
+      throws IOException {
 
     final Invoker invoker = new Invoker(protocol, addr, ticket, conf, factory,
-        rpcTimeout, connectionRetryPolicy, fallbackToSimpleAuth);
+        rpcTimeout, connectionRetryPolicy, fallbackToSimpleAuth,
+        alignmentContext);
     return new ProtocolProxy<T>(protocol, (T) Proxy.newProxyInstance(
         protocol.getClassLoader(), new Class[]{protocol}, invoker), false);
   }
@@ -125,15 +160,18 @@ private static class Invoker implements RpcInvocationHandler {
     private final long clientProtocolVersion;
     private final String protocolName;
     private AtomicBoolean fallbackToSimpleAuth;
+    private AlignmentContext alignmentContext;
 
     private Invoker(Class<?> protocol, InetSocketAddress addr,
         UserGroupInformation ticket, Configuration conf, SocketFactory factory,
         int rpcTimeout, RetryPolicy connectionRetryPolicy,
-        AtomicBoolean fallbackToSimpleAuth) throws IOException {
+        AtomicBoolean fallbackToSimpleAuth, AlignmentContext alignmentContext)
+        throws IOException {
       this(protocol, Client.ConnectionId.getConnectionId(
           addr, protocol, ticket, rpcTimeout, connectionRetryPolicy, conf),
           conf, factory);
       this.fallbackToSimpleAuth = fallbackToSimpleAuth;
+      this.alignmentContext = alignmentContext;
     }
     
     /**
@@ -189,7 +227,7 @@ private RequestHeaderProto constructRpcRequestHeader(Method method) {
      * the server.
      */
     @Override
-    public Object invoke(Object proxy, Method method, Object[] args)
+    public Object invoke(Object proxy, final Method method, Object[] args)
         throws ServiceException {
       long startTime = 0;
       if (LOG.isDebugEnabled()) {
@@ -229,7 +267,8 @@ public Object invoke(Object proxy, Method method, Object[] args)
       try {
         val = (RpcResponseWrapper) client.call(RPC.RpcKind.RPC_PROTOCOL_BUFFER,
             new RpcRequestWrapper(rpcRequestHeader, theRequest), remoteId,
-            fallbackToSimpleAuth);
+            RPC.RPC_SERVICE_CLASS_DEFAULT, fallbackToSimpleAuth,
+            alignmentContext);
 
       } catch (Throwable e) {
         if (LOG.isTraceEnabled()) {
@@ -246,11 +285,29 @@ public Object invoke(Object proxy, Method method, Object[] args)
         if (traceScope != null) traceScope.close();
       }
 
+      if (Client.isAsynchronousMode()) {
+        final ListenableFuture<RpcResponseWrapper> response =
+            Client.getAsyncRpcResponse();
+        ASYNC_RETURN_MESSAGE.set(Futures.transform(response,
+            new AsyncFunction<RpcResponseWrapper, Message>() {
+              @Override
+              public ListenableFuture<Message> apply(RpcResponseWrapper val)
+                  throws ServiceException {
+                return Futures.immediateFuture(getReturnMessage(method, val));
+              }
+            }));
+        return null;
+      }
+
       if (LOG.isDebugEnabled()) {
         long callTime = Time.now() - startTime;
         LOG.debug("Call: " + method.getName() + " took " + callTime + "ms");
       }
-      
+      return getReturnMessage(method, val);
+    }
+
+    private Message getReturnMessage(Method method, RpcResponseWrapper val)
+        throws ServiceException {
       Message prototype = null;
       try {
         prototype = getReturnProtoType(method);
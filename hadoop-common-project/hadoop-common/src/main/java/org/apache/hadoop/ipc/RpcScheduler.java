@@ -26,4 +26,19 @@ public interface RpcScheduler {
    * Returns priority level greater than zero as a hint for scheduling.
    */
   int getPriorityLevel(Schedulable obj);
+
+  /**
+   * Account the cost of a processed call to its identity, so that schedulers
+   * can weigh identities by the load they put on the server rather than by
+   * their number of calls.
+   *
+   * @param obj the processed call
+   * @param processingNanos time the handler spent processing the call
+   * @param lockSharedNanos part of the processing time holding the lock of
+   *                        the service in shared mode
+   * @param lockExclusiveNanos part of the processing time holding the lock
+   *                           of the service in exclusive mode
+   */
+  void addCallCost(Schedulable obj, long processingNanos, long lockSharedNanos,
+      long lockExclusiveNanos);
 }
@@ -29,6 +29,7 @@
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.lang.reflect.UndeclaredThrowableException;
 import java.net.BindException;
 import java.net.InetAddress;
@@ -41,6 +42,7 @@
 import java.nio.channels.CancelledKeyException;
 import java.nio.channels.Channels;
 import java.nio.channels.ClosedChannelException;
+import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
@@ -48,21 +50,25 @@
 import java.nio.channels.SocketChannel;
 import java.nio.channels.WritableByteChannel;
 import java.security.PrivilegedExceptionAction;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.security.sasl.Sasl;
@@ -79,7 +85,9 @@
 import org.apache.hadoop.conf.Configuration.IntegerRanges;
 import org.apache.hadoop.fs.CommonConfigurationKeys;
 import org.apache.hadoop.fs.CommonConfigurationKeysPublic;
+import org.apache.hadoop.io.ByteBufferPool;
 import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.ElasticByteBufferPool;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableUtils;
@@ -141,6 +149,11 @@ public abstract class Server {
   private RpcSaslProto negotiateResponse;
   private ExceptionsHandler exceptionsHandler = new ExceptionsHandler();
   private Tracer tracer;
+  private volatile AlignmentContext alignmentContext;
+  /** How long a call may wait for this server to reach its client's state. */
+  private volatile long alignmentMaxWaitMs;
+  private final AlignmentWaitQueue alignmentWaitQueue =
+      new AlignmentWaitQueue();
   
   public void addTerseExceptions(Class<?>... exceptionClass) {
     exceptionsHandler.addTerseExceptions(exceptionClass);
@@ -199,6 +212,11 @@ boolean isTerse(Class<?> t) {
    * Initial and max size of response buffer
    */
   static int INITIAL_RESP_BUF_SIZE = 10240;
+
+  /** Default time a call may wait for the server to reach its client. */
+  public static final long DEFAULT_ALIGNMENT_MAX_WAIT_MS = 1000;
+  /** How often the handlers check the calls waiting for the server. */
+  private static final long ALIGNMENT_POLL_INTERVAL_MS = 10;
   
   static class RpcKindMapValue {
     final Class<? extends Writable> rpcRequestWrapperClass;
@@ -357,6 +375,18 @@ public static boolean isRpcInvocation() {
     return CurCall.get() != null;
   }
 
+  /**
+   * @return true if the current call carried the state its client has seen,
+   *         and so is only processed once this server has reached it.
+   */
+  @InterfaceAudience.LimitedPrivate({"HDFS"})
+  @InterfaceStability.Evolving
+  public static boolean isCurCallAligned() {
+    Call call = CurCall.get();
+    return call != null && call.alignmentContext != null
+        && call.clientStateId != Long.MIN_VALUE;
+  }
+
   private String bindAddress; 
   private int port;                               // port we listen on
   private int handlerCount;                       // number of handler threads
@@ -374,6 +404,12 @@ public static boolean isRpcInvocation() {
 
   private int maxQueueSize;
   private final int maxRespSize;
+  /**
+   * Successful responses up to this size are serialized into direct buffers
+   * from {@link #responseBufferPool}; 0 if responses are not pooled.
+   */
+  private final int maxPooledRespSize;
+  private final ByteBufferPool responseBufferPool = new ElasticByteBufferPool();
   private int socketSendBufferSize;
   private final int maxDataLength;
   private final boolean tcpNoDelay; // if T then disable Nagle's Algorithm
@@ -584,6 +620,17 @@ public static class Call implements Schedulable {
     private final byte[] clientId;
     private final TraceScope traceScope; // the HTrace scope on the server side
     private final CallerContext callerContext; // the call context
+    // time the lock of the service was acquired and held while processing
+    private long lockStartNanos;
+    private long lockSharedNanos;
+    private long lockExclusiveNanos;
+    // the server state the client has seen, if the server aligns clients
+    private AlignmentContext alignmentContext;
+    private long clientStateId = Long.MIN_VALUE;
+    // when the call stops waiting for this server to catch up, or 0 if it
+    // never waited
+    private long alignmentDeadline;
+    private boolean alignmentWaitDone;
 
     private Call(Call call) {
       this(call.callId, call.retryCount, call.rpcRequest, call.connection,
@@ -666,6 +713,42 @@ public void abortResponse(Throwable t) throws IOException {
       }
     }
 
+    /**
+     * Record that the handler processing this call acquired the lock of the
+     * service, so that the time holding it is accounted in the cost of the
+     * call.
+     */
+    @InterfaceStability.Unstable
+    @InterfaceAudience.LimitedPrivate({"HDFS"})
+    public void lockAcquired() {
+      lockStartNanos = System.nanoTime();
+    }
+
+    /**
+     * Record that the handler processing this call released the lock
+     * acquired in {@link #lockAcquired()}.
+     * @param exclusive whether the lock was held in exclusive mode
+     */
+    @InterfaceStability.Unstable
+    @InterfaceAudience.LimitedPrivate({"HDFS"})
+    public void lockReleased(boolean exclusive) {
+      long heldNanos = System.nanoTime() - lockStartNanos;
+      if (exclusive) {
+        lockExclusiveNanos += heldNanos;
+      } else {
+        lockSharedNanos += heldNanos;
+      }
+    }
+
+    /**
+     * @return false if the server has not reached the state the client has
+     *         seen yet, so the call must wait.
+     */
+    private boolean isAligned() {
+      return alignmentContext == null
+          || clientStateId <= alignmentContext.getLastSeenStateId();
+    }
+
     // For Schedulable
     @Override
     public UserGroupInformation getUserGroupInformation() {
@@ -673,6 +756,83 @@ public UserGroupInformation getUserGroupInformation() {
     }    
   }
 
+  /**
+   * The calls waiting for this server to reach the state of their clients.
+   * A waiting call neither holds a handler nor goes back to the call queue,
+   * where the scheduler would charge its caller again. The handlers take the
+   * calls which have become aligned, or waited too long, before new calls.
+   */
+  private class AlignmentWaitQueue {
+    /** Calls by the client state they wait for. */
+    private final PriorityQueue<Call> byStateId = new PriorityQueue<Call>(
+        11, new Comparator<Call>() {
+          @Override
+          public int compare(Call c1, Call c2) {
+            return Long.compare(c1.clientStateId, c2.clientStateId);
+          }
+        });
+    /** Calls by deadline, which is the order they started waiting in. */
+    private final ArrayDeque<Call> byDeadline = new ArrayDeque<Call>();
+    /**
+     * Number of waiting calls. A call leaving one of the queues stays in the
+     * other one until it reaches its head.
+     */
+    private int size;
+
+    /**
+     * Wait for this server to reach the state of the client of a call.
+     * @return false if the call cannot wait, because it already waited or
+     *         too many calls are waiting.
+     */
+    synchronized boolean add(Call call) {
+      if (call.alignmentDeadline != 0 || size >= maxQueueSize) {
+        return false;
+      }
+      call.alignmentDeadline = Time.monotonicNow() + alignmentMaxWaitMs;
+      byStateId.add(call);
+      byDeadline.add(call);
+      size++;
+      return true;
+    }
+
+    /**
+     * @return a call which this server has caught up with, or which has
+     *         waited too long, or null if there is none.
+     */
+    synchronized Call poll() {
+      if (size == 0) {
+        return null;
+      }
+      Call call = byStateId.peek();
+      while (call != null && call.alignmentWaitDone) {
+        byStateId.poll();
+        call = byStateId.peek();
+      }
+      if (call != null && call.isAligned()) {
+        return remove(byStateId.poll());
+      }
+      call = byDeadline.peek();
+      while (call != null && call.alignmentWaitDone) {
+        byDeadline.poll();
+        call = byDeadline.peek();
+      }
+      if (call != null && Time.monotonicNow() >= call.alignmentDeadline) {
+        return remove(byDeadline.poll());
+      }
+      return null;
+    }
+
+    private Call remove(Call call) {
+      call.alignmentWaitDone = true;
+      size--;
+      return call;
+    }
+
+    synchronized boolean isEmpty() {
+      return size == 0;
+    }
+  }
+
   /** Listens on the socket. Creates jobs for the handler threads*/
   private class Listener extends Thread {
     
@@ -1102,21 +1262,36 @@ private boolean processResponse(LinkedList<Call> responseQueue,
             LOG.debug(Thread.currentThread().getName() + ": responding to " + call);
           }
           //
-          // Send as much data as we can in the non-blocking fashion
+          // Send as much data as we can in the non-blocking fashion. Small
+          // responses queued after this one are gathered into the same
+          // write.
           //
-          int numBytes = channelWrite(channel, call.rpcResponse);
+          final int numGathered = countGatheredResponses(call, responseQueue);
+          int numBytes;
+          if (numGathered == 0) {
+            numBytes = channelWrite(channel, call.rpcResponse);
+          } else {
+            numBytes = channelWrite(channel, call, responseQueue, numGathered);
+          }
           if (numBytes < 0) {
             return true;
           }
           if (!call.rpcResponse.hasRemaining()) {
             //Clear out the response buffer so it can be collected
-            call.rpcResponse = null;
+            releaseResponse(call);
             call.connection.decRpcCount();
-            if (numElements == 1) {    // last call fully processes.
-              done = true;             // no more data for this channel.
-            } else {
-              done = false;            // more calls pending to be sent.
+            // Retire the gathered responses that were fully written too
+            for (int i = 0; i < numGathered; i++) {
+              Call next = responseQueue.getFirst();
+              if (next.rpcResponse.hasRemaining()) {
+                break;
+              }
+              responseQueue.removeFirst();
+              releaseResponse(next);
+              next.connection.decRpcCount();
             }
+            // no more data for this channel if the queue is drained
+            done = responseQueue.isEmpty();
             if (LOG.isDebugEnabled()) {
               LOG.debug(Thread.currentThread().getName() + ": responding to " + call
                   + " Wrote " + numBytes + " bytes.");
@@ -1162,6 +1337,27 @@ private boolean processResponse(LinkedList<Call> responseQueue,
       return done;
     }
 
+    /**
+     * @return the number of responses at the head of the queue that can be
+     *         written along with the response of the given call.
+     */
+    private int countGatheredResponses(Call call,
+        LinkedList<Call> responseQueue) {
+      int numBytes = call.rpcResponse.remaining();
+      int numGathered = 0;
+      for (Call next : responseQueue) {
+        if (numGathered == MAX_GATHERED_RESPONSES - 1) {
+          break;
+        }
+        numBytes += next.rpcResponse.remaining();
+        if (numBytes > NIO_BUFFER_LIMIT) {
+          break;
+        }
+        numGathered++;
+      }
+      return numGathered;
+    }
+
     //
     // Enqueue a response from the application.
     //
@@ -2095,6 +2291,13 @@ private void processRpcRequest(RpcRequestHeaderProto header,
       Call call = new Call(header.getCallId(), header.getRetryCount(),
           rpcRequest, this, ProtoUtil.convert(header.getRpcKind()),
           header.getClientId().toByteArray(), traceScope, callerContext);
+      final AlignmentContext alignment = alignmentContext;
+      if (alignment != null) {
+        call.alignmentContext = alignment;
+        if (header.hasStateId()) {
+          call.clientStateId = alignment.receiveRequestState(header);
+        }
+      }
 
       if (callQueue.isClientBackoffEnabled()) {
         // if RPC queue is full, we will ask the RPC client to back off by
@@ -2257,6 +2460,29 @@ public Handler(int instanceNumber) {
       this.setName("IPC Server handler "+ instanceNumber + " on " + port);
     }
 
+    /**
+     * Take the next call, preferring the calls which were waiting for this
+     * server to catch up with their clients and may now be processed.
+     */
+    private Call takeCall() throws InterruptedException {
+      if (alignmentContext == null) {
+        return callQueue.take();
+      }
+      while (true) {
+        Call call = alignmentWaitQueue.poll();
+        if (call != null) {
+          return call;
+        }
+        // check the waiting calls again soon if there are any
+        call = alignmentWaitQueue.isEmpty()
+            ? callQueue.poll(1000L, TimeUnit.MILLISECONDS)
+            : callQueue.poll(ALIGNMENT_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        if (call != null) {
+          return call;
+        }
+      }
+    }
+
     @Override
     public void run() {
       LOG.debug(Thread.currentThread().getName() + ": starting");
@@ -2266,7 +2492,7 @@ public void run() {
       while (running) {
         TraceScope traceScope = null;
         try {
-          final Call call = callQueue.take(); // pop the queue; maybe blocked here
+          final Call call = takeCall(); // pop the queue; maybe blocked here
           if (LOG.isDebugEnabled()) {
             LOG.debug(Thread.currentThread().getName() + ": " + call + " for RpcKind " + call.rpcKind);
           }
@@ -2274,6 +2500,12 @@ public void run() {
             LOG.info(Thread.currentThread().getName() + ": skipped " + call);
             continue;
           }
+          // Let the call wait while this server catches up with the client,
+          // or let the client retry it later, e.g. on another server.
+          if (!call.isAligned() && alignmentWaitQueue.add(call)) {
+            continue;
+          }
+          final boolean aligned = call.isAligned();
           String errorClass = null;
           String error = null;
           RpcStatusProto returnStatus = RpcStatusProto.SUCCESS;
@@ -2289,7 +2521,13 @@ public void run() {
           // always update the current call context
           CallerContext.setCurrent(call.callerContext);
 
+          final long startNanos = System.nanoTime();
           try {
+            if (!aligned) {
+              throw new RetriableException("Server has not caught up with "
+                  + "state " + call.clientStateId + " of the client within "
+                  + alignmentMaxWaitMs + " ms");
+            }
             // Make the call as the user via Subject.doAs, thus associating
             // the call with the Subject
             if (call.connection.user == null) {
@@ -2342,16 +2580,21 @@ public Writable run() throws Exception {
             }
           }
           CurCall.set(null);
+          callQueue.addCallCost(call, System.nanoTime() - startNanos,
+              call.lockSharedNanos, call.lockExclusiveNanos);
           synchronized (call.connection.responseQueue) {
-            setupResponse(buf, call, returnStatus, detailedErr,
-                value, errorClass, error);
-
-            // Discard the large buf and reset it back to smaller size
-            // to free up heap.
-            if (buf.size() > maxRespSize) {
-              LOG.warn("Large response size " + buf.size() + " for call "
-                  + call.toString());
-              buf = new ByteArrayOutputStream(INITIAL_RESP_BUF_SIZE);
+            if (returnStatus != RpcStatusProto.SUCCESS
+                || !setupPooledResponse(call, value)) {
+              setupResponse(buf, call, returnStatus, detailedErr,
+                  value, errorClass, error);
+
+              // Discard the large buf and reset it back to smaller size
+              // to free up heap.
+              if (buf.size() > maxRespSize) {
+                LOG.warn("Large response size " + buf.size() + " for call "
+                    + call.toString());
+                buf = new ByteArrayOutputStream(INITIAL_RESP_BUF_SIZE);
+              }
             }
             call.sendResponse();
           }
@@ -2435,6 +2678,10 @@ protected Server(String bindAddress, int port,
     this.maxRespSize = conf.getInt(
         CommonConfigurationKeys.IPC_SERVER_RPC_MAX_RESPONSE_SIZE_KEY,
         CommonConfigurationKeys.IPC_SERVER_RPC_MAX_RESPONSE_SIZE_DEFAULT);
+    this.maxPooledRespSize = Math.min(maxRespSize, conf.getInt(
+        CommonConfigurationKeys.IPC_SERVER_RESPONSE_POOLED_BUFFER_MAX_SIZE_KEY,
+        CommonConfigurationKeys
+            .IPC_SERVER_RESPONSE_POOLED_BUFFER_MAX_SIZE_DEFAULT));
     if (numReaders != -1) {
       this.readThreads = numReaders;
     } else {
@@ -2562,6 +2809,9 @@ private static void setupResponse(ByteArrayOutputStream responseBuf,
     headerBuilder.setRetryCount(call.retryCount);
     headerBuilder.setStatus(status);
     headerBuilder.setServerIpcVersionNum(CURRENT_VERSION);
+    if (call.alignmentContext != null) {
+      call.alignmentContext.updateResponseState(headerBuilder);
+    }
 
     if (status == RpcStatusProto.SUCCESS) {
       RpcResponseHeaderProto header = headerBuilder.build();
@@ -2610,6 +2860,90 @@ private static void setupResponse(ByteArrayOutputStream responseBuf,
     call.setResponse(ByteBuffer.wrap(responseBuf.toByteArray()));
   }
   
+  /**
+   * Setup the response of a successful protobuf call directly in a direct
+   * buffer from {@link #responseBufferPool}, saving the copies of
+   * {@link #setupResponse(ByteArrayOutputStream, Call, RpcStatusProto,
+   * RpcErrorCodeProto, Writable, String, String)} into a byte array and of
+   * the channel into a temporary direct buffer. The buffer is returned to
+   * the pool once the response is sent.
+   *
+   * @return false if the response is not pooled and must be set up with
+   *         setupResponse.
+   */
+  private boolean setupPooledResponse(Call call, Writable rv) {
+    if (maxPooledRespSize <= 0 || call.connection.useWrap
+        || !(rv instanceof ProtobufRpcEngine.RpcWrapper)) {
+      return false;
+    }
+    RpcResponseHeaderProto.Builder headerBuilder =
+        RpcResponseHeaderProto.newBuilder()
+        .setClientId(ByteString.copyFrom(call.clientId))
+        .setCallId(call.callId)
+        .setRetryCount(call.retryCount)
+        .setStatus(RpcStatusProto.SUCCESS)
+        .setServerIpcVersionNum(CURRENT_VERSION);
+    if (call.alignmentContext != null) {
+      call.alignmentContext.updateResponseState(headerBuilder);
+    }
+    RpcResponseHeaderProto header = headerBuilder.build();
+    final int headerLen = header.getSerializedSize();
+    final int fullLength = CodedOutputStream.computeRawVarint32Size(headerLen)
+        + headerLen + ((ProtobufRpcEngine.RpcWrapper) rv).getLength();
+    final int length = 4 + fullLength;
+    if (length > maxPooledRespSize) {
+      return false;
+    }
+
+    ByteBuffer response = responseBufferPool.getBuffer(true, length);
+    response.clear();
+    response.limit(length);
+    try {
+      DataOutputStream out =
+          new DataOutputStream(new ByteBufferOutputStream(response));
+      out.writeInt(fullLength);
+      header.writeDelimitedTo(out);
+      rv.write(out);
+      out.flush();
+    } catch (Throwable t) {
+      // let setupResponse serialize the response or the error
+      LOG.debug("Error serializing call response for call " + call
+          + " into a pooled buffer", t);
+      responseBufferPool.putBuffer(response);
+      return false;
+    }
+    response.flip();
+    call.setResponse(response);
+    return true;
+  }
+
+  /** Return the buffer of a sent response to the pool, if it is pooled. */
+  private void releaseResponse(Call call) {
+    if (call.rpcResponse.isDirect()) {
+      responseBufferPool.putBuffer(call.rpcResponse);
+    }
+    call.rpcResponse = null;
+  }
+
+  /** An output stream writing into a fixed-size ByteBuffer. */
+  private static class ByteBufferOutputStream extends OutputStream {
+    private final ByteBuffer buffer;
+
+    ByteBufferOutputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      buffer.put(b, off, len);
+    }
+  }
+
   /**
    * Setup response for the IPC Call on Fatal Error from a 
    * client that is using old version of Hadoop.
@@ -2680,6 +3014,32 @@ public void setTracer(Tracer t) {
     this.tracer = t;
   }
 
+  /**
+   * Align the clients with the state of this server: the state is sent with
+   * every response, and requests are only processed once this server has
+   * reached the state of the client. A request waits at most
+   * {@link #DEFAULT_ALIGNMENT_MAX_WAIT_MS} for it.
+   */
+  @InterfaceAudience.LimitedPrivate({"HDFS"})
+  @InterfaceStability.Evolving
+  public void setAlignmentContext(AlignmentContext alignmentContext) {
+    setAlignmentContext(alignmentContext, DEFAULT_ALIGNMENT_MAX_WAIT_MS);
+  }
+
+  /**
+   * Align the clients with the state of this server, like
+   * {@link #setAlignmentContext(AlignmentContext)}. A request which this
+   * server has not caught up with within maxWaitMs fails with a
+   * {@link RetriableException}.
+   */
+  @InterfaceAudience.LimitedPrivate({"HDFS"})
+  @InterfaceStability.Evolving
+  public void setAlignmentContext(AlignmentContext alignmentContext,
+      long maxWaitMs) {
+    this.alignmentMaxWaitMs = maxWaitMs;
+    this.alignmentContext = alignmentContext;
+  }
+
   /** Starts the service.  Must be called before any calls will be handled. */
   public synchronized void start() {
     responder.start();
@@ -2816,6 +3176,9 @@ public int getNumReaders() {
    * be smaller.
    */
   private static int NIO_BUFFER_LIMIT = 8*1024; //should not be more than 64KB.
+
+  /** The maximum number of responses written with one gathering write. */
+  private static final int MAX_GATHERED_RESPONSES = 16;
   
   /**
    * This is a wrapper around {@link WritableByteChannel#write(ByteBuffer)}.
@@ -2839,6 +3202,28 @@ private int channelWrite(WritableByteChannel channel,
   }
   
   
+  /**
+   * Write the response of the given call and of the next numGathered calls
+   * of the queue with a single gathering write. Their total size is within
+   * {@link #NIO_BUFFER_LIMIT}, so they are not written in chunks.
+   *
+   * @see GatheringByteChannel#write(ByteBuffer[])
+   */
+  private int channelWrite(GatheringByteChannel channel, Call call,
+      LinkedList<Call> responseQueue, int numGathered) throws IOException {
+    final ByteBuffer[] buffers = new ByteBuffer[numGathered + 1];
+    buffers[0] = call.rpcResponse;
+    Iterator<Call> iter = responseQueue.iterator();
+    for (int i = 1; i < buffers.length; i++) {
+      buffers[i] = iter.next().rpcResponse;
+    }
+    int count = (int) channel.write(buffers);
+    if (count > 0) {
+      rpcMetrics.incrSentBytes(count);
+    }
+    return count;
+  }
+
   /**
    * This is a wrapper around {@link ReadableByteChannel#read(ByteBuffer)}.
    * If the amount of data is large, it writes to channel in smaller chunks. 
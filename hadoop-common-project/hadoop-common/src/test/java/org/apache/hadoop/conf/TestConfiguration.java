@@ -887,6 +887,16 @@ public void testTimeDuration() {
       assertEquals(1 + ptd.suffix(), conf.get("test.time.unit"));
       assertEquals(1, conf.getTimeDuration("test.time.unit", 2, ptd.unit()));
     }
+
+    // a default unit and a different return unit
+    assertEquals(30000L, conf.getTimeDuration("test.time.Y", 30, SECONDS,
+        MILLISECONDS));
+    conf.set("test.time.Y", "5");
+    assertEquals(5000L, conf.getTimeDuration("test.time.Y", 30, SECONDS,
+        MILLISECONDS));
+    conf.set("test.time.Y", "100ms");
+    assertEquals(100L, conf.getTimeDuration("test.time.Y", 30, SECONDS,
+        MILLISECONDS));
   }
 
   public void testPattern() throws IOException {
@@ -28,6 +28,7 @@
 import java.net.URI;
 import java.util.EnumSet;
 import java.util.Iterator;
+import java.util.List;
 
 import org.apache.commons.logging.Log;
 import org.apache.hadoop.conf.Configuration;
@@ -163,6 +164,8 @@ public void processDeleteOnExit() { }
     public FileStatus[] listStatus(Path f, PathFilter filter) { return null; }
     public FileStatus[] listStatus(Path[] files) { return null; }
     public FileStatus[] listStatus(Path[] files, PathFilter filter) { return null; }
+    public RemoteIterator<PartialListing<FileStatus>> batchedListStatusIterator(
+        List<Path> paths) { return null; }
     public FileStatus[] globStatus(Path pathPattern) { return null; }
     public FileStatus[] globStatus(Path pathPattern, PathFilter filter) {
       return null;
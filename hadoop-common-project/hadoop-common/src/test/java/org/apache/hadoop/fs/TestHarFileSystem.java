@@ -126,6 +126,8 @@ public Iterator<LocatedFileStatus> listFiles(Path path,
     public Iterator<LocatedFileStatus> listLocatedStatus(Path f,
         PathFilter filter);
     public Iterator<FileStatus> listStatusIterator(Path f);
+    public RemoteIterator<PartialListing<FileStatus>> batchedListStatusIterator(
+        List<Path> paths);
     public void copyFromLocalFile(Path src, Path dst);
     public void moveFromLocalFile(Path[] srcs, Path dst);
     public void moveFromLocalFile(Path src, Path dst);
@@ -164,7 +164,38 @@ private void verifyFile(FileSystem fs, Path file, int bytesToVerify,
       in.close();
     }
   }
-  
+
+  @Test(timeout = 10000)
+  public void testBatchedListStatusIterator() throws IOException {
+    Path dir1 = new Path(TEST_ROOT_DIR, "dir1");
+    Path dir2 = new Path(TEST_ROOT_DIR, "dir2");
+    Path file = new Path(dir1, "file");
+    Path missing = new Path(TEST_ROOT_DIR, "missing");
+    writeFile(fileSys, file, 1);
+    assertTrue(fileSys.mkdirs(dir2));
+
+    RemoteIterator<PartialListing<FileStatus>> it =
+        fileSys.batchedListStatusIterator(Arrays.asList(dir1, missing, dir2));
+    PartialListing<FileStatus> listing = it.next();
+    assertEquals(dir1, listing.getListedPath());
+    assertEquals(1, listing.get().size());
+    assertEquals(file.getName(), listing.get().get(0).getPath().getName());
+
+    listing = it.next();
+    assertEquals(missing, listing.getListedPath());
+    try {
+      listing.get();
+      fail("Expected FileNotFoundException for " + missing);
+    } catch (FileNotFoundException e) {
+      // expected
+    }
+
+    listing = it.next();
+    assertEquals(dir2, listing.getListedPath());
+    assertTrue(listing.get().isEmpty());
+    assertFalse(it.hasNext());
+  }
+
   @Test(timeout = 10000)
   public void testCopy() throws IOException {
     Path src = new Path(TEST_ROOT_DIR, "dingo");
@@ -0,0 +1,178 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.VectoredReadUtils.CombinedFileRange;
+import org.junit.Test;
+
+/**
+ * Test the merging of the ranges of vectored reads, and the vectored reads
+ * of the streams which fall back to positional reads.
+ */
+public class TestVectoredReadUtils {
+  private static final int FILE_SIZE = 64 * 1024;
+  private static final byte[] DATA = new byte[FILE_SIZE];
+  static {
+    for (int i = 0; i < DATA.length; i++) {
+      DATA[i] = (byte) (i * 31);
+    }
+  }
+
+  /** A stream over {@link #DATA}, which counts its positional reads. */
+  private static class CountingInputStream extends FSInputStream {
+    private int pos;
+    private int positionalReads;
+
+    @Override
+    public void seek(long p) {
+      pos = (int) p;
+    }
+
+    @Override
+    public long getPos() {
+      return pos;
+    }
+
+    @Override
+    public boolean seekToNewSource(long targetPos) {
+      return false;
+    }
+
+    @Override
+    public int read() {
+      return pos < DATA.length ? DATA[pos++] & 0xff : -1;
+    }
+
+    @Override
+    public void readFully(long position, byte[] buffer, int offset,
+        int length) throws IOException {
+      positionalReads++;
+      super.readFully(position, buffer, offset, length);
+    }
+  }
+
+  private static void verifyRange(FileRange range) throws Exception {
+    ByteBuffer data = range.getData().get();
+    assertEquals(range.getLength(), data.remaining());
+    byte[] bytes = new byte[range.getLength()];
+    data.get(bytes);
+    int offset = (int) range.getOffset();
+    assertArrayEquals(
+        Arrays.copyOfRange(DATA, offset, offset + range.getLength()), bytes);
+  }
+
+  @Test
+  public void testMergeRanges() {
+    List<FileRange> ranges = Arrays.asList(
+        new FileRange(10000, 100), new FileRange(0, 100),
+        new FileRange(1000, 100), new FileRange(1050, 200),
+        new FileRange(20000, 5000));
+    List<CombinedFileRange> combined =
+        VectoredReadUtils.prepareRanges(ranges, 1000, 6000);
+    assertEquals(3, combined.size());
+    assertEquals(0, combined.get(0).getOffset());
+    assertEquals(1250, combined.get(0).getLength());
+    assertEquals(3, combined.get(0).getRanges().size());
+    assertEquals(10000, combined.get(1).getOffset());
+    assertEquals(20000, combined.get(2).getOffset());
+
+    // The merged ranges are capped, unless a single range is larger
+    combined = VectoredReadUtils.prepareRanges(ranges, 1000, 500);
+    assertEquals(4, combined.size());
+    assertEquals(5000, combined.get(3).getLength());
+    // Overlapping ranges are always merged
+    combined = VectoredReadUtils.prepareRanges(ranges, 0, 100000);
+    assertEquals(4, combined.size());
+    assertEquals(250, combined.get(1).getLength());
+
+    try {
+      VectoredReadUtils.prepareRanges(
+          Arrays.asList(new FileRange(-1, 10)), 0, 100);
+      fail("Expected an invalid range to be rejected");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testFallbackRead() throws Exception {
+    CountingInputStream in = new CountingInputStream();
+    List<FileRange> ranges = Arrays.asList(
+        new FileRange(0, 100), new FileRange(50, 100),
+        new FileRange(4000, 10), new FileRange(30000, 20000),
+        new FileRange(FILE_SIZE - 1, 1));
+    in.readVectored(ranges);
+    for (FileRange range : ranges) {
+      verifyRange(range);
+    }
+    assertEquals(3, in.positionalReads);
+    assertEquals(0, in.getPos());
+  }
+
+  @Test
+  public void testReadPastEnd() throws Exception {
+    CountingInputStream in = new CountingInputStream();
+    FileRange good = new FileRange(FILE_SIZE - 100, 50);
+    FileRange bad = new FileRange(FILE_SIZE - 10, 20);
+    in.readVectored(Arrays.asList(good, bad));
+    // Only the range past the end fails
+    verifyRange(good);
+    try {
+      bad.getData().get();
+      fail("Expected the read past the end of the file to fail");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof EOFException);
+    }
+  }
+
+  @Test
+  public void testReadLocalFile() throws Exception {
+    FileSystem fs = FileSystem.getLocal(new Configuration());
+    Path file = new Path(System.getProperty("test.build.data", "/tmp"),
+        "vectored");
+    FSDataOutputStream out = fs.create(file, true);
+    out.write(DATA);
+    out.close();
+    FSDataInputStream in = fs.open(file);
+    try {
+      List<FileRange> ranges = Arrays.asList(
+          new FileRange(100, 10), new FileRange(8192, 8192),
+          new FileRange(0, FILE_SIZE));
+      in.readVectored(ranges);
+      for (FileRange range : ranges) {
+        verifyRange(range);
+      }
+    } finally {
+      in.close();
+      fs.delete(file, false);
+    }
+  }
+}
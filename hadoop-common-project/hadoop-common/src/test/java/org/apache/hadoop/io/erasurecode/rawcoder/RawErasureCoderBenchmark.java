@@ -0,0 +1,213 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.erasurecode.rawcoder;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.GnuParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+/**
+ * Benchmark of the encoding and decoding throughput of the raw erasure
+ * coders, for every schema, chunk size and type of buffers given. The XOR
+ * coder is run with a single parity unit.
+ */
+public class RawErasureCoderBenchmark extends Configured implements Tool {
+  private static final int MB = 1024 * 1024;
+
+  private static final String[] CODER_NAMES = {"xor", "rs", "fastrs"};
+  private static final RawErasureCoderFactory[] CODER_FACTORIES = {
+      new XORRawErasureCoderFactory(),
+      new RSRawErasureCoderFactory(),
+      new FastRSRawErasureCoderFactory()
+  };
+
+  private final Random rand = new Random(0);
+
+  private String[] schemas = {"3x2", "6x3", "10x4"};
+  private int[] chunkSizes = {64 * 1024, 1024 * 1024};
+  private long dataSize = 512L * MB;
+
+  private static Options buildOptions() {
+    Options opts = new Options();
+    opts.addOption("s", "schemas", true,
+        "comma separated schemas, as numDataUnits x numParityUnits " +
+        "(default 3x2,6x3,10x4)");
+    opts.addOption("c", "chunkSizes", true,
+        "comma separated chunk sizes in KB (default 64,1024)");
+    opts.addOption("d", "dataSize", true,
+        "MB of data to code for each measure (default 512)");
+    opts.addOption("h", "help", false, "show this help");
+    return opts;
+  }
+
+  private boolean parseOptions(String[] args) throws ParseException {
+    Options opts = buildOptions();
+    CommandLineParser parser = new GnuParser();
+    CommandLine line = parser.parse(opts, args, true);
+    if (line.hasOption('h') || line.getArgs().length > 0) {
+      new HelpFormatter().printHelp("RawErasureCoderBenchmark", opts);
+      return false;
+    }
+    if (line.hasOption('s')) {
+      schemas = line.getOptionValue('s').split(",");
+    }
+    if (line.hasOption('c')) {
+      String[] sizes = line.getOptionValue('c').split(",");
+      chunkSizes = new int[sizes.length];
+      for (int i = 0; i < sizes.length; i++) {
+        chunkSizes[i] = Integer.parseInt(sizes[i].trim()) * 1024;
+      }
+    }
+    if (line.hasOption('d')) {
+      dataSize = Long.parseLong(line.getOptionValue('d')) * MB;
+    }
+    return true;
+  }
+
+  @Override
+  public int run(String[] args) throws Exception {
+    if (!parseOptions(args)) {
+      return -1;
+    }
+
+    System.out.println(String.format("%-8s %-6s %9s %-7s %12s %12s",
+        "coder", "schema", "chunk(KB)", "buffers", "encode(MB/s)",
+        "decode(MB/s)"));
+    for (String schema : schemas) {
+      String[] units = schema.trim().split("x");
+      int numDataUnits = Integer.parseInt(units[0]);
+      int numParityUnits = Integer.parseInt(units[1]);
+      for (int chunkSize : chunkSizes) {
+        for (boolean direct : new boolean[] {false, true}) {
+          for (int i = 0; i < CODER_FACTORIES.length; i++) {
+            int parity = i == 0 ? 1 : numParityUnits;
+            double[] results = benchmark(CODER_FACTORIES[i],
+                numDataUnits, parity, chunkSize, direct);
+            System.out.println(String.format(
+                "%-8s %-6s %9d %-7s %12.1f %12.1f", CODER_NAMES[i],
+                numDataUnits + "x" + parity, chunkSize / 1024,
+                direct ? "direct" : "heap", results[0], results[1]));
+          }
+        }
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Measure a coder, erasing as many data units as there are parity units
+   * when decoding.
+   * @return the encoding and the decoding throughputs in MB/s of data
+   */
+  private double[] benchmark(RawErasureCoderFactory factory,
+      int numDataUnits, int numParityUnits, int chunkSize, boolean direct) {
+    RawErasureEncoder encoder =
+        factory.createEncoder(numDataUnits, numParityUnits);
+    RawErasureDecoder decoder =
+        factory.createDecoder(numDataUnits, numParityUnits);
+
+    ByteBuffer[] data = allocate(numDataUnits, chunkSize, direct);
+    ByteBuffer[] parity = allocate(numParityUnits, chunkSize, direct);
+    for (ByteBuffer buffer : data) {
+      byte[] bytes = new byte[chunkSize];
+      rand.nextBytes(bytes);
+      buffer.put(bytes);
+    }
+
+    int numErased = Math.min(numDataUnits, numParityUnits);
+    int[] erasedIndexes = new int[numErased];
+    for (int i = 0; i < numErased; i++) {
+      erasedIndexes[i] = i;
+    }
+    ByteBuffer[] decodeInputs =
+        new ByteBuffer[numDataUnits + numParityUnits];
+    System.arraycopy(data, numErased, decodeInputs, numErased,
+        numDataUnits - numErased);
+    System.arraycopy(parity, 0, decodeInputs, numDataUnits,
+        numParityUnits);
+    ByteBuffer[] recovered = allocate(numErased, chunkSize, direct);
+
+    long bytesPerOp = (long) numDataUnits * chunkSize;
+    int ops = (int) Math.max(1, dataSize / bytesPerOp);
+    // Warm up first, for the measures to be of compiled code
+    for (int i = 0; i < Math.max(1, ops / 10); i++) {
+      encode(encoder, data, parity);
+      decode(decoder, decodeInputs, erasedIndexes, recovered);
+    }
+
+    long start = System.nanoTime();
+    for (int i = 0; i < ops; i++) {
+      encode(encoder, data, parity);
+    }
+    long encodeNanos = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    for (int i = 0; i < ops; i++) {
+      decode(decoder, decodeInputs, erasedIndexes, recovered);
+    }
+    long decodeNanos = System.nanoTime() - start;
+
+    double mb = (double) bytesPerOp * ops / MB;
+    return new double[] {mb * 1e9 / encodeNanos, mb * 1e9 / decodeNanos};
+  }
+
+  private static ByteBuffer[] allocate(int count, int chunkSize,
+      boolean direct) {
+    ByteBuffer[] buffers = new ByteBuffer[count];
+    for (int i = 0; i < count; i++) {
+      buffers[i] = direct ? ByteBuffer.allocateDirect(chunkSize) :
+          ByteBuffer.allocate(chunkSize);
+    }
+    return buffers;
+  }
+
+  private static void encode(RawErasureEncoder encoder, ByteBuffer[] inputs,
+      ByteBuffer[] outputs) {
+    rewind(inputs);
+    rewind(outputs);
+    encoder.encode(inputs, outputs);
+  }
+
+  private static void decode(RawErasureDecoder decoder, ByteBuffer[] inputs,
+      int[] erasedIndexes, ByteBuffer[] outputs) {
+    rewind(inputs);
+    rewind(outputs);
+    decoder.decode(inputs, erasedIndexes, outputs);
+  }
+
+  private static void rewind(ByteBuffer[] buffers) {
+    for (ByteBuffer buffer : buffers) {
+      if (buffer != null) {
+        buffer.clear();
+      }
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    System.exit(ToolRunner.run(new RawErasureCoderBenchmark(), args));
+  }
+}
@@ -0,0 +1,178 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.erasurecode.rawcoder;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the table driven raw Reed-solomon coder implemented in Java.
+ */
+public class TestFastRSRawCoder extends TestRSRawCoderBase {
+
+  @Before
+  public void setup() {
+    this.encoderClass = FastRSRawEncoder.class;
+    this.decoderClass = FastRSRawDecoder.class;
+    setAllowDump(false); // Change to true to allow verbose dump for debugging
+  }
+
+  @Test
+  public void testCoding_6x3_erasing_all_d() {
+    prepare(null, 6, 3, new int[]{0, 1, 2}, new int[0], true);
+    testCodingDoMixAndTwice();
+  }
+
+  @Test
+  public void testCoding_6x3_erasing_d0_d2() {
+    prepare(null, 6, 3, new int[] {0, 2}, new int[]{});
+    testCodingDoMixAndTwice();
+  }
+
+  @Test
+  public void testCoding_6x3_erasing_d0() {
+    prepare(null, 6, 3, new int[]{0}, new int[0]);
+    testCodingDoMixAndTwice();
+  }
+
+  @Test
+  public void testCoding_6x3_erasing_d2() {
+    prepare(null, 6, 3, new int[]{2}, new int[]{});
+    testCodingDoMixAndTwice();
+  }
+
+  @Test
+  public void testCoding_6x3_erasing_d0_p0() {
+    prepare(null, 6, 3, new int[]{0}, new int[]{0});
+    testCodingDoMixAndTwice();
+  }
+
+  @Test
+  public void testCoding_6x3_erasing_all_p() {
+    prepare(null, 6, 3, new int[0], new int[]{0, 1, 2});
+    testCodingDoMixAndTwice();
+  }
+
+  @Test
+  public void testCoding_6x3_erasing_p0() {
+    prepare(null, 6, 3, new int[0], new int[]{0});
+    testCodingDoMixAndTwice();
+  }
+
+  @Test
+  public void testCoding_6x3_erasing_p2() {
+    prepare(null, 6, 3, new int[0], new int[]{2});
+    testCodingDoMixAndTwice();
+  }
+
+  @Test
+  public void testCoding_6x3_erasure_p0_p2() {
+    prepare(null, 6, 3, new int[0], new int[]{0, 2});
+    testCodingDoMixAndTwice();
+  }
+
+  @Test
+  public void testCoding_6x3_erasing_d0_p0_p1() {
+    prepare(null, 6, 3, new int[]{0}, new int[]{0, 1});
+    testCodingDoMixAndTwice();
+  }
+
+  @Test
+  public void testCoding_6x3_erasing_d0_d2_p2() {
+    prepare(null, 6, 3, new int[]{0, 2}, new int[]{2});
+    testCodingDoMixAndTwice();
+  }
+
+  @Test
+  public void testCodingNegative_6x3_erasing_d2_d4() {
+    prepare(null, 6, 3, new int[]{2, 4}, new int[0]);
+    testCodingDoMixAndTwice();
+  }
+
+  @Test
+  public void testCodingNegative_6x3_erasing_too_many() {
+    prepare(null, 6, 3, new int[]{2, 4}, new int[]{0, 1});
+    testCodingWithErasingTooMany();
+  }
+
+  @Test
+  public void testCoding_10x4_erasing_d0_p0() {
+    prepare(null, 10, 4, new int[] {0}, new int[] {0});
+    testCodingDoMixAndTwice();
+  }
+
+  @Test
+  public void testCoding_10x4_erasing_d1_d5_p1_p3() {
+    prepare(null, 10, 4, new int[] {1, 5}, new int[] {1, 3});
+    testCodingDoMixAndTwice();
+  }
+
+  /**
+   * The coder should be interchangeable with {@link RSRawEncoder} and
+   * {@link RSRawDecoder}.
+   */
+  @Test
+  public void testCompatibleWithRSRawCoder() {
+    final int numDataUnits = 6;
+    final int numParityUnits = 3;
+    final int chunkSize = 1021;
+    Random rand = new Random(0);
+    byte[][] data = new byte[numDataUnits][chunkSize];
+    for (byte[] chunk : data) {
+      rand.nextBytes(chunk);
+    }
+
+    byte[][] parity = new byte[numParityUnits][chunkSize];
+    new FastRSRawEncoder(numDataUnits, numParityUnits).encode(
+        copy(data), parity);
+    byte[][] legacyParity = new byte[numParityUnits][chunkSize];
+    new RSRawEncoder(numDataUnits, numParityUnits).encode(
+        copy(data), legacyParity);
+    for (int i = 0; i < numParityUnits; i++) {
+      assertArrayEquals(legacyParity[i], parity[i]);
+    }
+
+    // Erase d1, d4 and p0
+    int[] erasedIndexes = {1, 4, numDataUnits};
+    byte[][] inputs = new byte[numDataUnits + numParityUnits][];
+    System.arraycopy(copy(data), 0, inputs, 0, numDataUnits);
+    System.arraycopy(copy(legacyParity), 0, inputs, numDataUnits,
+        numParityUnits);
+    for (int erased : erasedIndexes) {
+      inputs[erased] = null;
+    }
+    byte[][] outputs = new byte[erasedIndexes.length][chunkSize];
+    new FastRSRawDecoder(numDataUnits, numParityUnits).decode(
+        inputs, erasedIndexes, outputs);
+    assertArrayEquals(data[1], outputs[0]);
+    assertArrayEquals(data[4], outputs[1]);
+    assertArrayEquals(legacyParity[0], outputs[2]);
+  }
+
+  private static byte[][] copy(byte[][] chunks) {
+    byte[][] result = new byte[chunks.length][];
+    for (int i = 0; i < chunks.length; i++) {
+      result[i] = chunks[i].clone();
+    }
+    return result;
+  }
+}
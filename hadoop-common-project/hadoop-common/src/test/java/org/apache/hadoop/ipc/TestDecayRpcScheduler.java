@@ -203,6 +203,49 @@ public void testPriority() {
     assertEquals(2, scheduler.getPriorityLevel(mockCall("A")));
   }
 
+  @Test
+  public void testCostBasedPriority() {
+    Configuration conf = new Configuration();
+    conf.set("ns." + DecayRpcScheduler.IPC_CALLQUEUE_DECAYSCHEDULER_PERIOD_KEY, "99999999"); // Never flush
+    conf.set("ns." + DecayRpcScheduler.IPC_CALLQUEUE_DECAYSCHEDULER_THRESHOLDS_KEY,
+      "25, 50, 75");
+    conf.setBoolean("ns." +
+        DecayRpcScheduler.IPC_CALLQUEUE_DECAYSCHEDULER_COST_BASED_KEY, true);
+    scheduler = new DecayRpcScheduler(4, "ns", conf);
+    assertTrue(scheduler.isCostBased());
+
+    // Scheduling a call does not count it in cost-based mode
+    assertEquals(0, scheduler.getPriorityLevel(mockCall("A")));
+    assertEquals(0, scheduler.getPriorityLevel(mockCall("A")));
+    assertEquals(0, scheduler.getTotalCallVolume());
+
+    // Time holding the lock is weighted
+    long ms = 1000000L;
+    assertEquals(1000, scheduler.computeCost(ms, 0, 0));
+    assertEquals(10000, scheduler.computeCost(ms, ms, 0));
+    assertEquals(100000, scheduler.computeCost(ms, 0, ms));
+    assertEquals(1, scheduler.computeCost(0, 0, 0));
+
+    // A makes many cheap calls, B a single one holding the lock exclusively
+    for (int i = 0; i < 10; i++) {
+      scheduler.addCallCost(mockCall("A"), ms, 0, 0);
+    }
+    scheduler.addCallCost(mockCall("B"), ms, 0, ms);
+    assertTrue(scheduler.getTotalCallVolume() > 0);
+    assertEquals(0, scheduler.getPriorityLevel(mockCall("A")));
+    assertEquals(3, scheduler.getPriorityLevel(mockCall("B")));
+    assertEquals(0, scheduler.getPriorityLevel(mockCall("C")));
+  }
+
+  @Test
+  public void testCountBasedIgnoresCost() {
+    Configuration conf = new Configuration();
+    conf.set("ns." + DecayRpcScheduler.IPC_CALLQUEUE_DECAYSCHEDULER_PERIOD_KEY, "99999999"); // Never flush
+    scheduler = new DecayRpcScheduler(1, "ns", conf);
+    scheduler.addCallCost(mockCall("A"), 1000000L, 0, 0);
+    assertEquals(0, scheduler.getTotalCallVolume());
+  }
+
   @Test(timeout=2000)
   public void testPeriodic() throws InterruptedException {
     Configuration conf = new Configuration();
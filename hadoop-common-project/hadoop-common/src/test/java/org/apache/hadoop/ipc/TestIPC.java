@@ -21,6 +21,7 @@
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.anyInt;
@@ -88,6 +89,7 @@
 import org.mockito.stubbing.Answer;
 
 import com.google.common.primitives.Bytes;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.primitives.Ints;
 
 /** Unit tests for IPC. */
@@ -634,6 +636,90 @@ public void testIpcConnectTimeout() throws IOException {
     client.stop();
   }
   
+  @Test(timeout=60000)
+  public void testAsyncCalls() throws Exception {
+    Server server = new TestServer(5, false);
+    InetSocketAddress addr = NetUtils.getConnectAddress(server);
+    server.start();
+    Client client = new Client(LongWritable.class, conf);
+    try {
+      final int numCalls = 50;
+      List<ListenableFuture<LongWritable>> futures = new ArrayList<>();
+      Client.setAsynchronousMode(true);
+      try {
+        for (int i = 0; i < numCalls; i++) {
+          assertNull(
+              client.call(new LongWritable(i), addr, null, null, 0, conf));
+          futures.add(Client.<LongWritable>getAsyncRpcResponse());
+        }
+      } finally {
+        Client.setAsynchronousMode(false);
+      }
+      for (int i = 0; i < numCalls; i++) {
+        assertEquals(i, futures.get(i).get().get());
+      }
+      assertEquals(0, client.getAsyncCallCount());
+      assertNull(Client.getAsyncRpcResponse());
+    } finally {
+      client.stop();
+      server.stop();
+    }
+  }
+
+  @Test(timeout=60000)
+  public void testAsyncCallLimit() throws Exception {
+    final int maxAsyncCalls = 3;
+    final CountDownLatch release = new CountDownLatch(1);
+    final TestServer server = new TestServer(1, false);
+    server.callListener = new Runnable() {
+      @Override
+      public void run() {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    };
+    InetSocketAddress addr = NetUtils.getConnectAddress(server);
+    server.start();
+    Configuration clientConf = new Configuration(conf);
+    clientConf.setInt(
+        CommonConfigurationKeysPublic.IPC_CLIENT_ASYNC_CALLS_MAX_KEY,
+        maxAsyncCalls);
+    Client client = new Client(LongWritable.class, clientConf);
+    try {
+      List<ListenableFuture<LongWritable>> futures = new ArrayList<>();
+      Client.setAsynchronousMode(true);
+      try {
+        for (int i = 0; i < maxAsyncCalls; i++) {
+          client.call(new LongWritable(i), addr, null, null, 0,
+              clientConf);
+          futures.add(Client.<LongWritable>getAsyncRpcResponse());
+        }
+        try {
+          client.call(new LongWritable(maxAsyncCalls), addr, null, null, 0,
+              clientConf);
+          fail("Expected the async call limit to be exceeded");
+        } catch (AsyncCallLimitExceededException e) {
+          // expected
+        }
+        assertEquals(maxAsyncCalls, client.getAsyncCallCount());
+      } finally {
+        Client.setAsynchronousMode(false);
+      }
+      release.countDown();
+      for (int i = 0; i < maxAsyncCalls; i++) {
+        assertEquals(i, futures.get(i).get().get());
+      }
+      assertEquals(0, client.getAsyncCallCount());
+    } finally {
+      release.countDown();
+      client.stop();
+      server.stop();
+    }
+  }
+
   /**
    * Check service class byte in IPC header is correct on wire.
    */
@@ -25,11 +25,17 @@
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.CommonConfigurationKeys;
 import org.apache.hadoop.ipc.metrics.RpcMetrics;
+import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcRequestHeaderProto;
+import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcResponseHeaderProto;
 import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcResponseHeaderProto.RpcErrorCodeProto;
 import org.apache.hadoop.ipc.protobuf.TestProtos;
 import org.apache.hadoop.ipc.protobuf.TestProtos.EchoRequestProto;
@@ -40,13 +46,16 @@
 import org.apache.hadoop.ipc.protobuf.TestRpcServiceProtos.TestProtobufRpc2Proto;
 import org.apache.hadoop.metrics2.MetricsRecordBuilder;
 import org.apache.hadoop.net.NetUtils;
+import org.apache.hadoop.security.UserGroupInformation;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.Before;
 import org.junit.After;
 
 
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.protobuf.BlockingService;
+import com.google.protobuf.Message;
 import com.google.protobuf.RpcController;
 import com.google.protobuf.ServiceException;
 
@@ -62,6 +71,7 @@ public class TestProtoBufRpc {
   private static Configuration conf;
   private static RPC.Server server;
   private final static int SLEEP_DURATION = 1000;
+  private final static int POOLED_RESPONSE_MAX_SIZE = 256;
 
   @ProtocolInfo(protocolName = "testProto", protocolVersion = 1)
   public interface TestRpcService
@@ -137,6 +147,10 @@ public  void setUp() throws IOException { // Setup server for both protocols
     conf = new Configuration();
     conf.setInt(CommonConfigurationKeys.IPC_MAXIMUM_DATA_LENGTH, 1024);
     conf.setBoolean(CommonConfigurationKeys.IPC_SERVER_LOG_SLOW_RPC, true);
+    // Serialize the small responses into pooled buffers
+    conf.setInt(
+        CommonConfigurationKeys.IPC_SERVER_RESPONSE_POOLED_BUFFER_MAX_SIZE_KEY,
+        POOLED_RESPONSE_MAX_SIZE);
     // Set RPC engine to protobuf RPC engine
     RPC.setProtocolEngine(conf, TestRpcService.class, ProtobufRpcEngine.class);
 
@@ -212,6 +226,65 @@ public static void testProtoBufRpc(TestRpcService client) throws Exception {
     }
   }
   
+  @Test (timeout=5000)
+  public void testProtoBufRpcAsync() throws Exception {
+    TestRpcService client = getClient();
+    final int numCalls = 10;
+    List<ListenableFuture<Message>> futures = new ArrayList<>();
+    Client.setAsynchronousMode(true);
+    try {
+      for (int i = 0; i < numCalls; i++) {
+        EchoRequestProto echoRequest = EchoRequestProto.newBuilder()
+            .setMessage("hello" + i).build();
+        Assert.assertNull(client.echo(null, echoRequest));
+        futures.add(ProtobufRpcEngine.getAsyncReturnMessage());
+      }
+      client.error(null, EmptyRequestProto.newBuilder().build());
+      futures.add(ProtobufRpcEngine.getAsyncReturnMessage());
+    } finally {
+      Client.setAsynchronousMode(false);
+    }
+    Assert.assertNull(ProtobufRpcEngine.getAsyncReturnMessage());
+
+    for (int i = 0; i < numCalls; i++) {
+      EchoResponseProto echoResponse = (EchoResponseProto) futures.get(i).get();
+      Assert.assertEquals("hello" + i, echoResponse.getMessage());
+    }
+    try {
+      futures.get(numCalls).get();
+      Assert.fail("Expected exception is not thrown");
+    } catch (ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof RemoteException);
+    }
+  }
+
+  @Test (timeout=10000)
+  public void testProtoBufRpcManyResponses() throws Exception {
+    // Many outstanding calls, so that the responses are gathered into the
+    // same writes, with pooled and unpooled responses.
+    TestRpcService client = getClient();
+    final int numCalls = 90;
+    List<String> messages = new ArrayList<>();
+    List<ListenableFuture<Message>> futures = new ArrayList<>();
+    Client.setAsynchronousMode(true);
+    try {
+      for (int i = 0; i < numCalls; i++) {
+        String message = StringUtils.repeat("x", i * 10) + i;
+        messages.add(message);
+        client.echo(null,
+            EchoRequestProto.newBuilder().setMessage(message).build());
+        futures.add(ProtobufRpcEngine.getAsyncReturnMessage());
+      }
+    } finally {
+      Client.setAsynchronousMode(false);
+    }
+    assertTrue(messages.get(numCalls - 1).length() > POOLED_RESPONSE_MAX_SIZE);
+    for (int i = 0; i < numCalls; i++) {
+      EchoResponseProto echoResponse = (EchoResponseProto) futures.get(i).get();
+      assertEquals(messages.get(i), echoResponse.getMessage());
+    }
+  }
+
   @Test (timeout=5000)
   public void testProtoBufRpc2() throws Exception {
     TestRpcService2 client = getClient2();
@@ -332,4 +405,103 @@ public void testEnsureNoLogIfDisabled() throws IOException, ServiceException {
     // make sure we never called into Log slow RPC routine.
     assertEquals(before, after);
   }
+
+  /** Tracks a state id, on the client or on the server side. */
+  private static class StateIdContext implements AlignmentContext {
+    private final AtomicLong stateId = new AtomicLong();
+
+    @Override
+    public void updateResponseState(RpcResponseHeaderProto.Builder header) {
+      header.setStateId(stateId.get());
+    }
+
+    @Override
+    public void receiveResponseState(RpcResponseHeaderProto header) {
+      stateId.set(Math.max(stateId.get(), header.getStateId()));
+    }
+
+    @Override
+    public void updateRequestState(RpcRequestHeaderProto.Builder header) {
+      header.setStateId(stateId.get());
+    }
+
+    @Override
+    public long receiveRequestState(RpcRequestHeaderProto header) {
+      return header.getStateId();
+    }
+
+    @Override
+    public long getLastSeenStateId() {
+      return stateId.get();
+    }
+  }
+
+  @Test(timeout=10000)
+  public void testProtoBufRpcAlignment() throws Exception {
+    StateIdContext serverState = new StateIdContext();
+    serverState.stateId.set(5);
+    server.setAlignmentContext(serverState, 60000);
+
+    final StateIdContext clientState = new StateIdContext();
+    RPC.setProtocolEngine(conf, TestRpcService.class, ProtobufRpcEngine.class);
+    final TestRpcService client = RPC.getProtocolProxy(TestRpcService.class, 0,
+        addr, UserGroupInformation.getCurrentUser(), conf,
+        NetUtils.getDefaultSocketFactory(conf), 0, null, null, clientState)
+        .getProxy();
+
+    // The client learns the state of the server from the responses
+    client.ping(null, EmptyRequestProto.newBuilder().build());
+    assertEquals(5, clientState.getLastSeenStateId());
+
+    // A client ahead of the server waits for the server to catch up
+    clientState.stateId.set(10);
+    final EchoRequestProto echoRequest =
+        EchoRequestProto.newBuilder().setMessage("hello").build();
+    final List<Throwable> errors = new ArrayList<>();
+    Thread caller = new Thread() {
+      @Override
+      public void run() {
+        try {
+          client.echo(null, echoRequest);
+        } catch (Throwable t) {
+          errors.add(t);
+        }
+      }
+    };
+    caller.start();
+    caller.join(SLEEP_DURATION);
+    assertTrue(caller.isAlive());
+    // The waiting call does not hold the only handler
+    getClient().ping(null, EmptyRequestProto.newBuilder().build());
+    assertTrue(caller.isAlive());
+    serverState.stateId.set(10);
+    caller.join();
+    assertTrue(errors.toString(), errors.isEmpty());
+    assertEquals(10, clientState.getLastSeenStateId());
+  }
+
+  @Test(timeout=10000)
+  public void testProtoBufRpcAlignmentTimeout() throws Exception {
+    StateIdContext serverState = new StateIdContext();
+    serverState.stateId.set(5);
+    server.setAlignmentContext(serverState, 100);
+
+    StateIdContext clientState = new StateIdContext();
+    clientState.stateId.set(10);
+    RPC.setProtocolEngine(conf, TestRpcService.class, ProtobufRpcEngine.class);
+    TestRpcService client = RPC.getProtocolProxy(TestRpcService.class, 0,
+        addr, UserGroupInformation.getCurrentUser(), conf,
+        NetUtils.getDefaultSocketFactory(conf), 0, null, null, clientState)
+        .getProxy();
+
+    // The server does not catch up in time, so the client may retry later
+    try {
+      client.ping(null, EmptyRequestProto.newBuilder().build());
+      Assert.fail("Expected exception is not thrown");
+    } catch (ServiceException e) {
+      RemoteException re = (RemoteException)e.getCause();
+      assertTrue(re.unwrapRemoteException(RetriableException.class)
+          instanceof RetriableException);
+    }
+  }
 }
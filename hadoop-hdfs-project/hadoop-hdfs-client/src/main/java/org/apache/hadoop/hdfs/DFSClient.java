@@ -103,6 +103,7 @@
 import org.apache.hadoop.hdfs.client.impl.LeaseRenewer;
 import org.apache.hadoop.hdfs.net.Peer;
 import org.apache.hadoop.hdfs.protocol.AclException;
+import org.apache.hadoop.hdfs.protocol.BatchedDirectoryListing;
 import org.apache.hadoop.hdfs.protocol.BlockStoragePolicy;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveEntry;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveInfo;
@@ -229,11 +230,14 @@ public class DFSClient implements java.io.Closeable, RemotePeerFactory,
   private final CachingStrategy defaultReadCachingStrategy;
   private final CachingStrategy defaultWriteCachingStrategy;
   private final ClientContext clientContext;
+  /** The metadata cache, or null if it is not enabled. */
+  private final DFSMetadataCache metadataCache;
 
   private static final DFSHedgedReadMetrics HEDGED_READ_METRIC =
       new DFSHedgedReadMetrics();
   private static ThreadPoolExecutor HEDGED_READ_THREAD_POOL;
   private static volatile ThreadPoolExecutor STRIPED_READ_THREAD_POOL;
+  private static volatile ThreadPoolExecutor VECTORED_READ_THREAD_POOL;
   private final int smallBufferSize;
 
   public DfsClientConf getConf() {
@@ -374,9 +378,20 @@ public DFSClient(URI nameNodeUri, ClientProtocol rpcNamenode,
 
     this.initThreadsNumForStripedReads(dfsClientConf.
         getStripedReadThreadpoolSize());
+    this.initThreadsNumForVectoredReads(dfsClientConf.
+        getVectoredReadThreadpoolSize());
     this.saslClient = new SaslDataTransferClient(
         conf, DataTransferSaslUtil.getSaslPropertiesResolver(conf),
         TrustedChannelResolver.getInstance(conf), nnFallbackToSimpleAuth);
+
+    if (dfsClientConf.getMetadataCachePaths().length > 0) {
+      this.metadataCache = new DFSMetadataCache(dfsClientConf);
+      if (dfsClientConf.isMetadataCacheInotifyEnabled()) {
+        metadataCache.startInvalidator(namenode, tracer);
+      }
+    } else {
+      this.metadataCache = null;
+    }
   }
 
   /**
@@ -600,6 +615,9 @@ public synchronized void close() throws IOException {
     if(clientRunning) {
       closeAllFilesBeingWritten(false);
       clientRunning = false;
+      if (metadataCache != null) {
+        metadataCache.close();
+      }
       getLeaseRenewer().closeClient(this);
       // close connections to the namenode
       closeConnectionToNamenode();
@@ -814,9 +832,20 @@ public LocatedBlocks getLocatedBlocks(String src, long start)
   @VisibleForTesting
   public LocatedBlocks getLocatedBlocks(String src, long start, long length)
       throws IOException {
-    try (TraceScope ignored = newPathTraceScope("getBlockLocations", src)) {
-      return callGetBlockLocations(namenode, src, start, length);
+    if (metadataCache == null) {
+      try (TraceScope ignored = newPathTraceScope("getBlockLocations", src)) {
+        return callGetBlockLocations(namenode, src, start, length);
+      }
+    }
+    LocatedBlocks blocks = metadataCache.getLocatedBlocks(src, start, length);
+    if (blocks == null) {
+      final long gen = metadataCache.getGeneration();
+      try (TraceScope ignored = newPathTraceScope("getBlockLocations", src)) {
+        blocks = callGetBlockLocations(namenode, src, start, length);
+      }
+      metadataCache.putLocatedBlocks(src, start, length, blocks, gen);
     }
+    return blocks;
   }
 
   /**
@@ -1192,6 +1221,7 @@ public DFSOutputStream create(String src, FsPermission permission,
         src, masked, flag, createParent, replication, blockSize, progress,
         dfsClientConf.createChecksum(checksumOpt),
         getFavoredNodesStr(favoredNodes));
+    invalidateMetadataCache(src);
     beginFileLease(result.getFileId(), result);
     return result;
   }
@@ -1246,6 +1276,7 @@ public DFSOutputStream primitiveCreate(String src, FsPermission absPermission,
       result = DFSOutputStream.newStreamForCreate(this, src, absPermission,
           flag, createParent, replication, blockSize, progress, checksum, null);
     }
+    invalidateMetadataCache(src);
     beginFileLease(result.getFileId(), result);
     return result;
   }
@@ -1365,6 +1396,7 @@ private DFSOutputStream append(String src, int buffersize,
     checkOpen();
     final DFSOutputStream result = callAppend(src, flag, progress,
         favoredNodes);
+    invalidateMetadataCache(src);
     beginFileLease(result.getFileId(), result);
     return result;
   }
@@ -1389,6 +1421,8 @@ public boolean setReplication(String src, short replication)
           QuotaByStorageTypeExceededException.class,
           UnresolvedPathException.class,
           SnapshotAccessControlException.class);
+    } finally {
+      invalidateMetadataCache(src);
     }
   }
 
@@ -1409,6 +1443,24 @@ public void setStoragePolicy(String src, String policyName)
           NSQuotaExceededException.class,
           UnresolvedPathException.class,
           SnapshotAccessControlException.class);
+    } finally {
+      invalidateMetadataCache(src);
+    }
+  }
+
+  /**
+   * Satisfy the storage policy of an existing file/directory
+   * @param src file/directory name
+   */
+  public void satisfyStoragePolicy(String src) throws IOException {
+    checkOpen();
+    try (TraceScope ignored = newPathTraceScope("satisfyStoragePolicy", src)) {
+      namenode.satisfyStoragePolicy(src);
+    } catch (RemoteException e) {
+      throw e.unwrapRemoteException(AccessControlException.class,
+          FileNotFoundException.class,
+          SafeModeException.class,
+          UnresolvedPathException.class);
     }
   }
 
@@ -1455,6 +1507,9 @@ public boolean rename(String src, String dst) throws IOException {
           QuotaByStorageTypeExceededException.class,
           UnresolvedPathException.class,
           SnapshotAccessControlException.class);
+    } finally {
+      invalidateMetadataCache(src);
+      invalidateMetadataCache(dst);
     }
   }
 
@@ -1470,6 +1525,11 @@ public void concat(String trg, String [] srcs) throws IOException {
       throw re.unwrapRemoteException(AccessControlException.class,
           UnresolvedPathException.class,
           SnapshotAccessControlException.class);
+    } finally {
+      invalidateMetadataCache(trg);
+      for (String src : srcs) {
+        invalidateMetadataCache(src);
+      }
     }
   }
   /**
@@ -1492,6 +1552,9 @@ public void rename(String src, String dst, Options.Rename... options)
           NSQuotaExceededException.class,
           UnresolvedPathException.class,
           SnapshotAccessControlException.class);
+    } finally {
+      invalidateMetadataCache(src);
+      invalidateMetadataCache(dst);
     }
   }
 
@@ -1510,6 +1573,8 @@ public boolean truncate(String src, long newLength) throws IOException {
     } catch (RemoteException re) {
       throw re.unwrapRemoteException(AccessControlException.class,
           UnresolvedPathException.class);
+    } finally {
+      invalidateMetadataCache(src);
     }
   }
 
@@ -1540,6 +1605,8 @@ public boolean delete(String src, boolean recursive) throws IOException {
           SafeModeException.class,
           UnresolvedPathException.class,
           SnapshotAccessControlException.class);
+    } finally {
+      invalidateMetadataCache(src);
     }
   }
 
@@ -1580,6 +1647,22 @@ public DirectoryListing listPaths(String src,  byte[] startAfter,
     }
   }
 
+  /**
+   * Get partial listings of many paths in one call.
+   *
+   * @see ClientProtocol#getBatchedListing(String[], byte[], boolean)
+   */
+  public BatchedDirectoryListing batchedListPaths(String[] srcs,
+      byte[] startAfter, boolean needLocation) throws IOException {
+    checkOpen();
+    try (TraceScope ignored = tracer.newScope("batchedListPaths")) {
+      return namenode.getBatchedListing(srcs, startAfter, needLocation);
+    } catch (RemoteException re) {
+      throw re.unwrapRemoteException(AccessControlException.class,
+          UnresolvedPathException.class);
+    }
+  }
+
   /**
    * Get the file info for a specific file or directory.
    * @param src The string representation of the path to the file
@@ -1590,6 +1673,19 @@ public DirectoryListing listPaths(String src,  byte[] startAfter,
    */
   public HdfsFileStatus getFileInfo(String src) throws IOException {
     checkOpen();
+    if (metadataCache != null) {
+      HdfsFileStatus status = metadataCache.getFileInfo(src);
+      if (status == null) {
+        final long gen = metadataCache.getGeneration();
+        status = callGetFileInfo(src);
+        metadataCache.putFileInfo(src, status, gen);
+      }
+      return status;
+    }
+    return callGetFileInfo(src);
+  }
+
+  private HdfsFileStatus callGetFileInfo(String src) throws IOException {
     try (TraceScope ignored = newPathTraceScope("getFileInfo", src)) {
       return namenode.getFileInfo(src);
     } catch (RemoteException re) {
@@ -1599,6 +1695,27 @@ public HdfsFileStatus getFileInfo(String src) throws IOException {
     }
   }
 
+  /**
+   * Drop the cached status and block locations of a path and of everything
+   * under it, so that they are fetched again from the NameNode. This is a
+   * no-op if the metadata cache is not enabled.
+   *
+   * @see HdfsClientConfigKeys.MetadataCache#PATHS_KEY
+   */
+  public void invalidateMetadataCache(String src) {
+    if (metadataCache != null) {
+      metadataCache.invalidate(src);
+    }
+  }
+
+  /**
+   * @return the metrics of the metadata cache, or null if the cache is not
+   *         enabled
+   */
+  public DFSMetadataCacheMetrics getMetadataCacheMetrics() {
+    return metadataCache == null ? null : metadataCache.getMetrics();
+  }
+
   /**
    * Close status of a file
    * @return true if file is already closed
@@ -1930,6 +2047,8 @@ public void setPermission(String src, FsPermission permission)
           SafeModeException.class,
           UnresolvedPathException.class,
           SnapshotAccessControlException.class);
+    } finally {
+      invalidateMetadataCache(src);
     }
   }
 
@@ -1952,6 +2071,8 @@ public void setOwner(String src, String username, String groupname)
           SafeModeException.class,
           UnresolvedPathException.class,
           SnapshotAccessControlException.class);
+    } finally {
+      invalidateMetadataCache(src);
     }
   }
 
@@ -2517,6 +2638,8 @@ public void setTimes(String src, long mtime, long atime) throws IOException {
           FileNotFoundException.class,
           UnresolvedPathException.class,
           SnapshotAccessControlException.class);
+    } finally {
+      invalidateMetadataCache(src);
     }
   }
 
@@ -2876,33 +2999,60 @@ private void initThreadsNumForStripedReads(int num) {
     }
     synchronized (DFSClient.class) {
       if (STRIPED_READ_THREAD_POOL == null) {
-        STRIPED_READ_THREAD_POOL = new ThreadPoolExecutor(1, num, 60,
-            TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
-            new Daemon.DaemonFactory() {
-              private final AtomicInteger threadIndex = new AtomicInteger(0);
-
-              @Override
-              public Thread newThread(Runnable r) {
-                Thread t = super.newThread(r);
-                t.setName("stripedRead-" + threadIndex.getAndIncrement());
-                return t;
-              }
-            },
-            new ThreadPoolExecutor.CallerRunsPolicy() {
-              @Override
-              public void rejectedExecution(Runnable runnable,
-                  ThreadPoolExecutor e) {
-                LOG.info("Execution for striped reading rejected, "
-                    + "Executing in current thread");
-                // will run in the current thread
-                super.rejectedExecution(runnable, e);
-              }
-            });
-        STRIPED_READ_THREAD_POOL.allowCoreThreadTimeOut(true);
+        STRIPED_READ_THREAD_POOL = newReadThreadPool(num, "striped");
       }
     }
   }
 
+  /**
+   * Create thread pool for the concurrent reads of vectored reads,
+   * VECTORED_READ_THREAD_POOL, if it does not already exist.
+   * @param num Number of threads for vectored reads thread pool.
+   */
+  private void initThreadsNumForVectoredReads(int num) {
+    assert num > 0;
+    if (VECTORED_READ_THREAD_POOL != null) {
+      return;
+    }
+    synchronized (DFSClient.class) {
+      if (VECTORED_READ_THREAD_POOL == null) {
+        VECTORED_READ_THREAD_POOL = newReadThreadPool(num, "vectored");
+      }
+    }
+  }
+
+  /**
+   * Create a thread pool for reads which runs the reads in the calling
+   * thread when all the threads are busy.
+   */
+  private static ThreadPoolExecutor newReadThreadPool(int num,
+      final String kind) {
+    ThreadPoolExecutor pool = new ThreadPoolExecutor(1, num, 60,
+        TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+        new Daemon.DaemonFactory() {
+          private final AtomicInteger threadIndex = new AtomicInteger(0);
+
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread t = super.newThread(r);
+            t.setName(kind + "Read-" + threadIndex.getAndIncrement());
+            return t;
+          }
+        },
+        new ThreadPoolExecutor.CallerRunsPolicy() {
+          @Override
+          public void rejectedExecution(Runnable runnable,
+              ThreadPoolExecutor e) {
+            LOG.info("Execution for " + kind + " reading rejected, "
+                + "Executing in current thread");
+            // will run in the current thread
+            super.rejectedExecution(runnable, e);
+          }
+        });
+    pool.allowCoreThreadTimeOut(true);
+    return pool;
+  }
+
   ThreadPoolExecutor getHedgedReadsThreadPool() {
     return HEDGED_READ_THREAD_POOL;
   }
@@ -2911,6 +3061,10 @@ ThreadPoolExecutor getStripedReadsThreadPool() {
     return STRIPED_READ_THREAD_POOL;
   }
 
+  ThreadPoolExecutor getVectoredReadsThreadPool() {
+    return VECTORED_READ_THREAD_POOL;
+  }
+
   boolean isHedgedReadsEnabled() {
     return (HEDGED_READ_THREAD_POOL != null) &&
         HEDGED_READ_THREAD_POOL.getMaximumPoolSize() > 0;
@@ -54,9 +54,12 @@
 import org.apache.hadoop.fs.ChecksumException;
 import org.apache.hadoop.fs.FSInputStream;
 import org.apache.hadoop.fs.FileEncryptionInfo;
+import org.apache.hadoop.fs.FileRange;
 import org.apache.hadoop.fs.HasEnhancedByteBufferAccess;
 import org.apache.hadoop.fs.ReadOption;
 import org.apache.hadoop.fs.StorageType;
+import org.apache.hadoop.fs.VectoredReadUtils;
+import org.apache.hadoop.fs.VectoredReadUtils.CombinedFileRange;
 import org.apache.hadoop.hdfs.client.impl.DfsClientConf;
 import org.apache.hadoop.hdfs.protocol.ClientDatanodeProtocol;
 import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
@@ -310,6 +313,10 @@ private void waitFor(int waitTime) throws IOException {
   private long fetchLocatedBlocksAndGetLastBlockLength(boolean refresh)
       throws IOException {
     LocatedBlocks newInfo = locatedBlocks;
+    if (refresh) {
+      // Never serve the locations which led to a failure from the cache
+      dfsClient.invalidateMetadataCache(src);
+    }
     if (locatedBlocks == null || refresh) {
       newInfo = dfsClient.getLocatedBlocks(src, 0);
     }
@@ -488,6 +495,7 @@ protected void fetchBlockAt(long offset) throws IOException {
         targetBlockIdx = LocatedBlocks.getInsertIndex(targetBlockIdx);
       }
       // fetch blocks
+      dfsClient.invalidateMetadataCache(src);
       final LocatedBlocks newBlocks = dfsClient.getLocatedBlocks(src, offset);
       if (newBlocks == null) {
         throw new IOException("Could not find target position " + offset);
@@ -1402,6 +1410,34 @@ public int read(long position, byte[] buffer, int offset, int length)
     }
   }
 
+  /**
+   * Read the ranges with concurrent positional reads. Nearby ranges are
+   * merged, since every positional read sets up its own block reader.
+   */
+  @Override
+  public void readVectored(List<? extends FileRange> ranges)
+      throws IOException {
+    dfsClient.checkOpen();
+    if (closed.get()) {
+      throw new IOException("Stream closed");
+    }
+    final DfsClientConf conf = dfsClient.getConf();
+    for (final CombinedFileRange combined : VectoredReadUtils.prepareRanges(
+        ranges, conf.getVectoredReadMinSeek(),
+        conf.getVectoredReadMaxMergedSize())) {
+      dfsClient.getVectoredReadsThreadPool().execute(new Runnable() {
+        @Override
+        public void run() {
+          try (TraceScope ignored = dfsClient.newPathTraceScope(
+              "DFSInputStream#vectoredRead", src)) {
+            VectoredReadUtils.readCombinedRange(DFSInputStream.this,
+                combined);
+          }
+        }
+      });
+    }
+  }
+
   private int pread(long position, byte[] buffer, int offset, int length)
       throws IOException {
     // sanity checks
@@ -0,0 +1,354 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.client.impl.DfsClientConf;
+import org.apache.hadoop.hdfs.inotify.Event;
+import org.apache.hadoop.hdfs.inotify.EventBatch;
+import org.apache.hadoop.hdfs.inotify.MissingEventsException;
+import org.apache.hadoop.hdfs.protocol.ClientProtocol;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
+import org.apache.hadoop.security.AccessControlException;
+import org.apache.hadoop.util.Daemon;
+import org.apache.htrace.core.Tracer;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A cache of the file status and the block locations of the paths under the
+ * configured directories, for clients which look up the same immutable files
+ * again and again. The entries expire a fixed time after they are loaded,
+ * and are invalidated when this client changes a path, when the inotify
+ * event stream reports a change, or on request.
+ *
+ * The block locations are only cached for complete files, since the length
+ * of a file being written changes without any namespace operation.
+ */
+@InterfaceAudience.Private
+class DFSMetadataCache implements Closeable {
+  static final Logger LOG = LoggerFactory.getLogger(DFSMetadataCache.class);
+
+  /** The block locations of a range of a file. */
+  private static final class BlocksKey {
+    private final String src;
+    private final long start;
+    private final long length;
+
+    BlocksKey(String src, long start, long length) {
+      this.src = src;
+      this.start = start;
+      this.length = length;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof BlocksKey)) {
+        return false;
+      }
+      BlocksKey that = (BlocksKey) o;
+      return start == that.start && length == that.length
+          && src.equals(that.src);
+    }
+
+    @Override
+    public int hashCode() {
+      return src.hashCode() ^ (int) (start ^ (start >>> 32))
+          ^ (int) (length * 31);
+    }
+  }
+
+  private final String[] paths;
+  private final long expiryMs;
+  private final Cache<String, HdfsFileStatus> statuses;
+  private final Cache<BlocksKey, LocatedBlocks> blocks;
+  private final DFSMetadataCacheMetrics metrics =
+      new DFSMetadataCacheMetrics();
+  /**
+   * Bumped on every invalidation, so that metadata fetched from the NameNode
+   * before an invalidation is not cached after it.
+   */
+  private final AtomicLong generation = new AtomicLong();
+  private Daemon invalidator;
+
+  DFSMetadataCache(DfsClientConf conf) {
+    final String[] configured = conf.getMetadataCachePaths();
+    paths = new String[configured.length];
+    for (int i = 0; i < configured.length; i++) {
+      String path = configured[i];
+      if (path.length() > 1 && path.endsWith(Path.SEPARATOR)) {
+        path = path.substring(0, path.length() - 1);
+      }
+      paths[i] = path;
+    }
+    expiryMs = conf.getMetadataCacheExpiryMs();
+    statuses = CacheBuilder.newBuilder()
+        .maximumSize(conf.getMetadataCacheSize())
+        .expireAfterWrite(expiryMs, TimeUnit.MILLISECONDS)
+        .build();
+    blocks = CacheBuilder.newBuilder()
+        .maximumSize(conf.getMetadataCacheSize())
+        .expireAfterWrite(expiryMs, TimeUnit.MILLISECONDS)
+        .build();
+  }
+
+  /** Whether a path is the given directory or under it. */
+  private static boolean isUnder(String path, String dir) {
+    return path.startsWith(dir) && (path.length() == dir.length()
+        || dir.equals(Path.SEPARATOR)
+        || path.charAt(dir.length()) == Path.SEPARATOR_CHAR);
+  }
+
+  /** Whether the metadata of a path is cached. */
+  boolean isCached(String src) {
+    for (String path : paths) {
+      if (isUnder(src, path)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  DFSMetadataCacheMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * @return the generation to pass to the put methods, to be taken before
+   *         the metadata is fetched from the NameNode
+   */
+  long getGeneration() {
+    return generation.get();
+  }
+
+  /** @return the cached status, or null on a miss */
+  HdfsFileStatus getFileInfo(String src) {
+    if (!isCached(src)) {
+      return null;
+    }
+    HdfsFileStatus status = statuses.getIfPresent(src);
+    countLookup(status != null);
+    return status;
+  }
+
+  void putFileInfo(String src, HdfsFileStatus status, long gen) {
+    if (status == null || !isCached(src)) {
+      return;
+    }
+    synchronized (generation) {
+      if (gen == generation.get()) {
+        statuses.put(src, status);
+      }
+    }
+  }
+
+  /** @return the cached block locations, or null on a miss */
+  LocatedBlocks getLocatedBlocks(String src, long start, long length) {
+    if (!isCached(src)) {
+      return null;
+    }
+    LocatedBlocks cached = blocks.getIfPresent(
+        new BlocksKey(src, start, length));
+    countLookup(cached != null);
+    // The input streams insert the blocks they fetch later into the list
+    return cached == null ? null : copy(cached);
+  }
+
+  void putLocatedBlocks(String src, long start, long length,
+      LocatedBlocks located, long gen) {
+    if (located == null || located.isUnderConstruction()
+        || !located.isLastBlockComplete() || !isCached(src)) {
+      return;
+    }
+    synchronized (generation) {
+      if (gen == generation.get()) {
+        blocks.put(new BlocksKey(src, start, length), copy(located));
+      }
+    }
+  }
+
+  private static LocatedBlocks copy(LocatedBlocks located) {
+    return new LocatedBlocks(located.getFileLength(),
+        located.isUnderConstruction(),
+        new ArrayList<>(located.getLocatedBlocks()),
+        located.getLastLocatedBlock(), located.isLastBlockComplete(),
+        located.getFileEncryptionInfo(), located.getErasureCodingPolicy());
+  }
+
+  private void countLookup(boolean hit) {
+    if (hit) {
+      metrics.incMetadataCacheHits();
+    } else {
+      metrics.incMetadataCacheMisses();
+    }
+  }
+
+  /**
+   * Invalidate the cached metadata of a path, and of everything under it.
+   */
+  void invalidate(String src) {
+    boolean covered = false;
+    for (String path : paths) {
+      if (isUnder(src, path) || isUnder(path, src)) {
+        covered = true;
+        break;
+      }
+    }
+    if (!covered) {
+      return;
+    }
+    synchronized (generation) {
+      generation.incrementAndGet();
+    }
+    metrics.incMetadataCacheInvalidations();
+    for (Iterator<String> it = statuses.asMap().keySet().iterator();
+         it.hasNext();) {
+      if (isUnder(it.next(), src)) {
+        it.remove();
+      }
+    }
+    for (Iterator<BlocksKey> it = blocks.asMap().keySet().iterator();
+         it.hasNext();) {
+      if (isUnder(it.next().src, src)) {
+        it.remove();
+      }
+    }
+  }
+
+  void invalidateAll() {
+    synchronized (generation) {
+      generation.incrementAndGet();
+    }
+    metrics.incMetadataCacheInvalidations();
+    statuses.invalidateAll();
+    blocks.invalidateAll();
+  }
+
+  @VisibleForTesting
+  long size() {
+    return statuses.size() + blocks.size();
+  }
+
+  /**
+   * Start invalidating the cache as the inotify event stream reports the
+   * changes of the namespace. Reading the events requires superuser
+   * privilege; without it the entries only expire.
+   */
+  synchronized void startInvalidator(final ClientProtocol namenode,
+      final Tracer tracer) {
+    invalidator = new Daemon(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          invalidateFromEvents(new DFSInotifyEventInputStream(namenode,
+              tracer));
+        } catch (InterruptedException e) {
+          LOG.debug("Metadata cache invalidator interrupted");
+        } catch (IOException e) {
+          LOG.warn("Unable to read the inotify events, the cached metadata "
+              + "will only expire after " + expiryMs + " ms", e);
+        }
+      }
+    });
+    invalidator.setName("DFSClient metadata cache invalidator");
+    invalidator.start();
+  }
+
+  private void invalidateFromEvents(DFSInotifyEventInputStream events)
+      throws IOException, InterruptedException {
+    // Whatever was cached before the stream started may have changed since
+    invalidateAll();
+    while (!Thread.currentThread().isInterrupted()) {
+      EventBatch batch;
+      try {
+        batch = events.take();
+      } catch (MissingEventsException e) {
+        LOG.info("Missed inotify events, invalidating the metadata cache: "
+            + e.getMessage());
+        invalidateAll();
+        continue;
+      } catch (AccessControlException e) {
+        throw e;
+      } catch (IOException e) {
+        LOG.warn("Failed to read the inotify events, invalidating the "
+            + "metadata cache", e);
+        invalidateAll();
+        Thread.sleep(1000);
+        continue;
+      }
+      for (Event event : batch.getEvents()) {
+        invalidate(event);
+      }
+    }
+  }
+
+  private void invalidate(Event event) {
+    switch (event.getEventType()) {
+    case CREATE:
+      invalidate(((Event.CreateEvent) event).getPath());
+      break;
+    case CLOSE:
+      invalidate(((Event.CloseEvent) event).getPath());
+      break;
+    case APPEND:
+      invalidate(((Event.AppendEvent) event).getPath());
+      break;
+    case RENAME:
+      invalidate(((Event.RenameEvent) event).getSrcPath());
+      invalidate(((Event.RenameEvent) event).getDstPath());
+      break;
+    case METADATA:
+      invalidate(((Event.MetadataUpdateEvent) event).getPath());
+      break;
+    case UNLINK:
+      invalidate(((Event.UnlinkEvent) event).getPath());
+      break;
+    case TRUNCATE:
+      invalidate(((Event.TruncateEvent) event).getPath());
+      break;
+    default:
+      break;
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    if (invalidator != null) {
+      invalidator.interrupt();
+      invalidator = null;
+    }
+    invalidateAll();
+  }
+}
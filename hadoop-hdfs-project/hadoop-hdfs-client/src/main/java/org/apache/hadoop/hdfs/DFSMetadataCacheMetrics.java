@@ -0,0 +1,57 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The client-side metrics for the metadata cache.
+ * Only lookups of the paths covered by the cache are counted.
+ */
+@InterfaceAudience.Private
+public class DFSMetadataCacheMetrics {
+  public final AtomicLong metadataCacheHits = new AtomicLong();
+  public final AtomicLong metadataCacheMisses = new AtomicLong();
+  public final AtomicLong metadataCacheInvalidations = new AtomicLong();
+
+  public void incMetadataCacheHits() {
+    metadataCacheHits.incrementAndGet();
+  }
+
+  public void incMetadataCacheMisses() {
+    metadataCacheMisses.incrementAndGet();
+  }
+
+  public void incMetadataCacheInvalidations() {
+    metadataCacheInvalidations.incrementAndGet();
+  }
+
+  public long getMetadataCacheHits() {
+    return metadataCacheHits.longValue();
+  }
+
+  public long getMetadataCacheMisses() {
+    return metadataCacheMisses.longValue();
+  }
+
+  public long getMetadataCacheInvalidations() {
+    return metadataCacheInvalidations.longValue();
+  }
+}
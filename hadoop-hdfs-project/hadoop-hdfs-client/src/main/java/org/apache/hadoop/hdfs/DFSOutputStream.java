@@ -824,6 +824,7 @@ protected void completeFile(ExtendedBlock last) throws IOException {
         }
       }
     }
+    dfsClient.invalidateMetadataCache(src);
   }
 
   @VisibleForTesting
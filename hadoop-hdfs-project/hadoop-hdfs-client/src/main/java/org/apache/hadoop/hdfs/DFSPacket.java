@@ -22,6 +22,7 @@
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
 import java.util.Arrays;
 
 import org.apache.hadoop.classification.InterfaceAudience;
@@ -201,6 +202,58 @@ public synchronized void writeTo(DataOutputStream stm) throws IOException {
     }
   }
 
+  /**
+   * Write the packet for a short-circuit write: the checksums and data go
+   * to the shared memory buffers of the DataNode, and only the header goes
+   * to the given output stream, for the DataNode to read them from the
+   * buffers. Each buffer is a ring, where a position wraps around to the
+   * start of the buffer at its end.
+   *
+   * @param dataOut the data buffer
+   * @param dataOffset the offset of the data of this packet in the data
+   *                   buffer, before wrapping around
+   * @param checksumOut the checksum buffer
+   * @param checksumOffset the offset of the checksums of this packet in the
+   *                       checksum buffer, before wrapping around
+   * @throws IOException
+   */
+  synchronized void writeTo(DataOutputStream stm, FileChannel dataOut,
+      long dataOffset, FileChannel checksumOut, long checksumOffset)
+      throws IOException {
+    checkBuffer();
+
+    final int dataLen = dataPos - dataStart;
+    final int checksumLen = checksumPos - checksumStart;
+    writeRingFully(checksumOut,
+        ByteBuffer.wrap(buf, checksumStart, checksumLen), checksumOffset);
+    writeRingFully(dataOut, ByteBuffer.wrap(buf, dataStart, dataLen),
+        dataOffset);
+
+    PacketHeader header = new PacketHeader(HdfsConstants.BYTES_IN_INTEGER,
+        offsetInBlock, seqno, lastPacketInBlock, dataLen, syncBlock, true);
+    header.write(stm);
+  }
+
+  private static void writeRingFully(FileChannel ch, ByteBuffer buf,
+      long position) throws IOException {
+    final long size = ch.size();
+    if (size == 0 || buf.remaining() > size) {
+      throw new IOException("Cannot write " + buf.remaining() +
+          " bytes to a ring buffer of " + size + " bytes");
+    }
+    position %= size;
+    final int limit = buf.limit();
+    while (buf.hasRemaining()) {
+      buf.limit(buf.position() +
+          (int) Math.min(limit - buf.position(), size - position));
+      while (buf.hasRemaining()) {
+        position += ch.write(buf, position);
+      }
+      buf.limit(limit);
+      position %= size;
+    }
+  }
+
   private synchronized void checkBuffer() throws ClosedChannelException {
     if (buf == null) {
       throw new ClosedChannelException();
@@ -242,6 +295,15 @@ boolean isLastPacketInBlock() {
     return lastPacketInBlock;
   }
 
+  /**
+   * get the offset in the block of the first byte of this packet
+   *
+   * @return the offset in the block of this packet
+   */
+  long getOffsetInBlock() {
+    return offsetInBlock;
+  }
+
   /**
    * get sequence number of this packet
    *
@@ -355,6 +355,8 @@ synchronized void checkRestartingNodeDeadline(DatanodeInfo[] nodes) {
   protected Token<BlockTokenIdentifier> accessToken;
   private DataOutputStream blockStream;
   private DataInputStream blockReplyStream;
+  /** Writes the data of the block to the local replica, if not null. */
+  private ShortCircuitBlockWriter shortCircuitWriter;
   private ResponseProcessor response = null;
   private volatile DatanodeInfo[] nodes = null; // list of targets for current block
   private volatile StorageType[] storageTypes = null;
@@ -505,6 +507,25 @@ private void initDataStreaming() {
     stage = BlockConstructionStage.DATA_STREAMING;
   }
 
+  /**
+   * Write the data of a new block through shared memory of the first
+   * DataNode, if short-circuit writes are enabled and it is local. Once the
+   * pipeline is recovered, the rest of the block goes through the pipeline.
+   */
+  private void initShortCircuitWrite() {
+    if (!dfsClient.getConf().getShortCircuitConf()
+        .isShortCircuitLocalWrites()) {
+      return;
+    }
+    try {
+      shortCircuitWriter = ShortCircuitBlockWriter.request(dfsClient,
+          nodes[0], block, accessToken, checksum4WriteBlock);
+    } catch (IOException e) {
+      LOG.warn("Failed to set up a short-circuit write of " + block +
+          " to " + nodes[0], e);
+    }
+  }
+
   protected void endBlock() {
     LOG.debug("Closing old block " + block);
     this.setName("DataStreamer for file " + src);
@@ -592,6 +613,7 @@ public void run() {
         if (stage == BlockConstructionStage.PIPELINE_SETUP_CREATE) {
           LOG.debug("Allocating new block: " + this);
           setPipeline(nextBlockOutputStream());
+          initShortCircuitWrite();
           initDataStreaming();
         } else if (stage == BlockConstructionStage.PIPELINE_SETUP_APPEND) {
           LOG.debug("Append to block {}", block);
@@ -626,6 +648,24 @@ public void run() {
           stage = BlockConstructionStage.PIPELINE_CLOSE;
         }
 
+        if (shortCircuitWriter != null) {
+          // wait until the local datanode has read the packets whose data
+          // this one overwrites in the short-circuit buffers
+          final long seqnoToAwait = shortCircuitWriter.getSeqnoToAwait(one);
+          synchronized (dataQueue) {
+            while (!shouldStop() && lastAckedSeqno < seqnoToAwait) {
+              try {
+                dataQueue.wait(1000);
+              } catch (InterruptedException  e) {
+                LOG.warn("Caught exception", e);
+              }
+            }
+          }
+          if (shouldStop()) {
+            continue;
+          }
+        }
+
         // send the packet
         SpanId spanId = SpanId.INVALID;
         synchronized (dataQueue) {
@@ -648,7 +688,11 @@ public void run() {
         // write out data to remote datanode
         try (TraceScope ignored = dfsClient.getTracer().
             newScope("DataStreamer#writeTo", spanId)) {
-          one.writeTo(blockStream);
+          if (shortCircuitWriter != null) {
+            shortCircuitWriter.writePacket(one, blockStream);
+          } else {
+            one.writeTo(blockStream);
+          }
           blockStream.flush();
         } catch (IOException e) {
           // HDFS-3398 treat primary DN is down since client is unable to
@@ -871,6 +915,10 @@ private void closeResponder() {
   void closeStream() {
     final MultipleIOException.Builder b = new MultipleIOException.Builder();
 
+    if (shortCircuitWriter != null) {
+      shortCircuitWriter.close();
+      shortCircuitWriter = null;
+    }
     if (blockStream != null) {
       try {
         blockStream.close();
@@ -50,6 +50,7 @@
 import org.apache.hadoop.fs.Options;
 import org.apache.hadoop.fs.XAttrSetFlag;
 import org.apache.hadoop.fs.Options.ChecksumOpt;
+import org.apache.hadoop.fs.PartialListing;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.PathFilter;
 import org.apache.hadoop.fs.RemoteIterator;
@@ -63,6 +64,7 @@
 import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
 import org.apache.hadoop.hdfs.client.HdfsDataOutputStream;
 import org.apache.hadoop.hdfs.client.impl.CorruptFileBlockIterator;
+import org.apache.hadoop.hdfs.protocol.BatchedDirectoryListing;
 import org.apache.hadoop.hdfs.protocol.BlockStoragePolicy;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveEntry;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveInfo;
@@ -78,13 +80,16 @@
 import org.apache.hadoop.hdfs.protocol.HdfsConstants.SafeModeAction;
 import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
 import org.apache.hadoop.hdfs.protocol.HdfsLocatedFileStatus;
+import org.apache.hadoop.hdfs.protocol.HdfsPartialListing;
 import org.apache.hadoop.hdfs.protocol.RollingUpgradeInfo;
 import org.apache.hadoop.hdfs.protocol.SnapshotDiffReport;
 import org.apache.hadoop.hdfs.protocol.SnapshottableDirectoryStatus;
+import org.apache.hadoop.hdfs.protocol.UnresolvedPathException;
 import org.apache.hadoop.hdfs.security.token.delegation.DelegationTokenIdentifier;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.hdfs.protocol.ErasureCodingPolicy;
 import org.apache.hadoop.net.NetUtils;
+import org.apache.hadoop.security.AccessControlException;
 import org.apache.hadoop.security.Credentials;
 import org.apache.hadoop.security.token.Token;
 import org.apache.hadoop.util.Progressable;
@@ -511,6 +516,36 @@ public Void next(final FileSystem fs, final Path p)
     }.resolve(this, absF);
   }
 
+  /**
+   * Move the block replicas of a file, or of the files under a directory, to
+   * the storage types of their storage policy, in the background.
+   *
+   * @param path The path referring to either a directory or a file.
+   */
+  public void satisfyStoragePolicy(final Path path) throws IOException {
+    statistics.incrementWriteOps(1);
+    Path absF = fixRelativePart(path);
+    new FileSystemLinkResolver<Void>() {
+      @Override
+      public Void doCall(final Path p) throws IOException {
+        dfs.satisfyStoragePolicy(getPathName(p));
+        return null;
+      }
+      @Override
+      public Void next(final FileSystem fs, final Path p)
+          throws IOException {
+        if (fs instanceof DistributedFileSystem) {
+          DistributedFileSystem myDfs = (DistributedFileSystem)fs;
+          myDfs.satisfyStoragePolicy(p);
+          return null;
+        }
+        throw new UnsupportedOperationException("Cannot satisfyStoragePolicy"
+            + " through a symlink to a non-DistributedFileSystem: " + path
+            + " -> " + p);
+      }
+    }.resolve(this, absF);
+  }
+
   @Override
   public BlockStoragePolicySpi getStoragePolicy(Path path) throws IOException {
     statistics.incrementReadOps(1);
@@ -903,6 +938,83 @@ public RemoteIterator<FileStatus> next(final FileSystem fs, final Path p)
 
   }
 
+  /**
+   * List many paths with one RPC per batch of listings, see
+   * {@link ClientProtocol#getBatchedListing(String[], byte[], boolean)}.
+   * Symlinks in the paths are not resolved; the error listing such a path
+   * is returned in its listing.
+   */
+  @Override
+  public RemoteIterator<PartialListing<FileStatus>> batchedListStatusIterator(
+      final List<Path> paths) throws IOException {
+    final List<Path> absPaths = new ArrayList<>(paths.size());
+    for (Path p : paths) {
+      absPaths.add(fixRelativePart(p));
+    }
+    return new BatchedListingIterator(absPaths);
+  }
+
+  /**
+   * This class defines an iterator that returns the partial listings of
+   * the given paths, fetching the next batch of listings when the current
+   * one is exhausted.
+   */
+  private class BatchedListingIterator
+      implements RemoteIterator<PartialListing<FileStatus>> {
+    private final List<Path> paths;
+    private final String[] srcs;
+    private BatchedDirectoryListing batch;
+    private int i = 0;
+
+    private BatchedListingIterator(List<Path> paths) throws IOException {
+      this.paths = paths;
+      this.srcs = new String[paths.size()];
+      for (int j = 0; j < srcs.length; j++) {
+        srcs[j] = getPathName(paths.get(j));
+      }
+      fetch(HdfsFileStatus.EMPTY_NAME);
+    }
+
+    private void fetch(byte[] startAfter) throws IOException {
+      batch = srcs.length == 0 ? null
+          : dfs.batchedListPaths(srcs, startAfter, false);
+      statistics.incrementReadOps(1);
+      i = 0;
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+      if (batch == null) {
+        return false;
+      }
+      if (i >= batch.getListings().length && batch.hasMore()) {
+        fetch(batch.getStartAfter());
+      }
+      return i < batch.getListings().length;
+    }
+
+    @Override
+    public PartialListing<FileStatus> next() throws IOException {
+      if (!hasNext()) {
+        throw new java.util.NoSuchElementException("No more listing");
+      }
+      final HdfsPartialListing listing = batch.getListings()[i++];
+      final Path p = paths.get(listing.getParentIdx());
+      if (listing.getException() != null) {
+        return new PartialListing<>(p, listing.getException()
+            .unwrapRemoteException(FileNotFoundException.class,
+                AccessControlException.class,
+                UnresolvedPathException.class));
+      }
+      final List<FileStatus> statuses =
+          new ArrayList<>(listing.getPartialListing().size());
+      for (HdfsFileStatus status : listing.getPartialListing()) {
+        statuses.add(status.makeQualified(getUri(), p));
+      }
+      return new PartialListing<>(p, statuses);
+    }
+  }
+
   /**
    * This class defines an iterator that returns
    * the file status of each file/subdirectory of a directory
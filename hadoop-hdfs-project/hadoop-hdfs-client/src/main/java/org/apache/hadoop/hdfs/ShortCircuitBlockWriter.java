@@ -0,0 +1,206 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import static org.apache.hadoop.hdfs.protocolPB.PBHelperClient.vintPrefixed;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.hdfs.client.impl.DfsClientConf.ShortCircuitConf;
+import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.protocol.datatransfer.Sender;
+import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.BlockOpResponseProto;
+import org.apache.hadoop.hdfs.security.token.block.BlockTokenIdentifier;
+import org.apache.hadoop.hdfs.shortcircuit.DomainSocketFactory;
+import org.apache.hadoop.hdfs.shortcircuit.DomainSocketFactory.PathInfo;
+import org.apache.hadoop.hdfs.util.IOUtilsClient;
+import org.apache.hadoop.net.NetUtils;
+import org.apache.hadoop.net.unix.DomainSocket;
+import org.apache.hadoop.security.token.Token;
+import org.apache.hadoop.util.DataChecksum;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the data and checksums of the packets of a block to shared memory
+ * buffers of the local DataNode, whose file descriptors the DataNode passes
+ * over a UNIX domain socket. Only the packet headers go through the
+ * pipeline; the local DataNode reads each packet from the buffers, stores
+ * it and forwards it to the rest of the pipeline.
+ *
+ * Each buffer is a ring, where the data at an offset in the block is at that
+ * offset modulo the size of the data buffer, and likewise for its
+ * checksums. A packet may only be written once the DataNode has read the
+ * packets whose data it overwrites, which it has once it acknowledged them.
+ */
+@InterfaceAudience.Private
+class ShortCircuitBlockWriter implements Closeable {
+  static final Logger LOG =
+      LoggerFactory.getLogger(ShortCircuitBlockWriter.class);
+
+  private final FileChannel dataOut;
+  private final FileChannel checksumOut;
+  private final int bytesPerChecksum;
+  private final int checksumSize;
+  /** The size of the data buffer. */
+  private final long dataBufferSize;
+  /**
+   * The packets written to the buffers, in order, which a later packet has
+   * not overwritten yet.
+   */
+  private final Deque<DFSPacket> written = new ArrayDeque<>();
+
+  private ShortCircuitBlockWriter(FileChannel dataOut,
+      FileChannel checksumOut, DataChecksum checksum, long dataBufferSize) {
+    this.dataOut = dataOut;
+    this.checksumOut = checksumOut;
+    this.bytesPerChecksum = checksum.getBytesPerChecksum();
+    this.checksumSize = checksum.getChecksumSize();
+    this.dataBufferSize = dataBufferSize;
+  }
+
+  /**
+   * Request short-circuit access to a replica being written.
+   *
+   * @param datanode the first DataNode of the pipeline, which has created
+   *                 the replica
+   * @return the writer, or null if short-circuit writes are not possible
+   *         for the DataNode
+   */
+  static ShortCircuitBlockWriter request(DFSClient dfsClient,
+      DatanodeInfo datanode, ExtendedBlock block,
+      Token<BlockTokenIdentifier> token, DataChecksum checksum)
+      throws IOException {
+    final ShortCircuitConf scConf = dfsClient.getConf().getShortCircuitConf();
+    final InetSocketAddress addr = NetUtils.createSocketAddr(
+        datanode.getXferAddr(dfsClient.getConf().isConnectToDnViaHostname()));
+    final DomainSocketFactory factory =
+        dfsClient.getClientContext().getDomainSocketFactory();
+    final PathInfo pathInfo = factory.getPathInfo(addr, scConf);
+    if (!pathInfo.getPathState().getUsableForDataTransfer()) {
+      return null;
+    }
+    final DomainSocket sock = factory.createSocket(pathInfo,
+        dfsClient.getConf().getSocketTimeout());
+    if (sock == null) {
+      return null;
+    }
+    try {
+      final DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(sock.getOutputStream()));
+      new Sender(out).requestShortCircuitWriteFds(block, token);
+      out.flush();
+      final BlockOpResponseProto resp = BlockOpResponseProto.parseFrom(
+          vintPrefixed(new DataInputStream(sock.getInputStream())));
+      switch (resp.getStatus()) {
+      case SUCCESS:
+        final FileInputStream[] fis = new FileInputStream[2];
+        sock.recvFileInputStreams(fis, new byte[1], 0, 1);
+        if (fis[0] == null || fis[1] == null) {
+          IOUtilsClient.cleanup(LOG, fis[0], fis[1]);
+          throw new IOException("Missing file descriptors for " + block +
+              " from " + datanode);
+        }
+        // The descriptors are writable, unlike the streams wrapping them
+        final FileChannel dataOut =
+            new FileOutputStream(fis[0].getFD()).getChannel();
+        final FileChannel checksumOut =
+            new FileOutputStream(fis[1].getFD()).getChannel();
+        final long dataBufferSize = dataOut.size();
+        final int bytesPerChecksum = checksum.getBytesPerChecksum();
+        if (dataBufferSize % bytesPerChecksum != 0 ||
+            checksumOut.size() != dataBufferSize / bytesPerChecksum *
+                checksum.getChecksumSize() ||
+            dataBufferSize < Math.max(bytesPerChecksum,
+                dfsClient.getConf().getWritePacketSize())) {
+          // A packet must fit in the buffers
+          LOG.debug("Short-circuit write of {} to {} not possible with " +
+              "buffers of {} and {} bytes", block, datanode, dataBufferSize,
+              checksumOut.size());
+          IOUtilsClient.cleanup(LOG, dataOut, checksumOut);
+          return null;
+        }
+        return new ShortCircuitBlockWriter(dataOut, checksumOut, checksum,
+            dataBufferSize);
+      default:
+        LOG.debug("Short-circuit write of {} refused by {}: {} {}", block,
+            datanode, resp.getStatus(), resp.getMessage());
+        return null;
+      }
+    } finally {
+      IOUtilsClient.cleanup(LOG, sock);
+    }
+  }
+
+  /**
+   * Get the packet which the DataNode must have read before a packet can be
+   * written, since the packet overwrites its data in the buffers. The
+   * packet, and the ones written before it, are no longer tracked.
+   *
+   * @return the sequence number of the packet, or -1 if there is none
+   */
+  long getSeqnoToAwait(DFSPacket packet) {
+    final long overwrittenEnd =
+        packet.getLastByteOffsetBlock() - dataBufferSize;
+    long seqno = -1;
+    while (!written.isEmpty() &&
+        written.peekFirst().getOffsetInBlock() < overwrittenEnd) {
+      seqno = written.removeFirst().getSeqno();
+    }
+    return seqno;
+  }
+
+  /**
+   * Write a packet: its data and checksums to the buffers, and its header to
+   * the pipeline.
+   */
+  void writePacket(DFSPacket packet, DataOutputStream out)
+      throws IOException {
+    final long offsetInBlock = packet.getOffsetInBlock();
+    if (packet.getNumChunks() == 0) {
+      // Nothing to write to the replica
+      packet.writeTo(out);
+      return;
+    }
+    if (offsetInBlock % bytesPerChecksum != 0) {
+      throw new IOException("Packet " + packet.getSeqno() + " at offset " +
+          offsetInBlock + " is not aligned on a chunk boundary");
+    }
+    final long checksumOffset =
+        offsetInBlock / bytesPerChecksum * checksumSize;
+    packet.writeTo(out, dataOut, offsetInBlock, checksumOut, checksumOffset);
+    written.addLast(packet);
+  }
+
+  @Override
+  public void close() {
+    IOUtilsClient.cleanup(LOG, dataOut, checksumOut);
+  }
+}
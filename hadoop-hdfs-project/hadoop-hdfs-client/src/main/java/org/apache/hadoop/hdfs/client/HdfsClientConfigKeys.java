@@ -277,6 +277,13 @@ interface ByteArrayManager {
           PREFIX + "count-reset-time-period-ms";
       long    COUNT_RESET_TIME_PERIOD_MS_DEFAULT = 10*SECOND;
     }
+
+    interface ShortCircuit {
+      String PREFIX = Write.PREFIX + "shortcircuit.";
+
+      String  KEY = PREFIX.substring(0, PREFIX.length()-1);
+      boolean DEFAULT = false;
+    }
   }
 
   /** dfs.client.block.write configuration properties */
@@ -370,6 +377,35 @@ interface StripedRead {
     int     THREADPOOL_SIZE_DEFAULT = 18;
   }
 
+  /** dfs.client.read.vectored configuration properties */
+  interface VectoredRead {
+    String PREFIX = Read.PREFIX + "vectored.";
+
+    String  THREADPOOL_SIZE_KEY = PREFIX + "threadpool.size";
+    int     THREADPOOL_SIZE_DEFAULT = 16;
+    /**
+     * A positional read costs a new block reader, which is worth reading
+     * and dropping a gap of this many bytes to avoid.
+     */
+    String  MIN_SEEK_KEY = PREFIX + "min-seek";
+    int     MIN_SEEK_DEFAULT = 128 * 1024;
+    String  MAX_MERGED_SIZE_KEY = PREFIX + "max-merged-size";
+    int     MAX_MERGED_SIZE_DEFAULT = 4 * 1024 * 1024;
+  }
+
+  /** dfs.client.metadata-cache configuration properties */
+  interface MetadataCache {
+    String PREFIX = HdfsClientConfigKeys.PREFIX + "metadata-cache.";
+
+    String  PATHS_KEY = PREFIX + "paths";
+    String  SIZE_KEY = PREFIX + "size";
+    int     SIZE_DEFAULT = 10000;
+    String  EXPIRY_MS_KEY = PREFIX + "expiry.ms";
+    long    EXPIRY_MS_DEFAULT = MINUTE;
+    String  INOTIFY_ENABLED_KEY = PREFIX + "inotify.enabled";
+    boolean INOTIFY_ENABLED_DEFAULT = false;
+  }
+
   /** dfs.http.client configuration properties */
   interface HttpClient {
     String  PREFIX = "dfs.http.client.";
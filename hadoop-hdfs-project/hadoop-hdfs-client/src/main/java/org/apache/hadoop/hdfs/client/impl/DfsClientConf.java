@@ -134,6 +134,14 @@ public class DfsClientConf {
       replicaAccessorBuilderClasses;
 
   private final int stripedReadThreadpoolSize;
+  private final int vectoredReadThreadpoolSize;
+  private final int vectoredReadMinSeek;
+  private final int vectoredReadMaxMergedSize;
+
+  private final String[] metadataCachePaths;
+  private final int metadataCacheSize;
+  private final long metadataCacheExpiryMs;
+  private final boolean metadataCacheInotifyEnabled;
 
 
   public DfsClientConf(Configuration conf) {
@@ -251,7 +259,31 @@ public DfsClientConf(Configuration conf) {
     Preconditions.checkArgument(stripedReadThreadpoolSize > 0, "The value of " +
         HdfsClientConfigKeys.StripedRead.THREADPOOL_SIZE_KEY +
         " must be greater than 0.");
+    vectoredReadThreadpoolSize = conf.getInt(
+        HdfsClientConfigKeys.VectoredRead.THREADPOOL_SIZE_KEY,
+        HdfsClientConfigKeys.VectoredRead.THREADPOOL_SIZE_DEFAULT);
+    Preconditions.checkArgument(vectoredReadThreadpoolSize > 0, "The value of "
+        + HdfsClientConfigKeys.VectoredRead.THREADPOOL_SIZE_KEY
+        + " must be greater than 0.");
+    vectoredReadMinSeek = conf.getInt(
+        HdfsClientConfigKeys.VectoredRead.MIN_SEEK_KEY,
+        HdfsClientConfigKeys.VectoredRead.MIN_SEEK_DEFAULT);
+    vectoredReadMaxMergedSize = conf.getInt(
+        HdfsClientConfigKeys.VectoredRead.MAX_MERGED_SIZE_KEY,
+        HdfsClientConfigKeys.VectoredRead.MAX_MERGED_SIZE_DEFAULT);
     replicaAccessorBuilderClasses = loadReplicaAccessorBuilderClasses(conf);
+
+    metadataCachePaths = conf.getTrimmedStrings(
+        HdfsClientConfigKeys.MetadataCache.PATHS_KEY);
+    metadataCacheSize = conf.getInt(
+        HdfsClientConfigKeys.MetadataCache.SIZE_KEY,
+        HdfsClientConfigKeys.MetadataCache.SIZE_DEFAULT);
+    metadataCacheExpiryMs = conf.getLong(
+        HdfsClientConfigKeys.MetadataCache.EXPIRY_MS_KEY,
+        HdfsClientConfigKeys.MetadataCache.EXPIRY_MS_DEFAULT);
+    metadataCacheInotifyEnabled = conf.getBoolean(
+        HdfsClientConfigKeys.MetadataCache.INOTIFY_ENABLED_KEY,
+        HdfsClientConfigKeys.MetadataCache.INOTIFY_ENABLED_DEFAULT);
   }
 
   @SuppressWarnings("unchecked")
@@ -545,6 +577,55 @@ public int getStripedReadThreadpoolSize() {
     return stripedReadThreadpoolSize;
   }
 
+  /**
+   * @return the vectoredReadThreadpoolSize
+   */
+  public int getVectoredReadThreadpoolSize() {
+    return vectoredReadThreadpoolSize;
+  }
+
+  /**
+   * @return the vectoredReadMinSeek
+   */
+  public int getVectoredReadMinSeek() {
+    return vectoredReadMinSeek;
+  }
+
+  /**
+   * @return the vectoredReadMaxMergedSize
+   */
+  public int getVectoredReadMaxMergedSize() {
+    return vectoredReadMaxMergedSize;
+  }
+
+  /**
+   * @return the paths whose metadata is cached, none if the cache is disabled
+   */
+  public String[] getMetadataCachePaths() {
+    return metadataCachePaths;
+  }
+
+  /**
+   * @return the metadataCacheSize
+   */
+  public int getMetadataCacheSize() {
+    return metadataCacheSize;
+  }
+
+  /**
+   * @return the metadataCacheExpiryMs
+   */
+  public long getMetadataCacheExpiryMs() {
+    return metadataCacheExpiryMs;
+  }
+
+  /**
+   * @return the metadataCacheInotifyEnabled
+   */
+  public boolean isMetadataCacheInotifyEnabled() {
+    return metadataCacheInotifyEnabled;
+  }
+
   /**
    * @return the replicaAccessorBuilderClasses
    */
@@ -576,6 +657,7 @@ public static class ShortCircuitConf {
 
     private final int shortCircuitBufferSize;
     private final boolean shortCircuitLocalReads;
+    private final boolean shortCircuitLocalWrites;
     private final boolean domainSocketDataTraffic;
     private final int shortCircuitStreamsCacheSize;
     private final long shortCircuitStreamsCacheExpiryMs;
@@ -606,6 +688,9 @@ public ShortCircuitConf(Configuration conf) {
       shortCircuitLocalReads = conf.getBoolean(
           Read.ShortCircuit.KEY,
           Read.ShortCircuit.DEFAULT);
+      shortCircuitLocalWrites = conf.getBoolean(
+          Write.ShortCircuit.KEY,
+          Write.ShortCircuit.DEFAULT);
       domainSocketDataTraffic = conf.getBoolean(
           DFS_CLIENT_DOMAIN_SOCKET_DATA_TRAFFIC,
           DFS_CLIENT_DOMAIN_SOCKET_DATA_TRAFFIC_DEFAULT);
@@ -617,6 +702,8 @@ public ShortCircuitConf(Configuration conf) {
                     + " = {}", useLegacyBlockReaderLocal);
       LOG.debug(Read.ShortCircuit.KEY
                     + " = {}", shortCircuitLocalReads);
+      LOG.debug(Write.ShortCircuit.KEY
+                    + " = {}", shortCircuitLocalWrites);
       LOG.debug(DFS_CLIENT_DOMAIN_SOCKET_DATA_TRAFFIC
                     + " = {}", domainSocketDataTraffic);
       LOG.debug(DFS_DOMAIN_SOCKET_PATH_KEY
@@ -684,6 +771,10 @@ public boolean isShortCircuitLocalReads() {
       return shortCircuitLocalReads;
     }
 
+    public boolean isShortCircuitLocalWrites() {
+      return shortCircuitLocalWrites;
+    }
+
     public boolean isDomainSocketDataTraffic() {
       return domainSocketDataTraffic;
     }
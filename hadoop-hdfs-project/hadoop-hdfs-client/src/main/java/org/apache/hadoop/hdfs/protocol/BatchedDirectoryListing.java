@@ -0,0 +1,66 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.protocol;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * The result of a
+ * {@link ClientProtocol#getBatchedListing(String[], byte[], boolean)} call:
+ * the partial listings of some of the requested paths, in the order of the
+ * paths, and the position to continue the listing from.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+public class BatchedDirectoryListing {
+  private final HdfsPartialListing[] listings;
+  private final boolean hasMore;
+  private final byte[] startAfter;
+
+  public BatchedDirectoryListing(HdfsPartialListing[] listings,
+      boolean hasMore, byte[] startAfter) {
+    if (listings == null) {
+      throw new IllegalArgumentException("listings should not be null");
+    }
+    if (hasMore && startAfter.length == 0) {
+      throw new IllegalArgumentException("More listings but startAfter is "
+          + "empty");
+    }
+    this.listings = listings;
+    this.hasMore = hasMore;
+    this.startAfter = startAfter;
+  }
+
+  public HdfsPartialListing[] getListings() {
+    return listings;
+  }
+
+  /** @return whether there are more entries to list */
+  public boolean hasMore() {
+    return hasMore;
+  }
+
+  /**
+   * @return the opaque position to pass to the next call to continue the
+   *         listing.
+   */
+  public byte[] getStartAfter() {
+    return startAfter;
+  }
+}
@@ -0,0 +1,85 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.protocol;
+
+import java.util.List;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.ipc.RemoteException;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A partial listing of one of the paths of a
+ * {@link ClientProtocol#getBatchedListing(String[], byte[], boolean)} call:
+ * either some of the entries of the path, or the error listing it.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+public class HdfsPartialListing {
+  private final List<HdfsFileStatus> partialListing;
+  private final int parentIdx;
+  private final RemoteException exception;
+
+  /**
+   * @param parentIdx the index of the listed path in the requested paths
+   * @param partialListing some of the entries of the listed path
+   */
+  public HdfsPartialListing(int parentIdx,
+      List<HdfsFileStatus> partialListing) {
+    this(parentIdx, Preconditions.checkNotNull(partialListing), null);
+  }
+
+  /**
+   * @param parentIdx the index of the listed path in the requested paths
+   * @param exception the error listing the path
+   */
+  public HdfsPartialListing(int parentIdx, RemoteException exception) {
+    this(parentIdx, null, Preconditions.checkNotNull(exception));
+  }
+
+  private HdfsPartialListing(int parentIdx,
+      List<HdfsFileStatus> partialListing, RemoteException exception) {
+    this.parentIdx = parentIdx;
+    this.partialListing = partialListing;
+    this.exception = exception;
+  }
+
+  /** @return the index of the listed path in the requested paths */
+  public int getParentIdx() {
+    return parentIdx;
+  }
+
+  /** @return the entries, or null if listing the path failed */
+  public List<HdfsFileStatus> getPartialListing() {
+    return partialListing;
+  }
+
+  /** @return the error listing the path, or null */
+  public RemoteException getException() {
+    return exception;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "{parentIdx=" + parentIdx
+        + (exception != null ? ", exception=" + exception
+            : ", entries=" + partialListing.size()) + "}";
+  }
+}
@@ -154,6 +154,17 @@ void requestShortCircuitFds(final ExtendedBlock blk,
    */
   void releaseShortCircuitFds(final SlotId slotId) throws IOException;
 
+  /**
+   * Request the file descriptors of the shared memory buffers of a replica
+   * being written on a DataNode, for the client to write the data and
+   * checksums of the block to. The DataNode reads each packet from them.
+   *
+   * @param blk             The block being written.
+   * @param blockToken      Security token for writing the block.
+   */
+  void requestShortCircuitWriteFds(final ExtendedBlock blk,
+      final Token<BlockTokenIdentifier> blockToken) throws IOException;
+
   /**
    * Request a short circuit shared memory area from a DataNode.
    *
@@ -57,6 +57,7 @@ public class PacketHeader {
       .setLastPacketInBlock(false)
       .setDataLen(0)
       .setSyncBlock(false)
+      .setDataOnDisk(false)
       .build().getSerializedSize();
   public static final int PKT_LENGTHS_LEN =
       Ints.BYTES + Shorts.BYTES;
@@ -71,6 +72,19 @@ public PacketHeader() {
 
   public PacketHeader(int packetLen, long offsetInBlock, long seqno,
                       boolean lastPacketInBlock, int dataLen, boolean syncBlock) {
+    this(packetLen, offsetInBlock, seqno, lastPacketInBlock, dataLen,
+        syncBlock, false);
+  }
+
+  /**
+   * @param dataOnDisk whether the checksums and data of the packet were
+   *                   written to the shared memory buffers of the DataNode by
+   *                   the client, for a short-circuit write, instead of
+   *                   following the header
+   */
+  public PacketHeader(int packetLen, long offsetInBlock, long seqno,
+                      boolean lastPacketInBlock, int dataLen, boolean syncBlock,
+                      boolean dataOnDisk) {
     this.packetLen = packetLen;
     Preconditions.checkArgument(packetLen >= Ints.BYTES,
         "packet len %s should always be at least 4 bytes",
@@ -89,6 +103,9 @@ public PacketHeader(int packetLen, long offsetInBlock, long seqno,
       // in that version did not support variable-length headers.
       builder.setSyncBlock(true);
     }
+    if (dataOnDisk) {
+      builder.setDataOnDisk(true);
+    }
 
     proto = builder.build();
   }
@@ -117,6 +134,10 @@ public boolean getSyncBlock() {
     return proto.getSyncBlock();
   }
 
+  public boolean isDataOnDisk() {
+    return proto.getDataOnDisk();
+  }
+
   @Override
   public String toString() {
     return "PacketHeader with packetLen=" + packetLen +
@@ -19,9 +19,11 @@
 
 import java.io.Closeable;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 
 import org.apache.hadoop.classification.InterfaceAudience;
@@ -178,6 +180,17 @@ private void doRead(ReadableByteChannel ch, InputStream in)
     }
     curHeader.setFieldsFromData(payloadLen, headerBuf);
 
+    if (curHeader.isDataOnDisk()) {
+      // Only the header is on the wire; see readDataOnDisk
+      if (dataPlusChecksumLen != 0) {
+        throw new IOException("Invalid packet: data sent with a packet " +
+            "whose data is on disk. dataPlusChecksumLen=" +
+            dataPlusChecksumLen + " header: " + curHeader);
+      }
+      reslicePacket(headerLen, 0, 0);
+      return;
+    }
+
     // Compute the sub-slices of the packet
     int checksumLen = dataPlusChecksumLen - curHeader.getDataLen();
     if (checksumLen < 0) {
@@ -189,6 +202,47 @@ private void doRead(ReadableByteChannel ch, InputStream in)
     reslicePacket(headerLen, checksumLen, curHeader.getDataLen());
   }
 
+  /**
+   * Read the checksums and data of the last-read packet, which the writer
+   * stored in files shared with the reader rather than sending them with the
+   * packet. Each file is a ring buffer, where a position wraps around to
+   * the start of the file at its end. The packet becomes a regular one,
+   * whose data and checksum slices are set, and which can be mirrored like
+   * any other.
+   *
+   * @param checksumIn    the file of the checksums
+   * @param checksumPos   the position of the checksums of the packet in the
+   *                      checksum file, before wrapping around
+   * @param checksumLen   the length of the checksums of the packet
+   * @param dataIn        the file of the data
+   * @param dataPos       the position of the data of the packet in the data
+   *                      file, before wrapping around
+   */
+  public void readDataOnDisk(FileChannel checksumIn, long checksumPos,
+      int checksumLen, FileChannel dataIn, long dataPos) throws IOException {
+    Preconditions.checkState(curHeader != null && curHeader.isDataOnDisk());
+    final int dataLen = curHeader.getDataLen();
+    final PacketHeader header = new PacketHeader(
+        Ints.BYTES + checksumLen + dataLen, curHeader.getOffsetInBlock(),
+        curHeader.getSeqno(), curHeader.isLastPacketInBlock(), dataLen,
+        curHeader.getSyncBlock());
+    final int headerLen = header.getSerializedSize()
+        - PacketHeader.PKT_LENGTHS_LEN;
+
+    reallocPacketBuf(header.getSerializedSize() + checksumLen + dataLen);
+    curPacketBuf.clear();
+    header.putInBuffer(curPacketBuf);
+    curPacketBuf.limit(curPacketBuf.position() + checksumLen);
+    readRingFully(checksumIn, curPacketBuf, checksumPos);
+    curPacketBuf.limit(curPacketBuf.position() + dataLen);
+    readRingFully(dataIn, curPacketBuf, dataPos);
+    curPacketBuf.flip();
+    curPacketBuf.position(header.getSerializedSize());
+
+    curHeader = header;
+    reslicePacket(headerLen, checksumLen, dataLen);
+  }
+
   /**
    * Rewrite the last-read packet on the wire to the given output stream.
    */
@@ -260,6 +314,39 @@ private static void readChannelFully(ReadableByteChannel ch, ByteBuffer buf)
     }
   }
 
+  /**
+   * Read the remaining bytes of the buffer from a file used as a ring
+   * buffer, wrapping around to the start of the file at its end.
+   */
+  private static void readRingFully(FileChannel ch, ByteBuffer buf,
+      long position) throws IOException {
+    final long size = ch.size();
+    if (size == 0 || buf.remaining() > size) {
+      throw new IOException("Cannot read " + buf.remaining() +
+          " bytes from a ring buffer of " + size + " bytes");
+    }
+    position %= size;
+    final int limit = buf.limit();
+    try {
+      while (buf.remaining() > 0) {
+        buf.limit(buf.position() +
+            (int) Math.min(limit - buf.position(), size - position));
+        while (buf.remaining() > 0) {
+          int n = ch.read(buf, position);
+          if (n < 0) {
+            throw new EOFException("Premature EOF reading from " + ch +
+                " at position " + position);
+          }
+          position += n;
+        }
+        buf.limit(limit);
+        position %= size;
+      }
+    } finally {
+      buf.limit(limit);
+    }
+  }
+
   private void reallocPacketBuf(int atLeastCapacity) {
     // Realloc the buffer if this packet is longer than the previous
     // one.
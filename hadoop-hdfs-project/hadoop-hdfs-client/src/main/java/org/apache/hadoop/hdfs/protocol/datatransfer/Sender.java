@@ -37,6 +37,7 @@
 import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.OpReadBlockProto;
 import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.OpReplaceBlockProto;
 import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.OpRequestShortCircuitAccessProto;
+import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.OpRequestShortCircuitWriteProto;
 import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.OpTransferBlockProto;
 import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.OpWriteBlockProto;
 import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.ReleaseShortCircuitAccessRequestProto;
@@ -211,6 +212,16 @@ public void releaseShortCircuitFds(SlotId slotId) throws IOException {
     send(out, Op.RELEASE_SHORT_CIRCUIT_FDS, proto);
   }
 
+  @Override
+  public void requestShortCircuitWriteFds(final ExtendedBlock blk,
+      final Token<BlockTokenIdentifier> blockToken) throws IOException {
+    OpRequestShortCircuitWriteProto proto =
+        OpRequestShortCircuitWriteProto.newBuilder()
+            .setHeader(DataTransferProtoUtil.buildBaseHeader(blk, blockToken))
+            .build();
+    send(out, Op.REQUEST_SHORT_CIRCUIT_WRITE_FDS, proto);
+  }
+
   @Override
   public void requestShortCircuitShm(String clientName) throws IOException {
     ShortCircuitShmRequestProto.Builder builder =
@@ -81,6 +81,7 @@
 import org.apache.hadoop.hdfs.protocol.HdfsConstants.SafeModeAction;
 import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
 import org.apache.hadoop.hdfs.protocol.HdfsLocatedFileStatus;
+import org.apache.hadoop.hdfs.protocol.HdfsPartialListing;
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
 import org.apache.hadoop.hdfs.protocol.LocatedStripedBlock;
@@ -116,6 +117,7 @@
 import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.ShortCircuitShmSlotProto;
 import org.apache.hadoop.hdfs.protocol.proto.EncryptionZonesProtos.EncryptionZoneProto;
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos;
+import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.BatchedDirectoryListingProto;
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.BlockProto;
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.BlockStoragePolicyProto;
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.ContentSummaryProto;
@@ -139,6 +141,7 @@
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.LocatedBlockProto;
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.LocatedBlockProto.Builder;
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.LocatedBlocksProto;
+import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.RemoteExceptionProto;
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.RollingUpgradeStatusProto;
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.SnapshotDiffReportEntryProto;
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.SnapshotDiffReportProto;
@@ -166,6 +169,7 @@
 import org.apache.hadoop.io.EnumSetWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.erasurecode.ECSchema;
+import org.apache.hadoop.ipc.RemoteException;
 import org.apache.hadoop.security.proto.SecurityProtos.TokenProto;
 import org.apache.hadoop.security.token.Token;
 import org.apache.hadoop.util.DataChecksum;
@@ -1562,6 +1566,21 @@ public static DirectoryListing convert(DirectoryListingProto dl) {
         dl.getRemainingEntries());
   }
 
+  public static HdfsPartialListing convert(
+      BatchedDirectoryListingProto listing) {
+    if (listing.hasException()) {
+      final RemoteExceptionProto e = listing.getException();
+      return new HdfsPartialListing(listing.getParentIdx(),
+          new RemoteException(e.getClassName(), e.getMessage()));
+    }
+    final List<HdfsFileStatus> statuses =
+        new ArrayList<>(listing.getPartialListingCount());
+    for (HdfsFileStatusProto status : listing.getPartialListingList()) {
+      statuses.add(convert(status));
+    }
+    return new HdfsPartialListing(listing.getParentIdx(), statuses);
+  }
+
   public static HdfsFileStatus[] convert(HdfsFileStatusProto[] fs) {
     if (fs == null) return null;
     final int len = fs.length;
@@ -1869,6 +1888,27 @@ public static HdfsFileStatusProto[] convert(HdfsFileStatus[] fs) {
     return result;
   }
 
+  public static BatchedDirectoryListingProto convert(
+      HdfsPartialListing listing) {
+    final BatchedDirectoryListingProto.Builder builder =
+        BatchedDirectoryListingProto.newBuilder()
+            .setParentIdx(listing.getParentIdx());
+    final RemoteException e = listing.getException();
+    if (e != null) {
+      final RemoteExceptionProto.Builder exception =
+          RemoteExceptionProto.newBuilder().setClassName(e.getClassName());
+      if (e.getMessage() != null) {
+        exception.setMessage(e.getMessage());
+      }
+      builder.setException(exception);
+    } else {
+      for (HdfsFileStatus status : listing.getPartialListing()) {
+        builder.addPartialListing(convert(status));
+      }
+    }
+    return builder.build();
+  }
+
   public static DirectoryListingProto convert(DirectoryListing d) {
     if (d == null)
       return null;
@@ -101,6 +101,8 @@ public DomainSocketFactory(ShortCircuitConf conf) {
     final String feature;
     if (conf.isShortCircuitLocalReads() && (!conf.isUseLegacyBlockReaderLocal())) {
       feature = "The short-circuit local reads feature";
+    } else if (conf.isShortCircuitLocalWrites()) {
+      feature = "The short-circuit local writes feature";
     } else if (conf.isDomainSocketDataTraffic()) {
       feature = "UNIX domain socket data traffic";
     } else {
@@ -137,6 +139,7 @@ public PathInfo getPathInfo(InetSocketAddress addr, ShortCircuitConf conf) {
     if (conf.getDomainSocketPath().isEmpty()) return PathInfo.NOT_CONFIGURED;
     // If we can't do anything with the domain socket, don't create it.
     if (!conf.isDomainSocketDataTraffic() &&
+        !conf.isShortCircuitLocalWrites() &&
         (!conf.isShortCircuitLocalReads() || conf.isUseLegacyBlockReaderLocal())) {
       return PathInfo.NOT_CONFIGURED;
     }
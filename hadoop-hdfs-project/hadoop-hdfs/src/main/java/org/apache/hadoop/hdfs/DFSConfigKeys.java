@@ -266,13 +266,24 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   
   public static final String  DFS_NAMENODE_EDITS_NOEDITLOGCHANNELFLUSH = "dfs.namenode.edits.noeditlogchannelflush";
   public static final boolean DFS_NAMENODE_EDITS_NOEDITLOGCHANNELFLUSH_DEFAULT = false;
+  public static final String  DFS_NAMENODE_EDITS_ASYNC_LOGGING =
+      "dfs.namenode.edits.asynclogging";
+  public static final boolean DFS_NAMENODE_EDITS_ASYNC_LOGGING_DEFAULT = false;
+  public static final String  DFS_NAMENODE_EDITS_ASYNC_LOGGING_PENDING_QUEUE_SIZE =
+      "dfs.namenode.edits.asynclogging.pending.queue.size";
+  public static final int     DFS_NAMENODE_EDITS_ASYNC_LOGGING_PENDING_QUEUE_SIZE_DEFAULT =
+      4096;
   
   public static final String  DFS_LIST_LIMIT = "dfs.ls.limit";
   public static final int     DFS_LIST_LIMIT_DEFAULT = 1000;
+  public static final String  DFS_BATCHED_LIST_LIMIT = "dfs.batched.ls.limit";
+  public static final int     DFS_BATCHED_LIST_LIMIT_DEFAULT = 100;
   public static final String  DFS_CONTENT_SUMMARY_LIMIT_KEY = "dfs.content-summary.limit";
   public static final int     DFS_CONTENT_SUMMARY_LIMIT_DEFAULT = 5000;
   public static final String  DFS_CONTENT_SUMMARY_SLEEP_MICROSEC_KEY = "dfs.content-summary.sleep-microsec";
   public static final long    DFS_CONTENT_SUMMARY_SLEEP_MICROSEC_DEFAULT = 500;
+  public static final String  DFS_CONTENT_SUMMARY_INCREMENTAL_DIRECTORIES_KEY =
+      "dfs.content-summary.incremental.directories";
   public static final String  DFS_DATANODE_FAILED_VOLUMES_TOLERATED_KEY = "dfs.datanode.failed.volumes.tolerated";
   public static final int     DFS_DATANODE_FAILED_VOLUMES_TOLERATED_DEFAULT = 0;
   public static final String  DFS_DATANODE_SYNCONCLOSE_KEY = "dfs.datanode.synconclose";
@@ -288,6 +299,13 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String DFS_DATANODE_CACHE_REVOCATION_POLLING_MS = "dfs.datanode.cache.revocation.polling.ms";
   public static final long DFS_DATANODE_CACHE_REVOCATION_POLLING_MS_DEFAULT = 500L;
 
+  public static final String DFS_DATANODE_CACHE_ADAPTIVE_MAX_BYTES_KEY = "dfs.datanode.cache.adaptive.max.bytes";
+  public static final long DFS_DATANODE_CACHE_ADAPTIVE_MAX_BYTES_DEFAULT = 0;
+  public static final String DFS_DATANODE_CACHE_ADAPTIVE_MIN_READS_KEY = "dfs.datanode.cache.adaptive.min.reads";
+  public static final int DFS_DATANODE_CACHE_ADAPTIVE_MIN_READS_DEFAULT = 3;
+  public static final String DFS_DATANODE_CACHE_ADAPTIVE_INTERVAL_MS_KEY = "dfs.datanode.cache.adaptive.interval.ms";
+  public static final long DFS_DATANODE_CACHE_ADAPTIVE_INTERVAL_MS_DEFAULT = 30000L;
+
   public static final String DFS_NAMENODE_DATANODE_REGISTRATION_IP_HOSTNAME_CHECK_KEY = "dfs.namenode.datanode.registration.ip-hostname-check";
   public static final boolean DFS_NAMENODE_DATANODE_REGISTRATION_IP_HOSTNAME_CHECK_DEFAULT = true;
 
@@ -300,6 +318,9 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_NAMENODE_PATH_BASED_CACHE_REFRESH_INTERVAL_MS =
       "dfs.namenode.path.based.cache.refresh.interval.ms";
   public static final long    DFS_NAMENODE_PATH_BASED_CACHE_REFRESH_INTERVAL_MS_DEFAULT = 30000L;
+  public static final String  DFS_NAMENODE_PATH_BASED_CACHE_FULL_RESCAN_INTERVAL_MS =
+      "dfs.namenode.path.based.cache.full.rescan.interval.ms";
+  public static final long    DFS_NAMENODE_PATH_BASED_CACHE_FULL_RESCAN_INTERVAL_MS_DEFAULT = 600000L;
 
   /** Pending period of block deletion since NameNode startup */
   public static final String  DFS_NAMENODE_STARTUP_DELAY_BLOCK_DELETION_SEC_KEY = "dfs.namenode.startup.delay.block.deletion.sec";
@@ -323,6 +344,9 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   // allow writing to stale nodes to prevent hotspots.
   public static final String DFS_NAMENODE_USE_STALE_DATANODE_FOR_WRITE_RATIO_KEY = "dfs.namenode.write.stale.datanode.ratio";
   public static final float DFS_NAMENODE_USE_STALE_DATANODE_FOR_WRITE_RATIO_DEFAULT = 0.5f;
+  // Whether to prefer DataNodes which are not reported as slow for writes
+  public static final String DFS_NAMENODE_AVOID_SLOW_DATANODE_FOR_WRITE_KEY = "dfs.namenode.avoid.write.slow.datanode";
+  public static final boolean DFS_NAMENODE_AVOID_SLOW_DATANODE_FOR_WRITE_DEFAULT = true;
 
   // Number of blocks to rescan for each iteration of postponedMisreplicatedBlocks.
   public static final String DFS_NAMENODE_BLOCKS_PER_POSTPONEDBLOCKS_RESCAN_KEY = "dfs.namenode.blocks.per.postponedblocks.rescan";
@@ -401,6 +425,12 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_NAMENODE_AUDIT_LOG_ASYNC_KEY = "dfs.namenode.audit.log.async";
   public static final boolean DFS_NAMENODE_AUDIT_LOG_ASYNC_DEFAULT = false;
   public static final String  DFS_NAMENODE_AUDIT_LOG_DEBUG_CMDLIST = "dfs.namenode.audit.log.debug.cmdlist";
+  public static final String  DFS_NAMENODE_FSLOCK_PARTITION_DEPTH_KEY =
+      "dfs.namenode.fslock.partition.depth";
+  public static final int     DFS_NAMENODE_FSLOCK_PARTITION_DEPTH_DEFAULT = 0;
+  public static final String  DFS_NAMENODE_FSLOCK_PARTITION_COUNT_KEY =
+      "dfs.namenode.fslock.partition.count";
+  public static final int     DFS_NAMENODE_FSLOCK_PARTITION_COUNT_DEFAULT = 64;
   public static final String  DFS_NAMENODE_METRICS_LOGGER_PERIOD_SECONDS_KEY =
       "dfs.namenode.metrics.logger.period.seconds";
   public static final int     DFS_NAMENODE_METRICS_LOGGER_PERIOD_SECONDS_DEFAULT =
@@ -448,11 +478,23 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int     DFS_DATANODE_STRIPED_READ_TIMEOUT_MILLIS_DEFAULT = 5000; //5s
   public static final String  DFS_DATANODE_STRIPED_BLK_RECOVERY_THREADS_KEY = "dfs.datanode.striped.blockrecovery.threads.size";
   public static final int     DFS_DATANODE_STRIPED_BLK_RECOVERY_THREADS_DEFAULT = 8;
+  public static final String  DFS_DATANODE_STRIPED_BLK_RECOVERY_PIPELINE_DEPTH_KEY = "dfs.datanode.striped.blockrecovery.pipeline.depth";
+  public static final int     DFS_DATANODE_STRIPED_BLK_RECOVERY_PIPELINE_DEPTH_DEFAULT = 4;
+  public static final String  DFS_DATANODE_STRIPED_BLK_RECOVERY_BANDWIDTHPERSEC_KEY = "dfs.datanode.striped.blockrecovery.bandwidthPerSec";
+  public static final long    DFS_DATANODE_STRIPED_BLK_RECOVERY_BANDWIDTHPERSEC_DEFAULT = 0; // no throttling
   public static final String
       DFS_DATANODE_DIRECTORYSCAN_THROTTLE_LIMIT_MS_PER_SEC_KEY =
       "dfs.datanode.directoryscan.throttle.limit.ms.per.sec";
   public static final int
       DFS_DATANODE_DIRECTORYSCAN_THROTTLE_LIMIT_MS_PER_SEC_DEFAULT = 1000;
+  public static final String  DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_KEY = "dfs.datanode.directoryscan.incremental";
+  public static final boolean DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_DEFAULT = false;
+  public static final String  DFS_DATANODE_DIRECTORYSCAN_FULL_SCAN_INTERVAL_KEY = "dfs.datanode.directoryscan.full.scan.interval";
+  public static final int     DFS_DATANODE_DIRECTORYSCAN_FULL_SCAN_INTERVAL_DEFAULT = 10;
+  public static final String  DFS_DATANODE_DIRECTORYSCAN_RECONCILE_BATCH_SIZE_KEY = "dfs.datanode.directoryscan.reconcile.batch.size";
+  public static final int     DFS_DATANODE_DIRECTORYSCAN_RECONCILE_BATCH_SIZE_DEFAULT = 1000;
+  public static final String  DFS_DATANODE_DIRECTORYSCAN_RECONCILE_BATCH_INTERVAL_MS_KEY = "dfs.datanode.directoryscan.reconcile.batch.interval.ms";
+  public static final long    DFS_DATANODE_DIRECTORYSCAN_RECONCILE_BATCH_INTERVAL_MS_DEFAULT = 2000L;
   public static final String  DFS_DATANODE_DNS_INTERFACE_KEY = "dfs.datanode.dns.interface";
   public static final String  DFS_DATANODE_DNS_INTERFACE_DEFAULT = "default";
   public static final String  DFS_DATANODE_DNS_NAMESERVER_KEY = "dfs.datanode.dns.nameserver";
@@ -467,6 +509,14 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_DATANODE_MAX_RECEIVER_THREADS_KEY =
       HdfsClientConfigKeys.DeprecatedKeys.DFS_DATANODE_MAX_RECEIVER_THREADS_KEY;
   public static final int     DFS_DATANODE_MAX_RECEIVER_THREADS_DEFAULT = 4096;
+  public static final String  DFS_DATANODE_TRANSFER_SERVER_EVENT_DRIVEN_KEY =
+      "dfs.datanode.transfer.server.event-driven";
+  public static final boolean DFS_DATANODE_TRANSFER_SERVER_EVENT_DRIVEN_DEFAULT =
+      false;
+  public static final String  DFS_DATANODE_TRANSFER_SERVER_WORKER_THREADS_KEY =
+      "dfs.datanode.transfer.server.worker.threads";
+  public static final int     DFS_DATANODE_TRANSFER_SERVER_WORKER_THREADS_DEFAULT =
+      DFS_DATANODE_MAX_RECEIVER_THREADS_DEFAULT;
   public static final String  DFS_DATANODE_SCAN_PERIOD_HOURS_KEY = "dfs.datanode.scan.period.hours";
   public static final int     DFS_DATANODE_SCAN_PERIOD_HOURS_DEFAULT = 21 * 24;  // 3 weeks.
   public static final String  DFS_BLOCK_SCANNER_VOLUME_BYTES_PER_SECOND = "dfs.block.scanner.volume.bytes.per.second";
@@ -530,6 +580,12 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int     DFS_NAMENODE_MAX_FULL_BLOCK_REPORT_LEASES_DEFAULT = 6;
   public static final String  DFS_NAMENODE_FULL_BLOCK_REPORT_LEASE_LENGTH_MS = "dfs.namenode.full.block.report.lease.length.ms";
   public static final long    DFS_NAMENODE_FULL_BLOCK_REPORT_LEASE_LENGTH_MS_DEFAULT = 5L * 60L * 1000L;
+  public static final String  DFS_NAMENODE_BLOCKREPORT_QUEUE_ENABLED_KEY = "dfs.namenode.blockreport.queue.enabled";
+  public static final boolean DFS_NAMENODE_BLOCKREPORT_QUEUE_ENABLED_DEFAULT = false;
+  public static final String  DFS_NAMENODE_BLOCKREPORT_QUEUE_SIZE_KEY = "dfs.namenode.blockreport.queue.size";
+  public static final int     DFS_NAMENODE_BLOCKREPORT_QUEUE_SIZE_DEFAULT = 1024;
+  public static final String  DFS_NAMENODE_BLOCKREPORT_MAX_LOCK_HOLD_TIME_MS_KEY = "dfs.namenode.blockreport.max.lock.hold.time.ms";
+  public static final long    DFS_NAMENODE_BLOCKREPORT_MAX_LOCK_HOLD_TIME_MS_DEFAULT = 4;
   public static final String  DFS_CACHEREPORT_INTERVAL_MSEC_KEY = "dfs.cachereport.intervalMsec";
   public static final long    DFS_CACHEREPORT_INTERVAL_MSEC_DEFAULT = 10 * 1000;
   public static final String  DFS_BLOCK_INVALIDATE_LIMIT_KEY = "dfs.block.invalidate.limit";
@@ -548,6 +604,20 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String DFS_IMAGE_COMPRESSION_CODEC_DEFAULT =
                                    "org.apache.hadoop.io.compress.DefaultCodec";
 
+  // properties for parallel fsimage loading
+  public static final String DFS_IMAGE_PARALLEL_LOAD_KEY =
+      "dfs.image.parallel.load";
+  public static final boolean DFS_IMAGE_PARALLEL_LOAD_DEFAULT = false;
+  public static final String DFS_IMAGE_PARALLEL_TARGET_SECTIONS_KEY =
+      "dfs.image.parallel.target.sections";
+  public static final int DFS_IMAGE_PARALLEL_TARGET_SECTIONS_DEFAULT = 12;
+  public static final String DFS_IMAGE_PARALLEL_INODE_THRESHOLD_KEY =
+      "dfs.image.parallel.inode.threshold";
+  public static final int DFS_IMAGE_PARALLEL_INODE_THRESHOLD_DEFAULT = 1000000;
+  public static final String DFS_IMAGE_PARALLEL_THREADS_KEY =
+      "dfs.image.parallel.threads";
+  public static final int DFS_IMAGE_PARALLEL_THREADS_DEFAULT = 4;
+
   public static final String DFS_IMAGE_TRANSFER_RATE_KEY =
                                            "dfs.image.transfer.bandwidthPerSec";
   public static final long DFS_IMAGE_TRANSFER_RATE_DEFAULT = 0;  //no throttling
@@ -573,6 +643,8 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final long    DFS_DATANODE_AVAILABLE_SPACE_VOLUME_CHOOSING_POLICY_BALANCED_SPACE_THRESHOLD_DEFAULT = 1024L * 1024L * 1024L * 10L; // 10 GB
   public static final String  DFS_DATANODE_AVAILABLE_SPACE_VOLUME_CHOOSING_POLICY_BALANCED_SPACE_PREFERENCE_FRACTION_KEY = "dfs.datanode.available-space-volume-choosing-policy.balanced-space-preference-fraction";
   public static final float   DFS_DATANODE_AVAILABLE_SPACE_VOLUME_CHOOSING_POLICY_BALANCED_SPACE_PREFERENCE_FRACTION_DEFAULT = 0.75f;
+  public static final String  DFS_DATANODE_LOCK_REPORTING_THRESHOLD_MS_KEY = "dfs.datanode.lock-reporting-threshold-ms";
+  public static final long    DFS_DATANODE_LOCK_REPORTING_THRESHOLD_MS_DEFAULT = 300L;
   public static final String  DFS_DATANODE_SOCKET_WRITE_TIMEOUT_KEY =
       HdfsClientConfigKeys.DFS_DATANODE_SOCKET_WRITE_TIMEOUT_KEY;
   public static final String  DFS_DATANODE_STARTUP_KEY = "dfs.datanode.startup";
@@ -586,6 +658,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_DATANODE_USER_NAME_KEY = DFS_DATANODE_KERBEROS_PRINCIPAL_KEY;
   public static final String  DFS_DATANODE_SHARED_FILE_DESCRIPTOR_PATHS = "dfs.datanode.shared.file.descriptor.paths";
   public static final String  DFS_DATANODE_SHARED_FILE_DESCRIPTOR_PATHS_DEFAULT = "/dev/shm,/tmp";
+  public static final String  DFS_DATANODE_SHORT_CIRCUIT_WRITE_BUFFER_SIZE_KEY =
+      "dfs.datanode.shortcircuit.write.buffer.size";
+  public static final int     DFS_DATANODE_SHORT_CIRCUIT_WRITE_BUFFER_SIZE_DEFAULT =
+      4 * 1024 * 1024;
   public static final String
       DFS_SHORT_CIRCUIT_SHARED_MEMORY_WATCHER_INTERRUPT_CHECK_MS =
       HdfsClientConfigKeys
@@ -643,6 +719,16 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
 
   public static final String  DFS_STORAGE_POLICY_ENABLED_KEY = "dfs.storage.policy.enabled";
   public static final boolean DFS_STORAGE_POLICY_ENABLED_DEFAULT = true;
+  public static final String  DFS_STORAGE_POLICY_SATISFIER_ENABLED_KEY = "dfs.storage.policy.satisfier.enabled";
+  public static final boolean DFS_STORAGE_POLICY_SATISFIER_ENABLED_DEFAULT = false;
+  public static final String  DFS_STORAGE_POLICY_SATISFIER_INTERVAL_MS_KEY = "dfs.storage.policy.satisfier.interval.ms";
+  public static final long    DFS_STORAGE_POLICY_SATISFIER_INTERVAL_MS_DEFAULT = 3000;
+  public static final String  DFS_STORAGE_POLICY_SATISFIER_MAX_BLOCKS_PER_ITERATION_KEY = "dfs.storage.policy.satisfier.max.blocks.per.iteration";
+  public static final int     DFS_STORAGE_POLICY_SATISFIER_MAX_BLOCKS_PER_ITERATION_DEFAULT = 1000;
+  public static final String  DFS_STORAGE_POLICY_SATISFIER_RECHECK_TIMEOUT_MS_KEY = "dfs.storage.policy.satisfier.recheck.timeout.ms";
+  public static final long    DFS_STORAGE_POLICY_SATISFIER_RECHECK_TIMEOUT_MS_DEFAULT = 5 * 60 * 1000;
+  public static final String  DFS_STORAGE_POLICY_SATISFIER_MAX_RECHECKS_KEY = "dfs.storage.policy.satisfier.max.rechecks";
+  public static final int     DFS_STORAGE_POLICY_SATISFIER_MAX_RECHECKS_DEFAULT = 10;
 
   public static final String  DFS_QUOTA_BY_STORAGETYPE_ENABLED_KEY = "dfs.quota.by.storage.type.enabled";
   public static final boolean DFS_QUOTA_BY_STORAGETYPE_ENABLED_DEFAULT = true;
@@ -659,6 +745,9 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int DFS_HA_TAILEDITS_PERIOD_DEFAULT = 60; // 1m
   public static final String DFS_HA_TAILEDITS_ALL_NAMESNODES_RETRY_KEY = "dfs.ha.tail-edits.namenode-retries";
   public static final int DFS_HA_TAILEDITS_ALL_NAMESNODES_RETRY_DEFAULT = 3;
+  public static final String DFS_HA_TAILEDITS_INPROGRESS_KEY =
+      "dfs.ha.tail-edits.in-progress";
+  public static final boolean DFS_HA_TAILEDITS_INPROGRESS_DEFAULT = false;
   public static final String DFS_HA_LOGROLL_RPC_TIMEOUT_KEY = "dfs.ha.log-roll.rpc.timeout";
   public static final int DFS_HA_LOGROLL_RPC_TIMEOUT_DEFAULT = 20000; // 20s
   public static final String DFS_HA_FENCE_METHODS_KEY = "dfs.ha.fencing.methods";
@@ -668,6 +757,14 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int DFS_HA_ZKFC_PORT_DEFAULT = 8019;
   public static final String DFS_HA_ZKFC_NN_HTTP_TIMEOUT_KEY = "dfs.ha.zkfc.nn.http.timeout.ms";
   public static final int DFS_HA_ZKFC_NN_HTTP_TIMEOUT_KEY_DEFAULT = 20000;
+  public static final String DFS_NAMENODE_STATE_CONTEXT_ENABLED_KEY =
+      "dfs.namenode.state.context.enabled";
+  public static final boolean DFS_NAMENODE_STATE_CONTEXT_ENABLED_DEFAULT =
+      false;
+  public static final String DFS_NAMENODE_STATE_CONTEXT_MAX_WAIT_MS_KEY =
+      "dfs.namenode.state.context.max-wait-ms";
+  public static final long DFS_NAMENODE_STATE_CONTEXT_MAX_WAIT_MS_DEFAULT =
+      1000;
 
   // Security-related configs
   public static final String DFS_ENCRYPT_DATA_TRANSFER_KEY = "dfs.encrypt.data.transfer";
@@ -716,6 +813,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_JOURNALNODE_KEYTAB_FILE_KEY = "dfs.journalnode.keytab.file";
   public static final String  DFS_JOURNALNODE_KERBEROS_PRINCIPAL_KEY = "dfs.journalnode.kerberos.principal";
   public static final String  DFS_JOURNALNODE_KERBEROS_INTERNAL_SPNEGO_PRINCIPAL_KEY = "dfs.journalnode.kerberos.internal.spnego.principal";
+  public static final String  DFS_JOURNALNODE_EDIT_CACHE_SIZE_KEY =
+      "dfs.journalnode.edit-cache-size.bytes";
+  public static final int     DFS_JOURNALNODE_EDIT_CACHE_SIZE_DEFAULT =
+      1024 * 1024;
 
   // Journal-node related configs for the client side.
   public static final String  DFS_QJOURNAL_QUEUE_SIZE_LIMIT_KEY = "dfs.qjournal.queued-edits.limit.mb";
@@ -739,6 +840,9 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int     DFS_QJOURNAL_GET_JOURNAL_STATE_TIMEOUT_DEFAULT = 120000;
   public static final int     DFS_QJOURNAL_NEW_EPOCH_TIMEOUT_DEFAULT = 120000;
   public static final int     DFS_QJOURNAL_WRITE_TXNS_TIMEOUT_DEFAULT = 20000;
+  public static final String  DFS_QJOURNAL_RPC_MAX_TXNS_KEY =
+      "dfs.ha.tail-edits.qjm.rpc.max-txns";
+  public static final int     DFS_QJOURNAL_RPC_MAX_TXNS_DEFAULT = 5000;
   
   public static final String DFS_MAX_NUM_BLOCKS_TO_LOG_KEY = "dfs.namenode.max-num-blocks-to-log";
   public static final long   DFS_MAX_NUM_BLOCKS_TO_LOG_DEFAULT = 1000l;
@@ -804,6 +908,23 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
     "dfs.datanode.slow.io.warning.threshold.ms";
   public static final long DFS_DATANODE_SLOW_IO_WARNING_THRESHOLD_DEFAULT = 300;
 
+  // Slow peer and slow disk detection settings for datanode.
+  public static final String DFS_DATANODE_PEER_STATS_ENABLED_KEY =
+      "dfs.datanode.peer.stats.enabled";
+  public static final boolean DFS_DATANODE_PEER_STATS_ENABLED_DEFAULT = false;
+  public static final String DFS_DATANODE_DISK_STATS_ENABLED_KEY =
+      "dfs.datanode.disk.stats.enabled";
+  public static final boolean DFS_DATANODE_DISK_STATS_ENABLED_DEFAULT = false;
+  public static final String DFS_DATANODE_OUTLIERS_REPORT_INTERVAL_MS_KEY =
+      "dfs.datanode.outliers.report.interval.ms";
+  public static final long DFS_DATANODE_OUTLIERS_REPORT_INTERVAL_MS_DEFAULT =
+      60 * 1000; // 1 minute
+
+  // Group commit of hsync settings for datanode.
+  public static final String DFS_DATANODE_SYNC_GROUP_COMMIT_KEY =
+      "dfs.datanode.sync.group-commit";
+  public static final boolean DFS_DATANODE_SYNC_GROUP_COMMIT_DEFAULT = false;
+
   public static final String DFS_DATANODE_BLOCK_ID_LAYOUT_UPGRADE_THREADS_KEY =
       "dfs.datanode.block.id.layout.upgrade.threads";
   public static final int DFS_DATANODE_BLOCK_ID_LAYOUT_UPGRADE_THREADS = 12;
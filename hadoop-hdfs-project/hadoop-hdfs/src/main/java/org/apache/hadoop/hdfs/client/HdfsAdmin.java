@@ -365,6 +365,17 @@ public void setStoragePolicy(final Path src, final String policyName)
     dfs.setStoragePolicy(src, policyName);
   }
 
+  /**
+   * Move the block replicas of a file, or of the files under a directory, to
+   * the storage types of their storage policy. The moves are scheduled by the
+   * NameNode in the background.
+   *
+   * @param src The source path referring to either a directory or a file.
+   */
+  public void satisfyStoragePolicy(final Path src) throws IOException {
+    dfs.satisfyStoragePolicy(src);
+  }
+
   /**
    * Set the source path to the specified erasure coding policy.
    *
@@ -35,6 +35,7 @@
 import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.OpReadBlockProto;
 import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.OpReplaceBlockProto;
 import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.OpRequestShortCircuitAccessProto;
+import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.OpRequestShortCircuitWriteProto;
 import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.OpTransferBlockProto;
 import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.OpWriteBlockProto;
 import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.ReleaseShortCircuitAccessRequestProto;
@@ -123,6 +124,9 @@ protected final void processOp(Op op) throws IOException {
     case REQUEST_SHORT_CIRCUIT_SHM:
       opRequestShortCircuitShm(in);
       break;
+    case REQUEST_SHORT_CIRCUIT_WRITE_FDS:
+      opRequestShortCircuitWriteFds(in);
+      break;
     default:
       throw new IOException("Unknown op " + op + " in data stream");
     }
@@ -222,6 +226,22 @@ private void opRequestShortCircuitFds(DataInputStream in) throws IOException {
     }
   }
 
+  /** Receive {@link Op#REQUEST_SHORT_CIRCUIT_WRITE_FDS} */
+  private void opRequestShortCircuitWriteFds(DataInputStream in)
+      throws IOException {
+    final OpRequestShortCircuitWriteProto proto =
+      OpRequestShortCircuitWriteProto.parseFrom(vintPrefixed(in));
+    TraceScope traceScope = continueTraceSpan(proto.getHeader(),
+        proto.getClass().getSimpleName());
+    try {
+      requestShortCircuitWriteFds(
+          PBHelperClient.convert(proto.getHeader().getBlock()),
+          PBHelperClient.convert(proto.getHeader().getToken()));
+    } finally {
+      if (traceScope != null) traceScope.close();
+    }
+  }
+
   /** Receive {@link Op#RELEASE_SHORT_CIRCUIT_FDS} */
   private void opReleaseShortCircuitFds(DataInputStream in)
       throws IOException {
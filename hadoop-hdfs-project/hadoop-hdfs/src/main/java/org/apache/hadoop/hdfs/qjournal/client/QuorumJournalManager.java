@@ -21,6 +21,7 @@
 import java.net.InetSocketAddress;
 import java.net.URI;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -36,6 +37,7 @@
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.DFSUtil;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournalStateResponseProto;
+import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournaledEditsResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.NewEpochResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.PrepareRecoveryResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.SegmentStateProto;
@@ -99,6 +101,11 @@ public class QuorumJournalManager implements JournalManager {
 
   private int outputBufferCapacity = 512 * 1024;
   private final URLConnectionFactory connectionFactory;
+
+  /** Whether in-progress edits are fetched over RPC when possible. */
+  private final boolean inProgressTailingEnabled;
+  /** The maximum number of transactions to fetch in a single RPC. */
+  private final int maxTxnsPerRpc;
   
   public QuorumJournalManager(Configuration conf,
       URI uri, NamespaceInfo nsInfo) throws IOException {
@@ -133,6 +140,14 @@ public QuorumJournalManager(Configuration conf,
     this.selectInputStreamsTimeoutMs = conf.getInt(
         DFSConfigKeys.DFS_QJOURNAL_SELECT_INPUT_STREAMS_TIMEOUT_KEY,
         DFSConfigKeys.DFS_QJOURNAL_SELECT_INPUT_STREAMS_TIMEOUT_DEFAULT);
+    this.inProgressTailingEnabled = conf.getBoolean(
+        DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_KEY,
+        DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_DEFAULT);
+    this.maxTxnsPerRpc = conf.getInt(
+        DFSConfigKeys.DFS_QJOURNAL_RPC_MAX_TXNS_KEY,
+        DFSConfigKeys.DFS_QJOURNAL_RPC_MAX_TXNS_DEFAULT);
+    Preconditions.checkArgument(maxTxnsPerRpc > 0,
+        "%s must be positive", DFSConfigKeys.DFS_QJOURNAL_RPC_MAX_TXNS_KEY);
     this.getJournalStateTimeoutMs = conf.getInt(
         DFSConfigKeys.DFS_QJOURNAL_GET_JOURNAL_STATE_TIMEOUT_KEY,
         DFSConfigKeys.DFS_QJOURNAL_GET_JOURNAL_STATE_TIMEOUT_DEFAULT);
@@ -462,10 +477,71 @@ public void close() throws IOException {
     loggers.close();
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * If tailing of in-progress segments is enabled and in-progress segments
+   * are requested, the edits are fetched over RPC from the in-memory caches
+   * of the JournalNodes, falling back to reading the segments over HTTP if
+   * they are not cached. Either way, only the transactions of the
+   * in-progress segment which a majority of the JournalNodes hold are read.
+   */
   @Override
   public void selectInputStreams(Collection<EditLogInputStream> streams,
       long fromTxnId, boolean inProgressOk) throws IOException {
+    if (inProgressOk && inProgressTailingEnabled) {
+      try {
+        selectRpcInputStreams(streams, fromTxnId);
+        return;
+      } catch (IOException ioe) {
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Could not fetch edits from txid " + fromTxnId +
+              " over RPC, reading the log segments instead", ioe);
+        }
+      }
+    }
+    selectStreamingInputStreams(streams, fromTxnId, inProgressOk);
+  }
+
+  /**
+   * Fetch the edits starting at the given transaction from the caches of
+   * the JournalNodes. Since a JournalNode may hold transactions which never
+   * reached a quorum, only those which a majority of the JournalNodes
+   * returned are read; the responses all consist of whole batches starting
+   * at fromTxnId, so one of them holds exactly these.
+   */
+  private void selectRpcInputStreams(Collection<EditLogInputStream> streams,
+      long fromTxnId) throws IOException {
+    QuorumCall<AsyncLogger, GetJournaledEditsResponseProto> q =
+        loggers.getJournaledEdits(fromTxnId, maxTxnsPerRpc);
+    Map<AsyncLogger, GetJournaledEditsResponseProto> resps =
+        loggers.waitForWriteQuorum(q, selectInputStreamsTimeoutMs,
+            "selectRpcInputStreams");
+
+    List<Integer> txnCounts = new ArrayList<Integer>(resps.size());
+    for (GetJournaledEditsResponseProto resp : resps.values()) {
+      txnCounts.add(resp.getTxnCount());
+    }
+    Collections.sort(txnCounts);
+    int durableTxns =
+        txnCounts.get(txnCounts.size() - loggers.getMajoritySize());
+    if (durableTxns == 0) {
+      return;
+    }
+    for (Map.Entry<AsyncLogger, GetJournaledEditsResponseProto> e :
+        resps.entrySet()) {
+      if (e.getValue().getTxnCount() == durableTxns) {
+        streams.add(EditLogFileInputStream.fromByteString(
+            e.getValue().getEditLog(), "RPC edits from " + e.getKey(),
+            fromTxnId, fromTxnId + durableTxns - 1, true));
+        return;
+      }
+    }
+  }
 
+  private void selectStreamingInputStreams(
+      Collection<EditLogInputStream> streams, long fromTxnId,
+      boolean inProgressOk) throws IOException {
     QuorumCall<AsyncLogger, RemoteEditLogManifest> q =
         loggers.getEditLogManifest(fromTxnId, inProgressOk);
     Map<AsyncLogger, RemoteEditLogManifest> resps =
@@ -474,6 +550,11 @@ public void selectInputStreams(Collection<EditLogInputStream> streams,
     
     LOG.debug("selectInputStream manifests:\n" +
         Joiner.on("\n").withKeyValueSeparator(": ").join(resps));
+
+    long durableTxId = Long.MAX_VALUE;
+    if (inProgressOk && inProgressTailingEnabled) {
+      durableTxId = getDurableTxId(resps.values(), fromTxnId);
+    }
     
     final PriorityQueue<EditLogInputStream> allStreams = 
         new PriorityQueue<EditLogInputStream>(64,
@@ -483,16 +564,41 @@ public void selectInputStreams(Collection<EditLogInputStream> streams,
       RemoteEditLogManifest manifest = e.getValue();
       
       for (RemoteEditLog remoteLog : manifest.getLogs()) {
+        long endTxId = remoteLog.getEndTxId();
+        if (remoteLog.isInProgress()) {
+          endTxId = Math.min(endTxId, durableTxId);
+          if (endTxId < remoteLog.getStartTxId()) {
+            continue;
+          }
+        }
         URL url = logger.buildURLToFetchLogs(remoteLog.getStartTxId());
 
         EditLogInputStream elis = EditLogFileInputStream.fromUrl(
             connectionFactory, url, remoteLog.getStartTxId(),
-            remoteLog.getEndTxId(), remoteLog.isInProgress());
+            endTxId, remoteLog.isInProgress());
         allStreams.add(elis);
       }
     }
     JournalSet.chainAndMakeRedundantStreams(streams, allStreams, fromTxnId);
   }
+
+  /**
+   * @return the highest transaction which a majority of the JournalNodes
+   *         hold, according to their manifests
+   */
+  private long getDurableTxId(Collection<RemoteEditLogManifest> manifests,
+      long fromTxnId) {
+    List<Long> lastTxIds = new ArrayList<Long>(manifests.size());
+    for (RemoteEditLogManifest manifest : manifests) {
+      long lastTxId = fromTxnId - 1;
+      for (RemoteEditLog remoteLog : manifest.getLogs()) {
+        lastTxId = Math.max(lastTxId, remoteLog.getEndTxId());
+      }
+      lastTxIds.add(lastTxId);
+    }
+    Collections.sort(lastTxIds);
+    return lastTxIds.get(lastTxIds.size() - loggers.getMajoritySize());
+  }
   
   @Override
   public String toString() {
@@ -25,6 +25,7 @@
 import java.io.OutputStreamWriter;
 import java.net.URL;
 import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
@@ -34,10 +35,12 @@
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.qjournal.protocol.JournalNotFormattedException;
 import org.apache.hadoop.hdfs.qjournal.protocol.JournalOutOfSyncException;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocol;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos;
+import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournaledEditsResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.NewEpochResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.PersistedRecoveryPaxosData;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.PrepareRecoveryResponseProto;
@@ -69,6 +72,7 @@
 import com.google.common.base.Charsets;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
+import com.google.protobuf.ByteString;
 import com.google.protobuf.TextFormat;
 
 /**
@@ -83,6 +87,7 @@ public class Journal implements Closeable {
   // Current writing state
   private EditLogOutputStream curSegment;
   private long curSegmentTxId = HdfsServerConstants.INVALID_TXID;
+  private int curSegmentLayoutVersion = 0;
   private long nextTxId = HdfsServerConstants.INVALID_TXID;
   private long highestWrittenTxId = 0;
   
@@ -133,6 +138,12 @@ public class Journal implements Closeable {
 
   private final JournalMetrics metrics;
 
+  /**
+   * The recent edits which can be served over RPC, or null if tailing of
+   * in-progress segments is disabled.
+   */
+  private final JournaledEditsCache cache;
+
   private long lastJournalTimestamp = 0;
 
   /**
@@ -151,6 +162,15 @@ public class Journal implements Closeable {
     this.fjm = storage.getJournalManager();
     
     this.metrics = JournalMetrics.create(this);
+
+    if (conf.getBoolean(DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_KEY,
+        DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_DEFAULT)) {
+      this.cache = new JournaledEditsCache(conf.getInt(
+          DFSConfigKeys.DFS_JOURNALNODE_EDIT_CACHE_SIZE_KEY,
+          DFSConfigKeys.DFS_JOURNALNODE_EDIT_CACHE_SIZE_DEFAULT));
+    } else {
+      this.cache = null;
+    }
     
     EditLogFile latest = scanStorageForLatestEdits();
     if (latest != null) {
@@ -219,6 +239,9 @@ void format(NamespaceInfo nsInfo) throws IOException {
         nsInfo);
     storage.format(nsInfo);
     refreshCachedData();
+    if (cache != null) {
+      cache.clear();
+    }
   }
 
   /**
@@ -345,6 +368,10 @@ private void abortCurSegment() throws IOException {
     curSegment.abort();
     curSegment = null;
     curSegmentTxId = HdfsServerConstants.INVALID_TXID;
+    // The unfinalized edits may be replaced by recovery
+    if (cache != null) {
+      cache.clear();
+    }
   }
 
   /**
@@ -418,6 +445,11 @@ synchronized void journal(RequestInfo reqInfo,
     
     updateHighestWrittenTxId(lastTxnId);
     nextTxId = lastTxnId + 1;
+
+    if (cache != null) {
+      cache.storeEdits(records, firstTxnId, lastTxnId,
+          curSegmentLayoutVersion);
+    }
     lastJournalTimestamp = Time.now();
   }
 
@@ -565,6 +597,7 @@ public synchronized void startLogSegment(RequestInfo reqInfo, long txid,
     
     curSegment = fjm.startLogSegment(txid, layoutVersion);
     curSegmentTxId = txid;
+    curSegmentLayoutVersion = layoutVersion;
     nextTxId = txid;
   }
   
@@ -681,6 +714,40 @@ public RemoteEditLogManifest getEditLogManifest(long sinceTxId,
     return new RemoteEditLogManifest(logs);
   }
 
+  /**
+   * @see QJournalProtocol#getJournaledEdits(String, long, int)
+   */
+  public GetJournaledEditsResponseProto getJournaledEdits(long sinceTxId,
+      int maxTxns) throws IOException {
+    // No need to checkRequest() here - anyone may read edits. This does not
+    // take the journal lock either, so that readers do not wait for syncs:
+    // the cache only holds edits which have already been flushed.
+    if (cache == null) {
+      throw new IOException("The edit cache of journal " + journalId +
+          " is disabled; set " + DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_KEY +
+          " on the JournalNode to enable it");
+    }
+    List<byte[]> buffers = new ArrayList<byte[]>();
+    int txnCount;
+    try {
+      txnCount = cache.retrieveEdits(sinceTxId, maxTxns, buffers);
+    } catch (JournaledEditsCache.CacheMissException e) {
+      metrics.editCacheMisses.incr();
+      throw e;
+    }
+    GetJournaledEditsResponseProto.Builder builder =
+        GetJournaledEditsResponseProto.newBuilder().setTxnCount(txnCount);
+    if (txnCount > 0) {
+      ByteString.Output out = ByteString.newOutput();
+      for (byte[] buffer : buffers) {
+        out.write(buffer);
+      }
+      builder.setEditLog(out.toByteString());
+      metrics.txnsServedFromCache.incr(txnCount);
+    }
+    return builder.build();
+  }
+
   /**
    * @return the current state of the given segment, or null if the
    * segment does not exist.
@@ -1078,10 +1145,16 @@ public synchronized void doRollback() throws IOException {
     // directory will be renamed.  It will be reopened lazily on next access.
     IOUtils.cleanup(LOG, committedTxnId);
     storage.getJournalManager().doRollback();
+    if (cache != null) {
+      cache.clear();
+    }
   }
 
   synchronized void discardSegments(long startTxId) throws IOException {
     storage.getJournalManager().discardSegments(startTxId);
+    if (cache != null) {
+      cache.clear();
+    }
     // we delete all the segments after the startTxId. let's reset committedTxnId 
     committedTxnId.set(startTxId - 1);
   }
@@ -45,6 +45,12 @@ class JournalMetrics {
   
   @Metric("Number of batches written where this node was lagging")
   MutableCounterLong batchesWrittenWhileLagging;
+
+  @Metric("Number of txns served from the edit cache since startup")
+  MutableCounterLong txnsServedFromCache;
+
+  @Metric("Number of edit fetches which missed the edit cache")
+  MutableCounterLong editCacheMisses;
   
   private final int[] QUANTILE_INTERVALS = new int[] {
       1*60, // 1m
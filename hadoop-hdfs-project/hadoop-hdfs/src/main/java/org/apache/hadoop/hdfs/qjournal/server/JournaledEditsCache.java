@@ -0,0 +1,218 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.qjournal.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hdfs.server.common.HdfsServerConstants;
+import org.apache.hadoop.hdfs.server.namenode.EditLogFileOutputStream;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+/**
+ * An in-memory cache of the edits most recently written to a
+ * {@link Journal}, from which they can be served over RPC without touching
+ * the disk.
+ *
+ * Edits are kept as the batches sent by the writer, keyed by the first
+ * transaction ID of each batch, and only whole batches are returned. The
+ * cache always holds a contiguous range of transactions written with a
+ * single layout version: it is cleared when a batch does not follow the
+ * previous one, or uses another layout version. The oldest batches are
+ * evicted once the cache grows beyond its capacity.
+ */
+class JournaledEditsCache {
+  private static final Log LOG = LogFactory.getLog(JournaledEditsCache.class);
+
+  /** The maximum total size of the cached batches, in bytes. */
+  private final int capacity;
+
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+  /** The cached batches keyed by their first transaction ID. */
+  private final TreeMap<Long, byte[]> batches = new TreeMap<Long, byte[]>();
+  /** The total size of the cached batches, in bytes. */
+  private long size = 0;
+  /** The serialized edit log header for the cached edits. */
+  private byte[] layoutHeader = null;
+  private int layoutVersion = 0;
+  /** The lowest transaction ID which may be served from the cache. */
+  private long lowestTxId = HdfsServerConstants.INVALID_TXID;
+  /** The highest transaction ID which was added to the cache. */
+  private long highestTxId = HdfsServerConstants.INVALID_TXID;
+
+  JournaledEditsCache(int capacity) {
+    Preconditions.checkArgument(capacity > 0,
+        "Cache capacity must be positive, got %s", capacity);
+    this.capacity = capacity;
+  }
+
+  /**
+   * Add a batch of edits which has just been written to the journal.
+   *
+   * @param data the serialized edits
+   * @param firstTxId the first transaction ID of the batch
+   * @param lastTxId the last transaction ID of the batch
+   * @param version the layout version of the segment the batch belongs to
+   */
+  void storeEdits(byte[] data, long firstTxId, long lastTxId, int version)
+      throws IOException {
+    lock.writeLock().lock();
+    try {
+      if (layoutHeader == null || version != layoutVersion ||
+          firstTxId != highestTxId + 1) {
+        if (layoutHeader != null) {
+          LOG.info("Clearing the edit cache, which held transactions " +
+              lowestTxId + "-" + highestTxId + " of layout version " +
+              layoutVersion + ", to store transactions " + firstTxId + "-" +
+              lastTxId + " of layout version " + version);
+        }
+        clearInternal();
+        layoutHeader = serializeHeader(version);
+        layoutVersion = version;
+      }
+      if (data.length > capacity) {
+        // A batch larger than the whole cache can not be served; nothing
+        // before the next batch can be served either.
+        batches.clear();
+        size = 0;
+        lowestTxId = lastTxId + 1;
+      } else {
+        if (batches.isEmpty()) {
+          lowestTxId = firstTxId;
+        }
+        batches.put(firstTxId, data);
+        size += data.length;
+        while (size > capacity) {
+          size -= batches.pollFirstEntry().getValue().length;
+          lowestTxId = batches.firstKey();
+        }
+      }
+      highestTxId = lastTxId;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Fetch the cached edits starting at the given transaction.
+   *
+   * @param sinceTxId the first transaction to fetch; it must start a batch
+   * @param maxTxns the maximum number of transactions to fetch, unless the
+   *        first batch alone is larger
+   * @param out the buffers to append the edits to, starting with the edit
+   *        log header; nothing is appended if no edits are fetched
+   * @return the number of transactions fetched, 0 if the cache does not
+   *         hold any transaction newer than sinceTxId - 1
+   * @throws CacheMissException if the edits are not cached
+   */
+  int retrieveEdits(long sinceTxId, int maxTxns, List<byte[]> out)
+      throws CacheMissException {
+    lock.readLock().lock();
+    try {
+      if (layoutHeader == null || sinceTxId < lowestTxId) {
+        throw new CacheMissException("Transaction " + sinceTxId +
+            " is older than the cached transactions " + lowestTxId + "-" +
+            highestTxId);
+      }
+      if (sinceTxId > highestTxId) {
+        return 0;
+      }
+      if (!batches.containsKey(sinceTxId)) {
+        throw new CacheMissException("Transaction " + sinceTxId +
+            " does not start a cached batch");
+      }
+      out.add(layoutHeader);
+      int txns = 0;
+      for (Map.Entry<Long, byte[]> batch :
+          batches.tailMap(sinceTxId, true).entrySet()) {
+        Long nextTxId = batches.higherKey(batch.getKey());
+        long batchTxns = (nextTxId == null ? highestTxId + 1 : nextTxId) -
+            batch.getKey();
+        if (txns > 0 && txns + batchTxns > maxTxns) {
+          break;
+        }
+        out.add(batch.getValue());
+        txns += batchTxns;
+      }
+      return txns;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Drop all the cached edits, e.g. because the current segment was
+   * aborted and its edits may be replaced during recovery.
+   */
+  void clear() {
+    lock.writeLock().lock();
+    try {
+      clearInternal();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void clearInternal() {
+    batches.clear();
+    size = 0;
+    layoutHeader = null;
+    lowestTxId = HdfsServerConstants.INVALID_TXID;
+    highestTxId = HdfsServerConstants.INVALID_TXID;
+  }
+
+  @VisibleForTesting
+  long getSize() {
+    lock.readLock().lock();
+    try {
+      return size;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private static byte[] serializeHeader(int version) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    EditLogFileOutputStream.writeHeader(version, out);
+    out.flush();
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Thrown when the requested edits are not in the cache, so that they have
+   * to be read from the segments on disk instead.
+   */
+  static class CacheMissException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    CacheMissException(String msg) {
+      super(msg);
+    }
+  }
+}
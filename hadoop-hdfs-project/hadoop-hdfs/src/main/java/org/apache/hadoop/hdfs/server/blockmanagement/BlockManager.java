@@ -20,6 +20,7 @@
 import static org.apache.hadoop.util.ExitUtil.terminate;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.BitSet;
@@ -35,7 +36,14 @@
 import java.util.Queue;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 import javax.management.ObjectName;
@@ -194,6 +202,12 @@ public int getPendingDataNodeMessageCount() {
 
   /** Replication thread. */
   final Daemon replicationThread = new Daemon(new ReplicationMonitor());
+
+  /**
+   * Processes block reports off the RPC handlers, or null if the handlers
+   * process them directly.
+   */
+  private final BlockReportProcessingThread blockReportThread;
   
   /** Store blocks -> datanodedescriptor(s) map of corrupt replicas */
   final CorruptReplicasMap corruptReplicas = new CorruptReplicasMap();
@@ -380,6 +394,25 @@ public BlockManager(final Namesystem namesystem, final Configuration conf)
     this.numberOfBytesInFutureBlocks = new AtomicLong();
     this.inRollBack = isInRollBackMode(NameNode.getStartupOption(conf));
 
+    if (conf.getBoolean(DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_QUEUE_ENABLED_KEY,
+        DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_QUEUE_ENABLED_DEFAULT)) {
+      final int queueSize = conf.getInt(
+          DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_QUEUE_SIZE_KEY,
+          DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_QUEUE_SIZE_DEFAULT);
+      if (queueSize <= 0) {
+        throw new IOException("Unexpected configuration parameters: "
+            + DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_QUEUE_SIZE_KEY
+            + " = " + queueSize + " <= 0");
+      }
+      final long maxLockHoldTime = conf.getLong(
+          DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_MAX_LOCK_HOLD_TIME_MS_KEY,
+          DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_MAX_LOCK_HOLD_TIME_MS_DEFAULT);
+      this.blockReportThread =
+          new BlockReportProcessingThread(queueSize, maxLockHoldTime);
+    } else {
+      this.blockReportThread = null;
+    }
+
     LOG.info("defaultReplication         = " + defaultReplication);
     LOG.info("maxReplication             = " + maxReplication);
     LOG.info("minReplication             = " + minReplication);
@@ -493,6 +526,9 @@ public void activate(Configuration conf) {
     datanodeManager.activate(conf);
     this.replicationThread.setName("ReplicationMonitor");
     this.replicationThread.start();
+    if (blockReportThread != null) {
+      blockReportThread.start();
+    }
     mxBeanName = MBeans.register("NameNode", "BlockStats", this);
   }
 
@@ -502,6 +538,9 @@ public void close() {
       replicationThread.join(3000);
     } catch (InterruptedException ie) {
     }
+    if (blockReportThread != null) {
+      blockReportThread.stopProcessing();
+    }
     datanodeManager.close();
     pendingReplications.stop();
     blocksMap.close();
@@ -1682,6 +1721,85 @@ private boolean validateRecoveryWork(BlockRecoveryWork rw) {
     return true;
   }
 
+  /**
+   * Schedule the replication of a block to storages of the types which its
+   * storage policy expects but none of its replicas is on. Once the new
+   * replicas are reported, the replicas on the other types are removed as
+   * excess, see {@link #chooseExcessReplicates}.
+   *
+   * @return the number of new replicas scheduled, 0 if the replicas are all
+   *         on the expected storage types, or -1 if they are not and no
+   *         suitable target is available
+   */
+  public int scheduleStorageTypeMoves(BlockInfo block) {
+    assert namesystem.hasWriteLock();
+    BlockCollection bc = getBlockCollection(block);
+    if (bc == null || block.isStriped() || !block.isComplete()) {
+      return 0;
+    }
+    final BlockStoragePolicy storagePolicy =
+        storagePolicySuite.getPolicy(bc.getStoragePolicyID());
+    for (StorageType type : storagePolicy.getStorageTypes()) {
+      if (type.isTransient()) {
+        // The replicas are persisted by the DataNodes, e.g. LAZY_PERSIST
+        return 0;
+      }
+    }
+    final List<StorageType> expectedTypes =
+        storagePolicy.chooseStorageTypes(getExpectedReplicaNum(block));
+
+    // Match the live replicas with the storage types they are expected on
+    Collection<DatanodeDescriptor> corruptNodes =
+        corruptReplicas.getNodes(block);
+    Set<Node> containingNodes = new HashSet<>();
+    List<DatanodeStorageInfo> placed = new ArrayList<>();
+    List<DatanodeStorageInfo> misplaced = new ArrayList<>();
+    for (DatanodeStorageInfo storage :
+        blocksMap.getStorages(block, State.NORMAL)) {
+      final DatanodeDescriptor node = storage.getDatanodeDescriptor();
+      containingNodes.add(node);
+      LightWeightHashSet<BlockInfo> excessBlocks =
+          excessReplicateMap.get(node.getDatanodeUuid());
+      if (node.isDecommissionInProgress() || node.isDecommissioned()
+          || (corruptNodes != null && corruptNodes.contains(node))
+          || (excessBlocks != null && excessBlocks.contains(block))) {
+        continue;
+      }
+      if (expectedTypes.remove(storage.getStorageType())) {
+        placed.add(storage);
+      } else {
+        misplaced.add(storage);
+      }
+    }
+    if (misplaced.isEmpty() || expectedTypes.isEmpty()) {
+      return 0;
+    }
+
+    final DatanodeDescriptor source = misplaced.get(0).getDatanodeDescriptor();
+    final int numMoves = Math.min(misplaced.size(), expectedTypes.size());
+    DatanodeStorageInfo[] chosen = placementPolicies.getPolicy(false)
+        .chooseTarget(bc.getName(), numMoves, source, placed, false,
+            containingNodes, block.getNumBytes(), storagePolicy);
+    // Skip the targets chosen on fallback storage types
+    List<DatanodeStorageInfo> targets = new ArrayList<>(chosen.length);
+    for (DatanodeStorageInfo target : chosen) {
+      if (expectedTypes.remove(target.getStorageType())) {
+        targets.add(target);
+      }
+    }
+    if (targets.isEmpty()) {
+      return -1;
+    }
+
+    DatanodeStorageInfo[] targetArray =
+        targets.toArray(new DatanodeStorageInfo[targets.size()]);
+    source.addBlockToBeReplicated(block, targetArray);
+    DatanodeStorageInfo.incrementBlocksScheduled(targetArray);
+    blockLog.debug("BLOCK* ask {} to replicate {} to {} to satisfy the" +
+        " storage policy {}", source, block, targets, storagePolicy.getName());
+    return targetArray.length;
+  }
+
   /** Choose target for WebHDFS redirection. */
   public DatanodeStorageInfo[] chooseTarget4WebHDFS(String src,
       DatanodeDescriptor clientnode, Set<Node> excludes, long blocksize) {
@@ -3334,6 +3452,7 @@ public void removeStoredBlock(BlockInfo storedBlock, DatanodeDescriptor node) {
         if (removed) {
           blockLog.debug("BLOCK* removeStoredBlock: {} removed from caching "
               + "related lists on node {}", storedBlock, node);
+          namesystem.getCacheManager().notifyBlockChanged(cblock);
         }
       }
 
@@ -3708,6 +3827,12 @@ public void removeBlock(BlockInfo block) {
     block.setNumBytes(BlockCommand.NO_ACK);
     addToInvalidates(block);
     removeBlockFromMap(block);
+    // Have the DataNodes caching the block uncache it.
+    CachedBlock cblock = namesystem.getCacheManager().getCachedBlocks()
+        .get(new CachedBlock(block.getBlockId(), (short) 0, false));
+    if (cblock != null) {
+      namesystem.getCacheManager().notifyBlockChanged(cblock);
+    }
     // Remove the block from pendingReplications and neededReplications
     pendingReplications.remove(block);
     neededReplications.remove(block, UnderReplicatedBlocks.LEVEL);
@@ -3980,6 +4105,211 @@ public int numOfUnderReplicatedBlocks() {
     return neededReplications.size();
   }
 
+  /**
+   * Queue a block report action, which is run under the namesystem write
+   * lock by the block report processing thread. Exceptions thrown by the
+   * action are logged. If block reports are not queued, the action is run
+   * directly and its exceptions are thrown to the caller.
+   *
+   * If the queue is full, wait for space, which pushes back on the
+   * DataNodes sending the reports.
+   */
+  public void enqueueBlockOp(final Callable<?> action) throws IOException {
+    if (!isBlockReportThreadRunning()) {
+      call(action);
+      return;
+    }
+    putBlockOp(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          action.call();
+        } catch (Exception e) {
+          // Usually the node is no longer registered; the next heartbeat
+          // makes it register again and send a full block report.
+          blockLog.warn("BLOCK* Failed to process a queued block report", e);
+        }
+      }
+    });
+  }
+
+  /**
+   * Run a block report action under the namesystem write lock in the block
+   * report processing thread, and wait for its result.
+   * @see #enqueueBlockOp(Callable)
+   */
+  public <T> T runBlockOp(final Callable<T> action) throws IOException {
+    if (!isBlockReportThreadRunning()) {
+      return call(action);
+    }
+    final FutureTask<T> future = new FutureTask<T>(action);
+    putBlockOp(future);
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IOException(cause);
+    } catch (CancellationException e) {
+      throw new IOException("Block report processing stopped before the "
+          + "block report was processed");
+    } catch (InterruptedException e) {
+      throw new InterruptedIOException("Interrupted while waiting for a "
+          + "block report to be processed");
+    }
+  }
+
+  /** Wait until all the block report actions queued so far have run. */
+  @VisibleForTesting
+  public void flushBlockOps() throws IOException {
+    runBlockOp(new Callable<Void>() {
+      @Override
+      public Void call() {
+        return null;
+      }
+    });
+  }
+
+  /** Stop the block report processing thread, as on shutdown. */
+  @VisibleForTesting
+  void stopBlockOps() {
+    blockReportThread.stopProcessing();
+  }
+
+  private boolean isBlockReportThreadRunning() {
+    return blockReportThread != null && blockReportThread.isAlive();
+  }
+
+  private void putBlockOp(Runnable action) throws IOException {
+    try {
+      blockReportThread.enqueue(action);
+    } catch (InterruptedException e) {
+      throw new InterruptedIOException("Interrupted while queueing a "
+          + "block report");
+    }
+  }
+
+  private static <T> T call(Callable<T> action) throws IOException {
+    try {
+      return action.call();
+    } catch (IOException | RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IOException(e);
+    }
+  }
+
+  /**
+   * Runs queued block reports, processing as many of them per acquisition of
+   * the namesystem write lock as possible within the maximum lock hold time.
+   */
+  private class BlockReportProcessingThread extends Thread {
+    private final BlockingQueue<Runnable> queue;
+    private final long maxLockHoldTime;
+    private volatile boolean running = true;
+    private long lastFull = 0;
+
+    BlockReportProcessingThread(int queueSize, long maxLockHoldTime) {
+      super("BlockReportProcessor");
+      setDaemon(true);
+      this.queue = new ArrayBlockingQueue<Runnable>(queueSize);
+      this.maxLockHoldTime = maxLockHoldTime;
+    }
+
+    @Override
+    public void run() {
+      try {
+        processQueue();
+      } catch (InterruptedException e) {
+        if (running) {
+          LOG.error(getName() + " was interrupted", e);
+          terminate(1, e);
+        }
+        LOG.info("Stopping " + getName());
+      } catch (Throwable t) {
+        LOG.error(getName() + " received an exception", t);
+        terminate(1, t);
+      }
+    }
+
+    private void processQueue() throws InterruptedException {
+      while (running) {
+        Runnable action = queue.take();
+        int processed = 0;
+        final long start;
+        namesystem.writeLock();
+        try {
+          start = Time.monotonicNow();
+          do {
+            action.run();
+            processed++;
+            if (Time.monotonicNow() - start >= maxLockHoldTime) {
+              break;
+            }
+            action = queue.poll();
+          } while (action != null);
+        } finally {
+          namesystem.writeUnlock();
+        }
+        final NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+        if (metrics != null) {
+          metrics.addBlockOpsLockHold(Time.monotonicNow() - start);
+          metrics.addBlockOpsBatched(processed);
+          metrics.setBlockOpsQueued(queue.size());
+        }
+      }
+    }
+
+    void enqueue(Runnable action) throws IOException, InterruptedException {
+      boolean queued = running && queue.offer(action);
+      if (running && !queued) {
+        final long now = Time.monotonicNow();
+        if (now - lastFull > 4000) {
+          lastFull = now;
+          LOG.info("Block report queue is full");
+        }
+        // The drain in stopProcessing makes room for the handlers waiting
+        // here, so keep checking whether the processing stopped meanwhile
+        while (running && !queued) {
+          queued = queue.offer(action, 1, TimeUnit.SECONDS);
+        }
+      }
+      // Reject the action unless it got in before the queue was drained, in
+      // which case it ran or was cancelled
+      if (!running && (!queued || queue.remove(action))) {
+        throw new IOException(getName() + " is stopped");
+      }
+      final NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+      if (metrics != null) {
+        metrics.setBlockOpsQueued(queue.size());
+      }
+    }
+
+    void stopProcessing() {
+      running = false;
+      interrupt();
+      try {
+        join(3000);
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+      }
+      // fail the handlers waiting for the remaining reports
+      final List<Runnable> remaining = new ArrayList<Runnable>();
+      queue.drainTo(remaining);
+      for (Runnable action : remaining) {
+        if (action instanceof FutureTask) {
+          ((FutureTask<?>) action).cancel(false);
+        }
+      }
+    }
+  }
+
   /**
    * Periodically calls computeBlockRecoveryWork().
    */
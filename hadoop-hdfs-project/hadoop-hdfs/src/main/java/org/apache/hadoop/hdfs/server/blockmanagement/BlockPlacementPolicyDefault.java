@@ -27,6 +27,8 @@
 import org.apache.hadoop.hdfs.protocol.BlockStoragePolicy;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
+import org.apache.hadoop.hdfs.server.common.HdfsServerConstants;
+import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage;
 import org.apache.hadoop.net.NetworkTopology;
 import org.apache.hadoop.net.Node;
 import org.apache.hadoop.net.NodeBase;
@@ -93,6 +95,18 @@ public void initialize(Configuration conf,  FSClusterStats stats,
         DFSConfigKeys.DFS_NAMENODE_STALE_DATANODE_INTERVAL_DEFAULT);
   }
 
+  /**
+   * Stale and slow nodes are avoided on a first attempt to choose the
+   * targets. If that does not find enough targets, they are chosen again
+   * without avoiding them.
+   *
+   * @return Whether the first attempt should avoid stale and slow nodes.
+   */
+  private boolean shouldAvoidStaleOrSlowNodes() {
+    return stats != null && (stats.isAvoidingStaleDataNodesForWrite()
+        || stats.isAvoidingSlowDataNodesForWrite());
+  }
+
   @Override
   public DatanodeStorageInfo[] chooseTarget(String srcPath,
                                     int numOfReplicas,
@@ -131,8 +145,7 @@ DatanodeStorageInfo[] chooseTarget(String src,
 
       // Choose favored nodes
       List<DatanodeStorageInfo> results = new ArrayList<>();
-      boolean avoidStaleNodes = stats != null
-          && stats.isAvoidingStaleDataNodesForWrite();
+      boolean avoidStaleNodes = shouldAvoidStaleOrSlowNodes();
 
       int maxNodesAndReplicas[] = getMaxNodesPerRack(0, numOfReplicas);
       numOfReplicas = maxNodesAndReplicas[0];
@@ -203,8 +216,7 @@ private DatanodeStorageInfo[] chooseTarget(int numOfReplicas,
       addToExcludedNodes(storage.getDatanodeDescriptor(), excludedNodes);
     }
 
-    boolean avoidStaleNodes = (stats != null
-        && stats.isAvoidingStaleDataNodesForWrite());
+    boolean avoidStaleNodes = shouldAvoidStaleOrSlowNodes();
     final Node localNode = chooseTarget(numOfReplicas, writer, excludedNodes,
         blocksize, maxNodesPerRack, results, avoidStaleNodes, storagePolicy,
         EnumSet.noneOf(StorageType.class), results.isEmpty());
@@ -453,7 +465,8 @@ && isGoodDatanode(localDatanode, maxNodesPerRack, false,
             .entrySet().iterator(); iter.hasNext(); ) {
           Map.Entry<StorageType, Integer> entry = iter.next();
           DatanodeStorageInfo localStorage = chooseStorage4Block(
-              localDatanode, blocksize, results, entry.getKey());
+              localDatanode, blocksize, results, entry.getKey(),
+              avoidStaleNodes);
           if (localStorage != null) {
             // add node and related nodes to excludedNode
             addToExcludedNodes(localDatanode, excludedNodes);
@@ -669,7 +682,8 @@ protected DatanodeStorageInfo chooseRandom(int numOfReplicas,
               .entrySet().iterator(); iter.hasNext(); ) {
             Map.Entry<StorageType, Integer> entry = iter.next();
             storage = chooseStorage4Block(
-                chosenNode, blocksize, results, entry.getKey());
+                chosenNode, blocksize, results, entry.getKey(),
+                avoidStaleNodes);
             if (storage != null) {
               numOfReplicas--;
               if (firstChosen == null) {
@@ -730,14 +744,25 @@ protected DatanodeDescriptor chooseDataNode(final String scope) {
    * @param blockSize requested block size
    * @param results the result storages
    * @param storageType requested storage type
+   * @param avoidStaleNodes whether or not to avoid slow storages
    * @return the chosen datanode storage
    */
   DatanodeStorageInfo chooseStorage4Block(DatanodeDescriptor dnd,
       long blockSize,
       List<DatanodeStorageInfo> results,
-      StorageType storageType) {
+      StorageType storageType,
+      boolean avoidStaleNodes) {
     DatanodeStorageInfo storage =
         dnd.chooseStorage4Block(storageType, blockSize);
+    if (storage != null && avoidStaleNodes && stats != null
+        && stats.isAvoidingSlowDataNodesForWrite()) {
+      storage = chooseNonSlowStorage(dnd, storageType, blockSize);
+      if (storage == null) {
+        logNodeIsNotChosen(dnd, "all its storages of type " + storageType
+            + " are slow ");
+        return null;
+      }
+    }
     if (storage != null) {
       results.add(storage);
     } else {
@@ -746,6 +771,28 @@ DatanodeStorageInfo chooseStorage4Block(DatanodeDescriptor dnd,
     return storage;
   }
 
+  /**
+   * Choose a storage of the given type on a datanode which is not slow and
+   * has room for the block. Only the slow storages of a datanode are
+   * avoided, so that its other storages still receive writes.
+   *
+   * @return the storage, or null if every such storage is slow
+   */
+  private DatanodeStorageInfo chooseNonSlowStorage(DatanodeDescriptor dnd,
+      StorageType storageType, long blockSize) {
+    final long requiredSize =
+        blockSize * HdfsServerConstants.MIN_BLOCKS_FOR_WRITE;
+    for (DatanodeStorageInfo s : dnd.getStorageInfos()) {
+      if (s.getState() == DatanodeStorage.State.NORMAL
+          && s.getStorageType() == storageType
+          && s.getRemaining() >= requiredSize
+          && !stats.isSlowStorage(s)) {
+        return s;
+      }
+    }
+    return null;
+  }
+
   private static void logNodeIsNotChosen(DatanodeDescriptor node,
       String reason) {
     if (LOG.isDebugEnabled()) {
@@ -766,7 +813,8 @@ private static void logNodeIsNotChosen(DatanodeDescriptor node,
    * @param considerLoad whether or not to consider load of the target node
    * @param results A list containing currently chosen nodes. Used to check if
    *                too many nodes has been chosen in the target rack.
-   * @param avoidStaleNodes Whether or not to avoid choosing stale nodes
+   * @param avoidStaleNodes Whether or not to avoid choosing stale nodes,
+   *                        and slow nodes
    * @return Reture true if the datanode is good candidate, otherwise false
    */
   boolean isGoodDatanode(DatanodeDescriptor node,
@@ -779,11 +827,17 @@ boolean isGoodDatanode(DatanodeDescriptor node,
       return false;
     }
 
-    if (avoidStaleNodes) {
-      if (node.isStale(this.staleInterval)) {
+    if (avoidStaleNodes && stats != null) {
+      if (stats.isAvoidingStaleDataNodesForWrite()
+          && node.isStale(this.staleInterval)) {
         logNodeIsNotChosen(node, "the node is stale ");
         return false;
       }
+      if (stats.isAvoidingSlowDataNodesForWrite()
+          && stats.isSlowDataNode(node)) {
+        logNodeIsNotChosen(node, "the node is slow ");
+        return false;
+      }
     }
 
     // check the communication traffic of the target machine
@@ -24,10 +24,12 @@
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
@@ -61,7 +63,10 @@
  * Scans the namesystem, scheduling blocks to be cached as appropriate.
  *
  * The CacheReplicationMonitor does a full scan when the NameNode first
- * starts up, and at configurable intervals afterwards.
+ * starts up, and at a configurable (long) interval afterwards as a safety
+ * net.  In between, it does incremental scans at the refresh interval which
+ * only re-evaluate the cache directives, paths and cached blocks that were
+ * reported as changed by the CacheManager since the previous scan.
  */
 @InterfaceAudience.LimitedPrivate({"HDFS"})
 public class CacheReplicationMonitor extends Thread implements Closeable {
@@ -87,6 +92,12 @@ public class CacheReplicationMonitor extends Thread implements Closeable {
    */
   private final long intervalMs;
 
+  /**
+   * The interval at which we do a full scan of all cache directives and
+   * cached blocks, rather than an incremental scan.
+   */
+  private final long fullRescanIntervalMs;
+
   /**
    * The CacheReplicationMonitor (CRM) lock. Used to synchronize starting and
    * waiting for rescan operations.
@@ -125,6 +136,31 @@ public class CacheReplicationMonitor extends Thread implements Closeable {
    */
   private boolean shutdown = false;
 
+  /**
+   * True if the next scan must be a full scan. Protected by the CRM lock.
+   */
+  private boolean needsFullRescan = false;
+
+  /**
+   * Directives whose statistics and blocks must be re-evaluated by the next
+   * incremental scan. Protected by the FSN write lock.
+   */
+  private Set<CacheDirective> changedDirectives =
+      new HashSet<CacheDirective>();
+
+  /**
+   * Paths whose files must have their cache replication recomputed by the
+   * next incremental scan, e.g. because a directive on them was removed.
+   * Protected by the FSN write lock.
+   */
+  private Set<String> changedPaths = new HashSet<String>();
+
+  /**
+   * Cached blocks which must be re-evaluated by the next incremental scan.
+   * Protected by the FSN write lock.
+   */
+  private Set<CachedBlock> changedBlocks = new HashSet<CachedBlock>();
+
   /**
    * Mark status of the current scan.
    */
@@ -140,13 +176,20 @@ public class CacheReplicationMonitor extends Thread implements Closeable {
    */
   private long scannedBlocks;
 
+  /**
+   * Whether the previous scan was a full scan.
+   */
+  private boolean fullScan;
+
   public CacheReplicationMonitor(FSNamesystem namesystem,
-      CacheManager cacheManager, long intervalMs, ReentrantLock lock) {
+      CacheManager cacheManager, long intervalMs, long fullRescanIntervalMs,
+      ReentrantLock lock) {
     this.namesystem = namesystem;
     this.blockManager = namesystem.getBlockManager();
     this.cacheManager = cacheManager;
     this.cachedBlocks = cacheManager.getCachedBlocks();
     this.intervalMs = intervalMs;
+    this.fullRescanIntervalMs = fullRescanIntervalMs;
     this.lock = lock;
     this.doRescan = this.lock.newCondition();
     this.scanFinished = this.lock.newCondition();
@@ -155,10 +198,13 @@ public CacheReplicationMonitor(FSNamesystem namesystem,
   @Override
   public void run() {
     long startTimeMs = 0;
+    long fullScanStartTimeMs = 0;
+    boolean scannedFully = false;
     Thread.currentThread().setName("CacheReplicationMonitor(" +
         System.identityHashCode(this) + ")");
     LOG.info("Starting CacheReplicationMonitor with interval " +
-             intervalMs + " milliseconds");
+             intervalMs + " milliseconds and full rescan interval " +
+             fullRescanIntervalMs + " milliseconds");
     try {
       long curTimeMs = Time.monotonicNow();
       while (true) {
@@ -185,8 +231,12 @@ public void run() {
           lock.unlock();
         }
         startTimeMs = curTimeMs;
-        mark = !mark;
-        rescan();
+        boolean full = !scannedFully || fullRescanIntervalMs <= intervalMs ||
+            curTimeMs - fullScanStartTimeMs >= fullRescanIntervalMs;
+        if (rescan(full)) {
+          scannedFully = true;
+          fullScanStartTimeMs = startTimeMs;
+        }
         curTimeMs = Time.monotonicNow();
         // Update synchronization-related variables.
         lock.lock();
@@ -197,8 +247,9 @@ public void run() {
         } finally {
           lock.unlock();
         }
-        LOG.debug("Scanned {} directive(s) and {} block(s) in {} millisecond(s).",
-            scannedDirectives, scannedBlocks, (curTimeMs - startTimeMs));
+        LOG.debug("Scanned {} directive(s) and {} block(s) in {} millisecond(s)"
+            + " ({} scan).", scannedDirectives, scannedBlocks,
+            (curTimeMs - startTimeMs), fullScan ? "full" : "incremental");
       }
     } catch (InterruptedException e) {
       LOG.info("Shutting down CacheReplicationMonitor.");
@@ -258,6 +309,45 @@ public void setNeedsRescan() {
     }
   }
 
+  /**
+   * Indicates to the CacheReplicationMonitor that there have been CacheManager
+   * changes which can't be handled incrementally, such as a change to a
+   * cache pool's limit, and that the next rescan must be a full one.
+   */
+  public void setNeedsFullRescan() {
+    Preconditions.checkArgument(lock.isHeldByCurrentThread(),
+        "Must hold the CRM lock when setting the needsFullRescan bit.");
+    needsFullRescan = true;
+    setNeedsRescan();
+  }
+
+  /**
+   * Records that a cache directive was added or that the files it covers
+   * changed, so the next incremental scan re-evaluates it.
+   */
+  public void addChangedDirective(CacheDirective directive) {
+    Preconditions.checkArgument(namesystem.hasWriteLock());
+    changedDirectives.add(directive);
+  }
+
+  /**
+   * Records that the cache replication of the files at a path may have
+   * changed, e.g. because a directive on the path was removed, or a file
+   * was renamed there.
+   */
+  public void addChangedPath(String path) {
+    Preconditions.checkArgument(namesystem.hasWriteLock());
+    changedPaths.add(path);
+  }
+
+  /**
+   * Records that the set of DataNodes caching or storing a block changed.
+   */
+  public void addChangedBlock(CachedBlock cblock) {
+    Preconditions.checkArgument(namesystem.hasWriteLock());
+    changedBlocks.add(cblock);
+  }
+
   /**
    * Shut down the monitor thread.
    */
@@ -281,7 +371,14 @@ public void close() throws IOException {
     }
   }
 
-  private void rescan() throws InterruptedException {
+  /**
+   * Do a full or incremental rescan.
+   *
+   * @param full Whether a full rescan is due.
+   * @return true if a full rescan was done. A full rescan is also done when
+   *         one was requested via {@link #setNeedsFullRescan()}.
+   */
+  private boolean rescan(boolean full) throws InterruptedException {
     scannedDirectives = 0;
     scannedBlocks = 0;
     try {
@@ -293,17 +390,30 @@ private void rescan() throws InterruptedException {
               "shut down.");
         }
         curScanCount = completedScanCount + 1;
+        full |= needsFullRescan;
+        needsFullRescan = false;
       } finally {
         lock.unlock();
       }
 
-      resetStatistics();
-      rescanCacheDirectives();
-      rescanCachedBlockMap();
+      fullScan = full;
+      if (full) {
+        // Everything is re-evaluated, so the recorded changes are moot.
+        changedDirectives.clear();
+        changedPaths.clear();
+        changedBlocks.clear();
+        mark = !mark;
+        resetStatistics();
+        rescanCacheDirectives();
+        rescanCachedBlockMap();
+      } else {
+        rescanChanges();
+      }
       blockManager.getDatanodeManager().resetLastCachingDirectiveSentTime();
     } finally {
       namesystem.writeUnlock();
     }
+    return full;
   }
 
   private void resetStatistics() {
@@ -495,87 +605,253 @@ private void rescanCachedBlockMap() {
         cbIter.hasNext(); ) {
       scannedBlocks++;
       CachedBlock cblock = cbIter.next();
-      List<DatanodeDescriptor> pendingCached =
-          cblock.getDatanodes(Type.PENDING_CACHED);
-      List<DatanodeDescriptor> cached =
-          cblock.getDatanodes(Type.CACHED);
-      List<DatanodeDescriptor> pendingUncached =
-          cblock.getDatanodes(Type.PENDING_UNCACHED);
-      // Remove nodes from PENDING_UNCACHED if they were actually uncached.
+      if (rescanCachedBlock(cblock)) {
+        cbIter.remove();
+      }
+    }
+  }
+
+  /**
+   * Assign new Datanodes to a cached block if it is under-replicated, or
+   * remove it from Datanodes if it is over-replicated.
+   *
+   * @param cblock The cached block.
+   * @return true if there is nothing more to do with the block, and it
+   *         should be removed from the cachedBlocks map.
+   */
+  private boolean rescanCachedBlock(CachedBlock cblock) {
+    List<DatanodeDescriptor> pendingCached =
+        cblock.getDatanodes(Type.PENDING_CACHED);
+    List<DatanodeDescriptor> cached =
+        cblock.getDatanodes(Type.CACHED);
+    List<DatanodeDescriptor> pendingUncached =
+        cblock.getDatanodes(Type.PENDING_UNCACHED);
+    // Remove nodes from PENDING_UNCACHED if they were actually uncached.
+    for (Iterator<DatanodeDescriptor> iter = pendingUncached.iterator();
+        iter.hasNext(); ) {
+      DatanodeDescriptor datanode = iter.next();
+      if (!cblock.isInList(datanode.getCached())) {
+        LOG.trace("Block {}: removing from PENDING_UNCACHED for node {} "
+            + "because the DataNode uncached it.", cblock.getBlockId(),
+            datanode.getDatanodeUuid());
+        datanode.getPendingUncached().remove(cblock);
+        iter.remove();
+      }
+    }
+    BlockInfo blockInfo = blockManager.
+          getStoredBlock(new Block(cblock.getBlockId()));
+    String reason = findReasonForNotCaching(cblock, blockInfo);
+    int neededCached = 0;
+    if (reason != null) {
+      LOG.trace("Block {}: can't cache block because it is {}",
+          cblock.getBlockId(), reason);
+    } else {
+      neededCached = cblock.getReplication();
+    }
+    int numCached = cached.size();
+    if (numCached >= neededCached) {
+      // If we have enough replicas, drop all pending cached.
+      for (Iterator<DatanodeDescriptor> iter = pendingCached.iterator();
+          iter.hasNext(); ) {
+        DatanodeDescriptor datanode = iter.next();
+        datanode.getPendingCached().remove(cblock);
+        iter.remove();
+        LOG.trace("Block {}: removing from PENDING_CACHED for node {}"
+                + "because we already have {} cached replicas and we only" +
+                " need {}",
+            cblock.getBlockId(), datanode.getDatanodeUuid(), numCached,
+            neededCached
+        );
+      }
+    }
+    if (numCached < neededCached) {
+      // If we don't have enough replicas, drop all pending uncached.
       for (Iterator<DatanodeDescriptor> iter = pendingUncached.iterator();
           iter.hasNext(); ) {
         DatanodeDescriptor datanode = iter.next();
-        if (!cblock.isInList(datanode.getCached())) {
-          LOG.trace("Block {}: removing from PENDING_UNCACHED for node {} "
-              + "because the DataNode uncached it.", cblock.getBlockId(),
-              datanode.getDatanodeUuid());
-          datanode.getPendingUncached().remove(cblock);
-          iter.remove();
-        }
+        datanode.getPendingUncached().remove(cblock);
+        iter.remove();
+        LOG.trace("Block {}: removing from PENDING_UNCACHED for node {} "
+                + "because we only have {} cached replicas and we need " +
+                "{}", cblock.getBlockId(), datanode.getDatanodeUuid(),
+            numCached, neededCached
+        );
       }
-      BlockInfo blockInfo = blockManager.
-            getStoredBlock(new Block(cblock.getBlockId()));
-      String reason = findReasonForNotCaching(cblock, blockInfo);
-      int neededCached = 0;
-      if (reason != null) {
-        LOG.trace("Block {}: can't cache block because it is {}",
-            cblock.getBlockId(), reason);
-      } else {
-        neededCached = cblock.getReplication();
-      }
-      int numCached = cached.size();
-      if (numCached >= neededCached) {
-        // If we have enough replicas, drop all pending cached.
-        for (Iterator<DatanodeDescriptor> iter = pendingCached.iterator();
-            iter.hasNext(); ) {
-          DatanodeDescriptor datanode = iter.next();
-          datanode.getPendingCached().remove(cblock);
-          iter.remove();
-          LOG.trace("Block {}: removing from PENDING_CACHED for node {}"
-                  + "because we already have {} cached replicas and we only" +
-                  " need {}",
-              cblock.getBlockId(), datanode.getDatanodeUuid(), numCached,
-              neededCached
-          );
-        }
+    }
+    int neededUncached = numCached -
+        (pendingUncached.size() + neededCached);
+    if (neededUncached > 0) {
+      addNewPendingUncached(neededUncached, cblock, cached,
+          pendingUncached);
+    } else {
+      int additionalCachedNeeded = neededCached -
+          (numCached + pendingCached.size());
+      if (additionalCachedNeeded > 0) {
+        addNewPendingCached(additionalCachedNeeded, cblock, cached,
+            pendingCached);
       }
-      if (numCached < neededCached) {
-        // If we don't have enough replicas, drop all pending uncached.
-        for (Iterator<DatanodeDescriptor> iter = pendingUncached.iterator();
-            iter.hasNext(); ) {
-          DatanodeDescriptor datanode = iter.next();
-          datanode.getPendingUncached().remove(cblock);
-          iter.remove();
-          LOG.trace("Block {}: removing from PENDING_UNCACHED for node {} "
-                  + "because we only have {} cached replicas and we need " +
-                  "{}", cblock.getBlockId(), datanode.getDatanodeUuid(),
-              numCached, neededCached
-          );
-        }
+    }
+    if ((neededCached == 0) &&
+        pendingUncached.isEmpty() &&
+        pendingCached.isEmpty()) {
+      // we have nothing more to do with this block.
+      LOG.trace("Block {}: removing from cachedBlocks, since neededCached "
+              + "== 0, and pendingUncached and pendingCached are empty.",
+          cblock.getBlockId()
+      );
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Re-evaluate what changed since the previous scan: the recorded
+   * directives, paths and cached blocks, and any directive which expired.
+   * This is much cheaper than a full scan on a namespace with many cached
+   * files, but relies on the CacheManager reporting every relevant change.
+   * Anything missed is fixed up by the next full scan.
+   */
+  private void rescanChanges() {
+    final long now = new Date().getTime();
+    Set<CacheDirective> directives = changedDirectives;
+    Set<String> paths = changedPaths;
+    Set<CachedBlock> blocks = changedBlocks;
+    changedDirectives = new HashSet<CacheDirective>();
+    changedPaths = new HashSet<String>();
+    changedBlocks = new HashSet<CachedBlock>();
+
+    // A directive which expired since it was scanned no longer covers its
+    // files.
+    for (CacheDirective directive : cacheManager.getCacheDirectives()) {
+      if (isExpired(directive, now) && (directive.getFilesNeeded() > 0 ||
+          directive.getBytesNeeded() > 0)) {
+        directives.add(directive);
+        paths.add(directive.getPath());
       }
-      int neededUncached = numCached -
-          (pendingUncached.size() + neededCached);
-      if (neededUncached > 0) {
-        addNewPendingUncached(neededUncached, cblock, cached,
-            pendingUncached);
-      } else {
-        int additionalCachedNeeded = neededCached -
-            (numCached + pendingCached.size());
-        if (additionalCachedNeeded > 0) {
-          addNewPendingCached(additionalCachedNeeded, cblock, cached,
-              pendingCached);
+    }
+    // The statistics of the directives covering a changed block are stale.
+    for (CachedBlock cblock : blocks) {
+      BlockInfo blockInfo =
+          blockManager.getStoredBlock(new Block(cblock.getBlockId()));
+      BlockCollection bc = blockInfo == null ? null :
+          blockManager.getBlockCollection(blockInfo);
+      if (bc != null) {
+        directives.addAll(
+            cacheManager.getCacheDirectivesCovering(bc.getName()));
+      }
+    }
+
+    Set<INodeFile> files = new HashSet<INodeFile>();
+    for (CacheDirective directive : directives) {
+      if (directive.getPool() == null) {
+        // The directive was removed after it was recorded.
+        continue;
+      }
+      scannedDirectives++;
+      directive.addBytesNeeded(-directive.getBytesNeeded());
+      directive.addBytesCached(-directive.getBytesCached());
+      directive.addFilesNeeded(-directive.getFilesNeeded());
+      directive.addFilesCached(-directive.getFilesCached());
+      if (isExpired(directive, now)) {
+        continue;
+      }
+      for (INodeFile file : getFiles(directive.getPath())) {
+        rescanFile(directive, file);
+        files.add(file);
+      }
+    }
+    for (String path : paths) {
+      files.addAll(getFiles(path));
+    }
+    for (INodeFile file : files) {
+      updateCachedBlocks(file, now, blocks);
+    }
+
+    for (CachedBlock cblock : blocks) {
+      if (cachedBlocks.get(cblock) != cblock) {
+        // Already dropped from the cachedBlocks map.
+        continue;
+      }
+      scannedBlocks++;
+      if (rescanCachedBlock(cblock)) {
+        cachedBlocks.remove(cblock);
+      } else if (cblock.getReplication() >
+          cblock.getDatanodes(Type.CACHED).size() +
+          cblock.getDatanodes(Type.PENDING_CACHED).size()) {
+        // Not enough Datanodes could be found. Try again next time.
+        changedBlocks.add(cblock);
+      }
+    }
+  }
+
+  private static boolean isExpired(CacheDirective directive, long now) {
+    return directive.getExpiryTime() > 0 && directive.getExpiryTime() <= now;
+  }
+
+  /**
+   * Get the files a cache directive on the given path would cover.
+   */
+  private List<INodeFile> getFiles(String path) {
+    List<INodeFile> files = new ArrayList<INodeFile>();
+    INode node;
+    try {
+      node = namesystem.getFSDirectory().getINode(path);
+    } catch (UnresolvedLinkException e) {
+      // We don't cache through symlinks
+      return files;
+    }
+    if (node == null) {
+      return files;
+    } else if (node.isDirectory()) {
+      for (INode child : node.asDirectory()
+          .getChildrenList(Snapshot.CURRENT_STATE_ID)) {
+        if (child.isFile()) {
+          files.add(child.asFile());
         }
       }
-      if ((neededCached == 0) &&
-          pendingUncached.isEmpty() &&
-          pendingCached.isEmpty()) {
-        // we have nothing more to do with this block.
-        LOG.trace("Block {}: removing from cachedBlocks, since neededCached "
-                + "== 0, and pendingUncached and pendingCached are empty.",
-            cblock.getBlockId()
-        );
-        cbIter.remove();
+    } else if (node.isFile()) {
+      files.add(node.asFile());
+    }
+    return files;
+  }
+
+  /**
+   * Set the replication of a file's cached blocks to the highest replication
+   * asked for by the unexpired directives covering the file.
+   *
+   * @param file The file.
+   * @param now The current time, for checking directive expiry.
+   * @param blocks Collects the cached blocks which must be rescanned.
+   */
+  private void updateCachedBlocks(INodeFile file, long now,
+      Set<CachedBlock> blocks) {
+    short replication = 0;
+    for (CacheDirective directive :
+        cacheManager.getCacheDirectivesCovering(file.getFullPathName())) {
+      if (isExpired(directive, now)) {
+        continue;
+      }
+      CachePool pool = directive.getPool();
+      if (pool.getBytesNeeded() > pool.getLimit()) {
+        // Which of the pool's files get cached depends on the order of a
+        // full scan. Leave the file's blocks to the next full scan.
+        return;
+      }
+      replication = (short)Math.max(replication, directive.getReplication());
+    }
+    for (BlockInfo blockInfo : file.getBlocks()) {
+      CachedBlock cblock = cachedBlocks.get(
+          new CachedBlock(blockInfo.getBlockId(), (short)0, false));
+      if (cblock == null) {
+        if (replication == 0 || !blockInfo.isComplete()) {
+          continue;
+        }
+        cblock = new CachedBlock(blockInfo.getBlockId(), replication, mark);
+        cachedBlocks.put(cblock);
+      } else {
+        cblock.setReplicationAndMark(replication, mark);
       }
+      blocks.add(cblock);
     }
   }
 
@@ -45,6 +45,7 @@
 import org.apache.hadoop.net.*;
 import org.apache.hadoop.net.NetworkTopology.InvalidTopologyException;
 import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.hadoop.util.Timer;
 
 import java.io.IOException;
 import java.io.PrintWriter;
@@ -54,6 +55,8 @@
 import java.util.*;
 import java.util.concurrent.ThreadLocalRandom;
 
+import javax.annotation.Nonnull;
+
 /**
  * Manage datanodes, include decommission and other activities.
  */
@@ -133,6 +136,15 @@ public class DatanodeManager {
    */
   private final float ratioUseStaleDataNodesForWrite;
 
+  /**
+   * Whether or not to prefer DataNodes which are not reported as slow for
+   * writing.
+   */
+  private final boolean avoidSlowDataNodesForWrite;
+
+  /** Aggregates the slow peers and slow disks reported by DataNodes. */
+  private final SlowNodeTracker slowNodeTracker;
+
   /** The number of stale DataNodes */
   private volatile int numStaleNodes;
 
@@ -262,6 +274,10 @@ public class DatanodeManager {
         DFSConfigKeys.DFS_NAMENODE_USE_STALE_DATANODE_FOR_WRITE_RATIO_KEY +
         " = '" + ratioUseStaleDataNodesForWrite + "' is invalid. " +
         "It should be a positive non-zero float value, not greater than 1.0f.");
+    this.avoidSlowDataNodesForWrite = conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_AVOID_SLOW_DATANODE_FOR_WRITE_KEY,
+        DFSConfigKeys.DFS_NAMENODE_AVOID_SLOW_DATANODE_FOR_WRITE_DEFAULT);
+    this.slowNodeTracker = new SlowNodeTracker(conf, new Timer());
     this.timeBetweenResendingCachingDirectivesMs = conf.getLong(
         DFSConfigKeys.DFS_NAMENODE_PATH_BASED_CACHE_RETRY_INTERVAL_MS,
         DFSConfigKeys.DFS_NAMENODE_PATH_BASED_CACHE_RETRY_INTERVAL_MS_DEFAULT);
@@ -1077,6 +1093,34 @@ public boolean shouldAvoidStaleDataNodesForWrite() {
             * ratioUseStaleDataNodesForWrite);
   }
 
+  /**
+   * @return true if slow DataNodes and storages should be avoided for
+   *         writing, and some DataNode or storage may currently be slow.
+   */
+  public boolean shouldAvoidSlowDataNodesForWrite() {
+    return avoidSlowDataNodesForWrite && (slowNodeTracker.haveSlowNodes()
+        || slowNodeTracker.haveSlowStorages());
+  }
+
+  /**
+   * @return true if the given DataNode was recently reported as slow.
+   */
+  public boolean isSlowDataNode(DatanodeDescriptor node) {
+    return slowNodeTracker.isSlowNode(node.getDatanodeUuid());
+  }
+
+  /**
+   * @return true if the given storage was recently reported as slow.
+   */
+  public boolean isSlowStorage(DatanodeStorageInfo storage) {
+    return slowNodeTracker.isSlowStorage(storage.getStorageID());
+  }
+
+  @VisibleForTesting
+  SlowNodeTracker getSlowNodeTracker() {
+    return slowNodeTracker;
+  }
+
   public long getBlocksPerPostponedMisreplicatedBlocksRescan() {
     return blocksPerPostponedMisreplicatedBlocksRescan;
   }
@@ -1319,7 +1363,9 @@ public DatanodeCommand[] handleHeartbeat(DatanodeRegistration nodeReg,
       StorageReport[] reports, final String blockPoolId,
       long cacheCapacity, long cacheUsed, int xceiverCount, 
       int maxTransfers, int failedVolumes,
-      VolumeFailureSummary volumeFailureSummary) throws IOException {
+      VolumeFailureSummary volumeFailureSummary,
+      @Nonnull SlowPeerReports slowPeers,
+      @Nonnull SlowDiskReports slowDisks) throws IOException {
     synchronized (heartbeatManager) {
       synchronized (datanodeMap) {
         DatanodeDescriptor nodeinfo;
@@ -1343,6 +1389,8 @@ public DatanodeCommand[] handleHeartbeat(DatanodeRegistration nodeReg,
                                          cacheCapacity, cacheUsed,
                                          xceiverCount, failedVolumes,
                                          volumeFailureSummary);
+        slowNodeTracker.addReports(nodeinfo.getDatanodeUuid(), slowPeers,
+            slowDisks);
 
         // If we are in safemode, do not send back any recovery / replication
         // requests. Don't even drain the existing queue of work.
@@ -1582,6 +1630,21 @@ public boolean isAvoidingStaleDataNodesForWrite() {
         return shouldAvoidStaleDataNodesForWrite();
       }
 
+      @Override
+      public boolean isAvoidingSlowDataNodesForWrite() {
+        return shouldAvoidSlowDataNodesForWrite();
+      }
+
+      @Override
+      public boolean isSlowDataNode(DatanodeDescriptor node) {
+        return DatanodeManager.this.isSlowDataNode(node);
+      }
+
+      @Override
+      public boolean isSlowStorage(DatanodeStorageInfo storage) {
+        return DatanodeManager.this.isSlowStorage(storage);
+      }
+
       @Override
       public int getNumDatanodesInService() {
         return heartbeatManager.getNumDatanodesInService();
@@ -43,6 +43,33 @@ public interface FSClusterStats {
    */
   public boolean isAvoidingStaleDataNodesForWrite();
 
+  /**
+   * Indicate whether or not the cluster is now preferring DataNodes and
+   * storages which are not slow for writing.
+   *
+   * @return True if the cluster is currently avoiding using slow DataNodes
+   *         and storages for writing targets, and false otherwise.
+   */
+  public boolean isAvoidingSlowDataNodesForWrite();
+
+  /**
+   * Indicate whether or not a DataNode was recently reported as slow by the
+   * DataNodes writing to it.
+   *
+   * @param node The DataNode.
+   * @return True if the DataNode is slow.
+   */
+  public boolean isSlowDataNode(DatanodeDescriptor node);
+
+  /**
+   * Indicate whether or not a storage was recently reported as slow by its
+   * DataNode.
+   *
+   * @param storage The storage.
+   * @return True if the storage is slow.
+   */
+  public boolean isSlowStorage(DatanodeStorageInfo storage);
+
   /**
    * Indicates number of datanodes that are in service.
    * @return Number of datanodes that are both alive and not decommissioned.
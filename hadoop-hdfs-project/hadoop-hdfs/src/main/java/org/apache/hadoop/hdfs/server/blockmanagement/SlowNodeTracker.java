@@ -0,0 +1,204 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.server.protocol.SlowDiskReports;
+import org.apache.hadoop.hdfs.server.protocol.SlowPeerReports;
+import org.apache.hadoop.util.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Aggregates the slow peer and slow disk reports which DataNodes send in
+ * their heartbeats, and tells which DataNodes and storages are currently
+ * slow.
+ *
+ * A DataNode is slow if another DataNode reported it as a slow peer. A
+ * storage is slow if its DataNode reported the volume as slow; the other
+ * storages of the DataNode are not affected. Reports expire after a few
+ * report intervals, so a DataNode or storage stops being slow once nobody
+ * reports it any more.
+ *
+ * This class is thread-safe.
+ */
+@InterfaceAudience.Private
+class SlowNodeTracker {
+  static final Logger LOG = LoggerFactory.getLogger(SlowNodeTracker.class);
+
+  /**
+   * A report is valid for this many report intervals. Reports are only
+   * sent when a DataNode has something to report, so a report of a node
+   * which is no longer slow is never withdrawn, it just expires.
+   */
+  private static final long REPORT_VALIDITY_MULTIPLIER = 3;
+
+  private final Timer timer;
+
+  /** Time in milliseconds after which a report expires. */
+  private final long reportValidityMs;
+
+  /**
+   * Maps the DatanodeUuid of each node reported as a slow peer to the
+   * DatanodeUuids of its reporters, and the time of their latest report.
+   */
+  private final ConcurrentMap<String, ConcurrentMap<String, Long>>
+      slowPeerReports = new ConcurrentHashMap<>();
+
+  /**
+   * Maps the storage ID of each storage reported as slow to the time of its
+   * latest report.
+   */
+  private final ConcurrentMap<String, Long> slowDiskReports =
+      new ConcurrentHashMap<>();
+
+  SlowNodeTracker(Configuration conf, Timer timer) {
+    this.timer = timer;
+    this.reportValidityMs = conf.getLong(
+        DFSConfigKeys.DFS_DATANODE_OUTLIERS_REPORT_INTERVAL_MS_KEY,
+        DFSConfigKeys.DFS_DATANODE_OUTLIERS_REPORT_INTERVAL_MS_DEFAULT) *
+        REPORT_VALIDITY_MULTIPLIER;
+  }
+
+  /**
+   * Record the slow peers and slow disks reported by a DataNode.
+   *
+   * @param reportingNode DatanodeUuid of the reporting DataNode.
+   * @param slowPeers The slow peers it reported.
+   * @param slowDisks The slow volumes it reported.
+   */
+  void addReports(String reportingNode, SlowPeerReports slowPeers,
+      SlowDiskReports slowDisks) {
+    final long now = timer.monotonicNow();
+    if (slowPeers.haveSlowPeers()) {
+      for (String slowNode : slowPeers.getSlowPeers().keySet()) {
+        ConcurrentMap<String, Long> reporters = slowPeerReports.get(slowNode);
+        if (reporters == null) {
+          reporters = new ConcurrentHashMap<>();
+          ConcurrentMap<String, Long> prev =
+              slowPeerReports.putIfAbsent(slowNode, reporters);
+          if (prev != null) {
+            reporters = prev;
+          }
+        }
+        reporters.put(reportingNode, now);
+      }
+      LOG.debug("DataNode {} reported slow peers {}", reportingNode,
+          slowPeers);
+    }
+    if (slowDisks.haveSlowDisks()) {
+      for (String slowStorage : slowDisks.getSlowDisks().keySet()) {
+        slowDiskReports.put(slowStorage, now);
+      }
+      LOG.debug("DataNode {} reported slow disks {}", reportingNode,
+          slowDisks);
+    }
+  }
+
+  /**
+   * @return true if the DataNode with the given DatanodeUuid was reported
+   *         as slow, and the report has not expired.
+   */
+  boolean isSlowNode(String datanodeUuid) {
+    final long now = timer.monotonicNow();
+    ConcurrentMap<String, Long> reporters = slowPeerReports.get(datanodeUuid);
+    if (reporters == null) {
+      return false;
+    }
+    for (Iterator<Map.Entry<String, Long>> it =
+        reporters.entrySet().iterator(); it.hasNext(); ) {
+      if (now - it.next().getValue() < reportValidityMs) {
+        return true;
+      }
+      it.remove();
+    }
+    if (reporters.isEmpty()) {
+      slowPeerReports.remove(datanodeUuid, reporters);
+    }
+    return false;
+  }
+
+  /**
+   * @return true if the storage with the given storage ID was reported as
+   *         slow, and the report has not expired.
+   */
+  boolean isSlowStorage(String storageId) {
+    Long reportTime = slowDiskReports.get(storageId);
+    if (reportTime == null) {
+      return false;
+    }
+    if (timer.monotonicNow() - reportTime < reportValidityMs) {
+      return true;
+    }
+    slowDiskReports.remove(storageId, reportTime);
+    return false;
+  }
+
+  /**
+   * @return true if any DataNode may currently be slow.
+   */
+  boolean haveSlowNodes() {
+    return !slowPeerReports.isEmpty();
+  }
+
+  /**
+   * @return true if any storage may currently be slow.
+   */
+  boolean haveSlowStorages() {
+    return !slowDiskReports.isEmpty();
+  }
+
+  /**
+   * @return The DatanodeUuids of the DataNodes which are currently slow.
+   */
+  @VisibleForTesting
+  Set<String> getSlowNodes() {
+    Set<String> slowNodes = new HashSet<>();
+    for (String datanodeUuid : slowPeerReports.keySet()) {
+      if (isSlowNode(datanodeUuid)) {
+        slowNodes.add(datanodeUuid);
+      }
+    }
+    return slowNodes;
+  }
+
+  /**
+   * @return The storage IDs of the storages which are currently slow.
+   */
+  @VisibleForTesting
+  Set<String> getSlowStorages() {
+    Set<String> slowStorages = new HashSet<>();
+    for (String storageId : slowDiskReports.keySet()) {
+      if (isSlowStorage(storageId)) {
+        slowStorages.add(storageId);
+      }
+    }
+    return slowStorages;
+  }
+}
@@ -44,6 +44,8 @@
 import org.apache.hadoop.hdfs.protocol.UnregisteredNodeException;
 import org.apache.hadoop.hdfs.protocolPB.DatanodeProtocolClientSideTranslatorPB;
 import org.apache.hadoop.hdfs.server.common.IncorrectVersionException;
+import org.apache.hadoop.hdfs.server.datanode.metrics.DataNodeDiskMetrics;
+import org.apache.hadoop.hdfs.server.datanode.metrics.DataNodePeerMetrics;
 import org.apache.hadoop.hdfs.server.namenode.FSNamesystem;
 import org.apache.hadoop.hdfs.server.protocol.BlockReportContext;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeCommand;
@@ -53,6 +55,8 @@
 import org.apache.hadoop.hdfs.server.protocol.HeartbeatResponse;
 import org.apache.hadoop.hdfs.server.protocol.NamespaceInfo;
 import org.apache.hadoop.hdfs.server.protocol.ReceivedDeletedBlockInfo;
+import org.apache.hadoop.hdfs.server.protocol.SlowDiskReports;
+import org.apache.hadoop.hdfs.server.protocol.SlowPeerReports;
 import org.apache.hadoop.hdfs.server.protocol.StorageBlockReport;
 import org.apache.hadoop.hdfs.server.protocol.StorageReceivedDeletedBlocks;
 import org.apache.hadoop.hdfs.server.protocol.StorageReport;
@@ -124,7 +128,8 @@ static enum RunningState {
     this.nnAddr = nnAddr;
     this.dnConf = dn.getDnConf();
     prevBlockReportId = ThreadLocalRandom.current().nextLong();
-    scheduler = new Scheduler(dnConf.heartBeatInterval, dnConf.blockReportInterval);
+    scheduler = new Scheduler(dnConf.heartBeatInterval,
+        dnConf.blockReportInterval, dnConf.outliersReportIntervalMs);
   }
 
   boolean isAlive() {
@@ -550,7 +555,19 @@ HeartbeatResponse sendHeartBeat(boolean requestBlockReportLease)
         .getVolumeFailureSummary();
     int numFailedVolumes = volumeFailureSummary != null ?
         volumeFailureSummary.getFailedStorageLocations().length : 0;
-    return bpNamenode.sendHeartbeat(bpRegistration,
+    final boolean outliersReportDue = scheduler.isOutliersReportDue(
+        monotonicNow());
+    final DataNodePeerMetrics peerMetrics = dn.getPeerMetrics();
+    final SlowPeerReports slowPeers =
+        outliersReportDue && peerMetrics != null ?
+            SlowPeerReports.create(peerMetrics.getOutliers()) :
+            SlowPeerReports.EMPTY_REPORT;
+    final DataNodeDiskMetrics diskMetrics = dn.getDiskMetrics();
+    final SlowDiskReports slowDisks =
+        outliersReportDue && diskMetrics != null ?
+            SlowDiskReports.create(diskMetrics.getOutliers()) :
+            SlowDiskReports.EMPTY_REPORT;
+    HeartbeatResponse response = bpNamenode.sendHeartbeat(bpRegistration,
         reports,
         dn.getFSDataset().getCacheCapacity(),
         dn.getFSDataset().getCacheUsed(),
@@ -558,7 +575,14 @@ HeartbeatResponse sendHeartBeat(boolean requestBlockReportLease)
         dn.getXceiverCount(),
         numFailedVolumes,
         volumeFailureSummary,
-        requestBlockReportLease);
+        requestBlockReportLease,
+        slowPeers,
+        slowDisks);
+    if (outliersReportDue) {
+      // The report was sent, so schedule the next one.
+      scheduler.scheduleNextOutliersReport();
+    }
+    return response;
   }
   
   //This must be called only by BPOfferService
@@ -1035,6 +1059,9 @@ static class Scheduler {
     @VisibleForTesting
     volatile long nextHeartbeatTime = monotonicNow();
 
+    @VisibleForTesting
+    volatile long nextOutliersReportTime = monotonicNow();
+
     @VisibleForTesting
     boolean resetBlockReportTime = true;
 
@@ -1043,10 +1070,13 @@ static class Scheduler {
 
     private final long heartbeatIntervalMs;
     private final long blockReportIntervalMs;
+    private final long outliersReportIntervalMs;
 
-    Scheduler(long heartbeatIntervalMs, long blockReportIntervalMs) {
+    Scheduler(long heartbeatIntervalMs, long blockReportIntervalMs,
+        long outliersReportIntervalMs) {
       this.heartbeatIntervalMs = heartbeatIntervalMs;
       this.blockReportIntervalMs = blockReportIntervalMs;
+      this.outliersReportIntervalMs = outliersReportIntervalMs;
     }
 
     // This is useful to make sure NN gets Heartbeat before Blockreport
@@ -1076,6 +1106,14 @@ boolean isBlockReportDue(long curTime) {
       return nextBlockReportTime - curTime <= 0;
     }
 
+    boolean isOutliersReportDue(long curTime) {
+      return nextOutliersReportTime - curTime <= 0;
+    }
+
+    void scheduleNextOutliersReport() {
+      nextOutliersReportTime = monotonicNow() + outliersReportIntervalMs;
+    }
+
     void forceFullBlockReportNow() {
       forceFullBlockReport.set(true);
       resetBlockReportTime = true;
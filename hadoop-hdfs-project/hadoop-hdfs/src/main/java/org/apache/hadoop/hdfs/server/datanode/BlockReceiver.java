@@ -50,6 +50,8 @@
 import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.Status;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.ReplicaInputStreams;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.ReplicaOutputStreams;
+import org.apache.hadoop.hdfs.server.datanode.metrics.DataNodeDiskMetrics;
+import org.apache.hadoop.hdfs.server.datanode.metrics.DataNodePeerMetrics;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeRegistration;
 import org.apache.hadoop.hdfs.util.DataTransferThrottler;
 import org.apache.hadoop.io.IOUtils;
@@ -92,6 +94,12 @@ class BlockReceiver implements Closeable {
   private final int checksumSize;
   
   private final PacketReceiver packetReceiver = new PacketReceiver(false);
+
+  /**
+   * The shared memory buffers to read the packets of a short-circuit write
+   * from, once a local client sent such a packet.
+   */
+  private ShortCircuitWriteBuffer shortCircuitBuffer = null;
   
   protected final String inAddr;
   protected final String myAddr;
@@ -124,6 +132,13 @@ class BlockReceiver implements Closeable {
   private final boolean isTransfer;
 
   private boolean syncOnClose;
+  /**
+   * The length of the replica flushed for the packets whose sync is left to
+   * the responder, when back-to-back hsyncs are coalesced.
+   */
+  private volatile long flushedLength = 0;
+  /** The length of the replica the responder forced to disk. */
+  private long syncedLength = 0;
   private long restartBudget;
   /** the reference of the volume where the block receiver writes to */
   private ReplicaHandler replicaHandler;
@@ -302,6 +317,10 @@ String getStorageUuid() {
   @Override
   public void close() throws IOException {
     packetReceiver.close();
+    if (isClient) {
+      // Revoke the access of a local client to the data of the block
+      datanode.releaseShortCircuitWriteBuffer(block);
+    }
 
     IOException ioe = null;
     if (syncOnClose && (out != null || checksumOut != null)) {
@@ -392,6 +411,7 @@ synchronized boolean packetSentInTime() {
    */
   void flushOrSync(boolean isSync) throws IOException {
     long flushTotalNanos = 0;
+    long fsyncTotalNanos = 0;
     long begin = Time.monotonicNow();
     if (checksumOut != null) {
       long flushStartNanos = System.nanoTime();
@@ -400,7 +420,9 @@ void flushOrSync(boolean isSync) throws IOException {
       if (isSync) {
         long fsyncStartNanos = flushEndNanos;
         streams.syncChecksumOut();
-        datanode.metrics.addFsyncNanos(System.nanoTime() - fsyncStartNanos);
+        long fsyncNanos = System.nanoTime() - fsyncStartNanos;
+        datanode.metrics.addFsyncNanos(fsyncNanos);
+        fsyncTotalNanos += fsyncNanos;
       }
       flushTotalNanos += flushEndNanos - flushStartNanos;
     }
@@ -411,7 +433,9 @@ void flushOrSync(boolean isSync) throws IOException {
       if (isSync) {
         long fsyncStartNanos = flushEndNanos;
         streams.syncDataOut();
-        datanode.metrics.addFsyncNanos(System.nanoTime() - fsyncStartNanos);
+        long fsyncNanos = System.nanoTime() - fsyncStartNanos;
+        datanode.metrics.addFsyncNanos(fsyncNanos);
+        fsyncTotalNanos += fsyncNanos;
       }
       flushTotalNanos += flushEndNanos - flushStartNanos;
     }
@@ -420,6 +444,13 @@ void flushOrSync(boolean isSync) throws IOException {
       if (isSync) {
     	  datanode.metrics.incrFsyncCount();      
       }
+      DataNodeDiskMetrics diskMetrics = datanode.getDiskMetrics();
+      if (diskMetrics != null) {
+        diskMetrics.addFlush(replicaInfo.getStorageUuid(), flushTotalNanos);
+        if (isSync) {
+          diskMetrics.addSync(replicaInfo.getStorageUuid(), fsyncTotalNanos);
+        }
+      }
     }
     long duration = Time.monotonicNow() - begin;
     if (duration > datanodeSlowLogThresholdMs) {
@@ -429,6 +460,39 @@ void flushOrSync(boolean isSync) throws IOException {
     }
   }
 
+  /**
+   * Force the block data and metadata files to disk on behalf of a packet
+   * which requested a sync, from the responder. A force covers every packet
+   * flushed before it started, so it is skipped if an earlier force already
+   * covered the packet.
+   * @param length the length of the replica including the packet
+   * @throws IOException
+   */
+  private void syncFlushed(long length) throws IOException {
+    if (length <= syncedLength) {
+      return;
+    }
+    final long flushed = flushedLength;
+    long begin = Time.monotonicNow();
+    long fsyncStartNanos = System.nanoTime();
+    streams.syncChecksumOut();
+    streams.syncDataOut();
+    long fsyncNanos = System.nanoTime() - fsyncStartNanos;
+    syncedLength = flushed;
+    datanode.metrics.addFsyncNanos(fsyncNanos);
+    datanode.metrics.incrFsyncCount();
+    DataNodeDiskMetrics diskMetrics = datanode.getDiskMetrics();
+    if (diskMetrics != null) {
+      diskMetrics.addSync(replicaInfo.getStorageUuid(), fsyncNanos);
+    }
+    long duration = Time.monotonicNow() - begin;
+    if (duration > datanodeSlowLogThresholdMs) {
+      LOG.warn("Slow sync of " + block + " took " + duration
+          + "ms (threshold=" + datanodeSlowLogThresholdMs + "ms), length="
+          + flushed);
+    }
+  }
+
   /**
    * While writing to mirrorOut, failure to write to mirror should not
    * affect this datanode unless it is caused by interruption.
@@ -530,6 +594,17 @@ private int receivePacket() throws IOException {
     boolean lastPacketInBlock = header.isLastPacketInBlock();
     final int len = header.getDataLen();
     boolean syncBlock = header.getSyncBlock();
+    final boolean dataOnDisk = header.isDataOnDisk();
+    if (dataOnDisk) {
+      readDataOnDisk(offsetInBlock, len);
+    }
+    // The client can still change the buffers a short-circuit packet was
+    // read from, so only the copy which was read is verified and stored
+    final boolean verifyChecksum = shouldVerifyChecksum() || dataOnDisk;
+    // When coalescing hsyncs, the packet is only flushed here, and the
+    // responder forces the files before acknowledging it
+    final boolean deferSync = syncBlock && responder != null
+        && datanode.getDnConf().syncGroupCommit;
 
     // avoid double sync'ing on close
     if (syncBlock && lastPacketInBlock) {
@@ -544,7 +619,7 @@ private int receivePacket() throws IOException {
     }
     
     // put in queue for pending acks, unless sync was requested
-    if (responder != null && !syncBlock && !shouldVerifyChecksum()) {
+    if (responder != null && !syncBlock && !verifyChecksum) {
       ((PacketResponder) responder.getRunnable()).enqueue(seqno,
           lastPacketInBlock, offsetInBlock, Status.SUCCESS);
     }
@@ -582,7 +657,7 @@ private int receivePacket() throws IOException {
       }
       // sync block if requested
       if (syncBlock) {
-        flushOrSync(true);
+        flushOrSync(!deferSync);
       }
     } else {
       final int checksumLen = diskChecksum.getChecksumSize(len);
@@ -593,7 +668,7 @@ private int receivePacket() throws IOException {
             + checksumReceivedLen + " but expected length is " + checksumLen);
       }
 
-      if (checksumReceivedLen > 0 && shouldVerifyChecksum()) {
+      if (checksumReceivedLen > 0 && verifyChecksum) {
         try {
           verifyChunks(dataBuf, checksumBuf);
         } catch (IOException ioe) {
@@ -767,7 +842,7 @@ private int receivePacket() throws IOException {
           }
 
           /// flush entire packet, sync if requested
-          flushOrSync(syncBlock);
+          flushOrSync(syncBlock && !deferSync);
           
           replicaInfo.setLastChecksumAndDataLen(offsetInBlock, lastCrc);
 
@@ -783,10 +858,13 @@ private int receivePacket() throws IOException {
     }
 
     // if sync was requested, put in queue for pending acks here
-    // (after the fsync finished)
-    if (responder != null && (syncBlock || shouldVerifyChecksum())) {
+    // (after the fsync finished, or the flush if the responder syncs)
+    if (responder != null && (syncBlock || verifyChecksum)) {
+      if (deferSync) {
+        flushedLength = offsetInBlock;
+      }
       ((PacketResponder) responder.getRunnable()).enqueue(seqno,
-          lastPacketInBlock, offsetInBlock, Status.SUCCESS);
+          lastPacketInBlock, offsetInBlock, Status.SUCCESS, deferSync);
     }
 
     /*
@@ -810,6 +888,33 @@ private int receivePacket() throws IOException {
     return lastPacketInBlock?-1:len;
   }
 
+  /**
+   * Read the checksums and data of a packet which a local client wrote to
+   * the shared memory buffers of a short-circuit write, so that the packet
+   * can be verified, stored and mirrored like any other.
+   */
+  private void readDataOnDisk(long offsetInBlock, int len)
+      throws IOException {
+    if (!isClient || needsChecksumTranslation ||
+        streams.isTransientStorage()) {
+      throw new IOException("Unexpected short-circuit packet for " + block +
+          " from " + inAddr);
+    }
+    if (offsetInBlock % bytesPerChecksum != 0) {
+      throw new IOException("Short-circuit packet for " + block + " from " +
+          inAddr + " at offset " + offsetInBlock +
+          " is not aligned on a chunk boundary");
+    }
+    if (shortCircuitBuffer == null) {
+      shortCircuitBuffer = datanode.getShortCircuitWriteBuffer(block);
+      if (shortCircuitBuffer == null) {
+        throw new IOException("No short-circuit buffers for " + block +
+            " from " + inAddr);
+      }
+    }
+    shortCircuitBuffer.readPacket(packetReceiver, offsetInBlock, len);
+  }
+
   private static byte[] copyLastChunkChecksum(byte[] array, int size, int end) {
     return Arrays.copyOfRange(array, end - size, end);
   }
@@ -1121,6 +1226,8 @@ class PacketResponder implements Runnable, Closeable {
     private final PacketResponderType type;
     /** for log and error messages */
     private final String myString; 
+    /** DatanodeUuid of the next downstream datanode, for peer metrics */
+    private final String downstreamUuid;
     private boolean sending = false;
 
     @Override
@@ -1136,6 +1243,9 @@ public String toString() {
       this.type = downstreams == null? PacketResponderType.NON_PIPELINE
           : downstreams.length == 0? PacketResponderType.LAST_IN_PIPELINE
               : PacketResponderType.HAS_DOWNSTREAM_IN_PIPELINE;
+      this.downstreamUuid =
+          type == PacketResponderType.HAS_DOWNSTREAM_IN_PIPELINE ?
+              downstreams[0].getDatanodeUuid() : null;
 
       final StringBuilder b = new StringBuilder(getClass().getSimpleName())
           .append(": ").append(block).append(", type=").append(type);
@@ -1160,8 +1270,22 @@ private boolean isRunning() {
      */
     void enqueue(final long seqno, final boolean lastPacketInBlock,
         final long offsetInBlock, final Status ackStatus) {
+      enqueue(seqno, lastPacketInBlock, offsetInBlock, ackStatus, false);
+    }
+
+    /**
+     * enqueue the seqno that is still be to acked by the downstream datanode.
+     * @param seqno sequence number of the packet
+     * @param lastPacketInBlock if true, this is the last packet in block
+     * @param offsetInBlock offset of this packet in block
+     * @param syncBlock if true, the block files must be forced to disk
+     *                  before the packet is acked
+     */
+    void enqueue(final long seqno, final boolean lastPacketInBlock,
+        final long offsetInBlock, final Status ackStatus,
+        final boolean syncBlock) {
       final Packet p = new Packet(seqno, lastPacketInBlock, offsetInBlock,
-          System.nanoTime(), ackStatus);
+          System.nanoTime(), ackStatus, syncBlock);
       if(LOG.isDebugEnabled()) {
         LOG.debug(myString + ": enqueue " + p);
       }
@@ -1323,6 +1447,11 @@ public void run() {
                   }
                 } else {
                   datanode.metrics.addPacketAckRoundTripTimeNanos(ackTimeNanos);
+                  DataNodePeerMetrics peerMetrics = datanode.getPeerMetrics();
+                  if (peerMetrics != null && downstreamUuid != null) {
+                    peerMetrics.addSendPacketDownstream(downstreamUuid,
+                        ackTimeNanos);
+                  }
                 }
               }
               lastPacketInBlock = pkt.lastPacketInBlock;
@@ -1369,6 +1498,11 @@ public void run() {
             continue;
           }
 
+          if (pkt != null && pkt.syncBlock) {
+            // Force the block files, unless an earlier force covered them
+            syncFlushed(pkt.offsetInBlock);
+          }
+
           if (lastPacketInBlock) {
             // Finalize the block and close the block file
             finalizeBlock(startTime);
@@ -1567,14 +1701,16 @@ private static class Packet {
     final long offsetInBlock;
     final long ackEnqueueNanoTime;
     final Status ackStatus;
+    final boolean syncBlock;
 
     Packet(long seqno, boolean lastPacketInBlock, long offsetInBlock,
-        long ackEnqueueNanoTime, Status ackStatus) {
+        long ackEnqueueNanoTime, Status ackStatus, boolean syncBlock) {
       this.seqno = seqno;
       this.lastPacketInBlock = lastPacketInBlock;
       this.offsetInBlock = offsetInBlock;
       this.ackEnqueueNanoTime = ackEnqueueNanoTime;
       this.ackStatus = ackStatus;
+      this.syncBlock = syncBlock;
     }
 
     @Override
@@ -1584,6 +1720,7 @@ public String toString() {
         + ", offsetInBlock=" + offsetInBlock
         + ", ackEnqueueNanoTime=" + ackEnqueueNanoTime
         + ", ackStatus=" + ackStatus
+        + ", syncBlock=" + syncBlock
         + ")";
     }
   }
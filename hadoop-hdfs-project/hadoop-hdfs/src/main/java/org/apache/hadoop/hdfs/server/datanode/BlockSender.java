@@ -237,12 +237,8 @@ class BlockSender implements java.io.Closeable {
             "If verifying checksum, currently must also send it.");
       }
       
-      final Replica replica;
-      final long replicaVisibleLength;
-      synchronized(datanode.data) { 
-        replica = getReplica(block, datanode);
-        replicaVisibleLength = replica.getVisibleLength();
-      }
+      final Replica replica = getReplica(block, datanode);
+      final long replicaVisibleLength = replica.getVisibleLength();
       // if there is a write in progress
       ChunkChecksum chunkChecksum = null;
       if (replica instanceof ReplicaBeingWritten) {
@@ -266,6 +262,10 @@ class BlockSender implements java.io.Closeable {
         throw new IOException("Replica is not readable, block="
             + block + ", replica=" + replica);
       }
+      // Only client reads count towards caching frequently read blocks
+      if (clientTraceFmt != null && replica instanceof FinalizedReplica) {
+        datanode.data.onBlockRead(block);
+      }
       if (DataNode.LOG.isDebugEnabled()) {
         DataNode.LOG.debug("block=" + block + ", replica=" + replica);
       }
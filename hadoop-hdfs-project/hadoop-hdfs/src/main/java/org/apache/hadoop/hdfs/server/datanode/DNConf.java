@@ -37,6 +37,8 @@
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_SOCKET_WRITE_TIMEOUT_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_SYNCONCLOSE_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_SYNCONCLOSE_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_SYNC_GROUP_COMMIT_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_SYNC_GROUP_COMMIT_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_TRANSFERTO_ALLOWED_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_TRANSFERTO_ALLOWED_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_XCEIVER_STOP_TIMEOUT_MILLIS_DEFAULT;
@@ -80,6 +82,7 @@ public class DNConf {
   final boolean syncBehindWritesInBackground;
   final boolean dropCacheBehindReads;
   final boolean syncOnClose;
+  final boolean syncGroupCommit;
   final boolean encryptDataTransfer;
   final boolean connectToDnViaHostname;
 
@@ -89,6 +92,7 @@ public class DNConf {
   final long blockReportSplitThreshold;
   final long initialBlockReportDelayMs;
   final long cacheReportInterval;
+  final long outliersReportIntervalMs;
   final long dfsclientSlowIoWarningThresholdMs;
   final long datanodeSlowIoWarningThresholdMs;
   final int writePacketSize;
@@ -107,6 +111,10 @@ public class DNConf {
   // Allow LAZY_PERSIST writes from non-local clients?
   private final boolean allowNonLocalLazyPersist;
 
+  // Let local clients write the data of new blocks to shared memory?
+  private final boolean shortCircuitLocalWrites;
+  private final int shortCircuitWriteBufferSize;
+
   public DNConf(Configuration conf) {
     this.conf = conf;
     socketTimeout = conf.getInt(DFS_CLIENT_SOCKET_TIMEOUT_KEY,
@@ -156,6 +164,9 @@ public DNConf(Configuration conf) {
                                             DFS_BLOCKREPORT_SPLIT_THRESHOLD_DEFAULT);
     this.cacheReportInterval = conf.getLong(DFS_CACHEREPORT_INTERVAL_MSEC_KEY,
         DFS_CACHEREPORT_INTERVAL_MSEC_DEFAULT);
+    this.outliersReportIntervalMs = conf.getLong(
+        DFSConfigKeys.DFS_DATANODE_OUTLIERS_REPORT_INTERVAL_MS_KEY,
+        DFSConfigKeys.DFS_DATANODE_OUTLIERS_REPORT_INTERVAL_MS_DEFAULT);
 
     this.dfsclientSlowIoWarningThresholdMs = conf.getLong(
         HdfsClientConfigKeys.DFS_CLIENT_SLOW_IO_WARNING_THRESHOLD_KEY,
@@ -181,6 +192,9 @@ public DNConf(Configuration conf) {
     // do we need to sync block file contents to disk when blockfile is closed?
     this.syncOnClose = conf.getBoolean(DFS_DATANODE_SYNCONCLOSE_KEY, 
         DFS_DATANODE_SYNCONCLOSE_DEFAULT);
+    // do we coalesce back-to-back hsyncs of a replica?
+    this.syncGroupCommit = conf.getBoolean(DFS_DATANODE_SYNC_GROUP_COMMIT_KEY,
+        DFS_DATANODE_SYNC_GROUP_COMMIT_DEFAULT);
 
     this.minimumNameNodeVersion = conf.get(DFS_DATANODE_MIN_SUPPORTED_NAMENODE_VERSION_KEY,
         DFS_DATANODE_MIN_SUPPORTED_NAMENODE_VERSION_DEFAULT);
@@ -210,6 +224,13 @@ public DNConf(Configuration conf) {
     this.allowNonLocalLazyPersist = conf.getBoolean(
         DFS_DATANODE_NON_LOCAL_LAZY_PERSIST,
         DFS_DATANODE_NON_LOCAL_LAZY_PERSIST_DEFAULT);
+
+    this.shortCircuitLocalWrites = conf.getBoolean(
+        HdfsClientConfigKeys.Write.ShortCircuit.KEY,
+        HdfsClientConfigKeys.Write.ShortCircuit.DEFAULT);
+    this.shortCircuitWriteBufferSize = conf.getInt(
+        DFSConfigKeys.DFS_DATANODE_SHORT_CIRCUIT_WRITE_BUFFER_SIZE_KEY,
+        DFSConfigKeys.DFS_DATANODE_SHORT_CIRCUIT_WRITE_BUFFER_SIZE_DEFAULT);
   }
 
   // We get minimumNameNodeVersion via a method so it can be mocked out in tests.
@@ -315,6 +336,14 @@ public boolean getAllowNonLocalLazyPersist() {
     return allowNonLocalLazyPersist;
   }
 
+  public boolean getShortCircuitLocalWrites() {
+    return shortCircuitLocalWrites;
+  }
+
+  public int getShortCircuitWriteBufferSize() {
+    return shortCircuitWriteBufferSize;
+  }
+
   public int getTransferSocketRecvBufferSize() {
     return transferSocketRecvBufferSize;
   }
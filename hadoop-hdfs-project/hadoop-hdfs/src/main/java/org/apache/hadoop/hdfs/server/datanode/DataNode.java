@@ -81,6 +81,8 @@
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -90,6 +92,7 @@
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.annotation.Nullable;
 import javax.management.ObjectName;
 
 
@@ -109,6 +112,7 @@
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.DFSUtil;
 import org.apache.hadoop.hdfs.DFSUtilClient;
+import org.apache.hadoop.hdfs.ExtendedBlockId;
 import org.apache.hadoop.hdfs.HDFSPolicyProvider;
 import org.apache.hadoop.hdfs.HdfsConfiguration;
 import org.apache.hadoop.hdfs.client.BlockReportOptions;
@@ -157,9 +161,12 @@
 import org.apache.hadoop.hdfs.server.common.StorageInfo;
 import org.apache.hadoop.hdfs.server.datanode.SecureDataNodeStarter.SecureResources;
 import org.apache.hadoop.hdfs.server.datanode.erasurecode.ErasureCodingWorker;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.AutoCloseableLock;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsDatasetSpi;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
+import org.apache.hadoop.hdfs.server.datanode.metrics.DataNodeDiskMetrics;
 import org.apache.hadoop.hdfs.server.datanode.metrics.DataNodeMetrics;
+import org.apache.hadoop.hdfs.server.datanode.metrics.DataNodePeerMetrics;
 import org.apache.hadoop.hdfs.server.datanode.web.DatanodeHttpServer;
 import org.apache.hadoop.hdfs.server.protocol.BlockRecoveryCommand.RecoveringBlock;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeProtocol;
@@ -192,6 +199,7 @@
 import org.apache.hadoop.tracing.TraceAdminProtocolServerSideTranslatorPB;
 import org.apache.hadoop.tracing.TraceUtils;
 import org.apache.hadoop.tracing.TracerConfigurationManager;
+import org.apache.hadoop.util.DataChecksum;
 import org.apache.hadoop.util.Daemon;
 import org.apache.hadoop.util.DiskChecker;
 import org.apache.hadoop.util.DiskChecker.DiskErrorException;
@@ -320,6 +328,10 @@ public static InetSocketAddress createSocketAddr(String target) {
   private int infoSecurePort;
 
   DataNodeMetrics metrics;
+  @Nullable
+  private DataNodePeerMetrics peerMetrics;
+  @Nullable
+  private DataNodeDiskMetrics diskMetrics;
   private InetSocketAddress streamingAddr;
   
   // See the note below in incrDatanodeNetworkErrors re: concurrency.
@@ -329,6 +341,13 @@ public static InetSocketAddress createSocketAddr(String target) {
   private DatanodeID id;
   
   final private String fileDescriptorPassingDisabledReason;
+  /**
+   * The shared memory buffers which local clients write the data of their
+   * blocks to, for the blocks being written by short-circuit writes.
+   */
+  private final ConcurrentMap<ExtendedBlockId, ShortCircuitWriteBuffer>
+      shortCircuitWriteBuffers =
+          new ConcurrentHashMap<ExtendedBlockId, ShortCircuitWriteBuffer>();
   boolean isBlockTokenEnabled;
   BlockPoolTokenSecretManager blockPoolTokenSecretManager;
   private boolean hasAnyBlockPoolRegistered = false;
@@ -983,6 +1002,7 @@ private void initDataXceiver(Configuration conf) throws IOException {
 
     if (conf.getBoolean(HdfsClientConfigKeys.Read.ShortCircuit.KEY,
               HdfsClientConfigKeys.Read.ShortCircuit.DEFAULT) ||
+        dnConf.getShortCircuitLocalWrites() ||
         conf.getBoolean(HdfsClientConfigKeys.DFS_CLIENT_DOMAIN_SOCKET_DATA_TRAFFIC,
               HdfsClientConfigKeys.DFS_CLIENT_DOMAIN_SOCKET_DATA_TRAFFIC_DEFAULT)) {
       DomainPeerServer domainPeerServer =
@@ -1056,6 +1076,7 @@ protected void notifyNamenodeReceivingBlock(
   
   /** Notify the corresponding namenode to delete the block. */
   public void notifyNamenodeDeletedBlock(ExtendedBlock block, String storageUuid) {
+    releaseShortCircuitWriteBuffer(block);
     BPOfferService bpos = blockPoolManager.get(block.getBlockPoolId());
     if (bpos != null) {
       bpos.notifyNamenodeDeletedBlock(block, storageUuid);
@@ -1209,6 +1230,8 @@ void startDataNode(Configuration conf,
 
     metrics = DataNodeMetrics.create(conf, getDisplayName());
     metrics.getJvmMetrics().setPauseMonitor(pauseMonitor);
+    peerMetrics = DataNodePeerMetrics.create(conf);
+    diskMetrics = DataNodeDiskMetrics.create(conf);
 
     ecWorker = new ErasureCodingWorker(conf, this);
     blockRecoveryWorker = new BlockRecoveryWorker(this);
@@ -1593,6 +1616,24 @@ public InterDatanodeProtocol run() throws IOException {
   public DataNodeMetrics getMetrics() {
     return metrics;
   }
+
+  /**
+   * @return The packet ack latency tracking of the peers, or null if it is
+   *         disabled.
+   */
+  @Nullable
+  public DataNodePeerMetrics getPeerMetrics() {
+    return peerMetrics;
+  }
+
+  /**
+   * @return The flush latency tracking of the volumes, or null if it is
+   *         disabled.
+   */
+  @Nullable
+  public DataNodeDiskMetrics getDiskMetrics() {
+    return diskMetrics;
+  }
   
   /** Ensure the authentication method is kerberos */
   private void checkKerberosAuthMethod(String msg) throws IOException {
@@ -1693,6 +1734,81 @@ FileInputStream[] requestShortCircuitFdsForRead(final ExtendedBlock blk,
     return fis;
   }
 
+  /**
+   * Create the shared memory buffers which a local client writes the data
+   * of a replica being written to. Any previous buffers of the replica are
+   * released.
+   */
+  ShortCircuitWriteBuffer requestShortCircuitFdsForWrite(
+      final ExtendedBlock blk, final Token<BlockTokenIdentifier> token)
+          throws ShortCircuitFdsUnsupportedException, IOException {
+    if (fileDescriptorPassingDisabledReason != null) {
+      throw new ShortCircuitFdsUnsupportedException(
+          fileDescriptorPassingDisabledReason);
+    }
+    if (!dnConf.getShortCircuitLocalWrites()) {
+      throw new ShortCircuitFdsUnsupportedException(
+          "Short-circuit local writes are disabled on this DataNode");
+    }
+    checkBlockToken(blk, token, BlockTokenIdentifier.AccessMode.WRITE);
+    final Replica replica = data.getReplica(blk.getBlockPoolId(),
+        blk.getBlockId());
+    if (replica == null || replica.getState() != ReplicaState.RBW ||
+        replica.getGenerationStamp() != blk.getGenerationStamp()) {
+      throw new IOException("Block " + blk + " is not being written: " +
+          replica);
+    }
+    if (data.getVolume(blk).isTransientStorage()) {
+      // The checksums of replicas in memory are only computed on persisting
+      throw new ShortCircuitFdsUnsupportedException(
+          "Short-circuit writes to transient storage are not supported");
+    }
+    final InputStream metaStream = data.getMetaDataInputStream(blk);
+    if (metaStream == null) {
+      throw new IOException("Meta file of block " + blk + " not found");
+    }
+    final DataChecksum checksum;
+    try (DataInputStream metaIn = new DataInputStream(metaStream)) {
+      checksum = BlockMetadataHeader.readHeader(metaIn).getChecksum();
+    }
+    final ShortCircuitWriteBuffer buffer;
+    try {
+      buffer = ShortCircuitWriteBuffer.create(shortCircuitRegistry, blk,
+          dnConf.getShortCircuitWriteBufferSize(), checksum);
+    } catch (UnsupportedOperationException e) {
+      throw new ShortCircuitFdsUnsupportedException(
+          "This DataNode does not support shared memory");
+    }
+    final ShortCircuitWriteBuffer prev = shortCircuitWriteBuffers.put(
+        ExtendedBlockId.fromExtendedBlock(blk), buffer);
+    if (prev != null) {
+      prev.close();
+    }
+    return buffer;
+  }
+
+  /**
+   * Release the shared memory buffers of a replica written by a local
+   * client, if any. Nothing the client writes to them afterwards reaches
+   * the replica.
+   */
+  void releaseShortCircuitWriteBuffer(ExtendedBlock blk) {
+    final ShortCircuitWriteBuffer buffer = shortCircuitWriteBuffers.remove(
+        ExtendedBlockId.fromExtendedBlock(blk));
+    if (buffer != null) {
+      buffer.close();
+    }
+  }
+
+  /**
+   * @return the shared memory buffers of a replica being written by a local
+   *         client, or null if there are none
+   */
+  ShortCircuitWriteBuffer getShortCircuitWriteBuffer(ExtendedBlock blk) {
+    return shortCircuitWriteBuffers.get(
+        ExtendedBlockId.fromExtendedBlock(blk));
+  }
+
   private void checkBlockToken(ExtendedBlock block, Token<BlockTokenIdentifier> token,
       AccessMode accessMode) throws IOException {
     if (isBlockTokenEnabled) {
@@ -1910,7 +2026,11 @@ private void handleDiskError(String errMsgr) {
   /** Number of concurrent xceivers per node. */
   @Override // DataNodeMXBean
   public int getXceiverCount() {
-    return threadGroup == null ? 0 : threadGroup.activeCount();
+    if (threadGroup == null) {
+      return 0;
+    }
+    final int idleWorkers = xserver == null ? 0 : xserver.getNumIdleWorkers();
+    return Math.max(0, threadGroup.activeCount() - idleWorkers);
   }
 
   @Override // DataNodeMXBean
@@ -2694,7 +2814,7 @@ void transferReplicaForPipelineRecovery(final ExtendedBlock b,
     final BlockConstructionStage stage;
 
     //get replica information
-    synchronized(data) {
+    try (AutoCloseableLock lock = data.acquireDatasetLock()) {
       Block storedBlock = data.getStoredBlock(b.getBlockPoolId(),
           b.getBlockId());
       if (null == storedBlock) {
@@ -118,6 +118,16 @@ class DataXceiver extends Receiver implements Runnable {
    * on the socket.
    */
   private String previousOpClientName;
+
+  /** The number of operations processed on the connection so far. */
+  private int opsProcessed = 0;
+  /** Whether the connection has been set up, on the first run. */
+  private boolean initialized = false;
+  /**
+   * Whether the server may watch the connection while it waits for the next
+   * operation, instead of this xceiver blocking a thread on it.
+   */
+  private boolean canWaitIdle = false;
   
   public static DataXceiver create(Peer peer, DataNode dn,
       DataXceiverServer dataXceiverServer) throws IOException {
@@ -184,37 +194,17 @@ public void sendOOB() throws IOException, InterruptedException {
    */
   @Override
   public void run() {
-    int opsProcessed = 0;
     Op op = null;
+    boolean waitingIdle = false;
 
     try {
-      dataXceiverServer.addPeer(peer, Thread.currentThread(), this);
-      peer.setWriteTimeout(datanode.getDnConf().socketWriteTimeout);
-      InputStream input = socketIn;
-      try {
-        IOStreamPair saslStreams = datanode.saslServer.receive(peer, socketOut,
-          socketIn, datanode.getXferAddress().getPort(),
-          datanode.getDatanodeId());
-        input = new BufferedInputStream(saslStreams.in,
-            smallBufferSize);
-        socketOut = saslStreams.out;
-      } catch (InvalidMagicNumberException imne) {
-        if (imne.isHandshake4Encryption()) {
-          LOG.info("Failed to read expected encryption handshake from client " +
-              "at " + peer.getRemoteAddressString() + ". Perhaps the client " +
-              "is running an older version of Hadoop which does not support " +
-              "encryption");
-        } else {
-          LOG.info("Failed to read expected SASL data transfer protection " +
-              "handshake from client at " + peer.getRemoteAddressString() + 
-              ". Perhaps the client is running an older version of Hadoop " +
-              "which does not support SASL data transfer protection");
-        }
+      if (initialized) {
+        // Resumed by the server with the next operation
+        dataXceiverServer.addPeer(peer, Thread.currentThread(), this);
+      } else if (!setUpConnection()) {
         return;
       }
-      
-      super.initialize(new DataInputStream(input));
-      
+
       // We process requests in a loop, and stay around for a short timeout.
       // This optimistic behaviour allows the other end to reuse connections.
       // Setting keepalive timeout to 0 disable this behavior.
@@ -254,7 +244,14 @@ public void run() {
         opStartTime = monotonicNow();
         processOp(op);
         ++opsProcessed;
-      } while ((peer != null) &&
+        // Release the thread while the client decides on its next operation,
+        // unless it has already sent it
+        if (canWaitIdle && peer != null && !peer.isClosed()
+            && dnConf.socketKeepaliveTimeout > 0 && in.available() == 0) {
+          waitingIdle = dataXceiverServer.waitIdle(this, peer,
+              dnConf.socketKeepaliveTimeout);
+        }
+      } while (!waitingIdle && (peer != null) &&
           (!peer.isClosed() && dnConf.socketKeepaliveTimeout > 0));
     } catch (Throwable t) {
       String s = datanode.getDisplayName() + ":DataXceiver error processing "
@@ -282,15 +279,67 @@ public void run() {
         LOG.error(s, t);
       }
     } finally {
-      if (LOG.isDebugEnabled()) {
-        LOG.debug(datanode.getDisplayName() + ":Number of active connections is: "
-            + datanode.getXceiverCount());
+      if (waitingIdle) {
+        updateCurrentThreadName("Idle");
+      } else {
+        if (LOG.isDebugEnabled()) {
+          LOG.debug(datanode.getDisplayName()
+              + ":Number of active connections is: "
+              + datanode.getXceiverCount());
+        }
+        updateCurrentThreadName("Cleaning up");
+        closeIdle();
       }
-      updateCurrentThreadName("Cleaning up");
-      if (peer != null) {
-        dataXceiverServer.closePeer(peer);
-        IOUtils.closeStream(in);
+    }
+  }
+
+  /**
+   * Set up the connection on the first run: register the peer with the
+   * server and receive the SASL handshake.
+   *
+   * @return false if the handshake failed and the connection is to be closed
+   */
+  private boolean setUpConnection() throws IOException {
+    dataXceiverServer.addPeer(peer, Thread.currentThread(), this);
+    peer.setWriteTimeout(datanode.getDnConf().socketWriteTimeout);
+    InputStream input = socketIn;
+    try {
+      IOStreamPair saslStreams = datanode.saslServer.receive(peer, socketOut,
+        socketIn, datanode.getXferAddress().getPort(),
+        datanode.getDatanodeId());
+      // Data decoded by SASL may be buffered where the server cannot see it
+      canWaitIdle = saslStreams.in == socketIn
+          && dataXceiverServer.canWaitIdle(peer);
+      input = new BufferedInputStream(saslStreams.in,
+          smallBufferSize);
+      socketOut = saslStreams.out;
+    } catch (InvalidMagicNumberException imne) {
+      if (imne.isHandshake4Encryption()) {
+        LOG.info("Failed to read expected encryption handshake from client " +
+            "at " + peer.getRemoteAddressString() + ". Perhaps the client " +
+            "is running an older version of Hadoop which does not support " +
+            "encryption");
+      } else {
+        LOG.info("Failed to read expected SASL data transfer protection " +
+            "handshake from client at " + peer.getRemoteAddressString() + 
+            ". Perhaps the client is running an older version of Hadoop " +
+            "which does not support SASL data transfer protection");
       }
+      return false;
+    }
+
+    super.initialize(new DataInputStream(input));
+    initialized = true;
+    return true;
+  }
+
+  /**
+   * Close the connection, which is not in use by any thread.
+   */
+  void closeIdle() {
+    if (peer != null) {
+      dataXceiverServer.closePeer(peer);
+      IOUtils.closeStream(in);
     }
   }
 
@@ -319,6 +368,7 @@ public void requestShortCircuitFds(final ExtendedBlock blk,
         }
         fis = datanode.requestShortCircuitFdsForRead(blk, token, maxVersion);
         Preconditions.checkState(fis != null);
+        datanode.data.onBlockRead(blk);
         bld.setStatus(SUCCESS);
         bld.setShortCircuitAccessVersion(DataNode.CURRENT_BLOCK_FORMAT_VERSION);
       } catch (ShortCircuitFdsVersionException e) {
@@ -381,6 +431,55 @@ public void requestShortCircuitFds(final ExtendedBlock blk,
     }
   }
 
+  @Override
+  public void requestShortCircuitWriteFds(final ExtendedBlock blk,
+      final Token<BlockTokenIdentifier> token) throws IOException {
+    updateCurrentThreadName("Passing file descriptors for writing block " +
+        blk);
+    BlockOpResponseProto.Builder bld = BlockOpResponseProto.newBuilder();
+    ShortCircuitWriteBuffer buffer = null;
+    boolean success = false;
+    try {
+      try {
+        if (peer.getDomainSocket() == null) {
+          throw new IOException("You cannot pass file descriptors over " +
+              "anything but a UNIX domain socket.");
+        }
+        buffer = datanode.requestShortCircuitFdsForWrite(blk, token);
+        bld.setStatus(SUCCESS);
+      } catch (ShortCircuitFdsUnsupportedException e) {
+        bld.setStatus(ERROR_UNSUPPORTED);
+        bld.setMessage(e.getMessage());
+      } catch (InvalidToken e) {
+        bld.setStatus(ERROR_ACCESS_TOKEN);
+        bld.setMessage(e.getMessage());
+      } catch (IOException e) {
+        bld.setStatus(ERROR);
+        bld.setMessage(e.getMessage());
+      }
+      bld.build().writeDelimitedTo(socketOut);
+      if (buffer != null) {
+        FileDescriptor fds[] = buffer.getFileDescriptors();
+        byte buf[] = new byte[1];
+        peer.getDomainSocket().sendFileDescriptors(fds, buf, 0, buf.length);
+        success = true;
+      }
+    } finally {
+      if (ClientTraceLog.isInfoEnabled()) {
+        DatanodeRegistration dnR = datanode.getDNRegistrationForBP(blk
+            .getBlockPoolId());
+        BlockSender.ClientTraceLog.info(String.format(
+            "src: 127.0.0.1, dest: 127.0.0.1, " +
+            "op: REQUEST_SHORT_CIRCUIT_WRITE_FDS, blockid: %s, srvID: %s, " +
+            "success: %b", blk.getBlockId(), dnR.getDatanodeUuid(), success));
+      }
+      if (buffer != null && !success) {
+        // The client did not get the buffers
+        datanode.releaseShortCircuitWriteBuffer(blk);
+      }
+    }
+  }
+
   @Override
   public void releaseShortCircuitFds(SlotId slotId) throws IOException {
     boolean success = false;
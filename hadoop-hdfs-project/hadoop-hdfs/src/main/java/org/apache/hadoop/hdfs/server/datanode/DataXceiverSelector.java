@@ -0,0 +1,162 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.commons.logging.Log;
+import org.apache.hadoop.io.IOUtils;
+
+import static org.apache.hadoop.util.Time.monotonicNow;
+
+/**
+ * Watches the connections of the {@link DataXceiverServer} which wait for
+ * their next operation, so that idle connections do not hold a thread. Once
+ * the next operation of a connection arrives, its {@link DataXceiver} is
+ * handed to the workers; if none arrives within the timeout, or the workers
+ * have no room for it, the connection is closed.
+ */
+class DataXceiverSelector implements Runnable {
+  public static final Log LOG = DataNode.LOG;
+
+  /** A connection waiting for its next operation. */
+  private static class Idle {
+    private final DataXceiver xceiver;
+    private final SocketChannel channel;
+    private final long deadline;
+
+    Idle(DataXceiver xceiver, SocketChannel channel, long deadline) {
+      this.xceiver = xceiver;
+      this.channel = channel;
+      this.deadline = deadline;
+    }
+  }
+
+  private final Selector selector;
+  private final Executor workers;
+  /** The connections to register, which only the selector thread does. */
+  private final Queue<Idle> pending = new ConcurrentLinkedQueue<Idle>();
+  private volatile boolean running = true;
+  private long lastExpiryCheck = 0;
+
+  DataXceiverSelector(Executor workers) throws IOException {
+    this.selector = Selector.open();
+    this.workers = workers;
+  }
+
+  /**
+   * Watch a connection until its next operation arrives.
+   *
+   * @return false if the selector is stopped, and the caller keeps the
+   *         connection
+   */
+  boolean watch(DataXceiver xceiver, SocketChannel channel, int timeoutMs) {
+    if (!running) {
+      return false;
+    }
+    pending.add(new Idle(xceiver, channel, monotonicNow() + timeoutMs));
+    selector.wakeup();
+    return true;
+  }
+
+  void stop() {
+    running = false;
+    selector.wakeup();
+  }
+
+  @Override
+  public void run() {
+    try {
+      while (running && !Thread.currentThread().isInterrupted()) {
+        selector.select(1000);
+        // The keys cancelled in the last round are deregistered by now, so
+        // their channels can be registered again
+        registerPending();
+        dispatchReady();
+        closeExpired();
+      }
+    } catch (Throwable t) {
+      LOG.error("DataXceiverSelector exiting", t);
+    } finally {
+      running = false;
+      for (SelectionKey key : selector.keys()) {
+        // The cancelled keys belong to connections handed to the workers
+        if (key.isValid()) {
+          ((Idle) key.attachment()).xceiver.closeIdle();
+        }
+      }
+      for (Idle idle; (idle = pending.poll()) != null;) {
+        idle.xceiver.closeIdle();
+      }
+      IOUtils.cleanup(LOG, selector);
+    }
+  }
+
+  private void registerPending() {
+    for (Idle idle; (idle = pending.poll()) != null;) {
+      try {
+        idle.channel.configureBlocking(false);
+        idle.channel.register(selector, SelectionKey.OP_READ, idle);
+      } catch (Throwable t) {
+        // Nobody else holds the connection, so it is closed whatever failed
+        LOG.warn("Failed to watch " + idle.channel, t);
+        idle.xceiver.closeIdle();
+      }
+    }
+  }
+
+  private void dispatchReady() {
+    for (Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+         it.hasNext();) {
+      final SelectionKey key = it.next();
+      it.remove();
+      key.cancel();
+      final Idle idle = (Idle) key.attachment();
+      try {
+        workers.execute(idle.xceiver);
+      } catch (RejectedExecutionException e) {
+        // Too many operations running or queued already
+        LOG.warn("Closing " + idle.channel + " as the DataNode is busy");
+        idle.xceiver.closeIdle();
+      }
+    }
+  }
+
+  private void closeExpired() {
+    final long now = monotonicNow();
+    if (now - lastExpiryCheck < 1000) {
+      return;
+    }
+    lastExpiryCheck = now;
+    for (SelectionKey key : selector.keys()) {
+      final Idle idle = (Idle) key.attachment();
+      if (key.isValid() && idle.deadline <= now) {
+        key.cancel();
+        idle.xceiver.closeIdle();
+      }
+    }
+  }
+}
@@ -20,15 +20,25 @@
 import java.io.IOException;
 import java.net.SocketTimeoutException;
 import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
 import java.util.HashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.net.Peer;
 import org.apache.hadoop.hdfs.net.PeerServer;
+import org.apache.hadoop.hdfs.net.TcpPeerServer;
 import org.apache.hadoop.hdfs.util.DataTransferThrottler;
 import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.net.SocketInputStream;
 import org.apache.hadoop.util.Daemon;
 
 import com.google.common.annotations.VisibleForTesting;
@@ -47,6 +57,15 @@ class DataXceiverServer implements Runnable {
   private final HashMap<Peer, Thread> peers = new HashMap<Peer, Thread>();
   private final HashMap<Peer, DataXceiver> peersXceiver = new HashMap<Peer, DataXceiver>();
   private boolean closed = false;
+
+  /**
+   * In the event-driven mode, the connections waiting for their next
+   * operation are watched by the selector instead of holding a thread, and
+   * the operations run on the workers. Null otherwise.
+   */
+  private final DataXceiverSelector selector;
+  private final Daemon selectorThread;
+  private final ThreadPoolExecutor workers;
   
   /**
    * Maximal number of concurrent xceivers per node.
@@ -107,7 +126,7 @@ synchronized void release() {
   
   
   DataXceiverServer(PeerServer peerServer, Configuration conf,
-      DataNode datanode) {
+      DataNode datanode) throws IOException {
     
     this.peerServer = peerServer;
     this.datanode = datanode;
@@ -125,10 +144,98 @@ synchronized void release() {
             DFSConfigKeys.DFS_DATANODE_BALANCE_BANDWIDTHPERSEC_DEFAULT),
         conf.getInt(DFSConfigKeys.DFS_DATANODE_BALANCE_MAX_NUM_CONCURRENT_MOVES_KEY,
             DFSConfigKeys.DFS_DATANODE_BALANCE_MAX_NUM_CONCURRENT_MOVES_DEFAULT));
+
+    if (peerServer instanceof TcpPeerServer && conf.getBoolean(
+        DFSConfigKeys.DFS_DATANODE_TRANSFER_SERVER_EVENT_DRIVEN_KEY,
+        DFSConfigKeys.DFS_DATANODE_TRANSFER_SERVER_EVENT_DRIVEN_DEFAULT)) {
+      final int numWorkers = Math.min(maxXceiverCount, conf.getInt(
+          DFSConfigKeys.DFS_DATANODE_TRANSFER_SERVER_WORKER_THREADS_KEY,
+          DFSConfigKeys.DFS_DATANODE_TRANSFER_SERVER_WORKER_THREADS_DEFAULT));
+      // At most maxXceiverCount operations are running or queued; the
+      // selector closes the connections of the operations beyond that
+      final int queueSize = maxXceiverCount - numWorkers;
+      final BlockingQueue<Runnable> queue = queueSize > 0
+          ? new ArrayBlockingQueue<Runnable>(queueSize)
+          : new SynchronousQueue<Runnable>();
+      // The workers belong to the thread group of the xceivers, which the
+      // DataNode counts as its load and interrupts on shutdown
+      final ThreadGroup group = datanode.threadGroup;
+      this.workers = new ThreadPoolExecutor(numWorkers, numWorkers, 60,
+          TimeUnit.SECONDS, queue,
+          new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+              return new Daemon(group, r);
+            }
+          });
+      this.workers.allowCoreThreadTimeOut(true);
+      this.selector = new DataXceiverSelector(workers);
+      // Not an xceiver, so created here rather than in the thread group of
+      // the xceivers
+      this.selectorThread = new Daemon(selector);
+      this.selectorThread.setName("DataXceiverSelector");
+      LOG.info("Event-driven DataXceiverServer with " + numWorkers
+          + " worker threads");
+    } else {
+      this.workers = null;
+      this.selector = null;
+      this.selectorThread = null;
+    }
+  }
+
+  /**
+   * @return the channel to watch for the next operation of a peer, or null
+   *         if the peer cannot be watched
+   */
+  private static SocketChannel getSelectableChannel(Peer peer) {
+    ReadableByteChannel channel = peer.getInputStreamChannel();
+    if (channel instanceof SocketInputStream) {
+      channel = ((SocketInputStream) channel).getChannel();
+    }
+    return channel instanceof SocketChannel ? (SocketChannel) channel : null;
+  }
+
+  /**
+   * @return the number of worker threads not running any xceiver, which are
+   *         not part of the load of the DataNode
+   */
+  int getNumIdleWorkers() {
+    if (workers == null) {
+      return 0;
+    }
+    return Math.max(0, workers.getPoolSize() - workers.getActiveCount());
+  }
+
+  /**
+   * @return whether a peer may wait for its next operation without holding
+   *         a thread
+   */
+  boolean canWaitIdle(Peer peer) {
+    return selector != null && getSelectableChannel(peer) != null;
+  }
+
+  /**
+   * Watch the connection of an xceiver until its next operation arrives,
+   * when the xceiver is run again by a worker.
+   *
+   * @return false if the server is closed, and the xceiver keeps the
+   *         connection
+   */
+  synchronized boolean waitIdle(DataXceiver xceiver, Peer peer,
+      int timeoutMs) {
+    if (closed) {
+      return false;
+    }
+    // No thread to interrupt while the connection is idle
+    peers.put(peer, null);
+    return selector.watch(xceiver, getSelectableChannel(peer), timeoutMs);
   }
 
   @Override
   public void run() {
+    if (selectorThread != null) {
+      selectorThread.start();
+    }
     Peer peer = null;
     while (datanode.shouldRun && !datanode.shutdownForUpgrade) {
       try {
@@ -142,9 +249,11 @@ public void run() {
               + maxXceiverCount);
         }
 
-        new Daemon(datanode.threadGroup,
-            DataXceiver.create(peer, datanode, this))
-            .start();
+        DataXceiver xceiver = DataXceiver.create(peer, datanode, this);
+        if (!canWaitIdle(peer) || !selector.watch(xceiver,
+            getSelectableChannel(peer), datanode.getDnConf().socketTimeout)) {
+          new Daemon(datanode.threadGroup, xceiver).start();
+        }
       } catch (SocketTimeoutException ignored) {
         // wake up to see if should continue to run
       } catch (AsynchronousCloseException ace) {
@@ -201,6 +310,10 @@ public void run() {
     }
     // Close all peers.
     closeAllPeers();
+    if (selector != null) {
+      selector.stop();
+      workers.shutdownNow();
+    }
   }
 
   void kill() {
@@ -213,6 +326,11 @@ void kill() {
     } catch (IOException ie) {
       LOG.warn(datanode.getDisplayName() + ":DataXceiverServer.kill(): ", ie);
     }
+    if (selector != null) {
+      selector.stop();
+      // Let the idle workers exit with the xceivers
+      workers.shutdown();
+    }
   }
   
   synchronized void addPeer(Peer peer, Thread t, DataXceiver xceiver)
@@ -254,7 +372,9 @@ synchronized void restartNotifyPeers() {
     assert (datanode.shouldRun == true && datanode.shutdownForUpgrade);
     for (Thread t : peers.values()) {
       // interrupt each and every DataXceiver thread.
-      t.interrupt();
+      if (t != null) {
+        t.interrupt();
+      }
     }
   }
 
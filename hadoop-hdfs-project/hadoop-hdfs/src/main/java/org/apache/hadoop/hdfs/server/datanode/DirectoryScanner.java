@@ -20,13 +20,17 @@
 import com.google.common.annotations.VisibleForTesting;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -65,6 +69,13 @@ public class DirectoryScanner implements Runnable {
       + " starting at %dms with interval of %dms";
   private static final String START_MESSAGE_WITH_THROTTLE = START_MESSAGE
       + " and throttle limit of %dms/s";
+  /**
+   * The coarsest granularity of the modification times of the directories.
+   * A directory is only skipped if it was modified at least this long before
+   * it was last listed, so that a change right after the listing cannot go
+   * unnoticed because it did not change the modification time.
+   */
+  private static final long MTIME_GRANULARITY_MS = 2000L;
 
   private final FsDatasetSpi<?> dataset;
   private final ExecutorService reportCompileThreadPool;
@@ -74,6 +85,18 @@ public class DirectoryScanner implements Runnable {
   private volatile boolean shouldRun = false;
   private boolean retainDiffs = false;
   private final DataNode datanode;
+  private final boolean incremental;
+  private final int fullScanInterval;
+  private final int reconcileBatchSize;
+  private final long reconcileBatchIntervalMs;
+  /** The number of scans since the last full scan. */
+  private int scansSinceFullScan = 0;
+  /**
+   * The directories found by the previous scan of each volume, indexed by
+   * storage ID, when the scans are incremental.
+   */
+  private final Map<String, Map<File, ScannedDir>> scannedDirs =
+      new ConcurrentHashMap<String, Map<File, ScannedDir>>();
 
   /**
    * Total combined wall clock time (in milliseconds) spent by the report
@@ -87,6 +110,13 @@ public class DirectoryScanner implements Runnable {
    */
   @VisibleForTesting
   final AtomicLong timeWaitingMs = new AtomicLong(0L);
+  /**
+   * Total number of directories the report compiler threads did not list
+   * because they did not change since the previous scan.  Used for testing
+   * purposes.
+   */
+  @VisibleForTesting
+  final AtomicLong dirsSkipped = new AtomicLong(0L);
   /**
    * The complete list of block differences indexed by block pool ID.
    */
@@ -206,6 +236,33 @@ public Map<String, ScanInfo[]> toSortedArrays() {
     }
   }
 
+  /**
+   * The content of a block directory found by a scan, which the next
+   * incremental scan reuses if the directory did not change.
+   */
+  private static class ScannedDir {
+    /** The modification time of the directory before it was listed. */
+    private final long mtime;
+    /** When the directory was listed. */
+    private final long listedMs;
+    private final List<File> subdirs = new ArrayList<File>();
+    private final List<ScanInfo> blocks = new ArrayList<ScanInfo>();
+
+    ScannedDir(long mtime, long listedMs) {
+      this.mtime = mtime;
+      this.listedMs = listedMs;
+    }
+
+    /**
+     * @return whether the content of the directory is the same as when it
+     *         was listed
+     */
+    boolean isUnchanged(long currentMtime) {
+      return currentMtime != 0 && currentMtime == mtime
+          && mtime + MTIME_GRANULARITY_MS <= listedMs;
+    }
+  }
+
   /**
    * Tracks the files and other information related to a block on the disk
    * Missing file is indicated by setting the corresponding member
@@ -443,6 +500,19 @@ public long getGenStamp() {
         conf.getInt(DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_THREADS_KEY,
                     DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_THREADS_DEFAULT);
 
+    incremental = conf.getBoolean(
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_KEY,
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_DEFAULT);
+    fullScanInterval = Math.max(1, conf.getInt(
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_FULL_SCAN_INTERVAL_KEY,
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_FULL_SCAN_INTERVAL_DEFAULT));
+    reconcileBatchSize = Math.max(1, conf.getInt(
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_RECONCILE_BATCH_SIZE_KEY,
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_RECONCILE_BATCH_SIZE_DEFAULT));
+    reconcileBatchIntervalMs = conf.getLong(
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_RECONCILE_BATCH_INTERVAL_MS_KEY,
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_RECONCILE_BATCH_INTERVAL_MS_DEFAULT);
+
     reportCompileThreadPool = Executors.newFixedThreadPool(threads, 
         new Daemon.DaemonFactory());
     masterThread = new ScheduledThreadPoolExecutor(1,
@@ -490,6 +560,15 @@ private void clear() {
     stats.clear();
   }
 
+  /**
+   * Forget the directories found by the previous scans, so that the next scan
+   * lists all of them again.
+   */
+  @VisibleForTesting
+  void clearScannedDirs() {
+    scannedDirs.clear();
+  }
+
   /**
    * Main program loop for DirectoryScanner.  Runs {@link reconcile()}
    * and handles any exceptions.
@@ -560,6 +639,10 @@ void shutdown() {
   @VisibleForTesting
   void reconcile() throws IOException {
     scan();
+    // Each difference is checked again under the lock of its replica, in
+    // batches so that many differences do not keep the volumes busy
+    int reconciled = 0;
+    reconcile:
     for (Entry<String, LinkedList<ScanInfo>> entry : diffs.entrySet()) {
       String bpid = entry.getKey();
       LinkedList<ScanInfo> diff = entry.getValue();
@@ -567,6 +650,17 @@ void reconcile() throws IOException {
       for (ScanInfo info : diff) {
         dataset.checkAndUpdate(bpid, info.getBlockId(), info.getBlockFile(),
             info.getMetaFile(), info.getVolume());
+        if (++reconciled % reconcileBatchSize == 0
+            && reconcileBatchIntervalMs > 0) {
+          try {
+            Thread.sleep(reconcileBatchIntervalMs);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.info("Interrupted after reconciling " + reconciled
+                + " differences, the rest waits for the next scan");
+            break reconcile;
+          }
+        }
       }
     }
     if (!retainDiffs) clear();
@@ -575,92 +669,95 @@ void reconcile() throws IOException {
   /**
    * Scan for the differences between disk and in-memory blocks
    * Scan only the "finalized blocks" lists of both disk and memory.
+   *
+   * The dataset is not locked while comparing: the in-memory blocks may
+   * change during the comparison just as they may change during the scan of
+   * the disks, so the differences found are only candidates, which
+   * {@link FsDatasetSpi#checkAndUpdate} checks again under the lock of the
+   * replica.
    */
   private void scan() {
     clear();
     Map<String, ScanInfo[]> diskReport = getDiskReport();
 
-    // Hold FSDataset lock to prevent further changes to the block map
-    synchronized(dataset) {
-      for (Entry<String, ScanInfo[]> entry : diskReport.entrySet()) {
-        String bpid = entry.getKey();
-        ScanInfo[] blockpoolReport = entry.getValue();
-        
-        Stats statsRecord = new Stats(bpid);
-        stats.put(bpid, statsRecord);
-        LinkedList<ScanInfo> diffRecord = new LinkedList<ScanInfo>();
-        diffs.put(bpid, diffRecord);
-        
-        statsRecord.totalBlocks = blockpoolReport.length;
-        List<FinalizedReplica> bl = dataset.getFinalizedBlocks(bpid);
-        FinalizedReplica[] memReport = bl.toArray(new FinalizedReplica[bl.size()]);
-        Arrays.sort(memReport); // Sort based on blockId
-  
-        int d = 0; // index for blockpoolReport
-        int m = 0; // index for memReprot
-        while (m < memReport.length && d < blockpoolReport.length) {
-          FinalizedReplica memBlock = memReport[m];
-          ScanInfo info = blockpoolReport[d];
-          if (info.getBlockId() < memBlock.getBlockId()) {
-            if (!dataset.isDeletingBlock(bpid, info.getBlockId())) {
-              // Block is missing in memory
-              statsRecord.missingMemoryBlocks++;
-              addDifference(diffRecord, statsRecord, info);
-            }
-            d++;
-            continue;
-          }
-          if (info.getBlockId() > memBlock.getBlockId()) {
-            // Block is missing on the disk
-            addDifference(diffRecord, statsRecord,
-                          memBlock.getBlockId(), info.getVolume());
-            m++;
-            continue;
-          }
-          // Block file and/or metadata file exists on the disk
-          // Block exists in memory
-          if (info.getBlockFile() == null) {
-            // Block metadata file exits and block file is missing
-            addDifference(diffRecord, statsRecord, info);
-          } else if (info.getGenStamp() != memBlock.getGenerationStamp()
-              || info.getBlockFileLength() != memBlock.getNumBytes()) {
-            // Block metadata file is missing or has wrong generation stamp,
-            // or block file length is different than expected
-            statsRecord.mismatchBlocks++;
-            addDifference(diffRecord, statsRecord, info);
-          } else if (info.getBlockFile().compareTo(memBlock.getBlockFile()) != 0) {
-            // volumeMap record and on-disk files don't match.
-            statsRecord.duplicateBlocks++;
+    for (Entry<String, ScanInfo[]> entry : diskReport.entrySet()) {
+      String bpid = entry.getKey();
+      ScanInfo[] blockpoolReport = entry.getValue();
+      
+      Stats statsRecord = new Stats(bpid);
+      stats.put(bpid, statsRecord);
+      LinkedList<ScanInfo> diffRecord = new LinkedList<ScanInfo>();
+      diffs.put(bpid, diffRecord);
+      
+      statsRecord.totalBlocks = blockpoolReport.length;
+      List<FinalizedReplica> bl = dataset.getFinalizedBlocks(bpid);
+      FinalizedReplica[] memReport = bl.toArray(new FinalizedReplica[bl.size()]);
+      Arrays.sort(memReport); // Sort based on blockId
+
+      int d = 0; // index for blockpoolReport
+      int m = 0; // index for memReprot
+      while (m < memReport.length && d < blockpoolReport.length) {
+        FinalizedReplica memBlock = memReport[m];
+        ScanInfo info = blockpoolReport[d];
+        if (info.getBlockId() < memBlock.getBlockId()) {
+          if (!dataset.isDeletingBlock(bpid, info.getBlockId())) {
+            // Block is missing in memory
+            statsRecord.missingMemoryBlocks++;
             addDifference(diffRecord, statsRecord, info);
           }
           d++;
-
-          if (d < blockpoolReport.length) {
-            // There may be multiple on-disk records for the same block, don't increment
-            // the memory record pointer if so.
-            ScanInfo nextInfo = blockpoolReport[Math.min(d, blockpoolReport.length - 1)];
-            if (nextInfo.getBlockId() != info.blockId) {
-              ++m;
-            }
-          } else {
-            ++m;
-          }
+          continue;
         }
-        while (m < memReport.length) {
-          FinalizedReplica current = memReport[m++];
+        if (info.getBlockId() > memBlock.getBlockId()) {
+          // Block is missing on the disk
           addDifference(diffRecord, statsRecord,
-                        current.getBlockId(), current.getVolume());
+                        memBlock.getBlockId(), info.getVolume());
+          m++;
+          continue;
         }
-        while (d < blockpoolReport.length) {
-          if (!dataset.isDeletingBlock(bpid, blockpoolReport[d].getBlockId())) {
-            statsRecord.missingMemoryBlocks++;
-            addDifference(diffRecord, statsRecord, blockpoolReport[d]);
+        // Block file and/or metadata file exists on the disk
+        // Block exists in memory
+        if (info.getBlockFile() == null) {
+          // Block metadata file exits and block file is missing
+          addDifference(diffRecord, statsRecord, info);
+        } else if (info.getGenStamp() != memBlock.getGenerationStamp()
+            || info.getBlockFileLength() != memBlock.getNumBytes()) {
+          // Block metadata file is missing or has wrong generation stamp,
+          // or block file length is different than expected
+          statsRecord.mismatchBlocks++;
+          addDifference(diffRecord, statsRecord, info);
+        } else if (info.getBlockFile().compareTo(memBlock.getBlockFile()) != 0) {
+          // volumeMap record and on-disk files don't match.
+          statsRecord.duplicateBlocks++;
+          addDifference(diffRecord, statsRecord, info);
+        }
+        d++;
+
+        if (d < blockpoolReport.length) {
+          // There may be multiple on-disk records for the same block, don't increment
+          // the memory record pointer if so.
+          ScanInfo nextInfo = blockpoolReport[Math.min(d, blockpoolReport.length - 1)];
+          if (nextInfo.getBlockId() != info.blockId) {
+            ++m;
           }
-          d++;
+        } else {
+          ++m;
         }
-        LOG.info(statsRecord.toString());
-      } //end for
-    } //end synchronized
+      }
+      while (m < memReport.length) {
+        FinalizedReplica current = memReport[m++];
+        addDifference(diffRecord, statsRecord,
+                      current.getBlockId(), current.getVolume());
+      }
+      while (d < blockpoolReport.length) {
+        if (!dataset.isDeletingBlock(bpid, blockpoolReport[d].getBlockId())) {
+          statsRecord.missingMemoryBlocks++;
+          addDifference(diffRecord, statsRecord, blockpoolReport[d]);
+        }
+        d++;
+      }
+      LOG.info(statsRecord.toString());
+    } //end for
   }
 
   /**
@@ -706,9 +803,19 @@ private void addDifference(LinkedList<ScanInfo> diffRecord,
   private Map<String, ScanInfo[]> getDiskReport() {
     ScanInfoPerBlockPool list = new ScanInfoPerBlockPool();
     ScanInfoPerBlockPool[] dirReports = null;
+    // Every fullScanInterval scans, list all the directories again
+    final boolean fullScan = !incremental
+        || scansSinceFullScan % fullScanInterval == 0;
+    scansSinceFullScan = fullScan ? 1 : scansSinceFullScan + 1;
     // First get list of data directories
     try (FsDatasetSpi.FsVolumeReferences volumes =
         dataset.getFsVolumeReferences()) {
+      // Forget the removed volumes
+      final Set<String> storageIds = new HashSet<String>();
+      for (FsVolumeSpi volume : volumes) {
+        storageIds.add(volume.getStorageID());
+      }
+      scannedDirs.keySet().retainAll(storageIds);
 
       // Use an array since the threads may return out of order and
       // compilersInProgress#keySet may return out of order as well.
@@ -719,7 +826,7 @@ private Map<String, ScanInfo[]> getDiskReport() {
 
       for (int i = 0; i < volumes.size(); i++) {
         ReportCompiler reportCompiler =
-            new ReportCompiler(datanode, volumes.get(i));
+            new ReportCompiler(datanode, volumes.get(i), fullScan);
         Future<ScanInfoPerBlockPool> result =
             reportCompileThreadPool.submit(reportCompiler);
         compilersInProgress.put(i, result);
@@ -783,16 +890,28 @@ private class ReportCompiler implements Callable<ScanInfoPerBlockPool> {
     // Variable for tracking time spent running and waiting for testing
     // purposes
     private final StopWatch perfTimer = new StopWatch();
+    // The directories found by the previous scan, or null to list all the
+    // directories
+    private final Map<File, ScannedDir> previousDirs;
+    // The directories found by this scan, or null if the scan is not
+    // incremental
+    private final Map<File, ScannedDir> currentDirs;
 
     /**
      * Create a report compiler for the given volume on the given datanode.
      *
      * @param datanode the target datanode
      * @param volume the target volume
+     * @param fullScan whether to list all the directories, even those which
+     *                 did not change since the previous scan
      */
-    public ReportCompiler(DataNode datanode, FsVolumeSpi volume) {
+    public ReportCompiler(DataNode datanode, FsVolumeSpi volume,
+        boolean fullScan) {
       this.datanode = datanode;
       this.volume = volume;
+      this.previousDirs = fullScan ? null
+          : scannedDirs.get(volume.getStorageID());
+      this.currentDirs = incremental ? new HashMap<File, ScannedDir>() : null;
     }
 
     /**
@@ -821,6 +940,9 @@ public ScanInfoPerBlockPool call() throws IOException {
           break;
         }
       }
+      if (result != null && currentDirs != null) {
+        scannedDirs.put(volume.getStorageID(), currentDirs);
+      }
       return result;
     }
 
@@ -841,6 +963,25 @@ private LinkedList<ScanInfo> compileReport(FsVolumeSpi vol,
 
       throttle();
 
+      ScannedDir scanned = null;
+      if (currentDirs != null) {
+        // Read the modification time before listing the directory, so that
+        // any later change makes the next scan list it again
+        final long mtime = dir.lastModified();
+        final ScannedDir previous =
+            previousDirs == null ? null : previousDirs.get(dir);
+        if (previous != null && previous.isUnchanged(mtime)) {
+          dirsSkipped.incrementAndGet();
+          currentDirs.put(dir, previous);
+          report.addAll(previous.blocks);
+          for (File subdir : previous.subdirs) {
+            compileReport(vol, bpFinalizedDir, subdir, report);
+          }
+          return report;
+        }
+        scanned = new ScannedDir(mtime, Time.now());
+      }
+
       try {
         files = FileUtil.listFiles(dir);
       } catch (IOException ioe) {
@@ -865,6 +1006,9 @@ private LinkedList<ScanInfo> compileReport(FsVolumeSpi vol,
         }
 
         if (files[i].isDirectory()) {
+          if (scanned != null) {
+            scanned.subdirs.add(files[i]);
+          }
           compileReport(vol, bpFinalizedDir, files[i], report);
           continue;
         }
@@ -873,7 +1017,8 @@ private LinkedList<ScanInfo> compileReport(FsVolumeSpi vol,
             long blockId = Block.getBlockId(files[i].getName());
             verifyFileLocation(files[i].getParentFile(), bpFinalizedDir,
                 blockId);
-            report.add(new ScanInfo(blockId, null, files[i], vol));
+            addScanInfo(report, scanned,
+                new ScanInfo(blockId, null, files[i], vol));
           }
           continue;
         }
@@ -893,11 +1038,23 @@ private LinkedList<ScanInfo> compileReport(FsVolumeSpi vol,
         }
         verifyFileLocation(blockFile.getParentFile(), bpFinalizedDir,
             blockId);
-        report.add(new ScanInfo(blockId, blockFile, metaFile, vol));
+        addScanInfo(report, scanned,
+            new ScanInfo(blockId, blockFile, metaFile, vol));
+      }
+      if (scanned != null) {
+        currentDirs.put(dir, scanned);
       }
       return report;
     }
 
+    private void addScanInfo(LinkedList<ScanInfo> report, ScannedDir scanned,
+        ScanInfo info) {
+      report.add(info);
+      if (scanned != null) {
+        scanned.blocks.add(info);
+      }
+    }
+
     /**
      * Verify whether the actual directory location of block file has the
      * expected directory path computed using its block ID.
@@ -326,7 +326,28 @@ public NewShmInfo createNewMemorySegment(String clientName,
     }
     return info;
   }
-  
+
+  /**
+   * Create a shared memory file which is not a memory segment, such as the
+   * buffers of a short-circuit write.
+   *
+   * @param info          Information to include in the path of the file.
+   * @param length        The length of the file.
+   * @return              The file.  The caller must close it once they are
+   *                        done with it.
+   * @throws IOException  If the file could not be created.
+   */
+  public synchronized FileInputStream createSharedFile(String info,
+      int length) throws IOException {
+    if (!enabled) {
+      if (LOG.isTraceEnabled()) {
+        LOG.trace("createSharedFile: ShortCircuitRegistry is not enabled.");
+      }
+      throw new UnsupportedOperationException();
+    }
+    return shmFactory.createDescriptor(info, length);
+  }
+
   public synchronized void registerSlot(ExtendedBlockId blockId, SlotId slotId,
       boolean isCached) throws InvalidRequestException {
     if (!enabled) {
@@ -0,0 +1,114 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import java.io.Closeable;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.protocol.datatransfer.PacketReceiver;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.util.DataChecksum;
+
+/**
+ * The shared memory which a local client writes the data and checksums of a
+ * block to, in a short-circuit write. There is one file for the data and one
+ * for the checksums, each used as a ring buffer: the data at an offset in the
+ * block is at that offset modulo the size of the data file, and likewise for
+ * its checksums. The client sends the header of each packet through the
+ * pipeline, and the DataNode reads the packet from the buffers.
+ *
+ * The client never gets the replica files, so closing the buffers is all it
+ * takes to revoke its access.
+ */
+@InterfaceAudience.Private
+class ShortCircuitWriteBuffer implements Closeable {
+  private final FileInputStream data;
+  private final FileInputStream checksums;
+  private final int bytesPerChecksum;
+  private final int checksumSize;
+
+  private ShortCircuitWriteBuffer(FileInputStream data,
+      FileInputStream checksums, DataChecksum checksum) {
+    this.data = data;
+    this.checksums = checksums;
+    this.bytesPerChecksum = checksum.getBytesPerChecksum();
+    this.checksumSize = checksum.getChecksumSize();
+  }
+
+  /**
+   * Create the buffers of a block.
+   *
+   * @param registry the registry which creates the shared memory files
+   * @param size the requested size of the data buffer, which is rounded down
+   *             to a whole number of chunks
+   * @param checksum the checksum of the replica
+   */
+  static ShortCircuitWriteBuffer create(ShortCircuitRegistry registry,
+      ExtendedBlock blk, int size, DataChecksum checksum) throws IOException {
+    final int bytesPerChecksum = checksum.getBytesPerChecksum();
+    final int numChunks = Math.max(1, size / bytesPerChecksum);
+    FileInputStream data = null;
+    FileInputStream checksums = null;
+    boolean success = false;
+    try {
+      data = registry.createSharedFile("write_" + blk.getBlockId(),
+          numChunks * bytesPerChecksum);
+      checksums = registry.createSharedFile("write_" + blk.getBlockId(),
+          numChunks * checksum.getChecksumSize());
+      success = true;
+      return new ShortCircuitWriteBuffer(data, checksums, checksum);
+    } finally {
+      if (!success) {
+        IOUtils.cleanup(DataNode.LOG, data, checksums);
+      }
+    }
+  }
+
+  /**
+   * @return the descriptors of the data and checksum buffers, to pass to the
+   *         client
+   */
+  FileDescriptor[] getFileDescriptors() throws IOException {
+    return new FileDescriptor[] { data.getFD(), checksums.getFD() };
+  }
+
+  /**
+   * Read the checksums and data of the last packet received, whose header
+   * says they are in the buffers.
+   *
+   * @param offsetInBlock the offset of the packet in the block, which is on
+   *                      a chunk boundary
+   * @param len the length of the data of the packet
+   */
+  void readPacket(PacketReceiver receiver, long offsetInBlock, int len)
+      throws IOException {
+    final long chunkIndex = offsetInBlock / bytesPerChecksum;
+    final int numChunks = (len + bytesPerChecksum - 1) / bytesPerChecksum;
+    receiver.readDataOnDisk(checksums.getChannel(), chunkIndex * checksumSize,
+        numChunks * checksumSize, data.getChannel(), offsetInBlock);
+  }
+
+  @Override
+  public void close() {
+    IOUtils.cleanup(DataNode.LOG, data, checksums);
+  }
+}
@@ -34,8 +34,10 @@
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -66,6 +68,7 @@
 import org.apache.hadoop.hdfs.server.datanode.CachingStrategy;
 import org.apache.hadoop.hdfs.server.datanode.DataNode;
 import org.apache.hadoop.hdfs.server.protocol.BlockECRecoveryCommand.BlockECRecoveryInfo;
+import org.apache.hadoop.hdfs.util.DataTransferThrottler;
 import org.apache.hadoop.hdfs.util.StripedBlockUtil;
 import org.apache.hadoop.hdfs.util.StripedBlockUtil.StripingChunkReadResult;
 import org.apache.hadoop.io.IOUtils;
@@ -92,10 +95,17 @@ public final class ErasureCodingWorker {
   private final DataNode datanode; 
   private final Configuration conf;
 
+  // Marks the end of the buffers queued for transfer by a recovery
+  private static final ByteBuffer[] END_OF_BUFFERS = new ByteBuffer[0];
+
   private ThreadPoolExecutor STRIPED_BLK_RECOVERY_THREAD_POOL;
+  private ThreadPoolExecutor STRIPED_BLK_TRANSFER_THREAD_POOL;
   private ThreadPoolExecutor STRIPED_READ_THREAD_POOL;
   private final int STRIPED_READ_TIMEOUT_MILLIS;
   private final int STRIPED_READ_BUFFER_SIZE;
+  private final int STRIPED_BLK_RECOVERY_PIPELINE_DEPTH;
+  // Shared by all the recoveries, null if they are not throttled
+  private final DataTransferThrottler throttler;
 
   public ErasureCodingWorker(Configuration conf, DataNode datanode) {
     this.datanode = datanode;
@@ -114,6 +124,14 @@ public ErasureCodingWorker(Configuration conf, DataNode datanode) {
     initializeStripedBlkRecoveryThreadPool(conf.getInt(
         DFSConfigKeys.DFS_DATANODE_STRIPED_BLK_RECOVERY_THREADS_KEY,
         DFSConfigKeys.DFS_DATANODE_STRIPED_BLK_RECOVERY_THREADS_DEFAULT));
+    STRIPED_BLK_RECOVERY_PIPELINE_DEPTH = Math.max(0, conf.getInt(
+        DFSConfigKeys.DFS_DATANODE_STRIPED_BLK_RECOVERY_PIPELINE_DEPTH_KEY,
+        DFSConfigKeys.DFS_DATANODE_STRIPED_BLK_RECOVERY_PIPELINE_DEPTH_DEFAULT));
+
+    long bandwidth = conf.getLong(
+        DFSConfigKeys.DFS_DATANODE_STRIPED_BLK_RECOVERY_BANDWIDTHPERSEC_KEY,
+        DFSConfigKeys.DFS_DATANODE_STRIPED_BLK_RECOVERY_BANDWIDTHPERSEC_DEFAULT);
+    throttler = bandwidth > 0 ? new DataTransferThrottler(bandwidth) : null;
   }
   
   private RawErasureDecoder newDecoder(int numDataUnits, int numParityUnits) {
@@ -164,6 +182,21 @@ public Thread newThread(Runnable r) {
           }
         });
     STRIPED_BLK_RECOVERY_THREAD_POOL.allowCoreThreadTimeOut(true);
+
+    // Each recovery in progress may have a transfer in progress too
+    STRIPED_BLK_TRANSFER_THREAD_POOL = new ThreadPoolExecutor(num, num, 60,
+        TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+        new Daemon.DaemonFactory() {
+          private final AtomicInteger threadIdx = new AtomicInteger(0);
+
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread t = super.newThread(r);
+            t.setName("stripedBlockTransfer-" + threadIdx.getAndIncrement());
+            return t;
+          }
+        });
+    STRIPED_BLK_TRANSFER_THREAD_POOL.allowCoreThreadTimeOut(true);
   }
 
   /**
@@ -227,6 +260,12 @@ public void processErasureCodingTasks(Collection<BlockECRecoveryInfo> ecTasks) {
    * don't check the packet ack. Since the datanode doing the recovery work
    * are one of the source datanodes, so the recovered data are sent 
    * remotely.
+   *
+   * Step3 is pipelined with the other steps: the recovered data are queued
+   * for a transfer thread, which sends them while the recovery thread reads
+   * and decodes the following rounds. Up to <code>pipelineDepth</code>
+   * rounds may be queued, each with its own target buffers. The bytes read
+   * and sent are throttled by the bandwidth shared by all the recoveries.
    * 
    * There are some points we can do further improvements in next phase:
    * 1. we can read the block file directly on the local datanode, 
@@ -267,7 +306,10 @@ private class ReconstructAndTransferBlock implements Runnable {
     private final StorageType[] targetStorageTypes;
 
     private final short[] targetIndices;
-    private final ByteBuffer[] targetBuffers;
+    // Target buffers which may be decoded into, and decoded target buffers
+    // waiting for transfer, in order
+    private final BlockingQueue<ByteBuffer[]> freeTargetBuffers;
+    private final BlockingQueue<ByteBuffer[]> decodedTargetBuffers;
 
     private final Socket[] targetSockets;
     private final DataOutputStream[] targetOutputStreams;
@@ -287,6 +329,8 @@ private class ReconstructAndTransferBlock implements Runnable {
     private final CachingStrategy cachingStrategy;
 
     private final Map<Future<Void>, Integer> futures = new HashMap<>();
+    // The transfer of the decoded target buffers, if pipelined
+    private Future<Void> transfer;
     private final CompletionService<Void> readService =
         new ExecutorCompletionService<>(STRIPED_READ_THREAD_POOL);
 
@@ -318,7 +362,9 @@ private class ReconstructAndTransferBlock implements Runnable {
       targets = recoveryInfo.getTargetDnInfos();
       targetStorageTypes = recoveryInfo.getTargetStorageTypes();
       targetIndices = new short[targets.length];
-      targetBuffers = new ByteBuffer[targets.length];
+      // One more set of buffers than the pipeline depth, for decoding
+      freeTargetBuffers = new LinkedBlockingQueue<>();
+      decodedTargetBuffers = new LinkedBlockingQueue<>();
 
       Preconditions.checkArgument(targetIndices.length <= parityBlkNum,
           "Too much missed striped blocks.");
@@ -412,8 +458,12 @@ public void run() {
           }
         }
 
-        for (int i = 0; i < targets.length; i++) {
-          targetBuffers[i] = allocateBuffer(bufferSize);
+        for (int n = 0; n <= STRIPED_BLK_RECOVERY_PIPELINE_DEPTH; n++) {
+          ByteBuffer[] targetBuffers = new ByteBuffer[targets.length];
+          for (int i = 0; i < targets.length; i++) {
+            targetBuffers[i] = allocateBuffer(bufferSize);
+          }
+          freeTargetBuffers.add(targetBuffers);
         }
 
         checksumSize = checksum.getChecksumSize();
@@ -429,12 +479,25 @@ public void run() {
         // targetsStatus store whether some target is success, it will record
         // any failed target once, if some target failed (invalid DN or transfer
         // failed), will not transfer data to it any more.
-        boolean[] targetsStatus = new boolean[targets.length];
+        // It is updated by the transfer, the decoding reads it to skip the
+        // failed targets.
+        final boolean[] targetsStatus = new boolean[targets.length];
         if (initTargetStreams(targetsStatus) == 0) {
           String error = "All targets are failed.";
           throw new IOException(error);
         }
 
+        if (STRIPED_BLK_RECOVERY_PIPELINE_DEPTH > 0) {
+          transfer = STRIPED_BLK_TRANSFER_THREAD_POOL.submit(
+              new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                  transferQueuedBuffers(targetsStatus);
+                  return null;
+                }
+              });
+        }
+
         long firstStripedBlockLength = getBlockLen(blockGroup, 0);
         while (positionInBlock < firstStripedBlockLength) {
           int toRead = Math.min(
@@ -442,23 +505,30 @@ public void run() {
           // step1: read from minimum source DNs required for reconstruction.
           //   The returned success list is the source DNs we do real read from
           success = readMinimumStripedData4Recovery(success);
+          throttle(getReadBytes(success));
 
           // step2: decode to reconstruct targets
           long remaining = firstStripedBlockLength - positionInBlock;
           int toRecoverLen = remaining < bufferSize ? 
               (int)remaining : bufferSize;
-          recoverTargets(success, targetsStatus, toRecoverLen);
-
-          // step3: transfer data
-          if (transferData2Targets(targetsStatus) == 0) {
-            String error = "Transfer failed for all targets.";
-            throw new IOException(error);
-          }
+          ByteBuffer[] targetBuffers = takeFreeTargetBuffers();
+          recoverTargets(success, targetsStatus, toRecoverLen, targetBuffers);
 
           clearBuffers();
           positionInBlock += toRead;
+
+          // step3: transfer data, or queue it for the transfer thread
+          if (transfer == null) {
+            transferTargetBuffers(targetBuffers, targetsStatus);
+          } else {
+            decodedTargetBuffers.add(targetBuffers);
+          }
         }
 
+        if (transfer != null) {
+          decodedTargetBuffers.add(END_OF_BUFFERS);
+          waitForTransfer();
+        }
         endTargetBlocks(targetsStatus);
 
         // Currently we don't check the acks for packets, this is similar as
@@ -466,6 +536,9 @@ public void run() {
       } catch (Throwable e) {
         LOG.warn("Failed to recover striped block: " + blockGroup, e);
       } finally {
+        if (transfer != null) {
+          transfer.cancel(true);
+        }
         datanode.decrementXmitsInProgress();
         // close block readers
         for (StripedReader stripedReader : stripedReaders) {
@@ -626,7 +699,12 @@ private int[] getErasedIndices(boolean[] targetsStatus) {
     }
 
     private void recoverTargets(int[] success, boolean[] targetsStatus,
-        int toRecoverLen) {
+        int toRecoverLen, ByteBuffer[] targetBuffers) {
+      // Targets failing from now on are skipped by the transfer
+      boolean[] status;
+      synchronized (targetsStatus) {
+        status = targetsStatus.clone();
+      }
       initDecoderIfNecessary();
       ByteBuffer[] inputs = new ByteBuffer[dataBlkNum + parityBlkNum];
       for (int i = 0; i < success.length; i++) {
@@ -643,19 +721,19 @@ private void recoverTargets(int[] success, boolean[] targetsStatus,
           inputs[index] = (ByteBuffer)buffer.flip();
         }
       }
-      int[] erasedIndices = getErasedIndices(targetsStatus);
+      int[] erasedIndices = getErasedIndices(status);
       ByteBuffer[] outputs = new ByteBuffer[erasedIndices.length];
       int m = 0;
       for (int i = 0; i < targetBuffers.length; i++) {
-        if (targetsStatus[i]) {
+        if (status[i]) {
+          targetBuffers[i].limit(toRecoverLen);
           outputs[m++] = targetBuffers[i];
-          outputs[i].limit(toRecoverLen);
         }
       }
       decoder.decode(inputs, erasedIndices, outputs);
 
       for (int i = 0; i < targets.length; i++) {
-        if (targetsStatus[i]) {
+        if (status[i]) {
           long blockLen = getBlockLen(blockGroup, targetIndices[i]);
           long remaining = blockLen - positionInBlock;
           if (remaining < 0) {
@@ -846,10 +924,11 @@ private Peer newConnectedPeer(ExtendedBlock b, InetSocketAddress addr,
     /**
      * Send data to targets
      */
-    private int transferData2Targets(boolean[] targetsStatus) {
+    private int transferData2Targets(ByteBuffer[] targetBuffers,
+        boolean[] targetsStatus) {
       int nsuccess = 0;
       for (int i = 0; i < targets.length; i++) {
-        if (targetsStatus[i]) {
+        if (isTargetSuccessful(targetsStatus, i)) {
           boolean success = false;
           try {
             ByteBuffer buffer = targetBuffers[i];
@@ -875,6 +954,7 @@ private int transferData2Targets(boolean[] targetsStatus) {
 
               // Send packet
               packet.writeTo(targetOutputStreams[i]);
+              throttle(toWrite);
 
               blockOffset4Targets[i] += toWrite;
               nsuccess++;
@@ -883,14 +963,113 @@ private int transferData2Targets(boolean[] targetsStatus) {
           } catch (IOException e) {
             LOG.warn(e.getMessage());
           }
-          targetsStatus[i] = success;
+          synchronized (targetsStatus) {
+            targetsStatus[i] = success;
+          }
         }
       }
       return nsuccess;
     }
 
+    private boolean isTargetSuccessful(boolean[] targetsStatus, int i) {
+      synchronized (targetsStatus) {
+        return targetsStatus[i];
+      }
+    }
+
+    /**
+     * Send the decoded data of a round to the targets, and make the buffers
+     * free for decoding again.
+     */
+    private void transferTargetBuffers(ByteBuffer[] targetBuffers,
+        boolean[] targetsStatus) throws IOException {
+      if (transferData2Targets(targetBuffers, targetsStatus) == 0) {
+        String error = "Transfer failed for all targets.";
+        throw new IOException(error);
+      }
+      for (ByteBuffer buffer : targetBuffers) {
+        cleanBuffer(buffer);
+      }
+      freeTargetBuffers.add(targetBuffers);
+    }
+
+    /**
+     * Transfer the decoded target buffers in the order they are queued,
+     * until the end of them.
+     */
+    private void transferQueuedBuffers(boolean[] targetsStatus)
+        throws IOException, InterruptedException {
+      while (true) {
+        ByteBuffer[] targetBuffers = decodedTargetBuffers.take();
+        if (targetBuffers == END_OF_BUFFERS) {
+          return;
+        }
+        transferTargetBuffers(targetBuffers, targetsStatus);
+      }
+    }
+
     /**
-     * clear all buffers
+     * Take buffers to decode into, waiting for the transfer of earlier ones
+     * if they are all queued for it.
+     */
+    private ByteBuffer[] takeFreeTargetBuffers() throws IOException {
+      while (true) {
+        ByteBuffer[] targetBuffers = freeTargetBuffers.poll();
+        if (targetBuffers != null) {
+          return targetBuffers;
+        }
+        if (transfer == null) {
+          throw new IllegalStateException("No free target buffers");
+        }
+        try {
+          targetBuffers = freeTargetBuffers.poll(
+              STRIPED_READ_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+          throw new IOException("Interrupted waiting for the transfer", e);
+        }
+        if (targetBuffers != null) {
+          return targetBuffers;
+        }
+        if (transfer.isDone()) {
+          // The transfer failed, get its error
+          waitForTransfer();
+        }
+      }
+    }
+
+    private void waitForTransfer() throws IOException {
+      try {
+        transfer.get();
+      } catch (InterruptedException e) {
+        throw new IOException("Interrupted waiting for the transfer", e);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+          throw (IOException) cause;
+        }
+        throw new IOException("Transfer failed", cause);
+      }
+      if (positionInBlock < getBlockLen(blockGroup, 0)) {
+        throw new IOException("Transfer ended early");
+      }
+    }
+
+    private long getReadBytes(int[] success) {
+      long bytes = 0;
+      for (int i = 0; i < success.length; i++) {
+        bytes += stripedReaders.get(success[i]).buffer.position();
+      }
+      return bytes;
+    }
+
+    private void throttle(long bytes) {
+      if (throttler != null) {
+        throttler.throttle(bytes);
+      }
+    }
+
+    /**
+     * clear the read buffers
      */
     private void clearBuffers() {
       for (StripedReader stripedReader : stripedReaders) {
@@ -904,12 +1083,6 @@ private void clearBuffers() {
           zeroStripeBuffers[i].clear();
         }
       }
-
-      for (int i = 0; i < targetBuffers.length; i++) {
-        if (targetBuffers[i] != null) {
-          cleanBuffer(targetBuffers[i]);
-        }
-      }
     }
     
     private ByteBuffer cleanBuffer(ByteBuffer buffer) {
@@ -920,7 +1093,7 @@ private ByteBuffer cleanBuffer(ByteBuffer buffer) {
     // send an empty packet to mark the end of the block
     private void endTargetBlocks(boolean[] targetsStatus) {
       for (int i = 0; i < targets.length; i++) {
-        if (targetsStatus[i]) {
+        if (isTargetSuccessful(targetsStatus, i)) {
           try {
             DFSPacket packet = new DFSPacket(packetBuf, 0, 
                 blockOffset4Targets[i], seqNo4Targets[i]++, checksumSize, true);
@@ -478,6 +478,13 @@ void checkBlock(ExtendedBlock b, long minLength, ReplicaState state)
    */
   boolean isCached(String bpid, long blockId);
 
+  /**
+   * Record a client read of the specified finalized block, so that
+   * frequently read blocks can be cached.
+   * @param block the block that was read
+   */
+  void onBlockRead(ExtendedBlock block);
+
     /**
      * Check if all the data directories are healthy
      * @return A set of unhealthy data directories.
@@ -628,4 +635,10 @@ ReplicaInfo moveBlockAcrossStorage(final ExtendedBlock block,
    * Confirm whether the block is deleting
    */
   boolean isDeletingBlock(String bpid, long blockId);
+
+  /**
+   * Acquire the lock of the whole dataset, which excludes any change to the
+   * replicas while it is held.
+   */
+  AutoCloseableLock acquireDatasetLock();
 }
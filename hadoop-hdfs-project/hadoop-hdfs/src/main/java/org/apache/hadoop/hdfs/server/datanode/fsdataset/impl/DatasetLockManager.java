@@ -0,0 +1,287 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hdfs.server.datanode.DataNode;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.AutoCloseableLock;
+import org.apache.hadoop.hdfs.server.datanode.metrics.DataNodeMetrics;
+import org.apache.hadoop.util.StringUtils;
+import org.apache.hadoop.util.Time;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * The locks of an {@link FsDatasetImpl}, which replace a single lock on the
+ * whole dataset so that a slow or failing volume only stalls the operations
+ * on its own replicas.
+ *
+ * There are three levels of locks, always acquired in this order:
+ * <ol>
+ * <li>the dataset lock, a read-write lock which is held exclusively to add
+ * or remove volumes and to get a stable view of all the replicas;</li>
+ * <li>a read-write lock for each block pool, which is held exclusively to
+ * add, remove or shut down the block pool;</li>
+ * <li>a lock for each volume of each block pool, which guards the replicas
+ * on the volume. Several volume locks are acquired in the order of their
+ * storage IDs.</li>
+ * </ol>
+ * Acquiring a block pool or a volume lock also acquires the locks of the
+ * upper levels in shared mode. A thread must not acquire a lock of an upper
+ * level, or a lock of another volume, while it already holds a volume lock.
+ *
+ * The time the volume locks and the exclusive locks are held is reported to
+ * the DataNode metrics, and holding them longer than
+ * dfs.datanode.lock-reporting-threshold-ms logs a warning with the stack
+ * trace of the holder.
+ */
+class DatasetLockManager {
+  static final Log LOG = LogFactory.getLog(DatasetLockManager.class);
+
+  /** The minimum interval between two warnings about long lock holds. */
+  private static final long WARN_INTERVAL_MS = 10000L;
+
+  private final ReentrantReadWriteLock datasetLock =
+      new ReentrantReadWriteLock();
+  private final ConcurrentMap<String, ReentrantReadWriteLock> poolLocks =
+      new ConcurrentHashMap<String, ReentrantReadWriteLock>();
+  private final ConcurrentMap<String, VolumeLock> volumeLocks =
+      new ConcurrentHashMap<String, VolumeLock>();
+
+  private final DataNode datanode;
+  private final long thresholdNanos;
+
+  private final AtomicLong lastWarnMs = new AtomicLong(-WARN_INTERVAL_MS);
+  private final AtomicLong suppressedWarnings = new AtomicLong();
+
+  DatasetLockManager(DataNode datanode, long thresholdMs) {
+    this.datanode = datanode;
+    this.thresholdNanos = thresholdMs * 1000000L;
+  }
+
+  /** Acquire the dataset lock exclusively. */
+  AutoCloseableLock lockDataset() {
+    final long start = acquire(datasetLock.writeLock());
+    return new AutoCloseableLock() {
+      @Override
+      public void close() {
+        final boolean outermost = datasetLock.getWriteHoldCount() == 1;
+        datasetLock.writeLock().unlock();
+        if (outermost) {
+          released("dataset", start, false);
+        }
+      }
+    };
+  }
+
+  /** Acquire the lock of a block pool exclusively. */
+  AutoCloseableLock lockBlockPool(String bpid) {
+    final Lock shared = datasetLock.readLock();
+    shared.lock();
+    final ReentrantReadWriteLock poolLock = getPoolLock(bpid);
+    final long start;
+    try {
+      start = acquire(poolLock.writeLock());
+    } catch (RuntimeException e) {
+      shared.unlock();
+      throw e;
+    }
+    final String name = "block pool " + bpid;
+    return new AutoCloseableLock() {
+      @Override
+      public void close() {
+        final boolean outermost = poolLock.getWriteHoldCount() == 1;
+        poolLock.writeLock().unlock();
+        shared.unlock();
+        if (outermost) {
+          released(name, start, false);
+        }
+      }
+    };
+  }
+
+  /** Acquire the lock of a block pool in shared mode. */
+  AutoCloseableLock readLockBlockPool(String bpid) {
+    final Lock[] locks = {datasetLock.readLock(),
+        getPoolLock(bpid).readLock()};
+    lockAll(locks);
+    return new AutoCloseableLock() {
+      @Override
+      public void close() {
+        unlockAll(locks, locks.length);
+      }
+    };
+  }
+
+  /**
+   * Acquire the locks of some volumes of a block pool.
+   * @param storageIds the storage IDs of the volumes, in any order and
+   *                   possibly with duplicates
+   */
+  AutoCloseableLock lockVolumes(String bpid, String... storageIds) {
+    final String[] ids = storageIds.clone();
+    Arrays.sort(ids);
+    int n = 0;
+    for (int i = 0; i < ids.length; i++) {
+      if (i == 0 || !ids[i].equals(ids[i - 1])) {
+        ids[n++] = ids[i];
+      }
+    }
+    final Lock[] locks = new Lock[n + 2];
+    locks[0] = datasetLock.readLock();
+    locks[1] = getPoolLock(bpid).readLock();
+    for (int i = 0; i < n; i++) {
+      locks[i + 2] = getVolumeLock(bpid, ids[i]);
+    }
+    lockAll(locks);
+    return new AutoCloseableLock() {
+      @Override
+      public void close() {
+        unlockAll(locks, locks.length);
+      }
+    };
+  }
+
+  private ReentrantReadWriteLock getPoolLock(String bpid) {
+    ReentrantReadWriteLock lock = poolLocks.get(bpid);
+    if (lock == null) {
+      final ReentrantReadWriteLock newLock = new ReentrantReadWriteLock();
+      lock = poolLocks.putIfAbsent(bpid, newLock);
+      if (lock == null) {
+        lock = newLock;
+      }
+    }
+    return lock;
+  }
+
+  private VolumeLock getVolumeLock(String bpid, String storageId) {
+    final String key = bpid + "/" + storageId;
+    VolumeLock lock = volumeLocks.get(key);
+    if (lock == null) {
+      final VolumeLock newLock = new VolumeLock("volume " + key);
+      lock = volumeLocks.putIfAbsent(key, newLock);
+      if (lock == null) {
+        lock = newLock;
+      }
+    }
+    return lock;
+  }
+
+  private static void lockAll(Lock[] locks) {
+    int locked = 0;
+    try {
+      for (; locked < locks.length; locked++) {
+        locks[locked].lock();
+      }
+    } finally {
+      if (locked < locks.length) {
+        unlockAll(locks, locked);
+      }
+    }
+  }
+
+  private static void unlockAll(Lock[] locks, int count) {
+    for (int i = count - 1; i >= 0; i--) {
+      locks[i].unlock();
+    }
+  }
+
+  private static long acquire(Lock lock) {
+    lock.lock();
+    return System.nanoTime();
+  }
+
+  /**
+   * Report how long a lock was held once it is released.
+   * @param volume whether it is the lock of a volume, or an exclusive lock
+   *               of a block pool or of the whole dataset
+   */
+  private void released(String name, long startNanos, boolean volume) {
+    final long heldNanos = System.nanoTime() - startNanos;
+    // The metrics are not available with the mock DataNodes of some tests
+    final DataNodeMetrics m = datanode.getMetrics();
+    if (m != null) {
+      if (volume) {
+        m.addVolumeLockHeldNanos(heldNanos);
+      } else {
+        m.addBlockPoolLockHeldNanos(heldNanos);
+      }
+    }
+    if (heldNanos < thresholdNanos) {
+      return;
+    }
+    if (m != null) {
+      m.incrDatasetLockLongHolds();
+    }
+    final long now = Time.monotonicNow();
+    final long last = lastWarnMs.get();
+    if (now - last < WARN_INTERVAL_MS || !lastWarnMs.compareAndSet(last, now)) {
+      suppressedWarnings.incrementAndGet();
+      return;
+    }
+    final long suppressed = suppressedWarnings.getAndSet(0);
+    LOG.warn("The " + name + " lock was held for " + heldNanos / 1000000L
+        + " ms" + (suppressed > 0 ? " (" + suppressed
+        + " similar warnings suppressed)" : "") + ". Current stack trace:\n"
+        + StringUtils.getStackTrace(Thread.currentThread()));
+  }
+
+  @VisibleForTesting
+  boolean isVolumeLocked(String bpid, String storageId) {
+    return getVolumeLock(bpid, storageId).isLocked();
+  }
+
+  /** The lock of a volume, which reports how long it is held. */
+  private final class VolumeLock extends ReentrantLock {
+    private static final long serialVersionUID = 1L;
+
+    private final String name;
+    private long acquiredNanos;
+
+    VolumeLock(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public void lock() {
+      super.lock();
+      if (getHoldCount() == 1) {
+        acquiredNanos = System.nanoTime();
+      }
+    }
+
+    @Override
+    public void unlock() {
+      final boolean outermost = getHoldCount() == 1;
+      final long start = acquiredNanos;
+      super.unlock();
+      if (outermost) {
+        released(name, start, true);
+      }
+    }
+  }
+}
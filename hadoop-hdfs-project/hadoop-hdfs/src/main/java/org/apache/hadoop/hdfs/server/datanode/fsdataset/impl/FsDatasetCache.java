@@ -18,11 +18,18 @@
 
 package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
 
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_CACHE_ADAPTIVE_INTERVAL_MS_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_CACHE_ADAPTIVE_INTERVAL_MS_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_CACHE_ADAPTIVE_MAX_BYTES_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_CACHE_ADAPTIVE_MAX_BYTES_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_CACHE_ADAPTIVE_MIN_READS_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_CACHE_ADAPTIVE_MIN_READS_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_CACHE_REVOCATION_TIMEOUT_MS;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_CACHE_REVOCATION_TIMEOUT_MS_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_CACHE_REVOCATION_POLLING_MS;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_CACHE_REVOCATION_POLLING_MS_DEFAULT;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
@@ -30,10 +37,14 @@
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
@@ -61,6 +72,10 @@
  * Manages caching for an FsDatasetImpl by using the mmap(2) and mlock(2)
  * system calls to lock blocks into memory. Block checksums are verified upon
  * entry into the cache.
+ *
+ * Besides the blocks the NameNode asks it to cache, it can adaptively cache
+ * the blocks most frequently read by clients, within a separate part of the
+ * locked memory. Adaptively cached blocks are not reported to the NameNode.
  */
 @InterfaceAudience.Private
 @InterfaceStability.Unstable
@@ -71,13 +86,27 @@ public class FsDatasetCache {
   private static final class Value {
     final State state;
     final MappableBlock mappableBlock;
+    /**
+     * Whether the block was cached because it was read frequently, rather
+     * than because the NameNode asked for it.
+     */
+    final boolean adaptive;
 
-    Value(MappableBlock mappableBlock, State state) {
+    Value(MappableBlock mappableBlock, State state, boolean adaptive) {
       this.mappableBlock = mappableBlock;
       this.state = state;
+      this.adaptive = adaptive;
     }
   }
 
+  /**
+   * Client reads of a block, used to rank blocks for adaptive caching.
+   */
+  private static final class ReadCount {
+    final AtomicLong count = new AtomicLong(0);
+    volatile long length;
+  }
+
   private enum State {
     /**
      * The MappableBlock is in the process of being cached.
@@ -131,6 +160,23 @@ public boolean shouldAdvertise() {
 
   private final long revocationPollingMs;
 
+  /**
+   * The part of the locked memory used for adaptive caching.
+   */
+  private final long adaptiveMaxBytes;
+
+  private final int adaptiveMinReads;
+
+  private final ScheduledThreadPoolExecutor adaptiveCachingExecutor;
+
+  /**
+   * Decaying client read counts of blocks, used for adaptive caching.
+   */
+  private final ConcurrentHashMap<ExtendedBlockId, ReadCount> readCounts =
+      new ConcurrentHashMap<ExtendedBlockId, ReadCount>();
+
+  private final AtomicLong numBlocksAdaptivelyCached = new AtomicLong(0);
+
   /**
    * The approximate amount of cache space in use.
    *
@@ -144,6 +190,11 @@ public boolean shouldAdvertise() {
    */
   private final UsedBytesCount usedBytesCount;
 
+  /**
+   * The approximate amount of cache space used by adaptive caching.
+   */
+  private final UsedBytesCount adaptiveUsedBytesCount;
+
   public static class PageRounder {
     private final long osPageSize =
         NativeIO.POSIX.getCacheManipulator().getOperatingSystemPageSize();
@@ -163,11 +214,17 @@ public long roundDown(long count) {
     }
   }
 
-  private class UsedBytesCount {
+  private static class UsedBytesCount {
     private final AtomicLong usedBytes = new AtomicLong(0);
     
     private final PageRounder rounder = new PageRounder();
 
+    private final long maxBytes;
+
+    UsedBytesCount(long maxBytes) {
+      this.maxBytes = maxBytes;
+    }
+
     /**
      * Try to reserve more bytes.
      *
@@ -223,7 +280,7 @@ long get() {
   }
 
   /**
-   * The total cache capacity in bytes.
+   * The cache capacity in bytes available to the NameNode.
    */
   private final long maxBytes;
 
@@ -238,12 +295,28 @@ long get() {
 
   public FsDatasetCache(FsDatasetImpl dataset) {
     this.dataset = dataset;
-    this.maxBytes = dataset.datanode.getDnConf().getMaxLockedMemory();
+    final long maxLockedMemory =
+        dataset.datanode.getDnConf().getMaxLockedMemory();
+    this.adaptiveMaxBytes = dataset.datanode.getConf().getLong(
+        DFS_DATANODE_CACHE_ADAPTIVE_MAX_BYTES_KEY,
+        DFS_DATANODE_CACHE_ADAPTIVE_MAX_BYTES_DEFAULT);
+    if (adaptiveMaxBytes < 0 || adaptiveMaxBytes > maxLockedMemory) {
+      throw new RuntimeException("configured value " + adaptiveMaxBytes +
+          " for " + DFS_DATANODE_CACHE_ADAPTIVE_MAX_BYTES_KEY +
+          " is invalid.  It must not be negative, nor more than the value " +
+          "of " + DFSConfigKeys.DFS_DATANODE_MAX_LOCKED_MEMORY_KEY + " (" +
+          maxLockedMemory + ").");
+    }
+    this.maxBytes = maxLockedMemory - adaptiveMaxBytes;
+    this.adaptiveMinReads = dataset.datanode.getConf().getInt(
+        DFS_DATANODE_CACHE_ADAPTIVE_MIN_READS_KEY,
+        DFS_DATANODE_CACHE_ADAPTIVE_MIN_READS_DEFAULT);
     ThreadFactory workerFactory = new ThreadFactoryBuilder()
         .setDaemon(true)
         .setNameFormat("FsDatasetCache-%d-" + dataset.toString())
         .build();
-    this.usedBytesCount = new UsedBytesCount();
+    this.usedBytesCount = new UsedBytesCount(maxBytes);
+    this.adaptiveUsedBytesCount = new UsedBytesCount(adaptiveMaxBytes);
     this.uncachingExecutor = new ThreadPoolExecutor(
             0, 1,
             60, TimeUnit.SECONDS,
@@ -268,6 +341,29 @@ public FsDatasetCache(FsDatasetImpl dataset) {
               ".  Reconfigure this to " + minRevocationPollingMs);
     }
     this.revocationPollingMs = confRevocationPollingMs;
+    if (adaptiveMaxBytes > 0) {
+      long adaptiveIntervalMs = dataset.datanode.getConf().getLong(
+          DFS_DATANODE_CACHE_ADAPTIVE_INTERVAL_MS_KEY,
+          DFS_DATANODE_CACHE_ADAPTIVE_INTERVAL_MS_DEFAULT);
+      this.adaptiveCachingExecutor = new ScheduledThreadPoolExecutor(
+          1, workerFactory);
+      this.adaptiveCachingExecutor.scheduleWithFixedDelay(
+          new AdaptiveCachingTask(), adaptiveIntervalMs, adaptiveIntervalMs,
+          TimeUnit.MILLISECONDS);
+      LOG.info("Adaptive caching of up to {} bytes enabled, with an " +
+          "interval of {} ms", adaptiveMaxBytes, adaptiveIntervalMs);
+    } else {
+      this.adaptiveCachingExecutor = null;
+    }
+  }
+
+  /**
+   * Stop adaptive caching.
+   */
+  void shutdown() {
+    if (adaptiveCachingExecutor != null) {
+      adaptiveCachingExecutor.shutdownNow();
+    }
   }
 
   /**
@@ -280,7 +376,8 @@ synchronized List<Long> getCachedBlocks(String bpid) {
         mappableBlockMap.entrySet().iterator(); iter.hasNext(); ) {
       Entry<ExtendedBlockId, Value> entry = iter.next();
       if (entry.getKey().getBlockPoolId().equals(bpid)) {
-        if (entry.getValue().state.shouldAdvertise()) {
+        if (entry.getValue().state.shouldAdvertise() &&
+            !entry.getValue().adaptive) {
           blocks.add(entry.getKey().getBlockId());
         }
       }
@@ -290,24 +387,54 @@ synchronized List<Long> getCachedBlocks(String bpid) {
 
   /**
    * Attempt to begin caching a block.
+   *
+   * @param adaptive whether the block is cached because it is read
+   *                 frequently, rather than because the NameNode asked for it
    */
   synchronized void cacheBlock(long blockId, String bpid,
       String blockFileName, long length, long genstamp,
-      Executor volumeExecutor) {
+      Executor volumeExecutor, boolean adaptive) {
     ExtendedBlockId key = new ExtendedBlockId(blockId, bpid);
     Value prevValue = mappableBlockMap.get(key);
     if (prevValue != null) {
+      if (!adaptive && prevValue.adaptive &&
+          prevValue.state == State.CACHED && promote(key, prevValue)) {
+        return;
+      }
       LOG.debug("Block with id {}, pool {} already exists in the "
               + "FsDatasetCache with state {}", blockId, bpid, prevValue.state
       );
-      numBlocksFailedToCache.incrementAndGet();
+      if (!adaptive) {
+        numBlocksFailedToCache.incrementAndGet();
+      }
       return;
     }
-    mappableBlockMap.put(key, new Value(null, State.CACHING));
+    mappableBlockMap.put(key, new Value(null, State.CACHING, adaptive));
     volumeExecutor.execute(
-        new CachingTask(key, blockFileName, length, genstamp));
-    LOG.debug("Initiating caching for Block with id {}, pool {}", blockId,
-        bpid);
+        new CachingTask(key, blockFileName, length, genstamp, adaptive));
+    LOG.debug("Initiating {}caching for Block with id {}, pool {}",
+        adaptive ? "adaptive " : "", blockId, bpid);
+  }
+
+  /**
+   * Turn an adaptively cached block into one cached for the NameNode,
+   * moving its bytes from the adaptive part of the cache.
+   *
+   * @return true if the block was promoted
+   */
+  private boolean promote(ExtendedBlockId key, Value value) {
+    long length = value.mappableBlock.getLength();
+    if (usedBytesCount.reserve(length) < 0) {
+      return false;
+    }
+    adaptiveUsedBytesCount.release(length);
+    mappableBlockMap.put(key,
+        new Value(value.mappableBlock, State.CACHED, false));
+    numBlocksAdaptivelyCached.addAndGet(-1);
+    numBlocksCached.addAndGet(1);
+    dataset.datanode.getMetrics().incrBlocksCached(1);
+    LOG.debug("Adaptively cached {} is now cached for the NameNode.", key);
+    return true;
   }
 
   synchronized void uncacheBlock(String bpid, long blockId) {
@@ -330,12 +457,12 @@ synchronized void uncacheBlock(String bpid, long blockId) {
     case CACHING:
       LOG.debug("Cancelling caching for block with id {}, pool {}.", blockId,
           bpid);
-      mappableBlockMap.put(key,
-          new Value(prevValue.mappableBlock, State.CACHING_CANCELLED));
+      mappableBlockMap.put(key, new Value(prevValue.mappableBlock,
+          State.CACHING_CANCELLED, prevValue.adaptive));
       break;
     case CACHED:
-      mappableBlockMap.put(key,
-          new Value(prevValue.mappableBlock, State.UNCACHING));
+      mappableBlockMap.put(key, new Value(prevValue.mappableBlock,
+          State.UNCACHING, prevValue.adaptive));
       if (deferred) {
         if (LOG.isDebugEnabled()) {
           LOG.debug("{} is anchored, and can't be uncached now.  Scheduling it " +
@@ -419,12 +546,15 @@ private class CachingTask implements Runnable {
     private final String blockFileName;
     private final long length;
     private final long genstamp;
+    private final boolean adaptive;
 
-    CachingTask(ExtendedBlockId key, String blockFileName, long length, long genstamp) {
+    CachingTask(ExtendedBlockId key, String blockFileName, long length,
+        long genstamp, boolean adaptive) {
       this.key = key;
       this.blockFileName = blockFileName;
       this.length = length;
       this.genstamp = genstamp;
+      this.adaptive = adaptive;
     }
 
     @Override
@@ -434,10 +564,19 @@ public void run() {
       MappableBlock mappableBlock = null;
       ExtendedBlock extBlk = new ExtendedBlock(key.getBlockPoolId(),
           key.getBlockId(), length, genstamp);
-      long newUsedBytes = reserve(length);
+      UsedBytesCount bytesCount =
+          adaptive ? adaptiveUsedBytesCount : usedBytesCount;
+      long newUsedBytes = bytesCount.reserve(length);
       boolean reservedBytes = false;
       try {
         if (newUsedBytes < 0) {
+          if (adaptive) {
+            // Bytes of evicted blocks may not have been released yet
+            LOG.debug("Failed to adaptively cache {}: could not reserve {} " +
+                "more bytes in the cache: {} of {} exceeded.", key, length,
+                DFS_DATANODE_CACHE_ADAPTIVE_MAX_BYTES_KEY, adaptiveMaxBytes);
+            return;
+          }
           LOG.warn("Failed to cache " + key + ": could not reserve " + length +
               " more bytes in the cache: " +
               DFSConfigKeys.DFS_DATANODE_MAX_LOCKED_MEMORY_KEY +
@@ -481,27 +620,35 @@ public void run() {
             LOG.warn("Caching of " + key + " was cancelled.");
             return;
           }
-          mappableBlockMap.put(key, new Value(mappableBlock, State.CACHED));
+          mappableBlockMap.put(key,
+              new Value(mappableBlock, State.CACHED, adaptive));
         }
-        LOG.debug("Successfully cached {}.  We are now caching {} bytes in"
-            + " total.", key, newUsedBytes);
+        LOG.debug("Successfully {}cached {}.  We are now caching {} bytes in"
+            + " total.", adaptive ? "adaptively " : "", key, newUsedBytes);
         dataset.datanode.getShortCircuitRegistry().processBlockMlockEvent(key);
-        numBlocksCached.addAndGet(1);
-        dataset.datanode.getMetrics().incrBlocksCached(1);
+        if (adaptive) {
+          numBlocksAdaptivelyCached.addAndGet(1);
+          dataset.datanode.getMetrics().incrBlocksAdaptivelyCached(1);
+        } else {
+          numBlocksCached.addAndGet(1);
+          dataset.datanode.getMetrics().incrBlocksCached(1);
+        }
         success = true;
       } finally {
         IOUtils.closeQuietly(blockIn);
         IOUtils.closeQuietly(metaIn);
         if (!success) {
           if (reservedBytes) {
-            release(length);
+            bytesCount.release(length);
           }
           LOG.debug("Caching of {} was aborted.  We are now caching only {} "
-                  + "bytes in total.", key, usedBytesCount.get());
+                  + "bytes in total.", key, bytesCount.get());
           if (mappableBlock != null) {
             mappableBlock.close();
           }
-          numBlocksFailedToCache.incrementAndGet();
+          if (!adaptive) {
+            numBlocksFailedToCache.incrementAndGet();
+          }
 
           synchronized (FsDatasetCache.this) {
             mappableBlockMap.remove(key);
@@ -573,9 +720,17 @@ public void run() {
       synchronized (FsDatasetCache.this) {
         mappableBlockMap.remove(key);
       }
-      long newUsedBytes = release(value.mappableBlock.getLength());
-      numBlocksCached.addAndGet(-1);
-      dataset.datanode.getMetrics().incrBlocksUncached(1);
+      long newUsedBytes;
+      if (value.adaptive) {
+        newUsedBytes =
+            adaptiveUsedBytesCount.release(value.mappableBlock.getLength());
+        numBlocksAdaptivelyCached.addAndGet(-1);
+        dataset.datanode.getMetrics().incrBlocksAdaptivelyUncached(1);
+      } else {
+        newUsedBytes = release(value.mappableBlock.getLength());
+        numBlocksCached.addAndGet(-1);
+        dataset.datanode.getMetrics().incrBlocksUncached(1);
+      }
       if (revocationTimeMs != 0) {
         LOG.debug("Uncaching of {} completed. usedBytes = {}",
             key, newUsedBytes);
@@ -586,6 +741,146 @@ public void run() {
     }
   }
 
+  /**
+   * Record a client read of a block.  This updates the cache hit metrics,
+   * and the read counts used for adaptive caching.
+   */
+  void onBlockRead(String bpid, long blockId, long length) {
+    if (maxBytes + adaptiveMaxBytes == 0) {
+      return;
+    }
+    if (isCached(bpid, blockId)) {
+      dataset.datanode.getMetrics().incrCacheBlocksReadHits();
+    } else {
+      dataset.datanode.getMetrics().incrCacheBlocksReadMisses();
+    }
+    if (adaptiveMaxBytes == 0) {
+      return;
+    }
+    ExtendedBlockId key = new ExtendedBlockId(blockId, bpid);
+    ReadCount readCount = readCounts.get(key);
+    if (readCount == null) {
+      ReadCount newReadCount = new ReadCount();
+      readCount = readCounts.putIfAbsent(key, newReadCount);
+      if (readCount == null) {
+        readCount = newReadCount;
+      }
+    }
+    readCount.length = length;
+    readCount.count.incrementAndGet();
+  }
+
+  /**
+   * Periodically re-ranks blocks for adaptive caching.
+   */
+  private class AdaptiveCachingTask implements Runnable {
+    @Override
+    public void run() {
+      try {
+        updateAdaptiveCache();
+      } catch (Throwable t) {
+        // An exception would cancel the periodic task
+        LOG.warn("Failed to update the adaptive cache", t);
+      }
+    }
+  }
+
+  /**
+   * Cache the blocks read most frequently since the last update, if they
+   * have been read at least the configured number of times.  A block is
+   * cached in place of adaptively cached blocks only if those were read
+   * less frequently, so that a burst of reads of cold blocks does not flush
+   * the cache.  The read counts are then halved, so that blocks which are no
+   * longer read eventually become eviction candidates.
+   */
+  @VisibleForTesting
+  void updateAdaptiveCache() {
+    final Map<ExtendedBlockId, Long> counts =
+        new HashMap<ExtendedBlockId, Long>();
+    final Map<ExtendedBlockId, Long> lengths =
+        new HashMap<ExtendedBlockId, Long>();
+    for (Iterator<Entry<ExtendedBlockId, ReadCount>> it =
+        readCounts.entrySet().iterator(); it.hasNext(); ) {
+      Entry<ExtendedBlockId, ReadCount> entry = it.next();
+      ReadCount readCount = entry.getValue();
+      long count = readCount.count.get();
+      counts.put(entry.getKey(), count);
+      lengths.put(entry.getKey(), readCount.length);
+      if (count <= 1) {
+        it.remove();
+      } else {
+        readCount.count.addAndGet(-(count / 2));
+      }
+    }
+
+    final Comparator<ExtendedBlockId> byCount =
+        new Comparator<ExtendedBlockId>() {
+      @Override
+      public int compare(ExtendedBlockId a, ExtendedBlockId b) {
+        return Long.compare(getCount(counts, a), getCount(counts, b));
+      }
+    };
+    List<ExtendedBlockId> candidates = new ArrayList<ExtendedBlockId>();
+    List<ExtendedBlockId> victims = new ArrayList<ExtendedBlockId>();
+    synchronized (this) {
+      for (Entry<ExtendedBlockId, Long> entry : counts.entrySet()) {
+        if (entry.getValue() >= adaptiveMinReads &&
+            !mappableBlockMap.containsKey(entry.getKey())) {
+          candidates.add(entry.getKey());
+        }
+      }
+      for (Entry<ExtendedBlockId, Value> entry :
+          mappableBlockMap.entrySet()) {
+        if (entry.getValue().adaptive &&
+            entry.getValue().state == State.CACHED) {
+          victims.add(entry.getKey());
+        }
+      }
+    }
+    Collections.sort(candidates, Collections.reverseOrder(byCount));
+    Collections.sort(victims, byCount);
+
+    long available = adaptiveMaxBytes - adaptiveUsedBytesCount.get();
+    int nextVictim = 0;
+    for (ExtendedBlockId key : candidates) {
+      long needed = roundUpPageSize(lengths.get(key));
+      if (needed > adaptiveMaxBytes) {
+        continue;
+      }
+      long count = counts.get(key);
+      while (available < needed && nextVictim < victims.size() &&
+          getCount(counts, victims.get(nextVictim)) < count) {
+        available += evict(victims.get(nextVictim++));
+      }
+      if (available < needed) {
+        continue;
+      }
+      available -= needed;
+      dataset.cacheBlock(key.getBlockPoolId(), key.getBlockId(), true);
+    }
+  }
+
+  private static long getCount(Map<ExtendedBlockId, Long> counts,
+      ExtendedBlockId key) {
+    Long count = counts.get(key);
+    return count == null ? 0 : count;
+  }
+
+  /**
+   * Uncache an adaptively cached block to make room for a hotter one.
+   *
+   * @return the number of bytes that will be released
+   */
+  private synchronized long evict(ExtendedBlockId key) {
+    Value value = mappableBlockMap.get(key);
+    if (value == null || !value.adaptive || value.state != State.CACHED) {
+      return 0;
+    }
+    LOG.debug("Evicting adaptively cached {}.", key);
+    uncacheBlock(key.getBlockPoolId(), key.getBlockId());
+    return roundUpPageSize(value.mappableBlock.getLength());
+  }
+
   // Stats related methods for FSDatasetMBean
 
   /**
@@ -614,6 +909,17 @@ public long getNumBlocksCached() {
     return numBlocksCached.get();
   }
 
+  /**
+   * Get the approximate amount of cache space used by adaptive caching.
+   */
+  public long getAdaptiveCacheUsed() {
+    return adaptiveUsedBytesCount.get();
+  }
+
+  public long getNumBlocksAdaptivelyCached() {
+    return numBlocksAdaptivelyCached.get();
+  }
+
   public synchronized boolean isCached(String bpid, long blockId) {
     ExtendedBlockId block = new ExtendedBlockId(blockId, bpid);
     Value val = mappableBlockMap.get(block);
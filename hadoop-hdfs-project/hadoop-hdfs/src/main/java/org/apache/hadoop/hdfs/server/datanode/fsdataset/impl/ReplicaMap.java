@@ -18,37 +18,27 @@
 package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
 
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
-import org.apache.hadoop.HadoopIllegalArgumentException;
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.server.datanode.ReplicaInfo;
 import org.apache.hadoop.util.LightWeightResizableGSet;
 
 /**
- * Maintains the replica map. 
+ * Maintains the replica map. The map of each block pool is synchronized on
+ * itself, so that the replicas of different block pools, and the replicas
+ * on different volumes, can be looked up and changed concurrently.
  */
 class ReplicaMap {
-  // Object using which this class is synchronized
-  private final Object mutex;
-  
   // Map of block pool Id to another map of block Id to ReplicaInfo.
-  private final Map<String, LightWeightResizableGSet<Block, ReplicaInfo>> map =
-    new HashMap<String, LightWeightResizableGSet<Block, ReplicaInfo>>();
+  private final ConcurrentMap<String,
+      LightWeightResizableGSet<Block, ReplicaInfo>> map =
+      new ConcurrentHashMap<String,
+          LightWeightResizableGSet<Block, ReplicaInfo>>();
 
-  ReplicaMap(Object mutex) {
-    if (mutex == null) {
-      throw new HadoopIllegalArgumentException(
-          "Object to synchronize on cannot be null");
-    }
-    this.mutex = mutex;
-  }
-  
   String[] getBlockPoolList() {
-    synchronized(mutex) {
-      return map.keySet().toArray(new String[map.keySet().size()]);   
-    }
+    return map.keySet().toArray(new String[0]);
   }
   
   private void checkBlockPool(String bpid) {
@@ -62,6 +52,21 @@ private void checkBlock(Block b) {
       throw new IllegalArgumentException("Block is null");
     }
   }
+
+  /** Get the map of a block pool, creating it if it does not exist. */
+  private LightWeightResizableGSet<Block, ReplicaInfo> getOrCreate(
+      String bpid) {
+    LightWeightResizableGSet<Block, ReplicaInfo> m = map.get(bpid);
+    if (m == null) {
+      final LightWeightResizableGSet<Block, ReplicaInfo> newMap =
+          new LightWeightResizableGSet<Block, ReplicaInfo>();
+      m = map.putIfAbsent(bpid, newMap);
+      if (m == null) {
+        m = newMap;
+      }
+    }
+    return m;
+  }
   
   /**
    * Get the meta information of the replica that matches both block id 
@@ -91,9 +96,12 @@ ReplicaInfo get(String bpid, Block block) {
    */
   ReplicaInfo get(String bpid, long blockId) {
     checkBlockPool(bpid);
-    synchronized(mutex) {
-      LightWeightResizableGSet<Block, ReplicaInfo> m = map.get(bpid);
-      return m != null ? m.get(new Block(blockId)) : null;
+    LightWeightResizableGSet<Block, ReplicaInfo> m = map.get(bpid);
+    if (m == null) {
+      return null;
+    }
+    synchronized(m) {
+      return m.get(new Block(blockId));
     }
   }
   
@@ -108,14 +116,32 @@ ReplicaInfo get(String bpid, long blockId) {
   ReplicaInfo add(String bpid, ReplicaInfo replicaInfo) {
     checkBlockPool(bpid);
     checkBlock(replicaInfo);
-    synchronized(mutex) {
-      LightWeightResizableGSet<Block, ReplicaInfo> m = map.get(bpid);
-      if (m == null) {
-        // Add an entry for block pool if it does not exist already
-        m = new LightWeightResizableGSet<Block, ReplicaInfo>();
-        map.put(bpid, m);
+    LightWeightResizableGSet<Block, ReplicaInfo> m = getOrCreate(bpid);
+    synchronized(m) {
+      return m.put(replicaInfo);
+    }
+  }
+
+  /**
+   * Add a replica's meta information into the map, unless the map already
+   * has a replica of the block.
+   *
+   * @param bpid block pool id
+   * @param replicaInfo a replica's meta information
+   * @return the replica already in the map, or null if it was added
+   * @throws IllegalArgumentException if the input parameter is null
+   */
+  ReplicaInfo addIfAbsent(String bpid, ReplicaInfo replicaInfo) {
+    checkBlockPool(bpid);
+    checkBlock(replicaInfo);
+    LightWeightResizableGSet<Block, ReplicaInfo> m = getOrCreate(bpid);
+    synchronized(m) {
+      ReplicaInfo existing = m.get(replicaInfo);
+      if (existing != null) {
+        return existing;
       }
-      return  m.put(replicaInfo);
+      m.put(replicaInfo);
+      return null;
     }
   }
 
@@ -137,9 +163,9 @@ void addAll(ReplicaMap other) {
   ReplicaInfo remove(String bpid, Block block) {
     checkBlockPool(bpid);
     checkBlock(block);
-    synchronized(mutex) {
-      LightWeightResizableGSet<Block, ReplicaInfo> m = map.get(bpid);
-      if (m != null) {
+    LightWeightResizableGSet<Block, ReplicaInfo> m = map.get(bpid);
+    if (m != null) {
+      synchronized(m) {
         ReplicaInfo replicaInfo = m.get(block);
         if (replicaInfo != null &&
             block.getGenerationStamp() == replicaInfo.getGenerationStamp()) {
@@ -159,9 +185,9 @@ ReplicaInfo remove(String bpid, Block block) {
    */
   ReplicaInfo remove(String bpid, long blockId) {
     checkBlockPool(bpid);
-    synchronized(mutex) {
-      LightWeightResizableGSet<Block, ReplicaInfo> m = map.get(bpid);
-      if (m != null) {
+    LightWeightResizableGSet<Block, ReplicaInfo> m = map.get(bpid);
+    if (m != null) {
+      synchronized(m) {
         return m.remove(new Block(blockId));
       }
     }
@@ -174,53 +200,48 @@ ReplicaInfo remove(String bpid, long blockId) {
    * @return the number of replicas in the map
    */
   int size(String bpid) {
-    LightWeightResizableGSet<Block, ReplicaInfo> m = null;
-    synchronized(mutex) {
-      m = map.get(bpid);
-      return m != null ? m.size() : 0;
+    LightWeightResizableGSet<Block, ReplicaInfo> m = map.get(bpid);
+    if (m == null) {
+      return 0;
+    }
+    synchronized(m) {
+      return m.size();
     }
   }
   
   /**
    * Get a collection of the replicas for given block pool
-   * This method is <b>not synchronized</b>. It needs to be synchronized
-   * externally using the mutex, both for getting the replicas
-   * values from the map and iterating over it. Mutex can be accessed using
-   * {@link #getMutext()} method.
+   * This method is <b>not synchronized</b>. Iterating over the collection
+   * needs to be synchronized externally using the mutex of the block pool,
+   * which can be accessed using {@link #getMutex(String)} method.
    * 
    * @param bpid block pool id
    * @return a collection of the replicas belonging to the block pool
    */
   Collection<ReplicaInfo> replicas(String bpid) {
-    LightWeightResizableGSet<Block, ReplicaInfo> m = null;
-    m = map.get(bpid);
+    LightWeightResizableGSet<Block, ReplicaInfo> m = map.get(bpid);
     return m != null ? m.values() : null;
   }
 
   void initBlockPool(String bpid) {
     checkBlockPool(bpid);
-    synchronized(mutex) {
-      LightWeightResizableGSet<Block, ReplicaInfo> m = map.get(bpid);
-      if (m == null) {
-        // Add an entry for block pool if it does not exist already
-        m = new LightWeightResizableGSet<Block, ReplicaInfo>();
-        map.put(bpid, m);
-      }
-    }
+    getOrCreate(bpid);
   }
   
   void cleanUpBlockPool(String bpid) {
     checkBlockPool(bpid);
-    synchronized(mutex) {
-      map.remove(bpid);
-    }
+    map.remove(bpid);
   }
   
   /**
-   * Give access to mutex used for synchronizing ReplicasMap
+   * Give access to mutex used for synchronizing the replicas of a block pool
+   * @param bpid block pool id
    * @return object used as lock
    */
-  Object getMutext() {
-    return mutex;
+  Object getMutex(String bpid) {
+    checkBlockPool(bpid);
+    LightWeightResizableGSet<Block, ReplicaInfo> m = map.get(bpid);
+    // Without replicas, there is nothing to iterate over
+    return m != null ? m : map;
   }
 }
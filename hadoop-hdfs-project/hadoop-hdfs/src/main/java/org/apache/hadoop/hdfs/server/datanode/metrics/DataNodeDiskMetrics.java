@@ -0,0 +1,137 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.util.Timer;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Tracks the flush and sync latencies of each volume of a DataNode while it
+ * receives blocks, and finds the volumes which are much slower than the
+ * others. Flushes only reach the page cache while syncs reach the disk, so
+ * the two are tracked separately.
+ */
+@InterfaceAudience.Private
+public class DataNodeDiskMetrics {
+  /**
+   * The minimum number of volumes needed for outlier detection. With fewer
+   * volumes the median is not a meaningful baseline.
+   */
+  private static final int MIN_OUTLIER_DETECTION_DISKS = 5;
+
+  /** The minimum number of flushes on a volume to judge its latency. */
+  private static final long MIN_OUTLIER_DETECTION_SAMPLES = 100;
+
+  /** A volume with a lower average latency is never slow. */
+  private static final long LOW_THRESHOLD_MS = 20;
+
+  private static final int NUM_SUB_WINDOWS = 4;
+
+  private final RollingAverages flushLatencies;
+  private final RollingAverages syncLatencies;
+  private final OutlierDetector outlierDetector;
+  private final long minSamples;
+
+  @VisibleForTesting
+  DataNodeDiskMetrics(Timer timer, long windowMs, int minDisks,
+      long minSamples, long lowThresholdMs) {
+    this.flushLatencies =
+        new RollingAverages(timer, windowMs, NUM_SUB_WINDOWS);
+    this.syncLatencies =
+        new RollingAverages(timer, windowMs, NUM_SUB_WINDOWS);
+    this.outlierDetector = new OutlierDetector(minDisks, lowThresholdMs);
+    this.minSamples = minSamples;
+  }
+
+  /**
+   * @return A DataNodeDiskMetrics, or null if volume latency tracking is
+   *         disabled.
+   */
+  public static DataNodeDiskMetrics create(Configuration conf) {
+    if (!conf.getBoolean(DFSConfigKeys.DFS_DATANODE_DISK_STATS_ENABLED_KEY,
+        DFSConfigKeys.DFS_DATANODE_DISK_STATS_ENABLED_DEFAULT)) {
+      return null;
+    }
+    return new DataNodeDiskMetrics(new Timer(), conf.getLong(
+        DFSConfigKeys.DFS_DATANODE_OUTLIERS_REPORT_INTERVAL_MS_KEY,
+        DFSConfigKeys.DFS_DATANODE_OUTLIERS_REPORT_INTERVAL_MS_DEFAULT),
+        MIN_OUTLIER_DETECTION_DISKS, MIN_OUTLIER_DETECTION_SAMPLES,
+        LOW_THRESHOLD_MS);
+  }
+
+  /**
+   * Add the time it took to flush a block being received to a volume.
+   *
+   * @param storageUuid The storage ID of the volume.
+   * @param latencyNanos The latency in nanoseconds.
+   */
+  public void addFlush(String storageUuid, long latencyNanos) {
+    flushLatencies.add(storageUuid, latencyNanos);
+  }
+
+  /**
+   * Add the time it took to sync a block being received to a volume.
+   *
+   * @param storageUuid The storage ID of the volume.
+   * @param latencyNanos The latency in nanoseconds.
+   */
+  public void addSync(String storageUuid, long latencyNanos) {
+    syncLatencies.add(storageUuid, latencyNanos);
+  }
+
+  /**
+   * @return The average flush latency in milliseconds of each volume with
+   *         enough samples in the window.
+   */
+  public Map<String, Double> getFlushAvgLatencies() {
+    return flushLatencies.getAverages(minSamples);
+  }
+
+  /**
+   * @return The average sync latency in milliseconds of each volume with
+   *         enough samples in the window.
+   */
+  public Map<String, Double> getSyncAvgLatencies() {
+    return syncLatencies.getAverages(minSamples);
+  }
+
+  /**
+   * @return The volumes whose flushes or syncs are slow compared to the
+   *         other volumes, with the higher of their outlying average
+   *         latencies in milliseconds.
+   */
+  public Map<String, Double> getOutliers() {
+    final Map<String, Double> outliers = new HashMap<>(
+        outlierDetector.getOutliers(getFlushAvgLatencies()));
+    for (Map.Entry<String, Double> entry :
+        outlierDetector.getOutliers(getSyncAvgLatencies()).entrySet()) {
+      final Double flushLatency = outliers.get(entry.getKey());
+      if (flushLatency == null || flushLatency < entry.getValue()) {
+        outliers.put(entry.getKey(), entry.getValue());
+      }
+    }
+    return outliers;
+  }
+}
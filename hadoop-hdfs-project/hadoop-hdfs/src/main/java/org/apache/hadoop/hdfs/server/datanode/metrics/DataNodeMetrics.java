@@ -64,6 +64,14 @@ public class DataNodeMetrics {
   @Metric MutableCounterLong blockVerificationFailures;
   @Metric MutableCounterLong blocksCached;
   @Metric MutableCounterLong blocksUncached;
+  @Metric("Blocks cached because they were read frequently")
+  MutableCounterLong blocksAdaptivelyCached;
+  @Metric("Adaptively cached blocks uncached")
+  MutableCounterLong blocksAdaptivelyUncached;
+  @Metric("Client reads of blocks locked in memory")
+  MutableCounterLong cacheBlocksReadHits;
+  @Metric("Client reads of blocks not locked in memory")
+  MutableCounterLong cacheBlocksReadMisses;
   @Metric MutableCounterLong readsFromLocalClient;
   @Metric MutableCounterLong readsFromRemoteClient;
   @Metric MutableCounterLong writesFromLocalClient;
@@ -95,6 +103,14 @@ public class DataNodeMetrics {
   final MutableQuantiles[]   ramDiskBlocksLazyPersistWindowMsQuantiles;
 
   @Metric MutableCounterLong fsyncCount;
+
+  @Metric("Nanoseconds the dataset locks of volumes were held")
+  MutableRate volumeLockHeldNanos;
+  @Metric("Nanoseconds the dataset locks of block pools, or of the whole " +
+      "dataset, were held exclusively")
+  MutableRate blockPoolLockHeldNanos;
+  @Metric("Number of dataset lock holds longer than the reporting threshold")
+  MutableCounterLong datasetLockLongHolds;
   
   @Metric MutableCounterLong volumeFailures;
 
@@ -244,6 +260,22 @@ public void incrBlocksUncached(int delta) {
     blocksUncached.incr(delta);
   }
 
+  public void incrBlocksAdaptivelyCached(int delta) {
+    blocksAdaptivelyCached.incr(delta);
+  }
+
+  public void incrBlocksAdaptivelyUncached(int delta) {
+    blocksAdaptivelyUncached.incr(delta);
+  }
+
+  public void incrCacheBlocksReadHits() {
+    cacheBlocksReadHits.incr();
+  }
+
+  public void incrCacheBlocksReadMisses() {
+    cacheBlocksReadMisses.incr();
+  }
+
   public void addReadBlockOp(long latency) {
     readBlockOp.add(latency);
   }
@@ -299,6 +331,18 @@ public void addFlushNanos(long latencyNanos) {
     }
   }
 
+  public void addVolumeLockHeldNanos(long heldNanos) {
+    volumeLockHeldNanos.add(heldNanos);
+  }
+
+  public void addBlockPoolLockHeldNanos(long heldNanos) {
+    blockPoolLockHeldNanos.add(heldNanos);
+  }
+
+  public void incrDatasetLockLongHolds() {
+    datasetLockLongHolds.incr();
+  }
+
   public void addFsyncNanos(long latencyNanos) {
     fsyncNanos.add(latencyNanos);
     for (MutableQuantiles q : fsyncNanosQuantiles) {
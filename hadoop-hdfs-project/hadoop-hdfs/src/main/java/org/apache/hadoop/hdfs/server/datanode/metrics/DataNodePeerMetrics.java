@@ -0,0 +1,105 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.metrics;
+
+import java.util.Map;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.util.Timer;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Tracks the packet ack latency of each downstream peer DataNode in the
+ * write pipelines of a DataNode, and finds the peers which are much slower
+ * than the others.
+ */
+@InterfaceAudience.Private
+public class DataNodePeerMetrics {
+  /**
+   * The minimum number of peers needed for outlier detection. With fewer
+   * peers the median is not a meaningful baseline.
+   */
+  private static final int MIN_OUTLIER_DETECTION_PEERS = 10;
+
+  /** The minimum number of acks from a peer to judge its latency. */
+  private static final long MIN_OUTLIER_DETECTION_SAMPLES = 100;
+
+  /** A peer with a lower average ack latency is never slow. */
+  private static final long LOW_THRESHOLD_MS = 5;
+
+  private static final int NUM_SUB_WINDOWS = 4;
+
+  private final RollingAverages sendPacketDownstreamLatencies;
+  private final OutlierDetector outlierDetector;
+  private final long minSamples;
+
+  @VisibleForTesting
+  DataNodePeerMetrics(Timer timer, long windowMs, int minPeers,
+      long minSamples, long lowThresholdMs) {
+    this.sendPacketDownstreamLatencies =
+        new RollingAverages(timer, windowMs, NUM_SUB_WINDOWS);
+    this.outlierDetector = new OutlierDetector(minPeers, lowThresholdMs);
+    this.minSamples = minSamples;
+  }
+
+  /**
+   * @return A DataNodePeerMetrics, or null if peer latency tracking is
+   *         disabled.
+   */
+  public static DataNodePeerMetrics create(Configuration conf) {
+    if (!conf.getBoolean(DFSConfigKeys.DFS_DATANODE_PEER_STATS_ENABLED_KEY,
+        DFSConfigKeys.DFS_DATANODE_PEER_STATS_ENABLED_DEFAULT)) {
+      return null;
+    }
+    return new DataNodePeerMetrics(new Timer(), conf.getLong(
+        DFSConfigKeys.DFS_DATANODE_OUTLIERS_REPORT_INTERVAL_MS_KEY,
+        DFSConfigKeys.DFS_DATANODE_OUTLIERS_REPORT_INTERVAL_MS_DEFAULT),
+        MIN_OUTLIER_DETECTION_PEERS, MIN_OUTLIER_DETECTION_SAMPLES,
+        LOW_THRESHOLD_MS);
+  }
+
+  /**
+   * Add the time it took a downstream peer to ack a packet, not including
+   * the ack time of the nodes further downstream.
+   *
+   * @param peerUuid The DatanodeUuid of the peer.
+   * @param ackTimeNanos The ack time in nanoseconds.
+   */
+  public void addSendPacketDownstream(String peerUuid, long ackTimeNanos) {
+    sendPacketDownstreamLatencies.add(peerUuid, ackTimeNanos);
+  }
+
+  /**
+   * @return The average ack latency in milliseconds of each peer with
+   *         enough samples in the window.
+   */
+  public Map<String, Double> getSendPacketDownstreamAvgLatencies() {
+    return sendPacketDownstreamLatencies.getAverages(minSamples);
+  }
+
+  /**
+   * @return The peers which are slow compared to the others, with their
+   *         average ack latency in milliseconds.
+   */
+  public Map<String, Double> getOutliers() {
+    return outlierDetector.getOutliers(getSendPacketDownstreamAvgLatencies());
+  }
+}
@@ -0,0 +1,142 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+/**
+ * Finds the outliers in a set of latencies, e.g. the peers or volumes of a
+ * DataNode which are much slower than the rest.
+ *
+ * A latency is an outlier if it is above all of:
+ * <ul>
+ *   <li>a fixed low threshold, so that fast resources are never flagged,</li>
+ *   <li>a multiple of the median latency, and</li>
+ *   <li>the median plus a multiple of the median absolute deviation.</li>
+ * </ul>
+ * The median and the median absolute deviation are robust to the outliers
+ * themselves, unlike the mean and the standard deviation.
+ */
+@InterfaceAudience.Private
+public class OutlierDetector {
+  public static final Logger LOG =
+      LoggerFactory.getLogger(OutlierDetector.class);
+
+  /** A latency must be at least this many times the median. */
+  private static final double MEDIAN_MULTIPLIER = 3;
+
+  /** A latency must be at least this many MADs above the median. */
+  private static final double MAD_MULTIPLIER = 3;
+
+  /**
+   * Scales the median absolute deviation so that it estimates the standard
+   * deviation of normally distributed latencies.
+   */
+  private static final double MAD_SCALE_FACTOR = 1.4826;
+
+  /**
+   * The minimum number of resources needed for the median to be
+   * meaningful. Fewer resources are never reported as outliers.
+   */
+  private final int minNumResources;
+
+  /** A latency below this many milliseconds is never an outlier. */
+  private final long lowThresholdMs;
+
+  public OutlierDetector(int minNumResources, long lowThresholdMs) {
+    this.minNumResources = minNumResources;
+    this.lowThresholdMs = lowThresholdMs;
+  }
+
+  /**
+   * Get the outliers in a set of latencies.
+   *
+   * @param stats Map of each resource to its latency in milliseconds.
+   * @return The outliers among them, with their latencies.
+   */
+  public Map<String, Double> getOutliers(Map<String, Double> stats) {
+    if (stats.size() < minNumResources) {
+      LOG.debug("Skipping statistical outlier detection as we don't have " +
+          "latency data for enough resources. Have {}, need at least {}",
+          stats.size(), minNumResources);
+      return Collections.emptyMap();
+    }
+    final List<Double> sorted = new ArrayList<>(stats.values());
+    final double median = computeMedian(sorted);
+    final double mad = computeMad(sorted);
+    final double upperLimitLatency = Math.max(lowThresholdMs,
+        Math.max(median * MEDIAN_MULTIPLIER, median + MAD_MULTIPLIER * mad));
+
+    final Map<String, Double> outliers = new HashMap<>();
+    for (Map.Entry<String, Double> entry : stats.entrySet()) {
+      if (entry.getValue() > upperLimitLatency) {
+        outliers.put(entry.getKey(), entry.getValue());
+      }
+    }
+    LOG.debug("median={}, mad={}, upperLimitLatency={}, outliers={}",
+        median, mad, upperLimitLatency, outliers);
+    return outliers;
+  }
+
+  /**
+   * Compute the scaled median absolute deviation of a list of values.
+   *
+   * @param values The values. Sorted in place.
+   * @return The scaled median absolute deviation.
+   */
+  @VisibleForTesting
+  static double computeMad(List<Double> values) {
+    Preconditions.checkArgument(!values.isEmpty(),
+        "Cannot compute the MAD of an empty list");
+    final double median = computeMedian(values);
+    List<Double> deviations = new ArrayList<>(values.size());
+    for (double value : values) {
+      deviations.add(Math.abs(value - median));
+    }
+    return computeMedian(deviations) * MAD_SCALE_FACTOR;
+  }
+
+  /**
+   * Compute the median of a list of values.
+   *
+   * @param values The values. Sorted in place.
+   * @return The median.
+   */
+  @VisibleForTesting
+  static double computeMedian(List<Double> values) {
+    Preconditions.checkArgument(!values.isEmpty(),
+        "Cannot compute the median of an empty list");
+    Collections.sort(values);
+    final int size = values.size();
+    if (size % 2 == 0) {
+      return (values.get(size / 2 - 1) + values.get(size / 2)) / 2;
+    }
+    return values.get(size / 2);
+  }
+}
@@ -0,0 +1,174 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.metrics;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.util.Timer;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Tracks the average of a latency per key, e.g. per peer DataNode or per
+ * volume, over a rolling window. The window is made of a fixed number of
+ * sub-windows, and the oldest sub-window is dropped as time moves on, so
+ * that the averages reflect recent behavior without being reset all at
+ * once.
+ *
+ * This class is thread-safe.
+ */
+@InterfaceAudience.Private
+public class RollingAverages {
+  private final Timer timer;
+  private final long subWindowMs;
+  private final int numSubWindows;
+  private final ConcurrentMap<String, LatencyStat> stats =
+      new ConcurrentHashMap<>();
+
+  /**
+   * @param timer The timer the windows are based on.
+   * @param windowMs The length of the rolling window in milliseconds.
+   * @param numSubWindows The number of sub-windows the window is made of.
+   */
+  public RollingAverages(Timer timer, long windowMs, int numSubWindows) {
+    Preconditions.checkArgument(numSubWindows > 0,
+        "numSubWindows must be positive");
+    Preconditions.checkArgument(windowMs >= numSubWindows,
+        "windowMs must be at least numSubWindows");
+    this.timer = timer;
+    this.subWindowMs = windowMs / numSubWindows;
+    this.numSubWindows = numSubWindows;
+  }
+
+  /**
+   * Add a sample for a key.
+   *
+   * @param key The key.
+   * @param latencyNanos The latency in nanoseconds.
+   */
+  public void add(String key, long latencyNanos) {
+    LatencyStat stat = stats.get(key);
+    if (stat == null) {
+      stat = new LatencyStat(numSubWindows);
+      LatencyStat prev = stats.putIfAbsent(key, stat);
+      if (prev != null) {
+        stat = prev;
+      }
+    }
+    stat.add(currentSubWindow(), latencyNanos);
+  }
+
+  /**
+   * Get the average latency of each key which has enough samples in the
+   * window. Keys without any sample in the window are dropped.
+   *
+   * @param minSamples The minimum number of samples a key must have.
+   * @return Map of each key to its average latency in milliseconds.
+   */
+  public Map<String, Double> getAverages(long minSamples) {
+    final long subWindow = currentSubWindow();
+    Map<String, Double> averages = new HashMap<>();
+    for (Iterator<Map.Entry<String, LatencyStat>> it =
+        stats.entrySet().iterator(); it.hasNext(); ) {
+      Map.Entry<String, LatencyStat> entry = it.next();
+      LatencyStat stat = entry.getValue();
+      synchronized (stat) {
+        stat.roll(subWindow);
+        long count = stat.getCount();
+        if (count == 0) {
+          it.remove();
+        } else if (count >= minSamples) {
+          averages.put(entry.getKey(),
+              stat.getSum() / (double) count / 1000000.0);
+        }
+      }
+    }
+    return averages;
+  }
+
+  private long currentSubWindow() {
+    return timer.monotonicNow() / subWindowMs;
+  }
+
+  /**
+   * The sum and count of the samples of a key in each sub-window.
+   */
+  private static class LatencyStat {
+    private final long[] sums;
+    private final long[] counts;
+    /** The sub-window the latest sample was added to. */
+    private long subWindow = Long.MIN_VALUE;
+
+    LatencyStat(int numSubWindows) {
+      this.sums = new long[numSubWindows];
+      this.counts = new long[numSubWindows];
+    }
+
+    synchronized void add(long curSubWindow, long latencyNanos) {
+      roll(curSubWindow);
+      int i = (int) (curSubWindow % sums.length);
+      sums[i] += latencyNanos;
+      counts[i]++;
+    }
+
+    /**
+     * Clear the sub-windows which fell out of the window since the previous
+     * sample.
+     */
+    void roll(long curSubWindow) {
+      if (curSubWindow <= subWindow) {
+        return;
+      }
+      if (subWindow == Long.MIN_VALUE ||
+          curSubWindow - subWindow >= sums.length) {
+        for (int i = 0; i < sums.length; i++) {
+          sums[i] = 0;
+          counts[i] = 0;
+        }
+      } else {
+        for (long w = subWindow + 1; w <= curSubWindow; w++) {
+          int i = (int) (w % sums.length);
+          sums[i] = 0;
+          counts[i] = 0;
+        }
+      }
+      subWindow = curSubWindow;
+    }
+
+    long getSum() {
+      long sum = 0;
+      for (long s : sums) {
+        sum += s;
+      }
+      return sum;
+    }
+
+    long getCount() {
+      long count = 0;
+      for (long c : counts) {
+        count += c;
+      }
+      return count;
+    }
+  }
+}
@@ -381,13 +381,17 @@ public static ReferenceCountMap<AclFeature> getUniqueAclFeatures() {
   }
 
   /**
-   * Add reference for the said AclFeature
+   * Add reference for the said AclFeature.
+   * Synchronized since the fsimage loader adds the ACLs of inodes from
+   * several threads.
    * 
    * @param aclFeature
    * @return Referenced AclFeature
    */
   public static AclFeature addAclFeature(AclFeature aclFeature) {
-    return UNIQUE_ACL_FEATURES.put(aclFeature);
+    synchronized (UNIQUE_ACL_FEATURES) {
+      return UNIQUE_ACL_FEATURES.put(aclFeature);
+    }
   }
 
   /**
@@ -396,6 +400,8 @@ public static AclFeature addAclFeature(AclFeature aclFeature) {
    * @param aclFeature
    */
   public static void removeAclFeature(AclFeature aclFeature) {
-    UNIQUE_ACL_FEATURES.remove(aclFeature);
+    synchronized (UNIQUE_ACL_FEATURES) {
+      UNIQUE_ACL_FEATURES.remove(aclFeature);
+    }
   }
 }
@@ -23,6 +23,8 @@
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LIST_CACHE_DIRECTIVES_NUM_RESPONSES_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LIST_CACHE_POOLS_NUM_RESPONSES;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LIST_CACHE_POOLS_NUM_RESPONSES_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_PATH_BASED_CACHE_FULL_RESCAN_INTERVAL_MS;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_PATH_BASED_CACHE_FULL_RESCAN_INTERVAL_MS_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_PATH_BASED_CACHE_REFRESH_INTERVAL_MS;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_PATH_BASED_CACHE_REFRESH_INTERVAL_MS_DEFAULT;
 
@@ -34,10 +36,12 @@
 import java.util.Collections;
 import java.util.Date;
 import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.concurrent.locks.ReentrantLock;
@@ -158,6 +162,12 @@ public final class CacheManager {
    */
   private final long scanIntervalMs;
 
+  /**
+   * Interval between full scans in milliseconds. The scans in between only
+   * re-evaluate what changed.
+   */
+  private final long fullRescanIntervalMs;
+
   /**
    * All cached blocks.
    */
@@ -202,6 +212,9 @@ public PersistState(CacheManagerSection section,
     scanIntervalMs = conf.getLong(
         DFS_NAMENODE_PATH_BASED_CACHE_REFRESH_INTERVAL_MS,
         DFS_NAMENODE_PATH_BASED_CACHE_REFRESH_INTERVAL_MS_DEFAULT);
+    fullRescanIntervalMs = conf.getLong(
+        DFS_NAMENODE_PATH_BASED_CACHE_FULL_RESCAN_INTERVAL_MS,
+        DFS_NAMENODE_PATH_BASED_CACHE_FULL_RESCAN_INTERVAL_MS_DEFAULT);
     float cachedBlocksPercent = conf.getFloat(
           DFS_NAMENODE_PATH_BASED_CACHE_BLOCK_MAP_ALLOCATION_PERCENT,
           DFS_NAMENODE_PATH_BASED_CACHE_BLOCK_MAP_ALLOCATION_PERCENT_DEFAULT);
@@ -232,7 +245,7 @@ public void startMonitorThread() {
     try {
       if (this.monitor == null) {
         this.monitor = new CacheReplicationMonitor(namesystem, this,
-            scanIntervalMs, crmLock);
+            scanIntervalMs, fullRescanIntervalMs, crmLock);
         this.monitor.start();
       }
     } finally {
@@ -276,6 +289,28 @@ public Collection<CacheDirective> getCacheDirectives() {
     return Collections.unmodifiableCollection(directivesById.values());
   }
   
+  /**
+   * @return The CacheDirectives which cover the file at a path: those on
+   *         the path itself, and those on its parent directory.
+   */
+  public List<CacheDirective> getCacheDirectivesCovering(String path) {
+    assert namesystem.hasReadLock();
+    List<CacheDirective> covering = new ArrayList<CacheDirective>();
+    List<CacheDirective> directives = directivesByPath.get(path);
+    if (directives != null) {
+      covering.addAll(directives);
+    }
+    int lastSlash = path.lastIndexOf(Path.SEPARATOR_CHAR);
+    if (lastSlash >= 0 && path.length() > 1) {
+      directives = directivesByPath.get(
+          lastSlash == 0 ? Path.SEPARATOR : path.substring(0, lastSlash));
+      if (directives != null) {
+        covering.addAll(directives);
+      }
+    }
+    return covering;
+  }
+
   @VisibleForTesting
   public GSet<CachedBlock, CachedBlock> getCachedBlocks() {
     assert namesystem.hasReadLock();
@@ -495,7 +530,7 @@ private void addInternal(CacheDirective directive, CachePool pool) {
     directive.addBytesNeeded(stats.getBytesNeeded());
     directive.addFilesNeeded(directive.getFilesNeeded());
 
-    setNeedsRescan();
+    setNeedsRescan(directive, false);
   }
 
   /**
@@ -660,12 +695,14 @@ private void removeInternal(CacheDirective directive)
     final CachePool pool = directive.getPool();
     directive.addBytesNeeded(-directive.getBytesNeeded());
     directive.addFilesNeeded(-directive.getFilesNeeded());
+    directive.addBytesCached(-directive.getBytesCached());
+    directive.addFilesCached(-directive.getFilesCached());
 
     directivesById.remove(directive.getId());
     pool.getDirectiveList().remove(directive);
     assert directive.getPool() == null;
 
-    setNeedsRescan();
+    setNeedsRescan(directive, true);
   }
 
   public void removeDirective(long id, FSPermissionChecker pc)
@@ -824,7 +861,7 @@ public void modifyCachePool(CachePoolInfo info)
         bld.append(prefix).append("set limit to " + info.getLimit());
         prefix = "; ";
         // New limit changes stats, need to set needs refresh
-        setNeedsRescan();
+        setNeedsFullRescan();
       }
       if (info.getMaxRelativeExpiryMs() != null) {
         final Long maxRelativeExpiry = info.getMaxRelativeExpiryMs();
@@ -870,7 +907,7 @@ public void removeCachePool(String poolName)
         directivesById.remove(directive.getId());
         iter.remove();
       }
-      setNeedsRescan();
+      setNeedsFullRescan();
     } catch (IOException e) {
       LOG.info("removeCachePool of " + poolName + " failed: ", e);
       throw e;
@@ -958,6 +995,15 @@ public final void processCacheReport(final DatanodeID datanodeID,
   private void processCacheReportImpl(final DatanodeDescriptor datanode,
       final List<Long> blockIds) {
     CachedBlocksList cached = datanode.getCached();
+    // Remember what the datanode had cached, so that the blocks it started
+    // or stopped caching can be handed to an incremental rescan.
+    Set<CachedBlock> prevCached = null;
+    if (isMonitorRunning()) {
+      prevCached = new HashSet<CachedBlock>(cached.size());
+      for (CachedBlock cblock : cached) {
+        prevCached.add(cblock);
+      }
+    }
     cached.clear();
     CachedBlocksList cachedList = datanode.getCached();
     CachedBlocksList pendingCachedList = datanode.getPendingCached();
@@ -987,6 +1033,14 @@ private void processCacheReportImpl(final DatanodeDescriptor datanode,
         pendingCachedList.remove(cachedBlock);
         LOG.trace("Removed block {} from PENDING_CACHED list.", cachedBlock);
       }
+      if (prevCached != null && !prevCached.remove(cachedBlock)) {
+        notifyBlockChanged(cachedBlock);
+      }
+    }
+    if (prevCached != null) {
+      for (CachedBlock cachedBlock : prevCached) {
+        notifyBlockChanged(cachedBlock);
+      }
     }
   }
 
@@ -1234,6 +1288,98 @@ private void setNeedsRescan() {
     }
   }
 
+  private void setNeedsFullRescan() {
+    crmLock.lock();
+    try {
+      if (monitor != null) {
+        monitor.setNeedsFullRescan();
+      }
+    } finally {
+      crmLock.unlock();
+    }
+  }
+
+  /**
+   * Asks for an immediate rescan of a directive which was just added, or of
+   * the files covered by a directive which was just removed.
+   */
+  private void setNeedsRescan(CacheDirective directive, boolean removed) {
+    crmLock.lock();
+    try {
+      if (monitor != null) {
+        if (removed) {
+          monitor.addChangedPath(directive.getPath());
+        } else {
+          monitor.addChangedDirective(directive);
+        }
+        monitor.setNeedsRescan();
+      }
+    } finally {
+      crmLock.unlock();
+    }
+  }
+
+  private boolean isMonitorRunning() {
+    crmLock.lock();
+    try {
+      return monitor != null;
+    } finally {
+      crmLock.unlock();
+    }
+  }
+
+  /**
+   * Called when the file or directory at a path was closed, appended to,
+   * truncated, concatenated into, renamed or deleted. The directives which
+   * cover it or lie under it are re-evaluated by the next rescan.
+   *
+   * @param path The path which changed.
+   */
+  public void notifyPathChanged(String path) {
+    assert namesystem.hasWriteLock() || namesystem.hasPartitionWriteLock();
+    if (directivesByPath.isEmpty()) {
+      return;
+    }
+    crmLock.lock();
+    try {
+      if (monitor == null) {
+        return;
+      }
+      monitor.addChangedPath(path);
+      for (CacheDirective directive : getCacheDirectivesCovering(path)) {
+        monitor.addChangedDirective(directive);
+      }
+      String prefix = path.endsWith(Path.SEPARATOR) ? path :
+          path + Path.SEPARATOR;
+      for (List<CacheDirective> directives : directivesByPath.subMap(
+          prefix, prefix + Character.MAX_VALUE).values()) {
+        for (CacheDirective directive : directives) {
+          monitor.addChangedDirective(directive);
+        }
+      }
+    } finally {
+      crmLock.unlock();
+    }
+  }
+
+  /**
+   * Called when a DataNode started or stopped caching or storing a cached
+   * block. The block is re-evaluated by the next rescan.
+   *
+   * @param cblock The cached block.
+   */
+  public void notifyBlockChanged(CachedBlock cblock) {
+    assert namesystem.hasWriteLock();
+    crmLock.lock();
+    try {
+      if (monitor != null) {
+        monitor.addChangedBlock(cblock);
+      }
+    } finally {
+      crmLock.unlock();
+    }
+  }
+
   @VisibleForTesting
   public Thread getCacheReplicationMonitor() {
     crmLock.lock();
@@ -0,0 +1,83 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Content summary feature for {@link INodeDirectory}. It holds the content
+ * counts of the subtree, which {@link FSDirectory} updates as the namespace
+ * changes, so that the summary of the directory can be served without
+ * walking the subtree.
+ *
+ * Files under construction are left out of the counts, since their length
+ * changes without any namespace operation. The feature keeps track of them
+ * instead, and they are counted when the summary is read.
+ */
+public final class DirectoryWithSummaryFeature implements INode.Feature {
+  private final ContentCounts counts;
+  /** The files under construction in the subtree. */
+  private final Set<INodeFile> openFiles;
+
+  DirectoryWithSummaryFeature(ContentCounts counts,
+      Collection<INodeFile> openFiles) {
+    this.counts = counts;
+    this.openFiles = new HashSet<>(openFiles);
+  }
+
+  /** Add the counts of the subtree to the given counts. */
+  void addCountsTo(ContentCounts that) {
+    that.addContents(counts);
+  }
+
+  /** @return the files under construction in the subtree. */
+  Collection<INodeFile> getOpenFiles() {
+    return openFiles;
+  }
+
+  /**
+   * Update the counts of the subtree.
+   *
+   * @param delta the counts of the content added to or removed from the
+   *              subtree
+   * @param openFilesDelta the files under construction added to or removed
+   *                       from the subtree
+   * @param add whether the content was added or removed
+   */
+  void updateCounts(ContentCounts delta, Collection<INodeFile> openFilesDelta,
+      boolean add) {
+    if (add) {
+      counts.addContents(delta);
+      openFiles.addAll(openFilesDelta);
+    } else {
+      counts.subtractContents(delta);
+      for (INodeFile file : openFilesDelta) {
+        openFiles.remove(file);
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "Summary[files: " + counts.getFileCount() + ", directories: "
+        + counts.getDirectoryCount() + ", length: " + counts.getLength()
+        + ", open files: " + openFiles.size() + "]";
+  }
+}
@@ -178,7 +178,9 @@ static LocatedBlock prepareFileForAppend(final FSNamesystem fsn,
     final QuotaCounts delta = verifyQuotaForUCBlock(fsn, file, iip);
 
     file.recordModification(iip.getLatestSnapshotId());
+    fsn.getFSDirectory().updateContentSummaries(file, false);
     file.toUnderConstruction(leaseHolder, clientMachine);
+    fsn.getFSDirectory().updateContentSummaries(file, true);
 
     fsn.getLeaseManager().addLease(
         file.getFileUnderConstructionFeature().getClientName(), file.getId());
@@ -61,6 +61,7 @@ static HdfsFileStatus setPermission(
     try {
       src = fsd.resolvePath(pc, src, pathComponents);
       iip = fsd.getINodesInPath4Write(src);
+      fsd.checkPartitionConfined(iip, iip.length() - 1);
       fsd.checkOwner(pc, iip);
       unprotectedSetPermission(fsd, src, permission);
     } finally {
@@ -83,6 +84,7 @@ static HdfsFileStatus setOwner(
     try {
       src = fsd.resolvePath(pc, src, pathComponents);
       iip = fsd.getINodesInPath4Write(src);
+      fsd.checkPartitionConfined(iip, iip.length() - 1);
       fsd.checkOwner(pc, iip);
       if (!pc.isSuperUser()) {
         if (username != null && !pc.getUser().equals(username)) {
@@ -111,6 +113,7 @@ static HdfsFileStatus setTimes(
     try {
       src = fsd.resolvePath(pc, src, pathComponents);
       iip = fsd.getINodesInPath4Write(src);
+      fsd.checkPartitionConfined(iip, iip.length() - 1);
       // Write access is required to set access and modification times
       if (fsd.isPermissionEnabled()) {
         fsd.checkPathAccess(pc, iip, FsAction.WRITE);
@@ -186,6 +189,12 @@ static HdfsFileStatus setStoragePolicy(
       }
       unprotectedSetStoragePolicy(fsd, bm, iip, policy.getId());
       fsd.getEditLog().logSetStoragePolicy(src, policy.getId());
+
+      StoragePolicySatisfier satisfier =
+          fsd.getFSNamesystem().getStoragePolicySatisfier();
+      if (satisfier != null) {
+        satisfier.add(iip.getLastINode().getId());
+      }
     } finally {
       fsd.writeUnlock();
     }
@@ -220,6 +229,32 @@ static BlockStoragePolicy getStoragePolicy(FSDirectory fsd, BlockManager bm,
     }
   }
 
+  /**
+   * @return the id of the INode of a file/directory whose storage policy
+   *         is to be satisfied
+   */
+  static long getINodeIdToSatisfyStoragePolicy(FSDirectory fsd, String src)
+      throws IOException {
+    FSPermissionChecker pc = fsd.getPermissionChecker();
+    byte[][] pathComponents = FSDirectory.getPathComponentsForReservedPath(src);
+    fsd.readLock();
+    try {
+      src = fsd.resolvePath(pc, src, pathComponents);
+      final INodesInPath iip = fsd.getINodesInPath(src, false);
+      if (fsd.isPermissionEnabled()) {
+        fsd.checkPathAccess(pc, iip, FsAction.WRITE);
+      }
+      INode inode = iip.getLastINode();
+      if (inode == null) {
+        throw new FileNotFoundException("File/Directory does not exist: "
+            + iip.getPath());
+      }
+      return inode.getId();
+    } finally {
+      fsd.readUnlock();
+    }
+  }
+
   static long getPreferredBlockSize(FSDirectory fsd, String src)
       throws IOException {
     FSPermissionChecker pc = fsd.getPermissionChecker();
@@ -410,6 +445,7 @@ static BlockInfo[] unprotectedSetReplication(
     }
 
     INodeFile file = inode.asFile();
+    fsd.updateContentSummaries(file, false);
     // Make sure the directory has sufficient quotas
     short oldBR = file.getPreferredBlockReplication();
 
@@ -443,6 +479,7 @@ static BlockInfo[] unprotectedSetReplication(
                              oldBR, targetReplication, src);
       }
     }
+    fsd.updateContentSummaries(file, true);
     return file.getBlocks();
   }
 
@@ -471,9 +508,17 @@ static void unprotectedSetStoragePolicy(
             "Existing policy " + currentPolicy.getName() +
                 " cannot be changed after file creation.");
       }
+      fsd.updateContentSummaries(inode, false);
       inode.asFile().setStoragePolicyID(policyId, snapshotId);
+      fsd.updateContentSummaries(inode, true);
     } else if (inode.isDirectory()) {
-      setDirStoragePolicy(fsd, inode.asDirectory(), policyId, snapshotId);
+      // The files in the subtree may inherit the policy
+      fsd.updateContentSummariesForSubtree(inode.asDirectory(), false);
+      try {
+        setDirStoragePolicy(fsd, inode.asDirectory(), policyId, snapshotId);
+      } finally {
+        fsd.updateContentSummariesForSubtree(inode.asDirectory(), true);
+      }
     } else {
       throw new FileNotFoundException(iip.getPath()
           + " is not a file or directory");
@@ -230,7 +230,14 @@ static void unprotectedConcat(FSDirectory fsd, INodesInPath targetIIP,
     // the target file can be included in a snapshot
     trgInode.recordModification(targetIIP.getLatestSnapshotId());
     INodeDirectory trgParent = targetIIP.getINode(-2).asDirectory();
+    fsd.updateContentSummaries(trgInode, false);
+    for (INodeFile nodeToRemove : srcList) {
+      if (nodeToRemove != null) {
+        fsd.updateContentSummaries(nodeToRemove, false);
+      }
+    }
     trgInode.concatBlocks(srcList, fsd.getBlockManager());
+    fsd.updateContentSummaries(trgInode, true);
 
     // since we are in the same dir - we can use same parent to remove files
     int count = 0;
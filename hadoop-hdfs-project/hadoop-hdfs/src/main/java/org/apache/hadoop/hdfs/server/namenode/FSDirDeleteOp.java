@@ -58,16 +58,22 @@ static long delete(FSDirectory fsd, INodesInPath iip,
       if (deleteAllowed(iip, iip.getPath()) ) {
         List<INodeDirectory> snapshottableDirs = new ArrayList<>();
         FSDirSnapshotOp.checkSnapshot(iip.getLastINode(), snapshottableDirs);
+        checkDeleteConfined(fsd, iip, snapshottableDirs);
         ReclaimContext context = new ReclaimContext(
             fsd.getBlockStoragePolicySuite(), collectedBlocks, removedINodes,
             removedUCFiles);
         if (unprotectedDelete(fsd, iip, context, mtime)) {
           filesRemoved = context.quotaDelta().getNsDelta();
         }
-        fsd.updateReplicationFactor(context.collectedBlocks()
-                                        .toUpdateReplicationInfo());
-        fsn.removeSnapshottableDirs(snapshottableDirs);
-        fsd.updateCount(iip, context.quotaDelta(), false);
+        fsd.sharedStateWriteLock();
+        try {
+          fsd.updateReplicationFactor(context.collectedBlocks()
+                                          .toUpdateReplicationInfo());
+          fsn.removeSnapshottableDirs(snapshottableDirs);
+          fsd.updateCount(iip, context.quotaDelta(), false);
+        } finally {
+          fsd.sharedStateWriteUnlock();
+        }
       }
     } finally {
       fsd.writeUnlock();
@@ -173,7 +179,7 @@ static void deleteForEditLog(FSDirectory fsd, String src, long mtime)
   static BlocksMapUpdateInfo deleteInternal(
       FSNamesystem fsn, String src, INodesInPath iip, boolean logRetryCache)
       throws IOException {
-    assert fsn.hasWriteLock();
+    assert fsn.hasWriteLock() || fsn.hasPartitionWriteLock();
     if (NameNode.stateChangeLog.isDebugEnabled()) {
       NameNode.stateChangeLog.debug("DIR* NameSystem.delete: " + src);
     }
@@ -228,6 +234,50 @@ private static boolean deleteAllowed(final INodesInPath iip,
     return true;
   }
 
+  /**
+   * Verify that a delete under a partition write lock only reclaims inodes
+   * of the partition. Besides the parent of the target being in the
+   * partition, neither the path nor the deleted subtree may be in a
+   * snapshot, contain a snapshottable directory or a reference, since such
+   * inodes may also be reachable from other partitions.
+   *
+   * @throws FSNamesystemLock.PartitionEscapeException if the delete has to
+   *         be retried under the global write lock
+   */
+  private static void checkDeleteConfined(FSDirectory fsd, INodesInPath iip,
+      List<INodeDirectory> snapshottableDirs) {
+    if (!fsd.getFSNamesystem().hasPartitionWriteLock()) {
+      return;
+    }
+    fsd.checkPartitionConfined(iip, iip.length() - 2);
+    if (iip.getLatestSnapshotId() != CURRENT_STATE_ID
+        || !snapshottableDirs.isEmpty()
+        || isSharedWithSnapshots(iip.getLastINode())) {
+      throw new FSNamesystemLock.PartitionEscapeException(iip.getPath());
+    }
+  }
+
+  private static boolean isSharedWithSnapshots(INode inode) {
+    if (inode.isReference()) {
+      return true;
+    }
+    if (inode.isFile()) {
+      return inode.asFile().isWithSnapshot();
+    }
+    if (inode.isDirectory()) {
+      final INodeDirectory dir = inode.asDirectory();
+      if (dir.isWithSnapshot()) {
+        return true;
+      }
+      for (INode child : dir.getChildrenList(CURRENT_STATE_ID)) {
+        if (isSharedWithSnapshots(child)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
   /**
    * Delete a path from the name space
    * Update the count at each ancestor directory with quota
@@ -252,7 +302,13 @@ private static boolean unprotectedDelete(FSDirectory fsd, INodesInPath iip,
     targetNode.recordModification(latestSnapshot);
 
     // Remove the node from the namespace
-    long removed = fsd.removeLastINode(iip);
+    long removed;
+    fsd.sharedStateWriteLock();
+    try {
+      removed = fsd.removeLastINode(iip);
+    } finally {
+      fsd.sharedStateWriteUnlock();
+    }
     if (removed == -1) {
       return false;
     }
@@ -266,6 +322,7 @@ private static boolean unprotectedDelete(FSDirectory fsd, INodesInPath iip,
       targetNode.destroyAndCollectBlocks(reclaimContext);
     } else {
       targetNode.cleanSubtree(reclaimContext, CURRENT_STATE_ID, latestSnapshot);
+      fsd.updateContentSummariesForSnapshot(parent, targetNode, true);
     }
 
     if (NameNode.stateChangeLog.isDebugEnabled()) {
@@ -67,6 +67,7 @@ static HdfsFileStatus mkdirs(FSNamesystem fsn, String src,
 
       INodesInPath existing = lastINode != null ? iip : iip.getExistingINodes();
       if (lastINode == null) {
+        fsd.checkPartitionConfined(iip, existing.length() - 1);
         if (fsd.isPermissionEnabled()) {
           fsd.checkAncestorAccess(pc, iip, FsAction.WRITE);
         }
@@ -188,19 +189,26 @@ private static INodesInPath createSingleDirectory(FSDirectory fsd,
       INodesInPath existing, String localName, PermissionStatus perm)
       throws IOException {
     assert fsd.hasWriteLock();
-    existing = unprotectedMkdir(fsd, fsd.allocateNewInodeId(), existing,
-        localName.getBytes(Charsets.UTF_8), perm, null, now());
-    if (existing == null) {
-      return null;
+    final String cur;
+    // inode ids must be logged in allocation order, see
+    // FSEditLogLoader#getAndUpdateLastInodeId
+    fsd.sharedStateWriteLock();
+    try {
+      existing = unprotectedMkdir(fsd, fsd.allocateNewInodeId(), existing,
+          localName.getBytes(Charsets.UTF_8), perm, null, now());
+      if (existing == null) {
+        return null;
+      }
+      cur = existing.getPath();
+      fsd.getEditLog().logMkDir(cur, existing.getLastINode());
+    } finally {
+      fsd.sharedStateWriteUnlock();
     }
 
-    final INode newNode = existing.getLastINode();
     // Directory creation also count towards FilesCreated
     // to match count of FilesDeleted metric.
     NameNode.getNameNodeMetrics().incrFilesCreated();
 
-    String cur = existing.getPath();
-    fsd.getEditLog().logMkDir(cur, newNode);
     if (NameNode.stateChangeLog.isDebugEnabled()) {
       NameNode.stateChangeLog.debug("mkdirs: created directory " + cur);
     }
@@ -635,6 +635,9 @@ long removeSrc() throws IOException {
       } else {
         // update the quota count if necessary
         fsd.updateCountForDelete(srcChild, srcIIP);
+        if (isSrcInSnapshot) {
+          fsd.updateContentSummariesForSnapshot(srcParent, srcChild, true);
+        }
         srcIIP = INodesInPath.replace(srcIIP, srcIIP.length() - 1, null);
         return removedNum;
       }
@@ -650,6 +653,9 @@ boolean removeSrc4OldRename() {
       } else {
         // update the quota count if necessary
         fsd.updateCountForDelete(srcChild, srcIIP);
+        if (isSrcInSnapshot) {
+          fsd.updateContentSummariesForSnapshot(srcParent, srcChild, true);
+        }
         srcIIP = INodesInPath.replace(srcIIP, srcIIP.length() - 1, null);
         return true;
       }
@@ -706,7 +712,9 @@ void restoreSource() throws QuotaExceededException {
       }
 
       if (isSrcInSnapshot) {
+        fsd.updateContentSummariesForSnapshot(srcParent, oldSrcChild, false);
         srcParent.undoRename4ScrParent(oldSrcChild.asReference(), srcChild);
+        fsd.updateContentSummaries(srcChild, true);
       } else {
         // srcParent is not an INodeDirectoryWithSnapshot, we only need to add
         // the srcChild back
@@ -719,6 +727,7 @@ void restoreDst(BlockStoragePolicySuite bsps) throws QuotaExceededException {
       final INodeDirectory dstParent = dstParentIIP.getLastINode().asDirectory();
       if (dstParent.isWithSnapshot()) {
         dstParent.undoRename4DstParent(bsps, oldDstChild, dstIIP.getLatestSnapshotId());
+        fsd.updateContentSummaries(oldDstChild, true);
       } else {
         fsd.addLastINodeNoQuotaCheck(dstParentIIP, oldDstChild);
       }
@@ -744,6 +753,8 @@ boolean cleanDst(BlockStoragePolicySuite bsps, BlocksMapUpdateInfo collectedBloc
       } else {
         oldDstChild.cleanSubtree(context, Snapshot.CURRENT_STATE_ID,
             dstIIP.getLatestSnapshotId());
+        fsd.updateContentSummariesForSnapshot(
+            dstParentIIP.getLastINode().asDirectory(), oldDstChild, true);
         filesDeleted = context.quotaDelta().getNsDelta() >= 0;
       }
       fsd.updateReplicationFactor(context.collectedBlocks()
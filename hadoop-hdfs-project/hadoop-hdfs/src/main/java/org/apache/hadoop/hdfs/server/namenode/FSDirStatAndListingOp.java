@@ -596,6 +596,9 @@ private static ContentSummary getContentSummaryInt(FSDirectory fsd,
       if (targetNode == null) {
         throw new FileNotFoundException("File does not exist: " + iip.getPath());
       }
+      else if (fsd.isIncrementalSummaryDirectory(iip)) {
+        return fsd.getIncrementalContentSummary(targetNode.asDirectory());
+      }
       else {
         // Make it relinquish locks everytime contentCountLimit entries are
         // processed. 0 means disabled. I.e. blocking for the entire duration.
@@ -219,6 +219,8 @@ static Block prepareFileForTruncate(FSNamesystem fsn, INodesInPath iip,
     file.recordModification(iip.getLatestSnapshotId());
     file.toUnderConstruction(leaseHolder, clientMachine);
     assert file.isUnderConstruction() : "inode should be under construction.";
+    // unprotectedTruncate took the complete file out of the summaries
+    fsn.getFSDirectory().updateContentSummaries(file, true);
     fsn.getLeaseManager().addLease(
         file.getFileUnderConstructionFeature().getClientName(), file.getId());
     boolean shouldRecoverNow = (newBlock == null);
@@ -298,12 +300,18 @@ private static boolean unprotectedTruncate(FSNamesystem fsn,
 
     verifyQuotaForTruncate(fsn, iip, file, newLength, delta);
 
+    // The file is added back below unless it is reopened for the truncation
+    fsn.getFSDirectory().updateContentSummaries(file, false);
     long remainingLength =
         file.collectBlocksBeyondMax(newLength, collectedBlocks);
     file.excludeSnapshotBlocks(latestSnapshot, collectedBlocks);
     file.setModificationTime(mtime);
     // return whether on a block boundary
-    return (remainingLength - newLength) == 0;
+    final boolean onBlockBoundary = (remainingLength - newLength) == 0;
+    if (onBlockBoundary) {
+      fsn.getFSDirectory().updateContentSummaries(file, true);
+    }
+    return onBlockBoundary;
   }
 
   private static void verifyQuotaForTruncate(FSNamesystem fsn,
@@ -337,7 +337,7 @@ static HdfsFileStatus startFile(
       EncryptionKeyInfo ezInfo, INode.BlocksMapUpdateInfo toRemoveBlocks,
       boolean logRetryEntry)
       throws IOException {
-    assert fsn.hasWriteLock();
+    assert fsn.hasWriteLock() || fsn.hasPartitionWriteLock();
 
     boolean create = flag.contains(CreateFlag.CREATE);
     boolean overwrite = flag.contains(CreateFlag.OVERWRITE);
@@ -413,6 +413,16 @@ static HdfsFileStatus startFile(
           ezKeyName, edek.getEncryptionKeyVersionName());
     }
 
+    if (fsn.hasPartitionWriteLock()) {
+      // files in encryption zones and lease recoveries are left to the
+      // global write lock
+      if (zone != null || (myFile != null && !overwrite)) {
+        throw new FSNamesystemLock.PartitionEscapeException(src);
+      }
+      fsd.checkPartitionConfined(iip, Math.min(
+          iip.getExistingINodes().length(), iip.length() - 1) - 1);
+    }
+
     if (myFile != null) {
       if (overwrite) {
         List<INode> toRemoveINodes = new ChunkedArrayList<>();
@@ -434,26 +444,33 @@ static HdfsFileStatus startFile(
     }
     fsn.checkFsObjectLimit();
     INodeFile newNode = null;
-    Map.Entry<INodesInPath, String> parent = FSDirMkdirOp
-        .createAncestorDirectories(fsd, iip, permissions);
-    if (parent != null) {
-      iip = addFile(fsd, parent.getKey(), parent.getValue(), permissions,
-                    replication, blockSize, holder, clientMachine);
-      newNode = iip != null ? iip.getLastINode().asFile() : null;
-    }
-    if (newNode == null) {
-      throw new IOException("Unable to add " + src +  " to namespace");
-    }
-    fsn.leaseManager.addLease(
-        newNode.getFileUnderConstructionFeature().getClientName(),
-        newNode.getId());
-    if (feInfo != null) {
-      FSDirEncryptionZoneOp.setFileEncryptionInfo(fsd, src, feInfo);
-      newNode = fsd.getInode(newNode.getId()).asFile();
-    }
-    setNewINodeStoragePolicy(fsd.getBlockManager(), newNode, iip,
-                             isLazyPersist);
-    fsd.getEditLog().logOpenFile(src, newNode, overwrite, logRetryEntry);
+    // inode ids must be logged in allocation order, see
+    // FSEditLogLoader#getAndUpdateLastInodeId
+    fsd.sharedStateWriteLock();
+    try {
+      Map.Entry<INodesInPath, String> parent = FSDirMkdirOp
+          .createAncestorDirectories(fsd, iip, permissions);
+      if (parent != null) {
+        iip = addFile(fsd, parent.getKey(), parent.getValue(), permissions,
+                      replication, blockSize, holder, clientMachine);
+        newNode = iip != null ? iip.getLastINode().asFile() : null;
+      }
+      if (newNode == null) {
+        throw new IOException("Unable to add " + src +  " to namespace");
+      }
+      fsn.leaseManager.addLease(
+          newNode.getFileUnderConstructionFeature().getClientName(),
+          newNode.getId());
+      if (feInfo != null) {
+        FSDirEncryptionZoneOp.setFileEncryptionInfo(fsd, src, feInfo);
+        newNode = fsd.getInode(newNode.getId()).asFile();
+      }
+      setNewINodeStoragePolicy(fsd.getBlockManager(), newNode, iip,
+                               isLazyPersist);
+      fsd.getEditLog().logOpenFile(src, newNode, overwrite, logRetryEntry);
+    } finally {
+      fsd.sharedStateWriteUnlock();
+    }
     if (NameNode.stateChangeLog.isDebugEnabled()) {
       NameNode.stateChangeLog.debug("DIR* NameSystem.startFile: added " +
           src + " inode " + newNode.getId() + " " + holder);
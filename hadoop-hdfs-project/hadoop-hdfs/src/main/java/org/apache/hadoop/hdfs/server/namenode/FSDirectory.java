@@ -25,6 +25,7 @@
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.crypto.key.KeyProviderCryptoExtension;
+import org.apache.hadoop.fs.ContentSummary;
 import org.apache.hadoop.fs.ParentNotDirectoryException;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.StorageType;
@@ -48,6 +49,7 @@
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockStoragePolicySuite;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants;
 import org.apache.hadoop.hdfs.server.namenode.INode.BlocksMapUpdateInfo.UpdatedReplicationInfo;
+import org.apache.hadoop.hdfs.server.namenode.snapshot.DirectoryWithSnapshotFeature;
 import org.apache.hadoop.hdfs.util.ByteArray;
 import org.apache.hadoop.hdfs.util.EnumCounters;
 import org.apache.hadoop.hdfs.util.ReadOnlyList;
@@ -63,6 +65,7 @@
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.RecursiveAction;
 import java.util.List;
@@ -133,6 +136,7 @@ private static INodeDirectory createRoot(FSNamesystem namesystem) {
   private final int maxComponentLength;
   private final int maxDirItems;
   private final int lsLimit;  // max list limit
+  private final int batchedLsLimit; // max listings per batched listing
   private final int contentCountLimit; // max content summary counts per run
   private final long contentSleepMicroSec;
   private final INodeMap inodeMap; // Synchronized by dirLock
@@ -148,6 +152,11 @@ private static INodeDirectory createRoot(FSNamesystem namesystem) {
   // Each entry in this set must be a normalized path.
   private final SortedSet<String> protectedDirectories;
 
+  // A set of directories whose content summaries are maintained
+  // incrementally, using the dfs.content-summary.incremental.directories
+  // setting. Each entry in this set must be a normalized path.
+  private final SortedSet<String> incrementalSummaryDirectories;
+
   // lock to protect the directory and BlockMap
   private final ReentrantReadWriteLock dirLock;
 
@@ -191,16 +200,70 @@ void readUnlock() {
     this.dirLock.readLock().unlock();
   }
 
+  /**
+   * Acquire the write lock. Under a namespace partition write lock, the
+   * partition lock already excludes everyone else from the inodes the
+   * operation may modify, so the directory lock is not taken.
+   */
   void writeLock() {
-    this.dirLock.writeLock().lock();
+    if (!namesystem.hasPartitionWriteLock()) {
+      this.dirLock.writeLock().lock();
+    }
   }
 
   void writeUnlock() {
-    this.dirLock.writeLock().unlock();
+    if (!namesystem.hasPartitionWriteLock()) {
+      this.dirLock.writeLock().unlock();
+    }
   }
 
   boolean hasWriteLock() {
-    return this.dirLock.isWriteLockedByCurrentThread();
+    return this.dirLock.isWriteLockedByCurrentThread() ||
+        namesystem.hasPartitionWriteLock();
+  }
+
+  /**
+   * Lock the state shared by all namespace partitions, i.e. the inode map,
+   * the quota usage of ancestor directories and the inode id counter, for
+   * an operation holding a partition write lock. Without partitioning the
+   * write lock already covers such state and this is a no-op.
+   */
+  void sharedStateWriteLock() {
+    if (namesystem.hasPartitionWriteLock()) {
+      this.dirLock.writeLock().lock();
+    }
+  }
+
+  void sharedStateWriteUnlock() {
+    if (namesystem.hasPartitionWriteLock()) {
+      this.dirLock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Verify that an operation holding a partition write lock only modifies
+   * inodes within its partition, i.e. at or below the partition depth, and
+   * does not go through an {@link INodeReference}, whose referred inode may
+   * also be reachable from another partition.
+   *
+   * @param iip the resolved path
+   * @param firstModified the index in iip of the first inode to be modified
+   * @throws FSNamesystemLock.PartitionEscapeException if the operation has
+   *         to be retried under the global write lock
+   */
+  void checkPartitionConfined(INodesInPath iip, int firstModified) {
+    if (!namesystem.hasPartitionWriteLock()) {
+      return;
+    }
+    if (firstModified < namesystem.getLockPartitionDepth()) {
+      throw new FSNamesystemLock.PartitionEscapeException(iip.getPath());
+    }
+    for (int i = 0; i < iip.length(); i++) {
+      final INode inode = iip.getINode(i);
+      if (inode != null && inode.isReference()) {
+        throw new FSNamesystemLock.PartitionEscapeException(iip.getPath());
+      }
+    }
   }
 
   boolean hasReadLock() {
@@ -273,6 +336,10 @@ public int getWriteHoldCount() {
         DFSConfigKeys.DFS_LIST_LIMIT, DFSConfigKeys.DFS_LIST_LIMIT_DEFAULT);
     this.lsLimit = configuredLimit>0 ?
         configuredLimit : DFSConfigKeys.DFS_LIST_LIMIT_DEFAULT;
+    configuredLimit = conf.getInt(DFSConfigKeys.DFS_BATCHED_LIST_LIMIT,
+        DFSConfigKeys.DFS_BATCHED_LIST_LIMIT_DEFAULT);
+    this.batchedLsLimit = configuredLimit > 0 ?
+        configuredLimit : DFSConfigKeys.DFS_BATCHED_LIST_LIMIT_DEFAULT;
     this.contentCountLimit = conf.getInt(
         DFSConfigKeys.DFS_CONTENT_SUMMARY_LIMIT_KEY,
         DFSConfigKeys.DFS_CONTENT_SUMMARY_LIMIT_DEFAULT);
@@ -292,6 +359,10 @@ public int getWriteHoldCount() {
         DFSConfigKeys.DFS_NAMENODE_MAX_XATTRS_PER_INODE_DEFAULT);
 
     this.protectedDirectories = parseProtectedDirectories(conf);
+    this.incrementalSummaryDirectories = new TreeSet<>(normalizePaths(
+        conf.getTrimmedStringCollection(
+            DFSConfigKeys.DFS_CONTENT_SUMMARY_INCREMENTAL_DIRECTORIES_KEY),
+        DFSConfigKeys.DFS_CONTENT_SUMMARY_INCREMENTAL_DIRECTORIES_KEY));
 
     Preconditions.checkArgument(this.inodeXAttrsLimit >= 0,
         "Cannot set a negative limit on the number of xattrs per inode (%s).",
@@ -425,6 +496,10 @@ int getLsLimit() {
     return lsLimit;
   }
 
+  int getBatchedLsLimit() {
+    return batchedLsLimit;
+  }
+
   int getContentCountLimit() {
     return contentCountLimit;
   }
@@ -1068,6 +1143,7 @@ public INodesInPath addLastINode(INodesInPath existing, INode inode,
         AclStorage.copyINodeDefaultAcl(inode);
       }
       addToInodeMap(inode);
+      updateContentSummaries(inode, true);
     }
     return INodesInPath.append(existing, inode, inode.getLocalNameBytes());
   }
@@ -1095,7 +1171,11 @@ public long removeLastINode(final INodesInPath iip) {
     final int latestSnapshot = iip.getLatestSnapshotId();
     final INode last = iip.getLastINode();
     final INodeDirectory parent = iip.getINode(-2).asDirectory();
+    // An inode kept in the latest snapshot is counted again once the caller
+    // is done with it, see updateContentSummariesForSnapshot
+    updateContentSummaries(last, false);
     if (!parent.removeChild(last, latestSnapshot)) {
+      updateContentSummaries(last, true);
       return -1;
     }
 
@@ -1142,6 +1222,255 @@ static String normalizePath(String src) {
     return src;
   }
 
+  /**
+   * @return whether the content summary of the directory at the end of the
+   *         path is maintained incrementally.
+   */
+  boolean isIncrementalSummaryDirectory(INodesInPath iip) {
+    final INode inode = iip.getLastINode();
+    if (incrementalSummaryDirectories.isEmpty() || inode == null ||
+        !inode.isDirectory() || iip.isSnapshot()) {
+      return false;
+    }
+    return incrementalSummaryDirectories.contains(iip.getPath()) ||
+        inode.asDirectory().getDirectoryWithSummaryFeature() != null;
+  }
+
+  /**
+   * Add a {@link DirectoryWithSummaryFeature} to each of the configured
+   * directories which exists, so that their content summaries are maintained
+   * from the start rather than built when they are read first. Called once
+   * the namespace is loaded.
+   */
+  void buildContentSummaries() {
+    assert namesystem.hasWriteLock();
+    // Count the nested directories first, so that their counts are reused
+    final List<String> paths = new ArrayList<>(incrementalSummaryDirectories);
+    Collections.reverse(paths);
+    for (String path : paths) {
+      final INode inode;
+      try {
+        inode = getINode(path, false);
+      } catch (UnresolvedLinkException e) {
+        continue;
+      }
+      if (inode != null && inode.isDirectory() &&
+          inode.asDirectory().getDirectoryWithSummaryFeature() == null) {
+        addContentSummary(inode.asDirectory(), false);
+      }
+    }
+  }
+
+  /**
+   * Count the subtree of a directory and add a
+   * {@link DirectoryWithSummaryFeature} holding the counts to it.
+   *
+   * @param rebuild whether to rebuild the features within the subtree, see
+   *        {@link #computeCompleteContent}
+   */
+  private DirectoryWithSummaryFeature addContentSummary(INodeDirectory dir,
+      boolean rebuild) {
+    final ContentSummaryComputationContext context =
+        new ContentSummaryComputationContext(getBlockStoragePolicySuite());
+    final List<INodeFile> openFiles = new ArrayList<>();
+    computeCompleteContent(dir, context, openFiles, rebuild);
+    final DirectoryWithSummaryFeature summary =
+        new DirectoryWithSummaryFeature(context.getCounts(), openFiles);
+    dir.addFeature(summary);
+    return summary;
+  }
+
+  /**
+   * Get the content summary of a directory from its
+   * {@link DirectoryWithSummaryFeature}. If the directory has no feature yet,
+   * e.g. because it was created after the namespace was loaded, the feature
+   * is added by walking the subtree once without yielding the lock. The
+   * files under construction in the subtree are counted as the summary is
+   * read.
+   */
+  ContentSummary getIncrementalContentSummary(INodeDirectory dir) {
+    assert hasReadLock();
+    final ContentSummaryComputationContext context =
+        new ContentSummaryComputationContext(getBlockStoragePolicySuite());
+    final DirectoryWithSummaryFeature summary;
+    // Concurrent readers may try to add the feature to the same directory.
+    synchronized (dir) {
+      final DirectoryWithSummaryFeature existing =
+          dir.getDirectoryWithSummaryFeature();
+      summary = existing != null ? existing : addContentSummary(dir, false);
+    }
+    summary.addCountsTo(context.getCounts());
+    for (INodeFile file : summary.getOpenFiles()) {
+      file.computeContentSummary(CURRENT_STATE_ID, context);
+    }
+    return dir.convertContentSummary(context.getCounts());
+  }
+
+  /**
+   * Count the content of a subtree as
+   * {@link INode#computeContentSummary(int, ContentSummaryComputationContext)}
+   * does, except for the files under construction in the current tree,
+   * which are collected instead.
+   *
+   * @param rebuild whether to recount the subtrees of the directories with
+   *                a {@link DirectoryWithSummaryFeature} and replace their
+   *                features, rather than use them
+   */
+  private void computeCompleteContent(INode inode,
+      ContentSummaryComputationContext context, List<INodeFile> openFiles,
+      boolean rebuild) {
+    if (inode.isDirectory()) {
+      final INodeDirectory dir = inode.asDirectory();
+      final DirectoryWithSummaryFeature summary =
+          dir.getDirectoryWithSummaryFeature();
+      if (summary != null) {
+        final DirectoryWithSummaryFeature counted;
+        if (rebuild) {
+          dir.removeFeature(summary);
+          counted = addContentSummary(dir, true);
+        } else {
+          counted = summary;
+        }
+        counted.addCountsTo(context.getCounts());
+        openFiles.addAll(counted.getOpenFiles());
+        return;
+      }
+      final DirectoryWithSnapshotFeature sf =
+          dir.getDirectoryWithSnapshotFeature();
+      if (sf != null) {
+        sf.computeContentSummary4Snapshot(
+            context.getBlockStoragePolicySuite(), context.getCounts());
+      }
+      for (INode child : dir.getChildrenList(CURRENT_STATE_ID)) {
+        computeCompleteContent(child, context, openFiles, rebuild);
+      }
+      context.getCounts().addContent(Content.DIRECTORY, 1);
+    } else if (inode.isFile() && inode.asFile().isUnderConstruction()) {
+      openFiles.add(inode.asFile());
+    } else {
+      inode.computeContentSummary(CURRENT_STATE_ID, context);
+    }
+  }
+
+  /**
+   * Update the incrementally maintained content summaries of the ancestors
+   * of an inode, when the inode is added to or removed from the namespace.
+   * A file is also removed before any change to it, e.g. when it is reopened
+   * or closed, and added again after the change, so that it moves between
+   * the counts and the files under construction of the summaries.
+   */
+  void updateContentSummaries(INode inode, boolean add) {
+    if (incrementalSummaryDirectories.isEmpty()) {
+      return;
+    }
+    ContentSummaryComputationContext context = null;
+    List<INodeFile> openFiles = null;
+    for (INodeDirectory p = inode.getParent(); p != null; p = p.getParent()) {
+      final DirectoryWithSummaryFeature summary =
+          p.getDirectoryWithSummaryFeature();
+      if (summary == null) {
+        continue;
+      }
+      if (context == null) {
+        context = new ContentSummaryComputationContext(
+            getBlockStoragePolicySuite());
+        openFiles = new ArrayList<>();
+        computeCompleteContent(inode, context, openFiles, false);
+      }
+      summary.updateCounts(context.getCounts(), openFiles, add);
+    }
+  }
+
+  /**
+   * Update the incrementally maintained content summaries of the ancestors
+   * of an inode which was removed from the current tree but is kept in the
+   * latest snapshot, and so is still counted through the snapshot diffs of
+   * its former parent. Called once the removal is complete, and again if
+   * the removal is undone.
+   *
+   * @param parent the former parent of the inode
+   * @param removed the removed inode, or the reference to it which is kept
+   *                in the snapshot diff
+   * @param add whether the inode was kept in, or taken out of, the diff
+   */
+  void updateContentSummariesForSnapshot(INodeDirectory parent,
+      INode removed, boolean add) {
+    if (incrementalSummaryDirectories.isEmpty()) {
+      return;
+    }
+    ContentSummaryComputationContext context = null;
+    final List<INodeFile> openFiles = Collections.emptyList();
+    for (INodeDirectory p = parent; p != null; p = p.getParent()) {
+      final DirectoryWithSummaryFeature summary =
+          p.getDirectoryWithSummaryFeature();
+      if (summary == null) {
+        continue;
+      }
+      if (context == null) {
+        // count the inode as the snapshot diff does
+        context = new ContentSummaryComputationContext(
+            getBlockStoragePolicySuite());
+        removed.computeContentSummary(CURRENT_STATE_ID, context);
+      }
+      summary.updateCounts(context.getCounts(), openFiles, add);
+    }
+  }
+
+  /**
+   * Update the incrementally maintained content summaries around a change
+   * to a subtree which they cannot follow one inode at a time, such as the
+   * deletion of a snapshot or a storage policy set on a directory. The
+   * subtree is taken out of the summaries of its ancestors before the
+   * change. After the change, the summaries within the subtree are recounted
+   * and the subtree is added back. Both steps are skipped when the subtree
+   * neither is nor is within nor contains a maintained directory.
+   *
+   * @param dir the root of the subtree
+   * @param add false before the change, true after it
+   */
+  public void updateContentSummariesForSubtree(INodeDirectory dir,
+      boolean add) {
+    if (!isInOrAboveIncrementalSummaryDirectory(dir)) {
+      return;
+    }
+    final ContentSummaryComputationContext context =
+        new ContentSummaryComputationContext(getBlockStoragePolicySuite());
+    final List<INodeFile> openFiles = new ArrayList<>();
+    // After the change, also rebuild the summaries within the subtree
+    computeCompleteContent(dir, context, openFiles, add);
+    for (INodeDirectory p = dir.getParent(); p != null; p = p.getParent()) {
+      final DirectoryWithSummaryFeature summary =
+          p.getDirectoryWithSummaryFeature();
+      if (summary != null) {
+        summary.updateCounts(context.getCounts(), openFiles, add);
+      }
+    }
+  }
+
+  /**
+   * @return whether the directory, one of its ancestors or one of its
+   *         descendants has its content summary maintained incrementally.
+   */
+  private boolean isInOrAboveIncrementalSummaryDirectory(INodeDirectory dir) {
+    if (incrementalSummaryDirectories.isEmpty()) {
+      return false;
+    }
+    for (INodeDirectory p = dir; p != null; p = p.getParent()) {
+      if (p.getDirectoryWithSummaryFeature() != null) {
+        return true;
+      }
+    }
+    if (dir.isRoot()) {
+      return true;
+    }
+    final String path = dir.getFullPathName();
+    // The subSet call returns only the descendants of the path since '0' is
+    // the next ASCII character after '/'.
+    return incrementalSummaryDirectories.contains(path) ||
+        !incrementalSummaryDirectories.subSet(path + Path.SEPARATOR,
+            path + "0").isEmpty();
+  }
+
   @VisibleForTesting
   public long getYieldCount() {
     return yieldCount;
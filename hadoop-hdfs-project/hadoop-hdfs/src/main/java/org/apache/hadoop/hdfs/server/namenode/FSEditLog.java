@@ -152,7 +152,7 @@ private enum State {
   private EditLogOutputStream editLogStream = null;
 
   // a monotonically increasing counter that represents transactionIds.
-  private long txid = 0;
+  private volatile long txid = 0;
 
   // stores the last synced transactionId.
   private long synctxid = 0;
@@ -217,6 +217,23 @@ protected synchronized TransactionId initialValue() {
     }
   };
 
+  /**
+   * Create an edit log, which syncs edits for RPC calls in the background if
+   * {@link DFSConfigKeys#DFS_NAMENODE_EDITS_ASYNC_LOGGING} is set.
+   *
+   * @see #FSEditLog(Configuration, NNStorage, List)
+   */
+  static FSEditLog newInstance(Configuration conf, NNStorage storage,
+      List<URI> editsDirs) {
+    boolean asyncEditLogging = conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING,
+        DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING_DEFAULT);
+    LOG.info("Edit logging is async:" + asyncEditLogging);
+    return asyncEditLogging
+        ? new FSEditLogAsync(conf, storage, editsDirs)
+        : new FSEditLog(conf, storage, editsDirs);
+  }
+
   /**
    * Constructor for FSEditLog. Underlying journals are constructed, but 
    * no streams are opened until open() is called.
@@ -446,7 +463,7 @@ assert isOpenForWrite() :
     
     // Sync the log if an automatic sync is required.
     if (needsSync) {
-      logSync();
+      logSync(getMyTransactionId());
     }
   }
 
@@ -512,6 +529,14 @@ private void endTransaction(long start) {
   public synchronized long getLastWrittenTxId() {
     return txid;
   }
+
+  /**
+   * Return the transaction ID of the last transaction written to the log,
+   * without waiting for the threads writing to the log.
+   */
+  public long getLastWrittenTxIdWithoutLock() {
+    return txid;
+  }
   
   /**
    * @return the first transaction ID in the current log segment
@@ -582,11 +607,16 @@ void logSyncAll() {
    * waitForSyncToFinish() before assuming they are running alone.
    */
   public void logSync() {
-    long syncStart = 0;
-
     // Fetch the transactionId of this thread. 
-    long mytxid = myTransactionId.get().txid;
-    
+    logSync(getMyTransactionId());
+  }
+
+  /**
+   * Sync all modifications up to the given transaction ID.
+   * @see #logSync()
+   */
+  protected void logSync(long mytxid) {
+    long syncStart = 0;
     boolean sync = false;
     try {
       EditLogOutputStream logStream = null;
@@ -691,6 +721,22 @@ public void logSync() {
     }
   }
 
+  /**
+   * Wait until all modifications done by this thread are synced, even if
+   * {@link #logSync()} only deferred the response to the current RPC call
+   * until then. Callers which act on the durability of their edits beyond
+   * responding to the client, e.g. by invalidating the replicas of deleted
+   * blocks, must call this.
+   */
+  void awaitDeferredSync() {
+    // logSync() always waits
+  }
+
+  /** @return the ID of the last transaction written by this thread. */
+  static long getMyTransactionId() {
+    return myTransactionId.get().txid;
+  }
+
   //
   // print statistics every 1 minute.
   //
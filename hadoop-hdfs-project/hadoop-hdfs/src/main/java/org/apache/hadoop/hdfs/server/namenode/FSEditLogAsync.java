@@ -0,0 +1,249 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.ipc.Server;
+import org.apache.hadoop.util.Daemon;
+import org.apache.hadoop.util.ExitUtil;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+/**
+ * An edit log which does not make RPC handlers wait for their edits to be
+ * synced.
+ *
+ * Edits are still written to the in-memory double buffer by the handler, so
+ * transaction IDs are assigned in the order of the namespace modifications.
+ * When a handler calls {@link #logSync()}, the response to its RPC call is
+ * postponed via {@link Server.Call#postponeResponse()} and queued, and the
+ * handler returns immediately. A background thread syncs the journals up to
+ * the highest transaction ID in the queue and then sends all the queued
+ * responses, thus grouping concurrent calls into a single sync.
+ *
+ * Syncs requested outside of an RPC call, or while holding the monitor of the
+ * edit log, are synchronous as in {@link FSEditLog}.
+ */
+class FSEditLogAsync extends FSEditLog implements Runnable {
+
+  /** An RPC call whose response waits for an edit to be synced. */
+  private static class PendingResponse {
+    private final long txid;
+    private final Server.Call call;
+
+    PendingResponse(long txid, Server.Call call) {
+      this.txid = txid;
+      this.call = call;
+    }
+  }
+
+  /** Tells the sync thread to exit. */
+  private static final PendingResponse STOP = new PendingResponse(0, null);
+
+  private final BlockingQueue<PendingResponse> pendingResponses;
+  /** Guards starting and stopping {@link #syncThread}. */
+  private final Object syncThreadLock = new Object();
+  private Daemon syncThread;
+  private volatile boolean running = false;
+
+  FSEditLogAsync(Configuration conf, NNStorage storage, List<URI> editsDirs) {
+    super(conf, storage, editsDirs);
+    int queueSize = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING_PENDING_QUEUE_SIZE,
+        DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING_PENDING_QUEUE_SIZE_DEFAULT);
+    Preconditions.checkArgument(queueSize > 0,
+        "%s must be positive, got %s",
+        DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING_PENDING_QUEUE_SIZE,
+        queueSize);
+    this.pendingResponses = new ArrayBlockingQueue<>(queueSize);
+  }
+
+  @Override
+  void openForWrite(int layoutVersion) throws IOException {
+    super.openForWrite(layoutVersion);
+    startSyncThread();
+  }
+
+  @Override
+  void close() {
+    // send all the pending responses before closing the segment
+    stopSyncThread();
+    super.close();
+  }
+
+  @VisibleForTesting
+  boolean isSyncThreadRunning() {
+    return running;
+  }
+
+  private void startSyncThread() {
+    synchronized (syncThreadLock) {
+      if (syncThread == null) {
+        running = true;
+        syncThread = new Daemon(this);
+        syncThread.setName("FSEditLogAsync");
+        syncThread.start();
+      }
+    }
+  }
+
+  private void stopSyncThread() {
+    synchronized (syncThreadLock) {
+      if (syncThread == null) {
+        return;
+      }
+      running = false;
+      boolean interrupted = false;
+      try {
+        pendingResponses.put(STOP);
+        syncThread.join();
+      } catch (InterruptedException e) {
+        LOG.warn("Interrupted while stopping the edit log sync thread");
+        interrupted = true;
+      }
+      syncThread = null;
+      // respond to the calls queued after the sync thread exited
+      List<PendingResponse> remaining = new ArrayList<>();
+      pendingResponses.drainTo(remaining);
+      syncAndRespond(remaining);
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Sync all modifications done by this thread. Within an RPC call, only
+   * postpone the response to the call until the modifications are synced.
+   */
+  @Override
+  public void logSync() {
+    final Server.Call call = Server.getCurCall().get();
+    if (call == null || !running || Thread.holdsLock(this)) {
+      super.logSync();
+      return;
+    }
+    final long mytxid = Math.min(getMyTransactionId(), getLastWrittenTxId());
+    if (mytxid <= getSyncTxId()) {
+      return;
+    }
+
+    final PendingResponse pending = new PendingResponse(mytxid, call);
+    call.postponeResponse();
+    if (!pendingResponses.offer(pending)) {
+      // The sync thread is falling behind. Push back on the handler.
+      logSync(mytxid);
+      sendResponse(call, null);
+    } else if (!running && pendingResponses.remove(pending)) {
+      // The sync thread has stopped meanwhile and may have missed it.
+      syncAndRespond(Collections.singletonList(pending));
+    }
+  }
+
+  /** Unlike {@link #logSync()}, always blocks until all edits are synced. */
+  @Override
+  void logSyncAll() {
+    logSync(getLastWrittenTxId());
+  }
+
+  @Override
+  void awaitDeferredSync() {
+    if (Server.getCurCall().get() != null) {
+      logSync(getMyTransactionId());
+    }
+  }
+
+  @Override
+  public void run() {
+    final List<PendingResponse> batch = new ArrayList<>();
+    try {
+      boolean stop = false;
+      while (!stop) {
+        batch.add(pendingResponses.take());
+        pendingResponses.drainTo(batch);
+        stop = syncAndRespond(batch);
+        batch.clear();
+      }
+    } catch (InterruptedException e) {
+      LOG.info("Edit log sync thread interrupted");
+    } catch (Throwable t) {
+      terminate(t);
+    }
+  }
+
+  /**
+   * Sync the edits of the given calls and send their responses, or an error
+   * if the sync fails.
+   * @return whether the batch contains {@link #STOP}.
+   */
+  private boolean syncAndRespond(List<PendingResponse> batch) {
+    boolean stop = false;
+    long maxTxid = 0;
+    for (PendingResponse p : batch) {
+      if (p == STOP) {
+        stop = true;
+      } else {
+        maxTxid = Math.max(maxTxid, p.txid);
+      }
+    }
+    RuntimeException syncFailure = null;
+    if (maxTxid > 0) {
+      try {
+        logSync(maxTxid);
+      } catch (RuntimeException e) {
+        // Failing to sync normally terminates the NameNode; tests disabling
+        // the termination get the exception instead.
+        syncFailure = e;
+      }
+    }
+    for (PendingResponse p : batch) {
+      if (p != STOP) {
+        sendResponse(p.call, syncFailure);
+      }
+    }
+    return stop;
+  }
+
+  private static void sendResponse(Server.Call call, Throwable failure) {
+    try {
+      if (failure == null) {
+        call.sendResponse();
+      } else {
+        call.abortResponse(failure);
+      }
+    } catch (IOException e) {
+      LOG.warn("Failed to send the response to " + call, e);
+    }
+  }
+
+  private void terminate(Throwable t) {
+    LOG.fatal("Exception while syncing edits for RPC calls", t);
+    ExitUtil.terminate(1, t);
+  }
+}
@@ -455,7 +455,9 @@ private long applyEditLogOp(FSEditLogOp op, FSDirectory fsDir,
       // but OP_CLOSE doesn't serialize the holder. So, remove the inode.
       if (file.isUnderConstruction()) {
         fsNamesys.leaseManager.removeLeases(Lists.newArrayList(file.getId()));
+        fsDir.updateContentSummaries(file, false);
         file.toCompleteFile(file.getModificationTime());
+        fsDir.updateContentSummaries(file, true);
       }
       break;
     }
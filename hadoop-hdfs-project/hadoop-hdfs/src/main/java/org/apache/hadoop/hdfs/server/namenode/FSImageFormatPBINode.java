@@ -25,6 +25,7 @@
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -225,9 +226,19 @@ public static void updateBlocksMap(INodeFile file, BlockManager bm) {
       }
     }
 
+    /** The number of inodes added to the inode map at a time. */
+    private static final int INODE_BATCH_SIZE = 1024;
+
     private final FSDirectory dir;
     private final FSNamesystem fsn;
     private final FSImageFormatProtobuf.Loader parent;
+    /**
+     * Guard the state shared by the threads loading sub-sections in parallel.
+     * Inodes are only decoded and linked to their own parents concurrently.
+     */
+    private final Object inodeMapLock = new Object();
+    private final Object nameCacheLock = new Object();
+    private final Object blocksMapLock = new Object();
 
     Loader(FSNamesystem fsn, final FSImageFormatProtobuf.Loader parent) {
       this.fsn = fsn;
@@ -235,7 +246,30 @@ public static void updateBlocksMap(INodeFile file, BlockManager bm) {
       this.parent = parent;
     }
 
-    void loadINodeDirectorySection(InputStream in) throws IOException {
+    /**
+     * Load the INODE_DIR section.
+     *
+     * @param subSections the sub-sections of the section to load in parallel,
+     *                    or null to load the section from the given stream
+     */
+    void loadINodeDirectorySection(InputStream in,
+        List<FileSummary.Section> subSections) throws IOException {
+      if (subSections == null) {
+        loadINodeDirectoryEntries(in);
+        return;
+      }
+      LOG.info("Loading the INode directory section in " + subSections.size()
+          + " sub-sections.");
+      parent.loadSubSections(subSections,
+          new FSImageFormatProtobuf.SubSectionLoader() {
+            @Override
+            public void load(InputStream in) throws IOException {
+              loadINodeDirectoryEntries(in);
+            }
+          });
+    }
+
+    private void loadINodeDirectoryEntries(InputStream in) throws IOException {
       final List<INodeReference> refList = parent.getLoaderContext()
           .getRefList();
       while (true) {
@@ -257,24 +291,91 @@ void loadINodeDirectorySection(InputStream in) throws IOException {
       }
     }
 
+    /**
+     * Load the INODE section.
+     *
+     * @param subSections the sub-sections following the section header to
+     *                    load in parallel, or null to load the whole section
+     *                    from the given stream
+     */
     void loadINodeSection(InputStream in, StartupProgress prog,
-        Step currentStep) throws IOException {
+        Step currentStep, List<FileSummary.Section> subSections)
+        throws IOException {
       INodeSection s = INodeSection.parseDelimitedFrom(in);
       fsn.dir.resetLastInodeId(s.getLastInodeId());
       long numInodes = s.getNumInodes();
       LOG.info("Loading " + numInodes + " INodes.");
       prog.setTotal(Phase.LOADING_FSIMAGE, currentStep, numInodes);
-      Counter counter = prog.getCounter(Phase.LOADING_FSIMAGE, currentStep);
-      for (int i = 0; i < numInodes; ++i) {
+      final Counter counter = prog.getCounter(Phase.LOADING_FSIMAGE,
+          currentStep);
+      if (subSections == null) {
+        for (int i = 0; i < numInodes; ++i) {
+          INodeSection.INode p = INodeSection.INode.parseDelimitedFrom(in);
+          if (p.getId() == INodeId.ROOT_INODE_ID) {
+            loadRootINode(p);
+          } else {
+            INode n = loadINode(p);
+            dir.addToInodeMap(n);
+          }
+          counter.increment();
+        }
+        return;
+      }
+
+      LOG.info("Loading the INode section in " + subSections.size()
+          + " sub-sections.");
+      final AtomicLong loaded = new AtomicLong();
+      parent.loadSubSections(subSections,
+          new FSImageFormatProtobuf.SubSectionLoader() {
+            @Override
+            public void load(InputStream in) throws IOException {
+              loaded.addAndGet(loadINodes(in, counter));
+            }
+          });
+      if (loaded.get() != numInodes) {
+        throw new IOException("Expected " + numInodes
+            + " INodes in the INode sub-sections but found " + loaded.get());
+      }
+    }
+
+    /**
+     * Load the inodes of a sub-section, adding them to the inode map in
+     * batches.
+     * @return the number of inodes loaded.
+     */
+    private long loadINodes(InputStream in, Counter counter)
+        throws IOException {
+      final List<INode> batch = new ArrayList<>(INODE_BATCH_SIZE);
+      long count = 0;
+      while (true) {
         INodeSection.INode p = INodeSection.INode.parseDelimitedFrom(in);
+        if (p == null) {
+          break;
+        }
         if (p.getId() == INodeId.ROOT_INODE_ID) {
-          loadRootINode(p);
+          synchronized (inodeMapLock) {
+            loadRootINode(p);
+          }
         } else {
-          INode n = loadINode(p);
-          dir.addToInodeMap(n);
+          batch.add(loadINode(p));
+          if (batch.size() == INODE_BATCH_SIZE) {
+            addToInodeMap(batch);
+          }
         }
+        count++;
         counter.increment();
       }
+      addToInodeMap(batch);
+      return count;
+    }
+
+    private void addToInodeMap(List<INode> inodes) {
+      synchronized (inodeMapLock) {
+        for (INode n : inodes) {
+          dir.addToInodeMap(n);
+        }
+      }
+      inodes.clear();
     }
 
     /**
@@ -307,10 +408,14 @@ private void addToParent(INodeDirectory parent, INode child) {
       if (!parent.addChild(child)) {
         return;
       }
-      dir.cacheName(child);
+      synchronized (nameCacheLock) {
+        dir.cacheName(child);
+      }
 
       if (child.isFile()) {
-        updateBlocksMap(child.asFile(), fsn.getBlockManager());
+        synchronized (blocksMapLock) {
+          updateBlocksMap(child.asFile(), fsn.getBlockManager());
+        }
       }
     }
 
@@ -557,9 +662,21 @@ void serializeINodeDirectorySection(OutputStream out) throws IOException {
           .getINodeMap().getMapIterator();
       final ArrayList<INodeReference> refList = parent.getSaverContext()
           .getRefList();
+      final int inodesPerSubSection = parent.getInodesPerSubSection();
+      if (inodesPerSubSection > 0) {
+        parent.beginSubSections();
+      }
       int i = 0;
+      // Split into sub-sections by the number of inodes iterated, so that the
+      // sub-sections follow the distribution of directories in the map.
+      long iterated = 0;
       while (iter.hasNext()) {
         INodeWithAdditionalFields n = iter.next();
+        if (inodesPerSubSection > 0
+            && ++iterated % inodesPerSubSection == 0) {
+          parent.commitSubSection(summary,
+              FSImageFormatProtobuf.SectionName.INODE_DIR_SUB);
+        }
         if (!n.isDirectory()) {
           continue;
         }
@@ -586,6 +703,10 @@ void serializeINodeDirectorySection(OutputStream out) throws IOException {
           context.checkCancelled();
         }
       }
+      if (inodesPerSubSection > 0) {
+        parent.commitSubSection(summary,
+            FSImageFormatProtobuf.SectionName.INODE_DIR_SUB);
+      }
       parent.commitSection(summary,
           FSImageFormatProtobuf.SectionName.INODE_DIR);
     }
@@ -598,6 +719,11 @@ void serializeINodeSection(OutputStream out) throws IOException {
       INodeSection s = b.build();
       s.writeDelimitedTo(out);
 
+      // The sub-sections start after the section header.
+      final int inodesPerSubSection = parent.getInodesPerSubSection();
+      if (inodesPerSubSection > 0) {
+        parent.beginSubSections();
+      }
       int i = 0;
       Iterator<INodeWithAdditionalFields> iter = inodesMap.getMapIterator();
       while (iter.hasNext()) {
@@ -607,6 +733,14 @@ void serializeINodeSection(OutputStream out) throws IOException {
         if (i % FSImageFormatProtobuf.Saver.CHECK_CANCEL_INTERVAL == 0) {
           context.checkCancelled();
         }
+        if (inodesPerSubSection > 0 && i % inodesPerSubSection == 0) {
+          parent.commitSubSection(summary,
+              FSImageFormatProtobuf.SectionName.INODE_SUB);
+        }
+      }
+      if (inodesPerSubSection > 0) {
+        parent.commitSubSection(summary,
+            FSImageFormatProtobuf.SectionName.INODE_SUB);
       }
       parent.commitSection(summary, FSImageFormatProtobuf.SectionName.INODE);
     }
@@ -25,6 +25,7 @@
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
@@ -34,14 +35,22 @@
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CacheDirectiveInfoProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CachePoolInfoProto;
 import org.apache.hadoop.hdfs.security.token.delegation.DelegationTokenSecretManager;
@@ -59,14 +68,17 @@
 import org.apache.hadoop.hdfs.server.namenode.startupprogress.Step;
 import org.apache.hadoop.hdfs.server.namenode.startupprogress.StepType;
 import org.apache.hadoop.hdfs.util.MD5FileUtils;
+import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.io.MD5Hash;
 import org.apache.hadoop.io.compress.CompressionCodec;
 import org.apache.hadoop.io.compress.CompressorStream;
 import org.apache.hadoop.util.LimitInputStream;
 import org.apache.hadoop.util.Time;
 
+import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.protobuf.CodedOutputStream;
 
 /**
@@ -148,6 +160,10 @@ public static final class Loader implements FSImageFormat.AbstractLoader {
      * when we're doing (rollingUpgrade rollback).
      */
     private final boolean requireSameLayoutVersion;
+    /** The image file being loaded. */
+    private File imageFile;
+    /** Loads sub-sections in parallel; null if loading serially. */
+    private ExecutorService subSectionExecutor;
 
     Loader(Configuration conf, FSNamesystem fsn,
         boolean requireSameLayoutVersion) {
@@ -174,6 +190,7 @@ public LoaderContext getLoaderContext() {
     void load(File file) throws IOException {
       long start = Time.monotonicNow();
       imgDigest = MD5FileUtils.computeMd5ForFile(file);
+      imageFile = file;
       RandomAccessFile raFile = new RandomAccessFile(file, "r");
       FileInputStream fin = new FileInputStream(file);
       try {
@@ -201,13 +218,120 @@ private void loadInternal(RandomAccessFile raFile, FileInputStream fin)
 
       FileChannel channel = fin.getChannel();
 
+      ArrayList<FileSummary.Section> sections = Lists.newArrayList(summary
+          .getSectionsList());
+      Map<SectionName, List<FileSummary.Section>> subSections =
+          getSubSections(summary);
+      try {
+        loadSections(channel, fin, summary, sections, subSections);
+      } finally {
+        if (subSectionExecutor != null) {
+          subSectionExecutor.shutdownNow();
+          subSectionExecutor = null;
+        }
+      }
+    }
+
+    /**
+     * Collect the sub-sections to be loaded in parallel, keyed by the section
+     * containing them.
+     *
+     * @return the sub-sections, which are empty if the image has none or
+     *         parallel loading is disabled.
+     */
+    private Map<SectionName, List<FileSummary.Section>> getSubSections(
+        FileSummary summary) {
+      Map<SectionName, List<FileSummary.Section>> subSections =
+          Maps.newEnumMap(SectionName.class);
+      if (!conf.getBoolean(DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_DEFAULT)
+          || summary.hasCodec()) {
+        return subSections;
+      }
+      for (FileSummary.Section s : summary.getSectionsList()) {
+        SectionName n = SectionName.fromString(s.getName());
+        if (n != null && n.parent != null) {
+          List<FileSummary.Section> l = subSections.get(n.parent);
+          if (l == null) {
+            l = Lists.newArrayList();
+            subSections.put(n.parent, l);
+          }
+          l.add(s);
+        }
+      }
+      if (!subSections.isEmpty()) {
+        int threads = conf.getInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY,
+            DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_DEFAULT);
+        if (threads < 1) {
+          LOG.warn("Invalid " + DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY
+              + " " + threads + ", loading the image with one thread");
+          threads = 1;
+        }
+        LOG.info("Loading image sub-sections with " + threads + " threads");
+        subSectionExecutor = Executors.newFixedThreadPool(threads,
+            new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("FSImageSubSectionLoader-%d").build());
+      }
+      return subSections;
+    }
+
+    /**
+     * Load the given sub-sections of the image in parallel, opening a stream
+     * for each of them. Wait for all of them to complete even if some fail.
+     */
+    void loadSubSections(List<FileSummary.Section> subSections,
+        final SubSectionLoader loader) throws IOException {
+      List<Future<Void>> futures =
+          Lists.newArrayListWithCapacity(subSections.size());
+      for (final FileSummary.Section s : subSections) {
+        futures.add(subSectionExecutor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws IOException {
+            FileInputStream in = new FileInputStream(imageFile);
+            try {
+              in.getChannel().position(s.getOffset());
+              loader.load(new BufferedInputStream(new LimitInputStream(in,
+                  s.getLength())));
+            } finally {
+              IOUtils.cleanup(LOG, in);
+            }
+            return null;
+          }
+        }));
+      }
+      Throwable failure = null;
+      for (Future<Void> f : futures) {
+        try {
+          f.get();
+        } catch (InterruptedException e) {
+          throw (IOException) new InterruptedIOException(
+              "Interrupted while loading image sub-sections").initCause(e);
+        } catch (ExecutionException e) {
+          if (failure == null) {
+            failure = e.getCause();
+            for (Future<Void> other : futures) {
+              other.cancel(false);
+            }
+          }
+        } catch (CancellationException e) {
+          // cancelled after a failure
+        }
+      }
+      if (failure != null) {
+        Throwables.propagateIfPossible(failure, IOException.class);
+        throw new IOException("Failed to load image sub-sections", failure);
+      }
+    }
+
+    private void loadSections(FileChannel channel, FileInputStream fin,
+        FileSummary summary, ArrayList<FileSummary.Section> sections,
+        Map<SectionName, List<FileSummary.Section>> subSections)
+        throws IOException {
       FSImageFormatPBINode.Loader inodeLoader = new FSImageFormatPBINode.Loader(
           fsn, this);
       FSImageFormatPBSnapshot.Loader snapshotLoader = new FSImageFormatPBSnapshot.Loader(
           fsn, this);
 
-      ArrayList<FileSummary.Section> sections = Lists.newArrayList(summary
-          .getSectionsList());
       Collections.sort(sections, new Comparator<FileSummary.Section>() {
         @Override
         public int compare(FileSummary.Section s1, FileSummary.Section s2) {
@@ -240,8 +364,13 @@ public int compare(FileSummary.Section s1, FileSummary.Section s2) {
             summary.getCodec(), in);
 
         String n = s.getName();
+        SectionName name = SectionName.fromString(n);
+        if (name == null) {
+          LOG.warn("Unrecognized section " + n);
+          continue;
+        }
 
-        switch (SectionName.fromString(n)) {
+        switch (name) {
         case NS_INFO:
           loadNameSystemSection(in);
           break;
@@ -251,14 +380,16 @@ public int compare(FileSummary.Section s1, FileSummary.Section s2) {
         case INODE: {
           currentStep = new Step(StepType.INODES);
           prog.beginStep(Phase.LOADING_FSIMAGE, currentStep);
-          inodeLoader.loadINodeSection(in, prog, currentStep);
+          inodeLoader.loadINodeSection(in, prog, currentStep,
+              subSections.get(SectionName.INODE));
         }
           break;
         case INODE_REFERENCE:
           snapshotLoader.loadINodeReferenceSection(in);
           break;
         case INODE_DIR:
-          inodeLoader.loadINodeDirectorySection(in);
+          inodeLoader.loadINodeDirectorySection(in,
+              subSections.get(SectionName.INODE_DIR));
           break;
         case FILES_UNDERCONSTRUCTION:
           inodeLoader.loadFilesUnderConstructionSection(in);
@@ -284,6 +415,10 @@ public int compare(FileSummary.Section s1, FileSummary.Section s2) {
           prog.endStep(Phase.LOADING_FSIMAGE, step);
         }
           break;
+        case INODE_SUB:
+        case INODE_DIR_SUB:
+          // loaded along with the containing section
+          break;
         default:
           LOG.warn("Unrecognized section " + n);
           break;
@@ -365,6 +500,11 @@ private void loadCacheManagerSection(InputStream in, StartupProgress prog,
 
   }
 
+  /** Loads the entries of an image sub-section. */
+  interface SubSectionLoader {
+    void load(InputStream in) throws IOException;
+  }
+
   public static final class Saver {
     public static final int CHECK_CANCEL_INTERVAL = 4096;
 
@@ -379,9 +519,34 @@ public static final class Saver {
     private CompressionCodec codec;
     private OutputStream underlyingOutputStream;
 
+    /** Whether to split large sections into sub-sections. */
+    private final boolean writeSubSections;
+    private final int targetSubSections;
+    private final int subSectionInodeThreshold;
+    /** The number of inodes per sub-section, or 0 if not writing them. */
+    private int inodesPerSubSection;
+    private long subSectionOffset;
+
     Saver(SaveNamespaceContext context) {
       this.context = context;
       this.saverContext = new SaverContext();
+      this.writeSubSections = false;
+      this.targetSubSections = 1;
+      this.subSectionInodeThreshold = Integer.MAX_VALUE;
+    }
+
+    Saver(SaveNamespaceContext context, Configuration conf) {
+      this.context = context;
+      this.saverContext = new SaverContext();
+      this.writeSubSections = conf.getBoolean(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_DEFAULT);
+      this.targetSubSections = Math.max(1, conf.getInt(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_TARGET_SECTIONS_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_TARGET_SECTIONS_DEFAULT));
+      this.subSectionInodeThreshold = conf.getInt(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_INODE_THRESHOLD_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_INODE_THRESHOLD_DEFAULT);
     }
 
     public MD5Hash getSavedDigest() {
@@ -412,6 +577,37 @@ public void commitSection(FileSummary.Builder summary, SectionName name)
       currentOffset += length;
     }
 
+    /**
+     * @return the number of inodes to write into each sub-section of the
+     *         INODE and INODE_DIR sections, or 0 if the sections are not split.
+     */
+    int getInodesPerSubSection() {
+      return inodesPerSubSection;
+    }
+
+    /** Start the first sub-section at the current position. */
+    void beginSubSections() throws IOException {
+      flushSectionOutputStream();
+      subSectionOffset = fileChannel.position();
+    }
+
+    /**
+     * Add the data written since the previous sub-section as a sub-section to
+     * the summary. Sub-sections are only written uncompressed, so each of them
+     * can be decoded independently of the rest of the section.
+     */
+    void commitSubSection(FileSummary.Builder summary, SectionName name)
+        throws IOException {
+      flushSectionOutputStream();
+      long position = fileChannel.position();
+      long length = position - subSectionOffset;
+      if (length > 0) {
+        summary.addSections(FileSummary.Section.newBuilder()
+            .setName(name.name).setLength(length).setOffset(subSectionOffset));
+      }
+      subSectionOffset = position;
+    }
+
     private void flushSectionOutputStream() throws IOException {
       if (codec != null) {
         ((CompressorStream) sectionOutputStream).finish();
@@ -441,6 +637,14 @@ private static void saveFileSummary(OutputStream out, FileSummary summary)
     private void saveInodes(FileSummary.Builder summary) throws IOException {
       FSImageFormatPBINode.Saver saver = new FSImageFormatPBINode.Saver(this,
           summary);
+      int numInodes = context.getSourceNamesystem().dir.getINodeMap().size();
+      if (writeSubSections && codec == null
+          && numInodes >= subSectionInodeThreshold) {
+        inodesPerSubSection =
+            (numInodes + targetSubSections - 1) / targetSubSections;
+      } else {
+        inodesPerSubSection = 0;
+      }
 
       saver.serializeINodeSection(sectionOutputStream);
       saver.serializeINodeDirectorySection(sectionOutputStream);
@@ -589,7 +793,8 @@ private void saveStringTableSection(FileSummary.Builder summary)
 
   /**
    * Supported section name. The order of the enum determines the order of
-   * loading.
+   * loading. A sub-section is an independently decodable part of its parent
+   * section, which still covers all of its sub-sections.
    */
   public enum SectionName {
     NS_INFO("NS_INFO"),
@@ -602,7 +807,9 @@ public enum SectionName {
     FILES_UNDERCONSTRUCTION("FILES_UNDERCONSTRUCTION"),
     SNAPSHOT_DIFF("SNAPSHOT_DIFF"),
     SECRET_MANAGER("SECRET_MANAGER"),
-    CACHE_MANAGER("CACHE_MANAGER");
+    CACHE_MANAGER("CACHE_MANAGER"),
+    INODE_SUB("INODE_SUB", INODE),
+    INODE_DIR_SUB("INODE_DIR_SUB", INODE_DIR);
 
     private static final SectionName[] values = SectionName.values();
 
@@ -615,9 +822,16 @@ public static SectionName fromString(String name) {
     }
 
     private final String name;
+    /** The section containing this sub-section, or null. */
+    private final SectionName parent;
 
     private SectionName(String name) {
+      this(name, null);
+    }
+
+    private SectionName(String name, SectionName parent) {
       this.name = name;
+      this.parent = parent;
     }
   }
 
@@ -44,6 +44,10 @@
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_TOKEN_TRACKING_ID_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_TOKEN_TRACKING_ID_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_FSLOCK_PARTITION_COUNT_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_FSLOCK_PARTITION_COUNT_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_FSLOCK_PARTITION_DEPTH_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_FSLOCK_PARTITION_DEPTH_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_CHECKPOINT_TXNS_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_CHECKPOINT_TXNS_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_DEFAULT_AUDIT_LOGGER_NAME;
@@ -66,6 +70,8 @@
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_INODE_ATTRIBUTES_PROVIDER_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LAZY_PERSIST_FILE_SCRUB_INTERVAL_SEC;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LAZY_PERSIST_FILE_SCRUB_INTERVAL_SEC_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_STORAGE_POLICY_SATISFIER_ENABLED_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_STORAGE_POLICY_SATISFIER_ENABLED_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_MAX_OBJECTS_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_MAX_OBJECTS_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_NAME_DIR_KEY;
@@ -127,6 +133,7 @@
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import javax.annotation.Nonnull;
 import javax.management.NotCompliantMBeanException;
 import javax.management.ObjectName;
 import javax.management.StandardMBean;
@@ -167,6 +174,7 @@
 import org.apache.hadoop.hdfs.HdfsConfiguration;
 import org.apache.hadoop.hdfs.UnknownCryptoProtocolVersionException;
 import org.apache.hadoop.hdfs.protocol.AlreadyBeingCreatedException;
+import org.apache.hadoop.hdfs.protocol.BatchedDirectoryListing;
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.protocol.BlockStoragePolicy;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveEntry;
@@ -184,6 +192,7 @@
 import org.apache.hadoop.hdfs.protocol.HdfsConstants.DatanodeReportType;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants.SafeModeAction;
 import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.hdfs.protocol.HdfsPartialListing;
 import org.apache.hadoop.hdfs.protocol.LastBlockWithStatus;
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
@@ -196,6 +205,7 @@
 import org.apache.hadoop.hdfs.protocol.SnapshotDiffReport;
 import org.apache.hadoop.hdfs.protocol.SnapshottableDirectoryStatus;
 import org.apache.hadoop.hdfs.protocol.datatransfer.ReplaceDatanodeOnFailure;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.BatchedListingKeyProto;
 import org.apache.hadoop.hdfs.security.token.block.BlockTokenIdentifier;
 import org.apache.hadoop.hdfs.security.token.delegation.DelegationTokenIdentifier;
 import org.apache.hadoop.hdfs.security.token.delegation.DelegationTokenSecretManager;
@@ -255,10 +265,13 @@
 import org.apache.hadoop.hdfs.server.protocol.NamespaceInfo;
 import org.apache.hadoop.hdfs.server.protocol.StorageReceivedDeletedBlocks;
 import org.apache.hadoop.hdfs.server.protocol.StorageReport;
+import org.apache.hadoop.hdfs.server.protocol.SlowDiskReports;
+import org.apache.hadoop.hdfs.server.protocol.SlowPeerReports;
 import org.apache.hadoop.hdfs.server.protocol.VolumeFailureSummary;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.ipc.CallerContext;
+import org.apache.hadoop.ipc.RemoteException;
 import org.apache.hadoop.ipc.RetriableException;
 import org.apache.hadoop.ipc.RetryCache;
 import org.apache.hadoop.ipc.Server;
@@ -292,6 +305,7 @@
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
+import com.google.protobuf.ByteString;
 
 /**
  * FSNamesystem is a container of both transient
@@ -449,6 +463,10 @@ private void logAuditEvent(boolean succeeded,
   // A daemon to periodically clean up corrupt lazyPersist files
   // from the name space.
   Daemon lazyPersistFileScrubber = null;
+
+  // A daemon to move block replicas to the storage types of their storage
+  // policies, null if the satisfier is disabled.
+  private final StoragePolicySatisfier storagePolicySatisfier;
   /**
    * When an active namenode will roll its own edit log, in # edits
    */
@@ -732,7 +750,15 @@ static FSNamesystem loadFromDisk(Configuration conf) throws IOException {
     }
     boolean fair = conf.getBoolean("dfs.namenode.fslock.fair", true);
     LOG.info("fsLock is fair:" + fair);
-    fsLock = new FSNamesystemLock(fair);
+    int partitionDepth = conf.getInt(DFS_NAMENODE_FSLOCK_PARTITION_DEPTH_KEY,
+        DFS_NAMENODE_FSLOCK_PARTITION_DEPTH_DEFAULT);
+    int partitionCount = conf.getInt(DFS_NAMENODE_FSLOCK_PARTITION_COUNT_KEY,
+        DFS_NAMENODE_FSLOCK_PARTITION_COUNT_DEFAULT);
+    if (partitionDepth > 0) {
+      LOG.info("fsLock is partitioned at depth " + partitionDepth + " into "
+          + partitionCount + " stripes");
+    }
+    fsLock = new FSNamesystemLock(fair, partitionDepth, partitionCount);
     cond = fsLock.writeLock().newCondition();
     cpLock = new ReentrantLock();
 
@@ -825,6 +851,11 @@ static FSNamesystem loadFromDisk(Configuration conf) throws IOException {
                 + " must be zero (for disable) or greater than zero.");
       }
 
+      this.storagePolicySatisfier = conf.getBoolean(
+          DFS_STORAGE_POLICY_SATISFIER_ENABLED_KEY,
+          DFS_STORAGE_POLICY_SATISFIER_ENABLED_DEFAULT) ?
+          new StoragePolicySatisfier(this, conf) : null;
+
       // For testing purposes, allow the DT secret manager to be started regardless
       // of whether security is enabled.
       alwaysUseDelegationTokensForTests = conf.getBoolean(
@@ -983,6 +1014,8 @@ private void loadFSImage(StartupOption startOpt) throws IOException {
       if (RollingUpgradeStartupOption.ROLLBACK.matches(startOpt)) {
         rollingUpgradeInfo = null;
       }
+      // Count the directories whose content summaries are maintained
+      dir.buildContentSummaries();
       final boolean needToSave = staleImage && !haEnabled && !isRollingUpgrade(); 
       LOG.info("Need to save fs image? " + needToSave
           + " (staleImage=" + staleImage + ", haEnabled=" + haEnabled
@@ -1163,6 +1196,10 @@ void startActiveServices() throws IOException {
             + " configured scrub interval is zero.");
       }
 
+      if (storagePolicySatisfier != null) {
+        storagePolicySatisfier.start();
+      }
+
       cacheManager.startMonitorThread();
       blockManager.getDatanodeManager().setShouldSendCachingCommands(true);
     } finally {
@@ -1211,6 +1248,9 @@ void stopActiveServices() {
         ((LazyPersistFileScrubber) lazyPersistFileScrubber.getRunnable()).stop();
         lazyPersistFileScrubber.interrupt();
       }
+      if (storagePolicySatisfier != null) {
+        storagePolicySatisfier.stop();
+      }
       if (dir != null && getFSImage() != null) {
         if (getFSImage().editLog != null) {
           getFSImage().editLog.close();
@@ -1474,22 +1514,22 @@ public static List<URI> getSharedEditsDirs(Configuration conf) {
 
   @Override
   public void readLock() {
-    this.fsLock.readLock().lock();
+    this.fsLock.lockShared();
   }
   @Override
   public void readUnlock() {
-    this.fsLock.readLock().unlock();
+    this.fsLock.unlockShared();
   }
   @Override
   public void writeLock() {
-    this.fsLock.writeLock().lock();
+    this.fsLock.lockExclusive();
     if (fsLock.getWriteHoldCount() == 1) {
       writeLockHeldTimeStamp = monotonicNow();
     }
   }
   @Override
   public void writeLockInterruptibly() throws InterruptedException {
-    this.fsLock.writeLock().lockInterruptibly();
+    this.fsLock.lockExclusiveInterruptibly();
     if (fsLock.getWriteHoldCount() == 1) {
       writeLockHeldTimeStamp = monotonicNow();
     }
@@ -1498,7 +1538,7 @@ public void writeLockInterruptibly() throws InterruptedException {
   public void writeUnlock() {
     final boolean needReport = fsLock.getWriteHoldCount() == 1 &&
         fsLock.isWriteLockedByCurrentThread();
-    this.fsLock.writeLock().unlock();
+    this.fsLock.unlockExclusive();
 
     if (needReport) {
       long writeLockInterval = monotonicNow() - writeLockHeldTimeStamp;
@@ -1521,6 +1561,66 @@ public int getReadHoldCount() {
     return this.fsLock.getReadHoldCount();
   }
 
+  /**
+   * @return the namespace partition of the given path to be passed to
+   *         {@link #readLock(int)} or {@link #writeLock(int)}, or
+   *         {@link FSNamesystemLock#NO_PARTITION} if the operation has to
+   *         take the global lock.
+   */
+  int getLockPartition(String src) {
+    return fsLock.getPartition(src);
+  }
+
+  /** Lock for reading within a namespace partition. */
+  void readLock(int partition) {
+    if (partition == FSNamesystemLock.NO_PARTITION) {
+      readLock();
+    } else {
+      fsLock.lockPartition(partition, false);
+    }
+  }
+
+  void readUnlock(int partition) {
+    if (partition == FSNamesystemLock.NO_PARTITION) {
+      readUnlock();
+    } else {
+      fsLock.unlockPartition(partition, false);
+    }
+  }
+
+  /**
+   * Lock for writing within a namespace partition. An operation holding a
+   * partition write lock must only modify inodes inside the partition and
+   * throws {@link FSNamesystemLock.PartitionEscapeException} otherwise.
+   */
+  void writeLock(int partition) {
+    if (partition == FSNamesystemLock.NO_PARTITION) {
+      writeLock();
+    } else {
+      fsLock.lockPartition(partition, true);
+    }
+  }
+
+  void writeUnlock(int partition) {
+    if (partition == FSNamesystemLock.NO_PARTITION) {
+      writeUnlock();
+    } else {
+      fsLock.unlockPartition(partition, true);
+    }
+  }
+
+  /**
+   * @return true if the current thread holds the write lock of a namespace
+   *         partition rather than the global write lock.
+   */
+  boolean hasPartitionWriteLock() {
+    return fsLock.hasPartitionWriteLock();
+  }
+
+  int getLockPartitionDepth() {
+    return fsLock.getPartitionDepth();
+  }
+
   public int getWriteHoldCount() {
     return this.fsLock.getWriteHoldCount();
   }
@@ -1667,16 +1767,22 @@ FsServerDefaults getServerDefaults() throws StandbyException {
   void setPermission(String src, FsPermission permission) throws IOException {
     HdfsFileStatus auditStat;
     checkOperation(OperationCategory.WRITE);
-    writeLock();
-    try {
-      checkOperation(OperationCategory.WRITE);
-      checkNameNodeSafeMode("Cannot set permission for " + src);
-      auditStat = FSDirAttrOp.setPermission(dir, src, permission);
-    } catch (AccessControlException e) {
-      logAuditEvent(false, "setPermission", src);
-      throw e;
-    } finally {
-      writeUnlock();
+    for (int partition = getLockPartition(src); ;
+         partition = FSNamesystemLock.NO_PARTITION) {
+      writeLock(partition);
+      try {
+        checkOperation(OperationCategory.WRITE);
+        checkNameNodeSafeMode("Cannot set permission for " + src);
+        auditStat = FSDirAttrOp.setPermission(dir, src, permission);
+        break;
+      } catch (FSNamesystemLock.PartitionEscapeException e) {
+        // retry under the global write lock
+      } catch (AccessControlException e) {
+        logAuditEvent(false, "setPermission", src);
+        throw e;
+      } finally {
+        writeUnlock(partition);
+      }
     }
     getEditLog().logSync();
     logAuditEvent(true, "setPermission", src, null, auditStat);
@@ -1690,16 +1796,22 @@ void setOwner(String src, String username, String group)
       throws IOException {
     HdfsFileStatus auditStat;
     checkOperation(OperationCategory.WRITE);
-    writeLock();
-    try {
-      checkOperation(OperationCategory.WRITE);
-      checkNameNodeSafeMode("Cannot set owner for " + src);
-      auditStat = FSDirAttrOp.setOwner(dir, src, username, group);
-    } catch (AccessControlException e) {
-      logAuditEvent(false, "setOwner", src);
-      throw e;
-    } finally {
-      writeUnlock();
+    for (int partition = getLockPartition(src); ;
+         partition = FSNamesystemLock.NO_PARTITION) {
+      writeLock(partition);
+      try {
+        checkOperation(OperationCategory.WRITE);
+        checkNameNodeSafeMode("Cannot set owner for " + src);
+        auditStat = FSDirAttrOp.setOwner(dir, src, username, group);
+        break;
+      } catch (FSNamesystemLock.PartitionEscapeException e) {
+        // retry under the global write lock
+      } catch (AccessControlException e) {
+        logAuditEvent(false, "setOwner", src);
+        throw e;
+      } finally {
+        writeUnlock(partition);
+      }
     }
     getEditLog().logSync();
     logAuditEvent(true, "setOwner", src, null, auditStat);
@@ -1714,7 +1826,8 @@ LocatedBlocks getBlockLocations(String clientMachine, String srcArg,
     checkOperation(OperationCategory.READ);
     GetBlockLocationsResult res = null;
     FSPermissionChecker pc = getPermissionChecker();
-    readLock();
+    final int partition = getLockPartition(srcArg);
+    readLock(partition);
     try {
       checkOperation(OperationCategory.READ);
       res = FSDirStatAndListingOp.getBlockLocations(
@@ -1738,16 +1851,18 @@ LocatedBlocks getBlockLocations(String clientMachine, String srcArg,
       logAuditEvent(false, "open", srcArg);
       throw e;
     } finally {
-      readUnlock();
+      readUnlock(partition);
     }
 
     logAuditEvent(true, "open", srcArg);
 
-    if (!isInSafeMode() && res.updateAccessTime()) {
+    // A standby serving reads leaves the access time to the active, instead
+    // of taking the write lock only to fail the write operation check
+    if (!isInSafeMode() && res.updateAccessTime() && !isInStandbyState()) {
       byte[][] pathComponents = FSDirectory.getPathComponentsForReservedPath(
           srcArg);
       String src = srcArg;
-      writeLock();
+      writeLock(partition);
       final long now = now();
       try {
         checkOperation(OperationCategory.WRITE);
@@ -1771,6 +1886,7 @@ LocatedBlocks getBlockLocations(String clientMachine, String srcArg,
          */
         src = dir.resolvePath(pc, srcArg, pathComponents);
         final INodesInPath iip = dir.getINodesInPath(src, true);
+        dir.checkPartitionConfined(iip, iip.length() - 1);
         INode inode = iip.getLastINode();
         boolean updateAccessTime = inode != null &&
             now > inode.getAccessTime() + dir.getAccessTimePrecision();
@@ -1781,10 +1897,16 @@ LocatedBlocks getBlockLocations(String clientMachine, String srcArg,
             getEditLog().logTimes(src, -1, now);
           }
         }
+      } catch (StandbyException e) {
+        // the namenode left the active state since the read, the access
+        // time is updated on a best effort basis
+        LOG.debug("Skipped updating the access time of " + src, e);
+      } catch (FSNamesystemLock.PartitionEscapeException e) {
+        // the access time is updated on a best effort basis
       } catch (Throwable e) {
         LOG.warn("Failed to update the access time of " + src, e);
       } finally {
-        writeUnlock();
+        writeUnlock(partition);
       }
     }
 
@@ -1830,6 +1952,10 @@ void concat(String target, String [] srcs, boolean logRetryCache)
       checkOperation(OperationCategory.WRITE);
       checkNameNodeSafeMode("Cannot concat " + target);
       stat = FSDirConcatOp.concat(dir, target, srcs, logRetryCache);
+      cacheManager.notifyPathChanged(target);
+      for (String src : srcs) {
+        cacheManager.notifyPathChanged(src);
+      }
       success = true;
     } finally {
       writeUnlock();
@@ -1848,16 +1974,22 @@ void concat(String target, String [] srcs, boolean logRetryCache)
   void setTimes(String src, long mtime, long atime) throws IOException {
     HdfsFileStatus auditStat;
     checkOperation(OperationCategory.WRITE);
-    writeLock();
-    try {
-      checkOperation(OperationCategory.WRITE);
-      checkNameNodeSafeMode("Cannot set times " + src);
-      auditStat = FSDirAttrOp.setTimes(dir, src, mtime, atime);
-    } catch (AccessControlException e) {
-      logAuditEvent(false, "setTimes", src);
-      throw e;
-    } finally {
-      writeUnlock();
+    for (int partition = getLockPartition(src); ;
+         partition = FSNamesystemLock.NO_PARTITION) {
+      writeLock(partition);
+      try {
+        checkOperation(OperationCategory.WRITE);
+        checkNameNodeSafeMode("Cannot set times " + src);
+        auditStat = FSDirAttrOp.setTimes(dir, src, mtime, atime);
+        break;
+      } catch (FSNamesystemLock.PartitionEscapeException e) {
+        // retry under the global write lock
+      } catch (AccessControlException e) {
+        logAuditEvent(false, "setTimes", src);
+        throw e;
+      } finally {
+        writeUnlock(partition);
+      }
     }
     getEditLog().logSync();
     logAuditEvent(true, "setTimes", src, null, auditStat);
@@ -1894,6 +2026,7 @@ boolean truncate(String src, long newLength, String clientName,
         checkNameNodeSafeMode("Cannot truncate for " + src);
         r = FSDirTruncateOp.truncate(this, src, newLength, clientName,
             clientMachine, mtime, toRemoveBlocks, pc);
+        cacheManager.notifyPathChanged(src);
       } finally {
         writeUnlock();
       }
@@ -1999,6 +2132,39 @@ void setStoragePolicy(String src, String policyName) throws IOException {
     logAuditEvent(true, "setStoragePolicy", src, null, auditStat);
   }
 
+  /**
+   * Schedule the moves of the block replicas of a file or a directory to the
+   * storage types of its storage policy.
+   *
+   * @param src file/directory path
+   */
+  void satisfyStoragePolicy(String src) throws IOException {
+    checkOperation(OperationCategory.WRITE);
+    if (storagePolicySatisfier == null) {
+      throw new IOException("Failed to satisfy storage policy since "
+          + DFS_STORAGE_POLICY_SATISFIER_ENABLED_KEY + " is set to false.");
+    }
+    waitForLoadingFSImage();
+    readLock();
+    try {
+      checkOperation(OperationCategory.WRITE);
+      checkNameNodeSafeMode("Cannot satisfy storage policy for " + src);
+      storagePolicySatisfier.add(
+          FSDirAttrOp.getINodeIdToSatisfyStoragePolicy(dir, src));
+    } catch (AccessControlException e) {
+      logAuditEvent(false, "satisfyStoragePolicy", src);
+      throw e;
+    } finally {
+      readUnlock();
+    }
+    logAuditEvent(true, "satisfyStoragePolicy", src);
+  }
+
+  /** @return the storage policy satisfier, null if it is disabled */
+  StoragePolicySatisfier getStoragePolicySatisfier() {
+    return storagePolicySatisfier;
+  }
+
   /**
    * Get the storage policy for a file or a directory.
    *
@@ -2192,24 +2358,32 @@ private HdfsFileStatus startFileInt(final String src,
     // Proceed with the create, using the computed cipher suite and
     // generated EDEK
     BlocksMapUpdateInfo toRemoveBlocks = new BlocksMapUpdateInfo();
-    writeLock();
     try {
-      checkOperation(OperationCategory.WRITE);
-      checkNameNodeSafeMode("Cannot create file" + src);
-      dir.writeLock();
-      try {
-        stat = FSDirWriteFileOp.startFile(this, pc, src, permissions, holder,
-                                          clientMachine, flag, createParent,
-                                          replication, blockSize, ezInfo,
-                                          toRemoveBlocks, logRetryCache);
-      } finally {
-        dir.writeUnlock();
+      for (int partition = getLockPartition(src); ;
+           partition = FSNamesystemLock.NO_PARTITION) {
+        writeLock(partition);
+        try {
+          checkOperation(OperationCategory.WRITE);
+          checkNameNodeSafeMode("Cannot create file" + src);
+          dir.writeLock();
+          try {
+            stat = FSDirWriteFileOp.startFile(this, pc, src, permissions,
+                holder, clientMachine, flag, createParent, replication,
+                blockSize, ezInfo, toRemoveBlocks, logRetryCache);
+          } finally {
+            dir.writeUnlock();
+          }
+          break;
+        } catch (FSNamesystemLock.PartitionEscapeException e) {
+          // retry under the global write lock
+        } finally {
+          writeUnlock(partition);
+        }
       }
     } catch (IOException e) {
       skipSync = e instanceof StandbyException;
       throw e;
     } finally {
-      writeUnlock();
       // There might be transactions logged while trying to recover the lease.
       // They need to be sync'ed even when an exception was thrown.
       if (!skipSync) {
@@ -2389,6 +2563,7 @@ LastBlockWithStatus appendFile(String srcArg, String holder,
         checkNameNodeSafeMode("Cannot append to file" + srcArg);
         lbs = FSDirAppendOp.appendFile(this, srcArg, pc, holder, clientMachine,
             newBlock, logRetryCache);
+        cacheManager.notifyPathChanged(srcArg);
       } catch (StandbyException se) {
         skipSync = true;
         throw se;
@@ -2676,6 +2851,10 @@ boolean renameTo(String src, String dst, boolean logRetryCache)
       checkOperation(OperationCategory.WRITE);
       checkNameNodeSafeMode("Cannot rename " + src);
       ret = FSDirRenameOp.renameToInt(dir, src, dst, logRetryCache);
+      if (ret.success) {
+        cacheManager.notifyPathChanged(src);
+        cacheManager.notifyPathChanged(dst);
+      }
     } catch (AccessControlException e)  {
       logAuditEvent(false, "rename", src, dst, null);
       throw e;
@@ -2701,6 +2880,8 @@ void renameTo(final String src, final String dst,
       checkOperation(OperationCategory.WRITE);
       checkNameNodeSafeMode("Cannot rename " + src);
       res = FSDirRenameOp.renameToInt(dir, src, dst, logRetryCache, options);
+      cacheManager.notifyPathChanged(src);
+      cacheManager.notifyPathChanged(dst);
     } catch (AccessControlException e) {
       logAuditEvent(false, "rename (options=" + Arrays.toString(options) +
           ")", src, dst, null);
@@ -2732,19 +2913,28 @@ boolean delete(String src, boolean recursive, boolean logRetryCache)
       throws IOException {
     waitForLoadingFSImage();
     BlocksMapUpdateInfo toRemovedBlocks = null;
-    writeLock();
     boolean ret = false;
-    try {
-      checkOperation(OperationCategory.WRITE);
-      checkNameNodeSafeMode("Cannot delete " + src);
-      toRemovedBlocks = FSDirDeleteOp.delete(
-          this, src, recursive, logRetryCache);
-      ret = toRemovedBlocks != null;
-    } catch (AccessControlException e) {
-      logAuditEvent(false, "delete", src);
-      throw e;
-    } finally {
-      writeUnlock();
+    for (int partition = getLockPartition(src); ;
+         partition = FSNamesystemLock.NO_PARTITION) {
+      writeLock(partition);
+      try {
+        checkOperation(OperationCategory.WRITE);
+        checkNameNodeSafeMode("Cannot delete " + src);
+        toRemovedBlocks = FSDirDeleteOp.delete(
+            this, src, recursive, logRetryCache);
+        ret = toRemovedBlocks != null;
+        if (ret) {
+          cacheManager.notifyPathChanged(src);
+        }
+        break;
+      } catch (FSNamesystemLock.PartitionEscapeException e) {
+        // retry under the global write lock
+      } catch (AccessControlException e) {
+        logAuditEvent(false, "delete", src);
+        throw e;
+      } finally {
+        writeUnlock(partition);
+      }
     }
     getEditLog().logSync();
     if (toRemovedBlocks != null) {
@@ -2769,6 +2959,8 @@ FSPermissionChecker getPermissionChecker()
    *          of blocks that need to be removed from blocksMap
    */
   void removeBlocks(BlocksMapUpdateInfo blocks) {
+    // the deletion must be durable before any replica is invalidated
+    getEditLog().awaitDeferredSync();
     List<BlockInfo> toDeleteList = blocks.getToDeleteList();
     Iterator<BlockInfo> iter = toDeleteList.iterator();
     while (iter.hasNext()) {
@@ -2793,21 +2985,26 @@ void removeBlocks(BlocksMapUpdateInfo blocks) {
   void removeLeasesAndINodes(List<Long> removedUCFiles,
       List<INode> removedINodes,
       final boolean acquireINodeMapLock) {
-    assert hasWriteLock();
-    leaseManager.removeLeases(removedUCFiles);
-    // remove inodes from inodesMap
-    if (removedINodes != null) {
-      if (acquireINodeMapLock) {
-        dir.writeLock();
-      }
-      try {
-        dir.removeFromInodeMap(removedINodes);
-      } finally {
+    assert hasWriteLock() || hasPartitionWriteLock();
+    dir.sharedStateWriteLock();
+    try {
+      leaseManager.removeLeases(removedUCFiles);
+      // remove inodes from inodesMap
+      if (removedINodes != null) {
         if (acquireINodeMapLock) {
-          dir.writeUnlock();
+          dir.writeLock();
         }
+        try {
+          dir.removeFromInodeMap(removedINodes);
+        } finally {
+          if (acquireINodeMapLock) {
+            dir.writeUnlock();
+          }
+        }
+        removedINodes.clear();
       }
-      removedINodes.clear();
+    } finally {
+      dir.sharedStateWriteUnlock();
     }
   }
 
@@ -2877,7 +3074,8 @@ HdfsFileStatus getFileInfo(final String src, boolean resolveLink)
     throws IOException {
     checkOperation(OperationCategory.READ);
     HdfsFileStatus stat = null;
-    readLock();
+    final int partition = getLockPartition(src);
+    readLock(partition);
     try {
       checkOperation(OperationCategory.READ);
       stat = FSDirStatAndListingOp.getFileInfo(dir, src, resolveLink);
@@ -2885,7 +3083,7 @@ HdfsFileStatus getFileInfo(final String src, boolean resolveLink)
       logAuditEvent(false, "getfileinfo", src);
       throw e;
     } finally {
-      readUnlock();
+      readUnlock(partition);
     }
     logAuditEvent(true, "getfileinfo", src);
     return stat;
@@ -2896,7 +3094,8 @@ HdfsFileStatus getFileInfo(final String src, boolean resolveLink)
    */
   boolean isFileClosed(final String src) throws IOException {
     checkOperation(OperationCategory.READ);
-    readLock();
+    final int partition = getLockPartition(src);
+    readLock(partition);
     try {
       checkOperation(OperationCategory.READ);
       return FSDirStatAndListingOp.isFileClosed(dir, src);
@@ -2904,7 +3103,7 @@ boolean isFileClosed(final String src) throws IOException {
       logAuditEvent(false, "isFileClosed", src);
       throw e;
     } finally {
-      readUnlock();
+      readUnlock(partition);
     }
   }
 
@@ -2913,18 +3112,24 @@ boolean isFileClosed(final String src) throws IOException {
    */
   boolean mkdirs(String src, PermissionStatus permissions,
       boolean createParent) throws IOException {
-    HdfsFileStatus auditStat = null;
+    HdfsFileStatus auditStat;
     checkOperation(OperationCategory.WRITE);
-    writeLock();
-    try {
-      checkOperation(OperationCategory.WRITE);
-      checkNameNodeSafeMode("Cannot create directory " + src);
-      auditStat = FSDirMkdirOp.mkdirs(this, src, permissions, createParent);
-    } catch (AccessControlException e) {
-      logAuditEvent(false, "mkdirs", src);
-      throw e;
-    } finally {
-      writeUnlock();
+    for (int partition = getLockPartition(src); ;
+         partition = FSNamesystemLock.NO_PARTITION) {
+      writeLock(partition);
+      try {
+        checkOperation(OperationCategory.WRITE);
+        checkNameNodeSafeMode("Cannot create directory " + src);
+        auditStat = FSDirMkdirOp.mkdirs(this, src, permissions, createParent);
+        break;
+      } catch (FSNamesystemLock.PartitionEscapeException e) {
+        // retry under the global write lock
+      } catch (AccessControlException e) {
+        logAuditEvent(false, "mkdirs", src);
+        throw e;
+      } finally {
+        writeUnlock(partition);
+      }
     }
     getEditLog().logSync();
     logAuditEvent(true, "mkdirs", src, null, auditStat);
@@ -3255,13 +3460,16 @@ void finalizeINodeFileUnderConstruction(
     // The file is no longer pending.
     // Create permanent INode, update blocks. No need to replace the inode here
     // since we just remove the uc feature from pendingFile
+    dir.updateContentSummaries(pendingFile, false);
     pendingFile.toCompleteFile(now());
+    dir.updateContentSummaries(pendingFile, true);
 
     waitForLoadingFSImage();
     // close file and persist block allocations for this file
     closeFile(src, pendingFile);
 
     blockManager.checkReplication(pendingFile);
+    cacheManager.notifyPathChanged(src);
   }
 
   @VisibleForTesting
@@ -3541,7 +3749,8 @@ DirectoryListing getListing(String src, byte[] startAfter,
       throws IOException {
     checkOperation(OperationCategory.READ);
     DirectoryListing dl = null;
-    readLock();
+    final int partition = getLockPartition(src);
+    readLock(partition);
     try {
       checkOperation(NameNode.OperationCategory.READ);
       dl = getListingInt(dir, src, startAfter, needLocation);
@@ -3549,12 +3758,99 @@ DirectoryListing getListing(String src, byte[] startAfter,
       logAuditEvent(false, "listStatus", src);
       throw e;
     } finally {
-      readUnlock();
+      readUnlock(partition);
     }
     logAuditEvent(true, "listStatus", src);
     return dl;
   }
 
+  /**
+   * Get the partial listings of many paths under a single lock.
+   * @see ClientProtocol#getBatchedListing(String[], byte[], boolean)
+   */
+  BatchedDirectoryListing getBatchedListing(String[] srcs, byte[] startAfter,
+      boolean needLocation) throws IOException {
+    checkOperation(OperationCategory.READ);
+    int srcsIndex = 0;
+    byte[] indexStartAfter = HdfsFileStatus.EMPTY_NAME;
+    if (startAfter.length > 0) {
+      BatchedListingKeyProto startAfterProto =
+          BatchedListingKeyProto.parseFrom(startAfter);
+      srcsIndex = startAfterProto.getPathIndex();
+      indexStartAfter = startAfterProto.getStartAfter().toByteArray();
+      if (srcsIndex >= srcs.length) {
+        throw new HadoopIllegalArgumentException("Invalid startAfter: path "
+            + "index " + srcsIndex + " is not less than the number of paths "
+            + srcs.length);
+      }
+    }
+    final int lsLimit = dir.getLsLimit();
+    final int batchedLsLimit = dir.getBatchedLsLimit();
+    final List<HdfsPartialListing> listings = new ArrayList<>();
+    final List<String> listed = new ArrayList<>();
+    final List<String> denied = new ArrayList<>();
+    int numEntries = 0;
+    readLock();
+    try {
+      checkOperation(NameNode.OperationCategory.READ);
+      while (srcsIndex < srcs.length && listings.size() < batchedLsLimit
+          && numEntries < lsLimit) {
+        final String src = srcs[srcsIndex];
+        HdfsPartialListing listing;
+        try {
+          DirectoryListing dl =
+              getListingInt(dir, src, indexStartAfter, needLocation);
+          if (dl == null) {
+            throw new FileNotFoundException("Path " + src
+                + " does not exist");
+          }
+          listing = new HdfsPartialListing(srcsIndex,
+              Arrays.asList(dl.getPartialListing()));
+          numEntries += dl.getPartialListing().length;
+          listed.add(src);
+          if (dl.hasMore()) {
+            // Continue this path in the next batch
+            indexStartAfter = dl.getLastName();
+          } else {
+            srcsIndex++;
+            indexStartAfter = HdfsFileStatus.EMPTY_NAME;
+          }
+        } catch (IOException e) {
+          // Report the error for this path only, so that one bad path does
+          // not fail the listing of all the others.
+          if (e instanceof AccessControlException) {
+            denied.add(src);
+          }
+          listing = new HdfsPartialListing(srcsIndex,
+              new RemoteException(e.getClass().getName(), e.getMessage()));
+          srcsIndex++;
+          indexStartAfter = HdfsFileStatus.EMPTY_NAME;
+        }
+        listings.add(listing);
+      }
+    } finally {
+      readUnlock();
+    }
+    for (String src : denied) {
+      logAuditEvent(false, "batchedListStatus", src);
+    }
+    for (String src : listed) {
+      logAuditEvent(true, "batchedListStatus", src);
+    }
+
+    final boolean hasMore = srcsIndex < srcs.length;
+    byte[] nextStartAfter = HdfsFileStatus.EMPTY_NAME;
+    if (hasMore) {
+      nextStartAfter = BatchedListingKeyProto.newBuilder()
+          .setPathIndex(srcsIndex)
+          .setStartAfter(ByteString.copyFrom(indexStartAfter))
+          .build().toByteArray();
+    }
+    return new BatchedDirectoryListing(
+        listings.toArray(new HdfsPartialListing[listings.size()]), hasMore,
+        nextStartAfter);
+  }
+
   /////////////////////////////////////////////////////////
   //
   // These methods are called by datanodes
@@ -3618,7 +3914,9 @@ HeartbeatResponse handleHeartbeat(DatanodeRegistration nodeReg,
       StorageReport[] reports, long cacheCapacity, long cacheUsed,
       int xceiverCount, int xmitsInProgress, int failedVolumes,
       VolumeFailureSummary volumeFailureSummary,
-      boolean requestFullBlockReportLease) throws IOException {
+      boolean requestFullBlockReportLease,
+      @Nonnull SlowPeerReports slowPeers,
+      @Nonnull SlowDiskReports slowDisks) throws IOException {
     readLock();
     try {
       //get datanode commands
@@ -3626,7 +3924,8 @@ HeartbeatResponse handleHeartbeat(DatanodeRegistration nodeReg,
           - xmitsInProgress;
       DatanodeCommand[] cmds = blockManager.getDatanodeManager().handleHeartbeat(
           nodeReg, reports, blockPoolId, cacheCapacity, cacheUsed,
-          xceiverCount, maxTransfer, failedVolumes, volumeFailureSummary);
+          xceiverCount, maxTransfer, failedVolumes, volumeFailureSummary,
+          slowPeers, slowDisks);
       long blockReportLeaseId = 0;
       if (requestFullBlockReportLease) {
         blockReportLeaseId =  blockManager.requestBlockReportLeaseId(nodeReg);
@@ -3863,6 +4162,42 @@ public long getMissingReplOneBlocksCount() {
     return blockManager.getMissingReplOneBlocksCount();
   }
   
+  @Metric({"StoragePolicySatisfierPendingINodes",
+      "Number of files and directories queued to satisfy the storage policy of"})
+  public int getStoragePolicySatisfierPendingINodes() {
+    return storagePolicySatisfier == null ? 0 :
+        storagePolicySatisfier.getPendingCount();
+  }
+
+  @Metric({"StoragePolicySatisfierScheduledFiles",
+      "Number of files with block moves scheduled to satisfy their storage " +
+      "policy"})
+  public int getStoragePolicySatisfierScheduledFiles() {
+    return storagePolicySatisfier == null ? 0 :
+        storagePolicySatisfier.getScheduledFilesCount();
+  }
+
+  @Metric({"StoragePolicySatisfierBlockMoves",
+      "Number of block replicas scheduled to move to satisfy storage policies"})
+  public long getStoragePolicySatisfierBlockMoves() {
+    return storagePolicySatisfier == null ? 0 :
+        storagePolicySatisfier.getBlockMovesScheduled();
+  }
+
+  @Metric({"StoragePolicySatisfierSatisfiedFiles",
+      "Number of files found with their storage policy satisfied"})
+  public long getStoragePolicySatisfierSatisfiedFiles() {
+    return storagePolicySatisfier == null ? 0 :
+        storagePolicySatisfier.getFilesSatisfied();
+  }
+
+  @Metric({"StoragePolicySatisfierUnsatisfiableFiles",
+      "Number of files dropped as their storage policy could not be satisfied"})
+  public long getStoragePolicySatisfierUnsatisfiableFiles() {
+    return storagePolicySatisfier == null ? 0 :
+        storagePolicySatisfier.getFilesUnsatisfiable();
+  }
+
   @Metric({"ExpiredHeartbeats", "Number of expired heartbeats"})
   public int getExpiredHeartbeats() {
     return datanodeStatistics.getExpiredHeartbeats();
@@ -1,4 +1,3 @@
-
 /**
  * Licensed to the Apache Software Foundation (ASF) under one
  * or more contributor license agreements.  See the NOTICE file
@@ -21,28 +20,81 @@
 
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants;
+import org.apache.hadoop.ipc.Server;
+
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
 
 /**
  * Mimics a ReentrantReadWriteLock so more sophisticated locking capabilities
  * are possible.
+ *
+ * When partitioned locking is enabled, the namespace is divided into
+ * partitions keyed by the first few components of a path, e.g. with a
+ * partition depth of 1, "/tmp/etl/a" and "/tmp/b" fall into the partition of
+ * "/tmp" while "/warehouse/t" falls into the partition of "/warehouse".
+ * Partitions are hashed onto a fixed number of striped locks. The locking
+ * protocol is:
+ * <ul>
+ *   <li>an operation confined to one partition holds the coarse lock in
+ *   shared mode plus the stripe of its partition in shared (read) or
+ *   exclusive (write) mode;</li>
+ *   <li>any other reader holds the coarse lock and all the stripes in shared
+ *   mode;</li>
+ *   <li>any other writer holds the coarse lock in exclusive mode.</li>
+ * </ul>
+ * Stripes are always acquired after the coarse lock and in ascending order,
+ * so operations on disjoint partitions proceed in parallel without
+ * deadlocking with each other or with cross-cutting operations.
+ *
+ * The time an RPC handler holds the lock is reported to the call being
+ * processed, so that cost-based RPC scheduling can account for it.
  */
 class FSNamesystemLock implements ReadWriteLock {
+  /** Returned by {@link #getPartition(String)} for unpartitioned paths. */
+  static final int NO_PARTITION = -1;
+
   @VisibleForTesting
   protected ReentrantReadWriteLock coarseLock;
-  
+
+  /** Stripes guarding namespace partitions; null if partitioning is off. */
+  private final ReentrantReadWriteLock[] partitionLocks;
+  /** The number of path components which identify a partition. */
+  private final int partitionDepth;
+  /** The partition lock held by the current thread, if any. */
+  private final ThreadLocal<PartitionHold> partitionHold;
+
   FSNamesystemLock(boolean fair) {
+    this(fair, 0, 0);
+  }
+
+  FSNamesystemLock(boolean fair, int partitionDepth, int partitionCount) {
     this.coarseLock = new ReentrantReadWriteLock(fair);
+    if (partitionDepth > 0) {
+      Preconditions.checkArgument(partitionCount > 0,
+          "Partition count must be positive, got %s", partitionCount);
+      this.partitionDepth = partitionDepth;
+      this.partitionLocks = new ReentrantReadWriteLock[partitionCount];
+      for (int i = 0; i < partitionCount; i++) {
+        partitionLocks[i] = new ReentrantReadWriteLock(fair);
+      }
+      this.partitionHold = new ThreadLocal<PartitionHold>();
+    } else {
+      this.partitionDepth = 0;
+      this.partitionLocks = null;
+      this.partitionHold = null;
+    }
   }
-  
+
   @Override
   public Lock readLock() {
     return coarseLock.readLock();
   }
-  
+
   @Override
   public Lock writeLock() {
     return coarseLock.writeLock();
@@ -51,11 +103,11 @@ public Lock writeLock() {
   public int getReadHoldCount() {
     return coarseLock.getReadHoldCount();
   }
-  
+
   public int getWriteHoldCount() {
     return coarseLock.getWriteHoldCount();
   }
-  
+
   public boolean isWriteLockedByCurrentThread() {
     return coarseLock.isWriteLockedByCurrentThread();
   }
@@ -70,4 +122,235 @@ public boolean isWriteLockedByCurrentThread() {
   public int getQueueLength() {
     return coarseLock.getQueueLength();
   }
+
+  boolean isPartitioned() {
+    return partitionLocks != null;
+  }
+
+  int getPartitionDepth() {
+    return partitionDepth;
+  }
+
+  /**
+   * Map a path to the stripe of its namespace partition.
+   *
+   * @param src an absolute path
+   * @return the stripe index, or {@link #NO_PARTITION} if partitioning is off,
+   *         the current thread already holds the coarse lock, or the path is
+   *         not confined to a single partition, i.e. it is too shallow, or it
+   *         goes through a reserved or snapshot component within the
+   *         partition key.
+   */
+  int getPartition(String src) {
+    if (partitionLocks == null || src == null || src.isEmpty()
+        || src.charAt(0) != Path.SEPARATOR_CHAR
+        || coarseLock.getReadHoldCount() > 0
+        || coarseLock.isWriteLockedByCurrentThread()) {
+      return NO_PARTITION;
+    }
+    int hash = 1;
+    int start = 1;
+    for (int i = 0; i < partitionDepth; i++) {
+      int end = src.indexOf(Path.SEPARATOR_CHAR, start);
+      if (end < 0) {
+        end = src.length();
+      }
+      final int len = end - start;
+      if (len <= 0 || isSpecialComponent(src, start, len)) {
+        return NO_PARTITION;
+      }
+      for (int j = start; j < end; j++) {
+        hash = 31 * hash + src.charAt(j);
+      }
+      hash = 31 * hash + Path.SEPARATOR_CHAR;
+      start = end + 1;
+    }
+    return (hash & Integer.MAX_VALUE) % partitionLocks.length;
+  }
+
+  private static boolean isSpecialComponent(String src, int start, int len) {
+    return matches(src, start, len, FSDirectory.DOT_RESERVED_STRING)
+        || matches(src, start, len, HdfsConstants.DOT_SNAPSHOT_DIR)
+        || matches(src, start, len, ".")
+        || matches(src, start, len, "..");
+  }
+
+  private static boolean matches(String src, int start, int len, String s) {
+    return len == s.length() && src.regionMatches(start, s, 0, len);
+  }
+
+  /**
+   * Lock a single partition: the coarse lock is taken in shared mode and the
+   * stripe of the partition in the requested mode.
+   */
+  void lockPartition(int partition, boolean exclusive) {
+    Preconditions.checkState(partitionHold.get() == null,
+        "Already holding a partition lock");
+    coarseLock.readLock().lock();
+    final ReentrantReadWriteLock stripe = partitionLocks[partition];
+    try {
+      (exclusive ? stripe.writeLock() : stripe.readLock()).lock();
+    } catch (RuntimeException e) {
+      coarseLock.readLock().unlock();
+      throw e;
+    }
+    partitionHold.set(new PartitionHold(partition, exclusive));
+    if (isOutermostSharedHold()) {
+      reportLockAcquired();
+    }
+  }
+
+  void unlockPartition(int partition, boolean exclusive) {
+    final PartitionHold hold = partitionHold.get();
+    Preconditions.checkState(hold != null && hold.partition == partition
+        && hold.exclusive == exclusive, "Not holding partition %s", partition);
+    partitionHold.remove();
+    final boolean outermost = isOutermostSharedHold();
+    final ReentrantReadWriteLock stripe = partitionLocks[partition];
+    (exclusive ? stripe.writeLock() : stripe.readLock()).unlock();
+    coarseLock.readLock().unlock();
+    if (outermost) {
+      reportLockReleased(exclusive);
+    }
+  }
+
+  /**
+   * Take the shared lock for a reader which is not confined to a partition.
+   * A thread already holding a partition lock only re-enters the coarse lock,
+   * since it must not touch other partitions anyway.
+   */
+  void lockShared() {
+    coarseLock.readLock().lock();
+    if (partitionLocks != null && partitionHold.get() == null) {
+      int locked = 0;
+      try {
+        for (; locked < partitionLocks.length; locked++) {
+          partitionLocks[locked].readLock().lock();
+        }
+      } finally {
+        if (locked < partitionLocks.length) {
+          unlockStripes(locked);
+          coarseLock.readLock().unlock();
+        }
+      }
+    }
+    if (isOutermostSharedHold()) {
+      reportLockAcquired();
+    }
+  }
+
+  void unlockShared() {
+    final boolean outermost = isOutermostSharedHold();
+    if (partitionLocks != null && partitionHold.get() == null) {
+      unlockStripes(partitionLocks.length);
+    }
+    coarseLock.readLock().unlock();
+    if (outermost) {
+      reportLockReleased(false);
+    }
+  }
+
+  private void unlockStripes(int count) {
+    for (int i = count - 1; i >= 0; i--) {
+      partitionLocks[i].readLock().unlock();
+    }
+  }
+
+  /**
+   * Take the exclusive lock for a writer which is not confined to a
+   * partition. Upgrading from a partition lock would deadlock.
+   */
+  void lockExclusive() {
+    Preconditions.checkState(partitionLocks == null
+        || partitionHold.get() == null,
+        "Cannot acquire the write lock while holding a partition lock");
+    coarseLock.writeLock().lock();
+    if (coarseLock.getWriteHoldCount() == 1) {
+      reportLockAcquired();
+    }
+  }
+
+  void lockExclusiveInterruptibly() throws InterruptedException {
+    Preconditions.checkState(partitionLocks == null
+        || partitionHold.get() == null,
+        "Cannot acquire the write lock while holding a partition lock");
+    coarseLock.writeLock().lockInterruptibly();
+    if (coarseLock.getWriteHoldCount() == 1) {
+      reportLockAcquired();
+    }
+  }
+
+  void unlockExclusive() {
+    final boolean outermost = coarseLock.getWriteHoldCount() == 1;
+    coarseLock.writeLock().unlock();
+    if (outermost) {
+      reportLockReleased(true);
+    }
+  }
+
+  /**
+   * @return true if the only hold of the current thread is a single shared
+   *         hold of the coarse lock, i.e. its hold time is not accounted by
+   *         an enclosing hold.
+   */
+  private boolean isOutermostSharedHold() {
+    return coarseLock.getReadHoldCount() == 1
+        && !coarseLock.isWriteLockedByCurrentThread();
+  }
+
+  private static void reportLockAcquired() {
+    final Server.Call call = Server.getCurCall().get();
+    if (call != null) {
+      call.lockAcquired();
+    }
+  }
+
+  private static void reportLockReleased(boolean exclusive) {
+    final Server.Call call = Server.getCurCall().get();
+    if (call != null) {
+      call.lockReleased(exclusive);
+    }
+  }
+
+  /**
+   * @return true if the current thread holds the exclusive lock of a
+   *         partition, i.e. it may modify inodes within that partition.
+   */
+  boolean hasPartitionWriteLock() {
+    if (partitionLocks == null) {
+      return false;
+    }
+    final PartitionHold hold = partitionHold.get();
+    return hold != null && hold.exclusive;
+  }
+
+  @VisibleForTesting
+  ReentrantReadWriteLock getPartitionLock(int partition) {
+    return partitionLocks[partition];
+  }
+
+  /** The partition lock held by a thread. */
+  private static class PartitionHold {
+    private final int partition;
+    private final boolean exclusive;
+
+    PartitionHold(int partition, boolean exclusive) {
+      this.partition = partition;
+      this.exclusive = exclusive;
+    }
+  }
+
+  /**
+   * Thrown by an operation holding a partition lock when it finds, after
+   * resolving its path, that it would modify inodes shared with other
+   * partitions. Nothing has been modified yet; the caller retries the
+   * operation under the coarse write lock.
+   */
+  static class PartitionEscapeException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    PartitionEscapeException(String src) {
+      super("Operation on " + src + " is not confined to a partition");
+    }
+  }
 }
@@ -428,8 +428,14 @@ public final ContentSummary computeContentSummary(BlockStoragePolicySuite bsps)
    */
   public final ContentSummary computeAndConvertContentSummary(int snapshotId,
       ContentSummaryComputationContext summary) {
-    ContentCounts counts = computeContentSummary(snapshotId, summary)
-        .getCounts();
+    return convertContentSummary(computeContentSummary(snapshotId, summary)
+        .getCounts());
+  }
+
+  /**
+   * Convert the content counts of the subtree to a {@link ContentSummary}.
+   */
+  final ContentSummary convertContentSummary(ContentCounts counts) {
     final QuotaCounts q = getQuotaCounts();
     return new ContentSummary.Builder().
         length(counts.getLength()).
@@ -197,6 +197,14 @@ DirectoryWithQuotaFeature addDirectoryWithQuotaFeature(
     return q;
   }
 
+  /**
+   * If the directory contains a {@link DirectoryWithSummaryFeature}, return
+   * it; otherwise, return null.
+   */
+  public final DirectoryWithSummaryFeature getDirectoryWithSummaryFeature() {
+    return getFeature(DirectoryWithSummaryFeature.class);
+  }
+
   int searchChildren(byte[] name) {
     return children == null? -1: Collections.binarySearch(children, name);
   }
@@ -336,6 +336,8 @@ public long getProtocolVersion(String protocol,
   private final boolean haEnabled;
   private final HAContext haContext;
   protected final boolean allowStaleStandbyReads;
+  /** Whether a standby serves the reads of clients aligned with it. */
+  protected final boolean allowConsistentStandbyReads;
   private AtomicBoolean started = new AtomicBoolean(false); 
 
   
@@ -877,6 +879,9 @@ protected NameNode(Configuration conf, NamenodeRole role)
     this.haEnabled = HAUtil.isHAEnabled(conf, nsId);
     state = createHAState(getStartupOption(conf));
     this.allowStaleStandbyReads = HAUtil.shouldAllowStandbyReads(conf);
+    this.allowConsistentStandbyReads = conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_STATE_CONTEXT_ENABLED_KEY,
+        DFSConfigKeys.DFS_NAMENODE_STATE_CONTEXT_ENABLED_DEFAULT);
     this.haContext = createHAContext();
     try {
       initializeGenericKeys(conf, nsId, namenodeId);
@@ -1853,6 +1858,12 @@ public boolean allowStaleReads() {
       return allowStaleStandbyReads;
     }
 
+    @Override
+    public boolean allowConsistentReads() {
+      // The call only runs once the namespace caught up with its client
+      return allowConsistentStandbyReads && Server.isCurCallAligned();
+    }
+
   }
   
   public boolean isStandbyState() {
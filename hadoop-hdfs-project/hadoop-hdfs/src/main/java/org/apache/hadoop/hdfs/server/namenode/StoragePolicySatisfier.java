@@ -0,0 +1,345 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfo;
+import org.apache.hadoop.hdfs.server.blockmanagement.BlockManager;
+import org.apache.hadoop.hdfs.server.namenode.snapshot.Snapshot;
+import org.apache.hadoop.hdfs.util.ReadOnlyList;
+import org.apache.hadoop.util.Daemon;
+import org.apache.hadoop.util.Time;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Moves the block replicas of files to the storage types of their storage
+ * policies, in the background of the active NameNode. The INodes whose
+ * storage policy is set, or which are passed to
+ * {@link FSNamesystem#satisfyStoragePolicy}, are queued, and directories are
+ * expanded into their children, a part per iteration. The misplaced replicas of each file are
+ * replicated to storages of the expected types by the replication commands
+ * sent with the DataNode heartbeats, see
+ * {@link BlockManager#scheduleStorageTypeMoves}. The file is then checked
+ * again after a timeout, until all its replicas are placed. A file is
+ * dropped when no storage of an expected type is available for one of its
+ * blocks, or after the maximum number of rechecks.
+ *
+ * The queue is only kept in memory: after a restart or a failover, the
+ * storage policies which were not satisfied yet have to be satisfied again.
+ */
+@InterfaceAudience.Private
+public class StoragePolicySatisfier implements Runnable {
+  public static final Log LOG =
+      LogFactory.getLog(StoragePolicySatisfier.class);
+
+  private final FSNamesystem namesystem;
+  private final long intervalMs;
+  private final int maxBlocksPerIteration;
+  private final long recheckTimeoutMs;
+  private final int maxRechecks;
+
+  // INodes to satisfy the storage policy of, in the order they were added
+  private final LinkedHashSet<Long> pending = new LinkedHashSet<>();
+  // Directories queued again to expand the rest of their children, and the
+  // name of the last child queued
+  private final Map<Long, byte[]> cursors = new HashMap<>();
+  // Files with moves scheduled, and when to check them again. The timeout
+  // is constant, so they are in the order of their checks.
+  private final LinkedHashMap<Long, Recheck> scheduled = new LinkedHashMap<>();
+
+  private final AtomicLong blockMovesScheduled = new AtomicLong();
+  private final AtomicLong filesSatisfied = new AtomicLong();
+  private final AtomicLong filesUnsatisfiable = new AtomicLong();
+  private volatile boolean shouldRun = false;
+  private Daemon thread;
+
+  StoragePolicySatisfier(FSNamesystem namesystem, Configuration conf) {
+    this.namesystem = namesystem;
+    this.intervalMs = conf.getLong(
+        DFSConfigKeys.DFS_STORAGE_POLICY_SATISFIER_INTERVAL_MS_KEY,
+        DFSConfigKeys.DFS_STORAGE_POLICY_SATISFIER_INTERVAL_MS_DEFAULT);
+    this.maxBlocksPerIteration = conf.getInt(
+        DFSConfigKeys.DFS_STORAGE_POLICY_SATISFIER_MAX_BLOCKS_PER_ITERATION_KEY,
+        DFSConfigKeys.
+            DFS_STORAGE_POLICY_SATISFIER_MAX_BLOCKS_PER_ITERATION_DEFAULT);
+    this.recheckTimeoutMs = conf.getLong(
+        DFSConfigKeys.DFS_STORAGE_POLICY_SATISFIER_RECHECK_TIMEOUT_MS_KEY,
+        DFSConfigKeys.DFS_STORAGE_POLICY_SATISFIER_RECHECK_TIMEOUT_MS_DEFAULT);
+    this.maxRechecks = conf.getInt(
+        DFSConfigKeys.DFS_STORAGE_POLICY_SATISFIER_MAX_RECHECKS_KEY,
+        DFSConfigKeys.DFS_STORAGE_POLICY_SATISFIER_MAX_RECHECKS_DEFAULT);
+  }
+
+  /**
+   * Queue a file or directory to satisfy the storage policy of.
+   */
+  synchronized void add(long inodeId) {
+    pending.add(inodeId);
+  }
+
+  /** @return the number of INodes queued */
+  synchronized int getPendingCount() {
+    return pending.size();
+  }
+
+  /** @return the number of files with moves scheduled, to check again */
+  synchronized int getScheduledFilesCount() {
+    return scheduled.size();
+  }
+
+  /** @return the number of block replicas scheduled to move */
+  long getBlockMovesScheduled() {
+    return blockMovesScheduled.get();
+  }
+
+  /** @return the number of files found with all their replicas placed */
+  long getFilesSatisfied() {
+    return filesSatisfied.get();
+  }
+
+  /**
+   * @return the number of files dropped as their storage policy could not be
+   *         satisfied
+   */
+  long getFilesUnsatisfiable() {
+    return filesUnsatisfiable.get();
+  }
+
+  /** Start satisfying the storage policies, when the NameNode is active. */
+  synchronized void start() {
+    if (thread == null) {
+      shouldRun = true;
+      thread = new Daemon(this);
+      thread.setName("StoragePolicySatisfier");
+      thread.start();
+    }
+  }
+
+  /**
+   * Stop satisfying the storage policies, forgetting the INodes queued, as
+   * the NameNode is no longer active.
+   */
+  synchronized void stop() {
+    shouldRun = false;
+    if (thread != null) {
+      thread.interrupt();
+      thread = null;
+    }
+    pending.clear();
+    cursors.clear();
+    scheduled.clear();
+  }
+
+  @Override
+  public void run() {
+    while (namesystem.isRunning() && shouldRun) {
+      try {
+        Thread.sleep(intervalMs);
+        if (namesystem.isInSafeMode()) {
+          LOG.debug("Namenode is in safemode, skipping satisfying storage"
+              + " policies.");
+          continue;
+        }
+        satisfy();
+      } catch (InterruptedException e) {
+        LOG.info("StoragePolicySatisfier was interrupted, exiting");
+        break;
+      } catch (Exception e) {
+        LOG.error("Ignoring exception in StoragePolicySatisfier:", e);
+      }
+    }
+  }
+
+  /**
+   * Check the files which are due first, then the queued INodes, up to the
+   * maximum number of blocks per iteration.
+   */
+  @VisibleForTesting
+  void satisfy() {
+    namesystem.writeLock();
+    try {
+      final long now = Time.monotonicNow();
+      int budget = maxBlocksPerIteration;
+      Map.Entry<Long, Recheck> due;
+      while (budget > 0 && (due = pollDueFile(now)) != null) {
+        budget -= satisfy(due.getKey(), due.getValue().rechecks, now, budget);
+      }
+      Long inodeId;
+      while (budget > 0 && (inodeId = pollPending()) != null) {
+        budget -= satisfy(inodeId, 0, now, budget);
+      }
+    } finally {
+      namesystem.writeUnlock();
+    }
+  }
+
+  private synchronized Map.Entry<Long, Recheck> pollDueFile(long now) {
+    Iterator<Map.Entry<Long, Recheck>> it = scheduled.entrySet().iterator();
+    if (it.hasNext()) {
+      Map.Entry<Long, Recheck> next = it.next();
+      if (next.getValue().time <= now) {
+        it.remove();
+        return next;
+      }
+    }
+    return null;
+  }
+
+  private synchronized Long pollPending() {
+    Iterator<Long> it = pending.iterator();
+    while (it.hasNext()) {
+      Long inodeId = it.next();
+      it.remove();
+      // A file with moves scheduled is checked again when it is due
+      if (!scheduled.containsKey(inodeId)) {
+        return inodeId;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Check a file again after the timeout, unless it was checked again the
+   * maximum number of times already.
+   * @param rechecks the number of times the file was checked again so far
+   */
+  private void schedule(INodeFile file, int rechecks, long now) {
+    if (rechecks >= maxRechecks) {
+      LOG.info("Giving up satisfying the storage policy of "
+          + file.getFullPathName() + " after " + rechecks + " rechecks");
+      filesUnsatisfiable.incrementAndGet();
+      return;
+    }
+    synchronized (this) {
+      scheduled.put(file.getId(),
+          new Recheck(now + recheckTimeoutMs, rechecks + 1));
+    }
+  }
+
+  /**
+   * Queue the children of a directory, at most the given number of them.
+   * If children are left, the directory is queued again to resume after the
+   * last child queued, so a large directory is expanded over iterations.
+   * @return the number of children queued, at least 1
+   */
+  private synchronized int expand(INodeDirectory dir, int max) {
+    ReadOnlyList<INode> children =
+        dir.getChildrenList(Snapshot.CURRENT_STATE_ID);
+    byte[] last = cursors.remove(dir.getId());
+    int start = last == null ? 0 : INodeDirectory.nextChild(children, last);
+    int end = Math.min(children.size(), start + max);
+    for (int i = start; i < end; i++) {
+      pending.add(children.get(i).getId());
+    }
+    if (end < children.size()) {
+      cursors.put(dir.getId(), children.get(end - 1).getLocalNameBytes());
+      pending.add(dir.getId());
+    }
+    return Math.max(1, end - start);
+  }
+
+  /**
+   * Schedule the moves of the blocks of a file, or queue the children of a
+   * directory.
+   * @param rechecks the number of times the file was checked again so far
+   * @param budget the number of blocks or children left to examine in this
+   *               iteration
+   * @return the number of blocks or children examined, at least 1
+   */
+  private int satisfy(long inodeId, int rechecks, long now, int budget) {
+    INode inode = namesystem.getFSDirectory().getInode(inodeId);
+    if (inode == null) {
+      // Deleted
+      synchronized (this) {
+        cursors.remove(inodeId);
+      }
+      return 1;
+    }
+    if (inode.isDirectory()) {
+      return expand(inode.asDirectory(), budget);
+    }
+    if (!inode.isFile()) {
+      return 1;
+    }
+
+    INodeFile file = inode.asFile();
+    if (file.isStriped()) {
+      LOG.debug("Skipping striped file " + file.getFullPathName());
+      return 1;
+    }
+    if (file.isUnderConstruction()) {
+      // Satisfied once closed
+      schedule(file, rechecks, now);
+      return 1;
+    }
+
+    BlockManager blockManager = namesystem.getBlockManager();
+    BlockInfo[] blocks = file.getBlocks();
+    boolean satisfied = true;
+    boolean unsatisfiable = false;
+    int moves = 0;
+    for (BlockInfo block : blocks) {
+      int n = blockManager.scheduleStorageTypeMoves(block);
+      if (n != 0) {
+        satisfied = false;
+        unsatisfiable |= n < 0;
+        moves += Math.max(0, n);
+      }
+    }
+    blockMovesScheduled.addAndGet(moves);
+    if (satisfied) {
+      filesSatisfied.incrementAndGet();
+    } else if (unsatisfiable) {
+      // Checking again would not help until storages are added
+      LOG.info("No storage of the expected types is available for the"
+          + " blocks of " + file.getFullPathName() + ", giving up satisfying"
+          + " its storage policy");
+      filesUnsatisfiable.incrementAndGet();
+    } else {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Scheduled " + moves + " block moves for "
+            + file.getFullPathName());
+      }
+      schedule(file, rechecks, now);
+    }
+    return Math.max(1, blocks.length);
+  }
+
+  /** When to check a file again, and how many times it was checked. */
+  private static class Recheck {
+    private final long time;
+    private final int rechecks;
+
+    Recheck(long time, int rechecks) {
+      this.time = time;
+      this.rechecks = rechecks;
+    }
+  }
+}
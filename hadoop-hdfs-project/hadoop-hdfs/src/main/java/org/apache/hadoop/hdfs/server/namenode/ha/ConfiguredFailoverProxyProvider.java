@@ -146,16 +146,29 @@ public Class<T> getInterface() {
   @Override
   public synchronized ProxyInfo<T> getProxy() {
     AddressRpcProxyPair<T> current = proxies.get(currentProxyIndex);
-    if (current.namenode == null) {
+    return new ProxyInfo<T>(createProxyIfNeeded(current),
+        current.address.toString());
+  }
+
+  /**
+   * Lazily initialize the RPC proxy object to a NameNode.
+   */
+  protected synchronized T createProxyIfNeeded(AddressRpcProxyPair<T> pair) {
+    if (pair.namenode == null) {
       try {
-        current.namenode = factory.createProxy(conf,
-            current.address, xface, ugi, false, getFallbackToSimpleAuth());
+        pair.namenode = factory.createProxy(conf,
+            pair.address, xface, ugi, false, getFallbackToSimpleAuth());
       } catch (IOException e) {
         LOG.error("Failed to create RPC proxy to NameNode", e);
         throw new RuntimeException(e);
       }
     }
-    return new ProxyInfo<T>(current.namenode, current.address.toString());
+    return pair.namenode;
+  }
+
+  /** @return the index of the NameNode calls are currently sent to */
+  protected synchronized int getCurrentProxyIndex() {
+    return currentProxyIndex;
   }
 
   @Override
@@ -171,7 +184,7 @@ synchronized void incrementProxyIndex() {
    * A little pair object to store the address and connected RPC proxy object to
    * an NN. Note that {@link AddressRpcProxyPair#namenode} may be null.
    */
-  private static class AddressRpcProxyPair<T> {
+  protected static class AddressRpcProxyPair<T> {
     public final InetSocketAddress address;
     public T namenode;
     
@@ -27,6 +27,7 @@
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
@@ -107,6 +108,14 @@ public class EditLogTailer {
    */
   private final long sleepTimeMs;
 
+  /**
+   * Whether the Standby should also read the in-progress segment, and the
+   * maximum number of transactions it may then read at once. The Standby
+   * does not wait for the next period after reading as many.
+   */
+  private final boolean inProgressOk;
+  private final int maxTxnsPerRead;
+
   private final int nnCount;
   private NamenodeProtocol cachedActiveProxy = null;
   // count of the number of NNs we have attempted in the current lookup loop
@@ -151,8 +160,17 @@ public EditLogTailer(FSNamesystem namesystem, Configuration conf) {
           DFSConfigKeys.DFS_HA_LOGROLL_PERIOD_KEY + " is negative.");
     }
     
-    sleepTimeMs = conf.getInt(DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_KEY,
-        DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_DEFAULT) * 1000;
+    // A plain number is in seconds, but a sub-second period can be given
+    // with a unit, e.g. 100ms, to tail in-progress edits with a short lag.
+    sleepTimeMs = conf.getTimeDuration(DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_KEY,
+        DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_DEFAULT, TimeUnit.SECONDS,
+        TimeUnit.MILLISECONDS);
+
+    inProgressOk = conf.getBoolean(
+        DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_KEY,
+        DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_DEFAULT);
+    maxTxnsPerRead = conf.getInt(DFSConfigKeys.DFS_QJOURNAL_RPC_MAX_TXNS_KEY,
+        DFSConfigKeys.DFS_QJOURNAL_RPC_MAX_TXNS_DEFAULT);
 
     maxRetries = conf.getInt(DFSConfigKeys.DFS_HA_TAILEDITS_ALL_NAMESNODES_RETRY_KEY,
       DFSConfigKeys.DFS_HA_TAILEDITS_ALL_NAMESNODES_RETRY_DEFAULT);
@@ -210,7 +228,9 @@ public Void run() throws Exception {
         try {
           // It is already under the full name system lock and the checkpointer
           // thread is already stopped. No need to acqure any other lock.
-          doTailEdits();
+          // Edits may be read in bounded chunks, so read until the end.
+          while (doTailEdits() > 0) {
+          }
         } catch (InterruptedException e) {
           throw new IOException(e);
         }
@@ -219,8 +239,11 @@ public Void run() throws Exception {
     });
   }
   
+  /**
+   * @return the number of edits loaded
+   */
   @VisibleForTesting
-  void doTailEdits() throws IOException, InterruptedException {
+  long doTailEdits() throws IOException, InterruptedException {
     // Write lock needs to be interruptible here because the 
     // transitionToActive RPC takes the write lock before calling
     // tailer.stop() -- so if we're not interruptible, it will
@@ -236,14 +259,15 @@ void doTailEdits() throws IOException, InterruptedException {
       }
       Collection<EditLogInputStream> streams;
       try {
-        streams = editLog.selectInputStreams(lastTxnId + 1, 0, null, false);
+        streams = editLog.selectInputStreams(lastTxnId + 1, 0, null,
+            inProgressOk);
       } catch (IOException ioe) {
         // This is acceptable. If we try to tail edits in the middle of an edits
         // log roll, i.e. the last one has been finalized but the new inprogress
         // edits file hasn't been started yet.
         LOG.warn("Edits tailer failed to find any streams. Will try again " +
             "later.", ioe);
-        return;
+        return 0;
       }
       if (LOG.isDebugEnabled()) {
         LOG.debug("edit streams to load from: " + streams.size());
@@ -269,6 +293,7 @@ void doTailEdits() throws IOException, InterruptedException {
         lastLoadTimeMs = monotonicNow();
       }
       lastLoadedTxnId = image.getLastAppliedTxId();
+      return editsLoaded;
     } finally {
       namesystem.writeUnlock();
     }
@@ -367,11 +392,16 @@ private void doWork() {
           // name system lock will be acquired to further block even the block
           // state updates.
           namesystem.cpLockInterruptibly();
+          long editsLoaded;
           try {
-            doTailEdits();
+            editsLoaded = doTailEdits();
           } finally {
             namesystem.cpUnlock();
           }
+          if (inProgressOk && editsLoaded >= maxTxnsPerRead) {
+            // Still behind, read the next edits right away
+            continue;
+          }
         } catch (EditLogInputException elie) {
           LOG.warn("Error while reading edits from disk. Will try again.", elie);
         } catch (InterruptedException ie) {
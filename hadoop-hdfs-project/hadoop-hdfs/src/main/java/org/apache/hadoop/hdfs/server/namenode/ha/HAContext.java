@@ -83,4 +83,10 @@ public interface HAContext {
    * while the namespace is not up to date)
    */
   boolean allowStaleReads();
+
+  /**
+   * @return true if the node should allow the current read, because its
+   * namespace has caught up with the state the client has already seen
+   */
+  boolean allowConsistentReads();
 }
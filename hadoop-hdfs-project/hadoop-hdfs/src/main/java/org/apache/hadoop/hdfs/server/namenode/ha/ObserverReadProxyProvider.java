@@ -0,0 +1,171 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode.ha;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.ClientGSIContext;
+import org.apache.hadoop.hdfs.NameNodeProxiesClient;
+import org.apache.hadoop.hdfs.protocol.ClientProtocol;
+import org.apache.hadoop.ipc.RemoteException;
+import org.apache.hadoop.ipc.RetriableException;
+import org.apache.hadoop.ipc.StandbyException;
+import org.apache.hadoop.security.UserGroupInformation;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * A failover proxy provider which sends the {@link ReadOnly} calls of the
+ * {@link ClientProtocol} to the standby NameNodes, and the other calls to the
+ * active NameNode like {@link ConfiguredFailoverProxyProvider}.
+ *
+ * The proxies to all the NameNodes share a {@link ClientGSIContext}, so a
+ * standby only answers once it has caught up with the last transaction the
+ * client has seen, see dfs.namenode.state.context.enabled. A read falls back
+ * to the next NameNode, and eventually to the active one, if a standby does
+ * not serve reads, cannot catch up in time or cannot be reached.
+ */
+public class ObserverReadProxyProvider<T extends ClientProtocol>
+    extends ConfiguredFailoverProxyProvider<T> {
+  private static final Log LOG =
+      LogFactory.getLog(ObserverReadProxyProvider.class);
+
+  /** Creates proxies aligned through the context of the provider. */
+  private static class AlignedProxyFactory<T> implements ProxyFactory<T> {
+    private final ClientGSIContext alignmentContext;
+
+    AlignedProxyFactory(ClientGSIContext alignmentContext) {
+      this.alignmentContext = alignmentContext;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T createProxy(Configuration conf, InetSocketAddress nnAddr,
+        Class<T> xface, UserGroupInformation ugi, boolean withRetries,
+        AtomicBoolean fallbackToSimpleAuth) throws IOException {
+      return (T) NameNodeProxiesClient.createNonHAProxyWithClientProtocol(
+          nnAddr, conf, ugi, withRetries, fallbackToSimpleAuth,
+          alignmentContext);
+    }
+  }
+
+  private final ClientGSIContext alignmentContext;
+  /** Spreads the reads over the standby NameNodes. */
+  private final AtomicInteger nextReader = new AtomicInteger();
+
+  public ObserverReadProxyProvider(Configuration conf, URI uri,
+      Class<T> xface) {
+    this(conf, uri, xface, new ClientGSIContext());
+  }
+
+  private ObserverReadProxyProvider(Configuration conf, URI uri,
+      Class<T> xface, ClientGSIContext alignmentContext) {
+    super(conf, uri, xface, new AlignedProxyFactory<T>(alignmentContext));
+    this.alignmentContext = alignmentContext;
+  }
+
+  @VisibleForTesting
+  ClientGSIContext getAlignmentContext() {
+    return alignmentContext;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public synchronized ProxyInfo<T> getProxy() {
+    final ProxyInfo<T> current = super.getProxy();
+    if (proxies.size() < 2) {
+      return current;
+    }
+    final T proxy = (T) Proxy.newProxyInstance(xface.getClassLoader(),
+        new Class<?>[] {xface},
+        new ReadInvocationHandler(current.proxy, getCurrentProxyIndex()));
+    return new ProxyInfo<T>(proxy, current.proxyInfo);
+  }
+
+  /**
+   * @return whether a read which failed with the given exception on a
+   *         standby should be retried on another NameNode.
+   */
+  private static boolean shouldRetryElsewhere(Throwable t) {
+    if (t instanceof RemoteException) {
+      final String className = ((RemoteException) t).getClassName();
+      return StandbyException.class.getName().equals(className)
+          || RetriableException.class.getName().equals(className);
+    }
+    // the NameNode cannot be reached
+    return t instanceof IOException;
+  }
+
+  /**
+   * Sends the reads to the standby NameNodes, in turn, and the other calls
+   * to the current NameNode.
+   */
+  private class ReadInvocationHandler implements InvocationHandler {
+    private final T currentProxy;
+    private final int currentIndex;
+
+    ReadInvocationHandler(T currentProxy, int currentIndex) {
+      this.currentProxy = currentProxy;
+      this.currentIndex = currentIndex;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args)
+        throws Throwable {
+      if (method.isAnnotationPresent(ReadOnly.class)) {
+        final int numProxies = proxies.size();
+        final int start = nextReader.getAndIncrement() & Integer.MAX_VALUE;
+        for (int i = 0; i < numProxies; i++) {
+          final int index = (start + i) % numProxies;
+          if (index == currentIndex) {
+            continue;
+          }
+          final AddressRpcProxyPair<T> reader = proxies.get(index);
+          try {
+            return method.invoke(createProxyIfNeeded(reader), args);
+          } catch (InvocationTargetException e) {
+            final Throwable cause = e.getCause();
+            if (!shouldRetryElsewhere(cause)) {
+              throw cause;
+            }
+            if (LOG.isDebugEnabled()) {
+              LOG.debug("Failed to read from NameNode at " + reader.address
+                  + ", trying another NameNode: " + cause);
+            }
+          }
+        }
+      }
+      try {
+        return method.invoke(currentProxy, args);
+      } catch (InvocationTargetException e) {
+        throw e.getCause();
+      }
+    }
+  }
+}
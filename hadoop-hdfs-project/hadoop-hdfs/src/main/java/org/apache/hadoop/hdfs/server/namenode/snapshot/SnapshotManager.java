@@ -232,7 +232,13 @@ public String createSnapshot(final INodesInPath iip, String snapshotRoot,
   public void deleteSnapshot(final INodesInPath iip, final String snapshotName,
       INode.ReclaimContext reclaimContext) throws IOException {
     INodeDirectory srcRoot = getSnapshottableRoot(iip);
-    srcRoot.removeSnapshot(reclaimContext, snapshotName);
+    // The snapshot may have been the only one to hold deleted files
+    fsdir.updateContentSummariesForSubtree(srcRoot, false);
+    try {
+      srcRoot.removeSnapshot(reclaimContext, snapshotName);
+    } finally {
+      fsdir.updateContentSummariesForSubtree(srcRoot, true);
+    }
     numSnapshots.getAndDecrement();
   }
 
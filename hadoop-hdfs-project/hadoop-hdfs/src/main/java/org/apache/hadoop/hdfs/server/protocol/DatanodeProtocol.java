@@ -105,6 +105,12 @@ public DatanodeRegistration registerDatanode(DatanodeRegistration registration
    * @param volumeFailureSummary info about volume failures
    * @param requestFullBlockReportLease whether to request a full block
    *                                    report lease.
+   * @param slowPeers Details of peer DataNodes that were detected as being
+   *                  slow to respond to packet writes. Empty report if no
+   *                  slow peers were detected by the DataNode.
+   * @param slowDisks Details of volumes that were detected as being slow
+   *                  to flush and sync. Empty report if no slow volumes
+   *                  were detected by the DataNode.
    * @throws IOException on error
    */
   @Idempotent
@@ -116,7 +122,9 @@ public HeartbeatResponse sendHeartbeat(DatanodeRegistration registration,
                                        int xceiverCount,
                                        int failedVolumes,
                                        VolumeFailureSummary volumeFailureSummary,
-                                       boolean requestFullBlockReportLease)
+                                       boolean requestFullBlockReportLease,
+                                       SlowPeerReports slowPeers,
+                                       SlowDiskReports slowDisks)
       throws IOException;
 
   /**
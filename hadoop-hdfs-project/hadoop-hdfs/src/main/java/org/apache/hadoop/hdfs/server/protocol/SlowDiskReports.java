@@ -0,0 +1,66 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.protocol;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * The volumes a DataNode found to be slow, reported to the NameNode in
+ * heartbeats. A volume is slow if its average flush or sync latency is an
+ * outlier among the volumes of the DataNode.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+public final class SlowDiskReports {
+  public static final SlowDiskReports EMPTY_REPORT =
+      new SlowDiskReports(Collections.<String, Double>emptyMap());
+
+  /**
+   * Maps the storage ID of each slow volume to its average latency in
+   * milliseconds.
+   */
+  private final Map<String, Double> slowDisks;
+
+  private SlowDiskReports(Map<String, Double> slowDisks) {
+    this.slowDisks = slowDisks;
+  }
+
+  public static SlowDiskReports create(Map<String, Double> slowDisks) {
+    if (slowDisks == null || slowDisks.isEmpty()) {
+      return EMPTY_REPORT;
+    }
+    return new SlowDiskReports(slowDisks);
+  }
+
+  public Map<String, Double> getSlowDisks() {
+    return slowDisks;
+  }
+
+  public boolean haveSlowDisks() {
+    return !slowDisks.isEmpty();
+  }
+
+  @Override
+  public String toString() {
+    return "SlowDiskReports" + slowDisks;
+  }
+}
@@ -0,0 +1,66 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.protocol;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * The peers a DataNode found to be slow, reported to the NameNode in
+ * heartbeats. A peer is slow if its average packet ack latency is an outlier
+ * among the peers the DataNode has recently written to.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+public final class SlowPeerReports {
+  public static final SlowPeerReports EMPTY_REPORT =
+      new SlowPeerReports(Collections.<String, Double>emptyMap());
+
+  /**
+   * Maps the DatanodeUuid of each slow peer to its average ack latency in
+   * milliseconds.
+   */
+  private final Map<String, Double> slowPeers;
+
+  private SlowPeerReports(Map<String, Double> slowPeers) {
+    this.slowPeers = slowPeers;
+  }
+
+  public static SlowPeerReports create(Map<String, Double> slowPeers) {
+    if (slowPeers == null || slowPeers.isEmpty()) {
+      return EMPTY_REPORT;
+    }
+    return new SlowPeerReports(slowPeers);
+  }
+
+  public Map<String, Double> getSlowPeers() {
+    return slowPeers;
+  }
+
+  public boolean haveSlowPeers() {
+    return !slowPeers.isEmpty();
+  }
+
+  @Override
+  public String toString() {
+    return "SlowPeerReports" + slowPeers;
+  }
+}
@@ -0,0 +1,235 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.PartialListing;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.protocol.BatchedDirectoryListing;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.security.AccessControlException;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test listing many directories with
+ * {@link DistributedFileSystem#batchedListStatusIterator(List)}.
+ */
+public class TestBatchedListDirectories {
+  private static final int LS_LIMIT = 5;
+  private static final int BATCHED_LS_LIMIT = 3;
+  private static final int NUM_DIRS = 10;
+  private static final int MAX_FILES_PER_DIR = 12;
+
+  private static MiniDFSCluster cluster;
+  private static DistributedFileSystem dfs;
+  private static final List<Path> dirs = new ArrayList<>();
+
+  private static Path getDir(int i) {
+    return new Path("/dir" + i);
+  }
+
+  private static Path getFile(int i, int j) {
+    return new Path(getDir(i), "file" + j);
+  }
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_LIST_LIMIT, LS_LIMIT);
+    conf.setInt(DFSConfigKeys.DFS_BATCHED_LIST_LIMIT, BATCHED_LS_LIMIT);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    cluster.waitActive();
+    dfs = cluster.getFileSystem();
+
+    // Directories of 0 to MAX_FILES_PER_DIR files, so that some of them
+    // span several batches.
+    for (int i = 0; i < NUM_DIRS; i++) {
+      Path dir = getDir(i);
+      dfs.mkdirs(dir);
+      dirs.add(dir);
+      int numFiles = (i * 5) % (MAX_FILES_PER_DIR + 1);
+      for (int j = 0; j < numFiles; j++) {
+        DFSTestUtil.createFile(dfs, getFile(i, j), 1, (short) 1, 0L);
+      }
+    }
+  }
+
+  @AfterClass
+  public static void afterClass() {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  /**
+   * Collect the listings returned for each path, checking that the paths
+   * come back in the order they were requested.
+   */
+  private static Map<Path, List<FileStatus>> getListings(List<Path> paths)
+      throws IOException {
+    Map<Path, List<FileStatus>> listings = new LinkedHashMap<>();
+    RemoteIterator<PartialListing<FileStatus>> it =
+        dfs.batchedListStatusIterator(paths);
+    while (it.hasNext()) {
+      PartialListing<FileStatus> listing = it.next();
+      Path p = listing.getListedPath();
+      List<FileStatus> statuses = listings.get(p);
+      if (statuses == null) {
+        statuses = new ArrayList<>();
+        listings.put(p, statuses);
+      }
+      statuses.addAll(listing.get());
+    }
+    assertEquals(paths, new ArrayList<>(listings.keySet()));
+    return listings;
+  }
+
+  private static List<FileStatus> listStatus(Path p) throws IOException {
+    return Arrays.asList(dfs.listStatus(p));
+  }
+
+  @Test
+  public void testEmptyPathList() throws Exception {
+    RemoteIterator<PartialListing<FileStatus>> it =
+        dfs.batchedListStatusIterator(Collections.<Path>emptyList());
+    assertFalse(it.hasNext());
+  }
+
+  @Test
+  public void testListManyDirectories() throws Exception {
+    Map<Path, List<FileStatus>> listings = getListings(dirs);
+    for (Path dir : dirs) {
+      assertEquals(listStatus(dir), listings.get(dir));
+    }
+  }
+
+  @Test
+  public void testListFile() throws Exception {
+    Path file = getFile(1, 0);
+    List<Path> paths = Arrays.asList(getDir(0), file, getDir(1));
+    Map<Path, List<FileStatus>> listings = getListings(paths);
+    assertEquals(1, listings.get(file).size());
+    assertEquals(dfs.getFileStatus(file), listings.get(file).get(0));
+    assertEquals(listStatus(getDir(1)), listings.get(getDir(1)));
+  }
+
+  @Test
+  public void testListMissingPath() throws Exception {
+    Path missing = new Path("/missing");
+    List<Path> paths = Arrays.asList(getDir(2), missing, getDir(3));
+    RemoteIterator<PartialListing<FileStatus>> it =
+        dfs.batchedListStatusIterator(paths);
+    int numMissing = 0;
+    List<FileStatus> listed = new ArrayList<>();
+    while (it.hasNext()) {
+      PartialListing<FileStatus> listing = it.next();
+      if (listing.getListedPath().equals(missing)) {
+        numMissing++;
+        try {
+          listing.get();
+          fail("Listing a missing path should fail");
+        } catch (FileNotFoundException e) {
+          // expected
+        }
+      } else {
+        listed.addAll(listing.get());
+      }
+    }
+    assertEquals(1, numMissing);
+    List<FileStatus> expected = new ArrayList<>(listStatus(getDir(2)));
+    expected.addAll(listStatus(getDir(3)));
+    assertEquals(expected, listed);
+  }
+
+  @Test
+  public void testListNoPermission() throws Exception {
+    final Path denied = new Path("/denied");
+    dfs.mkdirs(denied);
+    dfs.setPermission(denied, new FsPermission((short) 0700));
+    UserGroupInformation user = UserGroupInformation.createUserForTesting(
+        "user", new String[] {"group"});
+    user.doAs(new PrivilegedExceptionAction<Void>() {
+      @Override
+      public Void run() throws Exception {
+        FileSystem fs = FileSystem.newInstance(dfs.getUri(),
+            dfs.getConf());
+        try {
+          RemoteIterator<PartialListing<FileStatus>> it =
+              fs.batchedListStatusIterator(Arrays.asList(denied, getDir(4)));
+          assertTrue(it.hasNext());
+          PartialListing<FileStatus> listing = it.next();
+          assertEquals(denied, listing.getListedPath());
+          try {
+            listing.get();
+            fail("Listing a directory without permission should fail");
+          } catch (AccessControlException e) {
+            // expected
+          }
+          assertTrue(it.hasNext());
+          assertEquals(getDir(4), it.next().getListedPath());
+        } finally {
+          fs.close();
+        }
+        return null;
+      }
+    });
+  }
+
+  @Test
+  public void testBatchLimits() throws Exception {
+    String[] srcs = new String[dirs.size()];
+    for (int i = 0; i < srcs.length; i++) {
+      srcs[i] = dirs.get(i).toString();
+    }
+    int numCalls = 0;
+    byte[] startAfter = HdfsFileStatus.EMPTY_NAME;
+    BatchedDirectoryListing batch;
+    do {
+      batch = dfs.getClient().batchedListPaths(srcs, startAfter, false);
+      numCalls++;
+      assertTrue(batch.getListings().length <= BATCHED_LS_LIMIT);
+      startAfter = batch.getStartAfter();
+    } while (batch.hasMore());
+    // Large directories are split across calls
+    assertTrue(numCalls > (NUM_DIRS + BATCHED_LS_LIMIT - 1)
+        / BATCHED_LS_LIMIT);
+  }
+}
@@ -0,0 +1,182 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Supplier;
+
+/**
+ * Test the metadata cache of {@link DFSClient}.
+ */
+public class TestDFSMetadataCache {
+  private static final int BLOCKSIZE = 1024;
+  private static final long SEED = 0L;
+  private static final Path DIR = new Path("/warehouse");
+  private static final Path FILE = new Path(DIR, "table/part-0");
+  private static final Path OUTSIDE = new Path("/outside");
+
+  private Configuration conf;
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem dfs;
+  /** Another client, which changes the files behind the cache. */
+  private DistributedFileSystem other;
+
+  @Before
+  public void setUp() throws Exception {
+    conf = new Configuration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCKSIZE);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    cluster.waitActive();
+    other = cluster.getFileSystem();
+    DFSTestUtil.createFile(other, FILE, BLOCKSIZE * 3, (short) 1, SEED);
+    DFSTestUtil.createFile(other, OUTSIDE, BLOCKSIZE, (short) 1, SEED);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (dfs != null) {
+      dfs.close();
+    }
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  private DistributedFileSystem newCachingFileSystem(Configuration conf)
+      throws Exception {
+    conf.set(HdfsClientConfigKeys.MetadataCache.PATHS_KEY, DIR + "/");
+    return (DistributedFileSystem) FileSystem.newInstance(
+        cluster.getURI(), conf);
+  }
+
+  @Test(timeout=60000)
+  public void testHitsAndInvalidation() throws Exception {
+    dfs = newCachingFileSystem(new Configuration(conf));
+    final DFSClient client = dfs.getClient();
+    final DFSMetadataCacheMetrics metrics = client.getMetadataCacheMetrics();
+    assertNull(other.getClient().getMetadataCacheMetrics());
+
+    assertEquals(BLOCKSIZE * 3, dfs.getFileStatus(FILE).getLen());
+    assertEquals(BLOCKSIZE * 3, dfs.getFileStatus(FILE).getLen());
+    assertEquals(1, metrics.getMetadataCacheMisses());
+    assertEquals(1, metrics.getMetadataCacheHits());
+    // Paths outside the cached directories are not counted
+    dfs.getFileStatus(OUTSIDE);
+    assertEquals(1, metrics.getMetadataCacheMisses());
+
+    // The block locations are served from the cache on the second open
+    DFSTestUtil.readFile(dfs, FILE);
+    DFSTestUtil.readFile(dfs, FILE);
+    assertEquals(2, metrics.getMetadataCacheMisses());
+    assertEquals(2, metrics.getMetadataCacheHits());
+
+    // A change by another client is not seen until the cache is invalidated
+    other.delete(FILE, false);
+    assertNotNull(client.getFileInfo(FILE.toString()));
+    client.invalidateMetadataCache(DIR.toString());
+    assertNull(client.getFileInfo(FILE.toString()));
+
+    // Changes by the client itself are seen at once
+    DFSTestUtil.createFile(dfs, FILE, BLOCKSIZE, (short) 1, SEED);
+    assertEquals(BLOCKSIZE, dfs.getFileStatus(FILE).getLen());
+    FSDataOutputStream out = dfs.append(FILE);
+    out.write(new byte[10]);
+    out.close();
+    assertEquals(BLOCKSIZE + 10, dfs.getFileStatus(FILE).getLen());
+    dfs.rename(FILE, new Path(DIR, "renamed"));
+    assertFalse(dfs.exists(FILE));
+  }
+
+  @Test(timeout=60000)
+  public void testFileBeingWritten() throws Exception {
+    dfs = newCachingFileSystem(new Configuration(conf));
+    final DFSClient client = dfs.getClient();
+    final Path file = new Path(DIR, "being-written");
+    FSDataOutputStream out = other.create(file, (short) 1);
+    out.write(new byte[BLOCKSIZE + 10]);
+    out.hflush();
+    DFSTestUtil.readFile(dfs, file);
+    DFSTestUtil.readFile(dfs, file);
+    // The locations of a file being written are never cached
+    assertEquals(0, client.getMetadataCacheMetrics().getMetadataCacheHits());
+    out.close();
+  }
+
+  @Test(timeout=60000)
+  public void testInotifyInvalidation() throws Exception {
+    Configuration clientConf = new Configuration(conf);
+    clientConf.setBoolean(
+        HdfsClientConfigKeys.MetadataCache.INOTIFY_ENABLED_KEY, true);
+    dfs = newCachingFileSystem(clientConf);
+    final DFSClient client = dfs.getClient();
+    assertNotNull(client.getFileInfo(FILE.toString()));
+
+    other.delete(new Path(DIR, "table"), true);
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        try {
+          return client.getFileInfo(FILE.toString()) == null;
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      }
+    }, 100, 30000);
+
+    DFSTestUtil.createFile(other, FILE, BLOCKSIZE * 2, (short) 1, SEED);
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        try {
+          HdfsFileStatus status = client.getFileInfo(FILE.toString());
+          return status != null && status.getLen() == BLOCKSIZE * 2;
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      }
+    }, 100, 30000);
+  }
+
+  @Test(timeout=60000)
+  public void testExpiry() throws Exception {
+    Configuration clientConf = new Configuration(conf);
+    clientConf.setLong(HdfsClientConfigKeys.MetadataCache.EXPIRY_MS_KEY, 500);
+    dfs = newCachingFileSystem(clientConf);
+    final DFSClient client = dfs.getClient();
+    assertNotNull(client.getFileInfo(FILE.toString()));
+    other.delete(FILE, false);
+    assertNotNull(client.getFileInfo(FILE.toString()));
+    Thread.sleep(1000);
+    assertNull(client.getFileInfo(FILE.toString()));
+  }
+}
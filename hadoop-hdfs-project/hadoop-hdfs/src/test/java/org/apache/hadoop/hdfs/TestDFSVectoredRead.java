@@ -0,0 +1,141 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileRange;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test the vectored reads of {@link DFSInputStream}.
+ */
+public class TestDFSVectoredRead {
+  private static final int BLOCKSIZE = 4096;
+  private static final int FILE_SIZE = BLOCKSIZE * 10 + 100;
+  private static final long SEED = 0xDEADBEEFL;
+  private static final Path FILE = new Path("/vectored");
+
+  private static MiniDFSCluster cluster;
+  private static DistributedFileSystem dfs;
+  private static byte[] expected;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    Configuration conf = new Configuration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCKSIZE);
+    conf.setInt(DFSConfigKeys.DFS_BYTES_PER_CHECKSUM_KEY, 512);
+    conf.setInt(HdfsClientConfigKeys.VectoredRead.MIN_SEEK_KEY, 1024);
+    conf.setInt(HdfsClientConfigKeys.VectoredRead.MAX_MERGED_SIZE_KEY,
+        BLOCKSIZE * 2);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(3).build();
+    cluster.waitActive();
+    dfs = cluster.getFileSystem();
+    DFSTestUtil.createFile(dfs, FILE, FILE_SIZE, (short) 3, SEED);
+    expected = DFSTestUtil.readFileAsBytes(dfs, FILE);
+    assertEquals(FILE_SIZE, expected.length);
+  }
+
+  @AfterClass
+  public static void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  private static void verifyRange(FileRange range) throws Exception {
+    ByteBuffer data = range.getData().get();
+    assertEquals(range.getLength(), data.remaining());
+    byte[] bytes = new byte[range.getLength()];
+    data.get(bytes);
+    int offset = (int) range.getOffset();
+    assertArrayEquals(Arrays.copyOfRange(expected, offset,
+        offset + range.getLength()), bytes);
+  }
+
+  @Test(timeout=60000)
+  public void testReadRanges() throws Exception {
+    List<FileRange> ranges = new ArrayList<>();
+    // Small ranges to be merged, within and across blocks
+    for (int offset = 0; offset < FILE_SIZE - 100; offset += 700) {
+      ranges.add(new FileRange(offset, 100));
+    }
+    // Overlapping and large ranges
+    ranges.add(new FileRange(BLOCKSIZE - 50, 100));
+    ranges.add(new FileRange(BLOCKSIZE * 3, BLOCKSIZE * 3 + 10));
+    ranges.add(new FileRange(0, FILE_SIZE));
+    ranges.add(new FileRange(FILE_SIZE - 1, 1));
+    ranges.add(new FileRange(BLOCKSIZE * 5, 0));
+
+    try (FSDataInputStream in = dfs.open(FILE)) {
+      in.seek(123);
+      in.readVectored(ranges);
+      for (FileRange range : ranges) {
+        verifyRange(range);
+      }
+      // The position of the stream does not move
+      assertEquals(123, in.getPos());
+    }
+  }
+
+  @Test(timeout=60000)
+  public void testReadPastEnd() throws Exception {
+    FileRange good = new FileRange(FILE_SIZE - 500, 100);
+    FileRange bad = new FileRange(FILE_SIZE - 100, 200);
+    try (FSDataInputStream in = dfs.open(FILE)) {
+      in.readVectored(Arrays.asList(good, bad));
+      verifyRange(good);
+      try {
+        bad.getData().get();
+        fail("Expected the read past the end of the file to fail");
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof EOFException);
+      }
+    }
+  }
+
+  @Test(timeout=60000)
+  public void testClosedStream() throws Exception {
+    FSDataInputStream in = dfs.open(FILE);
+    in.close();
+    try {
+      in.readVectored(Arrays.asList(new FileRange(0, 10)));
+      fail("Expected the read of a closed stream to fail");
+    } catch (IOException e) {
+      GenericTestUtils.assertExceptionContains("Stream closed", e);
+    }
+  }
+}
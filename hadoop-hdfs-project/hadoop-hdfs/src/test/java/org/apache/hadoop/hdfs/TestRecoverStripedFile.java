@@ -82,13 +82,18 @@ public void setup() throws IOException {
     conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, blockSize);
     conf.setInt(DFSConfigKeys.DFS_DATANODE_STRIPED_READ_BUFFER_SIZE_KEY, cellSize - 1);
     conf.setInt(DFSConfigKeys.DFS_NAMENODE_REPLICATION_INTERVAL_KEY, 1);
-    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(dnNum).build();;
+    startCluster();
+  }
+
+  private void startCluster() throws IOException {
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(dnNum).build();
     cluster.waitActive();
     
     fs = cluster.getFileSystem();
     fs.getClient().setErasureCodingPolicy("/", null);
 
     List<DataNode> datanodes = cluster.getDataNodes();
+    dnMap.clear();
     for (int i = 0; i < dnNum; i++) {
       dnMap.put(datanodes.get(i).getDatanodeId(), i);
     }
@@ -173,6 +178,29 @@ public void testRecoverAnyBlocks1() throws Exception {
     assertFileBlocksRecovery("/testRecoverAnyBlocks1", fileLen, 2, 3);
   }
   
+  @Test(timeout = 120000)
+  public void testRecoverWithoutPipelining() throws Exception {
+    tearDown();
+    conf.setInt(
+        DFSConfigKeys.DFS_DATANODE_STRIPED_BLK_RECOVERY_PIPELINE_DEPTH_KEY, 0);
+    startCluster();
+    int fileLen = 10 * blockSize + blockSize/10;
+    assertFileBlocksRecovery("/testRecoverWithoutPipelining", fileLen, 2, 3);
+  }
+
+  @Test(timeout = 120000)
+  public void testRecoverThrottled() throws Exception {
+    tearDown();
+    conf.setInt(
+        DFSConfigKeys.DFS_DATANODE_STRIPED_BLK_RECOVERY_PIPELINE_DEPTH_KEY, 1);
+    conf.setLong(
+        DFSConfigKeys.DFS_DATANODE_STRIPED_BLK_RECOVERY_BANDWIDTHPERSEC_KEY,
+        1024 * 1024);
+    startCluster();
+    int fileLen = 10 * blockSize + blockSize/10;
+    assertFileBlocksRecovery("/testRecoverThrottled", fileLen, 2, 2);
+  }
+
   /**
    * Test the file blocks recovery.
    * 1. Check the replica is recovered in the target datanode, 
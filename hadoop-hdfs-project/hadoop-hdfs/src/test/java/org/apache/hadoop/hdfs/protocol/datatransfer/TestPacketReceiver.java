@@ -20,10 +20,14 @@
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 
+import org.apache.hadoop.fs.FileUtil;
 import org.apache.hadoop.hdfs.AppendTestUtil;
+import org.apache.hadoop.test.PathUtils;
 import org.junit.Test;
 import org.mockito.Mockito;
 
@@ -106,4 +110,62 @@ private void doTestReceiveAndMirror(PacketReceiver pr,
 
     assertArrayEquals(packet, mirrored.toByteArray());
   }
+
+  @Test
+  public void testReceiveDataOnDisk() throws IOException {
+    final byte[] DATA = AppendTestUtil.initBuffer(100);
+    final byte[] CHECKSUMS = AppendTestUtil.initBuffer(10);
+    final long checksumPos = 7;
+    final int dataRingSize = 128;
+    final int checksumRingSize = 16;
+
+    // The writer stored the data and checksums in ring buffers, where both
+    // wrap around, and only sends the header
+    final File dir = PathUtils.getTestDir(TestPacketReceiver.class);
+    final RandomAccessFile dataFile =
+        new RandomAccessFile(new File(dir, "data"), "rw");
+    final RandomAccessFile checksumFile =
+        new RandomAccessFile(new File(dir, "checksums"), "rw");
+    try {
+      writeRing(dataFile, dataRingSize, OFFSET_IN_BLOCK, DATA);
+      writeRing(checksumFile, checksumRingSize, checksumPos, CHECKSUMS);
+
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      new PacketHeader(Ints.BYTES, OFFSET_IN_BLOCK, SEQNO, false,
+          DATA.length, false, true).write(new DataOutputStream(baos));
+
+      PacketReceiver pr = new PacketReceiver(false);
+      pr.receiveNextPacket(new ByteArrayInputStream(baos.toByteArray()));
+      assertTrue(pr.getHeader().isDataOnDisk());
+      assertEquals(0, pr.getDataSlice().remaining());
+
+      pr.readDataOnDisk(checksumFile.getChannel(), checksumPos,
+          CHECKSUMS.length, dataFile.getChannel(), OFFSET_IN_BLOCK);
+      assertFalse(pr.getHeader().isDataOnDisk());
+      assertArrayEquals(DATA, remainingAsArray(pr.getDataSlice()));
+      assertArrayEquals(CHECKSUMS, remainingAsArray(pr.getChecksumSlice()));
+
+      // The packet is mirrored as a regular one
+      ByteArrayOutputStream mirrored = new ByteArrayOutputStream();
+      pr.mirrorPacketTo(new DataOutputStream(mirrored));
+      assertArrayEquals(prepareFakePacket(DATA, CHECKSUMS),
+          mirrored.toByteArray());
+      pr.close();
+    } finally {
+      dataFile.close();
+      checksumFile.close();
+      FileUtil.fullyDelete(dir);
+    }
+  }
+
+  private static void writeRing(RandomAccessFile file, int size,
+      long position, byte[] bytes) throws IOException {
+    file.setLength(size);
+    final int start = (int) (position % size);
+    final int firstLen = Math.min(bytes.length, size - start);
+    file.seek(start);
+    file.write(bytes, 0, firstLen);
+    file.seek(0);
+    file.write(bytes, firstLen, bytes.length - firstLen);
+  }
 }
@@ -43,8 +43,10 @@
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.CommonConfigurationKeysPublic;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.qjournal.MiniJournalCluster;
 import org.apache.hadoop.hdfs.qjournal.QJMTestUtil;
+import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournaledEditsResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.SegmentStateProto;
 import org.apache.hadoop.hdfs.qjournal.server.JournalFaultInjector;
 import org.apache.hadoop.hdfs.server.namenode.EditLogInputStream;
@@ -65,6 +67,7 @@
 import org.mockito.stubbing.Stubber;
 
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.MoreExecutors;
 
 /**
@@ -204,6 +207,59 @@ public void testReaderWhileAnotherWrites() throws Exception {
       streams.clear();
     }
   }
+
+  @Test
+  public void testSelectInProgressInputStreamsOverRpc() throws Exception {
+    // Restart the cluster with in-progress tailing, so that the
+    // JournalNodes cache the edits
+    cluster.shutdown();
+    conf.setBoolean(DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_KEY, true);
+    cluster = new MiniJournalCluster.Builder(conf).build();
+    qjm = createSpyingQJM();
+    qjm.format(QJMTestUtil.FAKE_NSINFO);
+    qjm.recoverUnfinalizedSegments();
+
+    writeSegment(cluster, qjm, 1, 3, true);
+    EditLogOutputStream stm = writeSegment(cluster, qjm, 4, 5, false);
+    waitForAllPendingCalls(qjm.getLoggerSetForTests());
+
+    QuorumJournalManager readerQjm = createSpyingQJM();
+    List<AsyncLogger> readers =
+        readerQjm.getLoggerSetForTests().getLoggersForTests();
+    List<EditLogInputStream> streams = Lists.newArrayList();
+    try {
+      // The edits are served from the cache, across the segment boundary
+      readerQjm.selectInputStreams(streams, 1, true);
+      assertEquals(1, streams.size());
+      assertTrue(streams.get(0).getName().startsWith("RPC edits"));
+      assertEquals(8, streams.get(0).getLastTxId());
+      verifyEdits(streams, 1, 8);
+      IOUtils.cleanup(LOG, streams.toArray(new Closeable[0]));
+      streams.clear();
+
+      // Not starting at a batch: read the segments instead
+      readerQjm.selectInputStreams(streams, 5, true);
+      assertFalse(streams.get(0).getName().startsWith("RPC edits"));
+      verifyEdits(streams, 5, 8);
+      IOUtils.cleanup(LOG, streams.toArray(new Closeable[0]));
+      streams.clear();
+
+      // Edits held by a single JournalNode are not read
+      GetJournaledEditsResponseProto noEdits =
+          GetJournaledEditsResponseProto.newBuilder().setTxnCount(0).build();
+      Mockito.doReturn(Futures.immediateFuture(noEdits))
+          .when(readers.get(0))
+          .getJournaledEdits(Mockito.eq(4L), Mockito.anyInt());
+      Mockito.doReturn(Futures.immediateFuture(noEdits))
+          .when(readers.get(1))
+          .getJournaledEdits(Mockito.eq(4L), Mockito.anyInt());
+      readerQjm.selectInputStreams(streams, 4, true);
+      assertEquals(0, streams.size());
+    } finally {
+      IOUtils.cleanup(LOG, streams.toArray(new Closeable[0]));
+      IOUtils.cleanup(LOG, stm);
+    }
+  }
   
   /**
    * Regression test for HDFS-3725. One of the journal nodes is down
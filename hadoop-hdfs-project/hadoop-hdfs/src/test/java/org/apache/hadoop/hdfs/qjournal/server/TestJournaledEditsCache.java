@@ -0,0 +1,151 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.qjournal.server;
+
+import static org.apache.hadoop.hdfs.qjournal.QJMTestUtil.createTxnData;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.hdfs.qjournal.server.JournaledEditsCache.CacheMissException;
+import org.apache.hadoop.hdfs.server.namenode.EditLogFileInputStream;
+import org.apache.hadoop.hdfs.server.namenode.EditLogInputStream;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp;
+import org.apache.hadoop.hdfs.server.namenode.NameNodeLayoutVersion;
+import org.junit.Test;
+
+import com.google.protobuf.ByteString;
+
+public class TestJournaledEditsCache {
+  private static final int LAYOUT_VERSION =
+      NameNodeLayoutVersion.CURRENT_LAYOUT_VERSION;
+
+  private final List<byte[]> buffers = new ArrayList<byte[]>();
+
+  private static void storeTxns(JournaledEditsCache cache, int firstTxId,
+      int numTxns) throws Exception {
+    cache.storeEdits(createTxnData(firstTxId, numTxns), firstTxId,
+        firstTxId + numTxns - 1, LAYOUT_VERSION);
+  }
+
+  private void assertMiss(JournaledEditsCache cache, long sinceTxId) {
+    try {
+      cache.retrieveEdits(sinceTxId, Integer.MAX_VALUE, buffers);
+      fail("Expected a cache miss for txid " + sinceTxId);
+    } catch (CacheMissException e) {
+      assertTrue(buffers.isEmpty());
+    }
+  }
+
+  /**
+   * Read back the edits which were retrieved from the cache.
+   */
+  private void verifyEdits(long firstTxId, long lastTxId) throws Exception {
+    ByteString data = ByteString.EMPTY;
+    for (byte[] buffer : buffers) {
+      data = data.concat(ByteString.copyFrom(buffer));
+    }
+    buffers.clear();
+    EditLogInputStream in = EditLogFileInputStream.fromByteString(data,
+        "test", firstTxId, lastTxId, true);
+    try {
+      for (long txId = firstTxId; txId <= lastTxId; txId++) {
+        FSEditLogOp op = in.readOp();
+        assertEquals(txId, op.getTransactionId());
+      }
+      assertNull(in.readOp());
+    } finally {
+      in.close();
+    }
+  }
+
+  @Test
+  public void testRetrieveBatches() throws Exception {
+    JournaledEditsCache cache = new JournaledEditsCache(1024 * 1024);
+    assertMiss(cache, 1);
+
+    storeTxns(cache, 1, 3);
+    storeTxns(cache, 4, 5);
+    storeTxns(cache, 9, 2);
+
+    assertEquals(10, cache.retrieveEdits(1, Integer.MAX_VALUE, buffers));
+    verifyEdits(1, 10);
+    assertEquals(7, cache.retrieveEdits(4, Integer.MAX_VALUE, buffers));
+    verifyEdits(4, 10);
+    // Nothing new yet
+    assertEquals(0, cache.retrieveEdits(11, Integer.MAX_VALUE, buffers));
+    assertTrue(buffers.isEmpty());
+    // Batches are never split
+    assertMiss(cache, 5);
+    assertEquals(3, cache.retrieveEdits(1, 7, buffers));
+    verifyEdits(1, 3);
+    assertEquals(8, cache.retrieveEdits(1, 8, buffers));
+    verifyEdits(1, 8);
+    assertEquals(3, cache.retrieveEdits(1, 1, buffers));
+    verifyEdits(1, 3);
+  }
+
+  @Test
+  public void testEviction() throws Exception {
+    // Txids 11-50 all have two digits, so these batches have the same size
+    int batchSize = createTxnData(11, 10).length;
+    JournaledEditsCache cache = new JournaledEditsCache(batchSize * 3);
+    for (int txId = 1; txId <= 50; txId += 10) {
+      storeTxns(cache, txId, 10);
+    }
+    assertTrue(cache.getSize() <= batchSize * 3);
+    assertMiss(cache, 1);
+    assertMiss(cache, 11);
+    assertEquals(30, cache.retrieveEdits(21, Integer.MAX_VALUE, buffers));
+    verifyEdits(21, 50);
+
+    // A batch larger than the cache leaves nothing to serve until the next
+    storeTxns(cache, 51, 40);
+    assertMiss(cache, 21);
+    assertMiss(cache, 51);
+    assertEquals(0, cache.retrieveEdits(91, Integer.MAX_VALUE, buffers));
+    storeTxns(cache, 91, 5);
+    assertEquals(5, cache.retrieveEdits(91, Integer.MAX_VALUE, buffers));
+    verifyEdits(91, 95);
+  }
+
+  @Test
+  public void testDiscontinuity() throws Exception {
+    JournaledEditsCache cache = new JournaledEditsCache(1024 * 1024);
+    storeTxns(cache, 1, 10);
+    // A gap in the transactions clears the cache
+    storeTxns(cache, 21, 10);
+    assertMiss(cache, 1);
+    assertEquals(10, cache.retrieveEdits(21, Integer.MAX_VALUE, buffers));
+    verifyEdits(21, 30);
+
+    // So does a change of layout version
+    cache.storeEdits(createTxnData(31, 5), 31, 35, LAYOUT_VERSION - 1);
+    assertMiss(cache, 21);
+    assertEquals(5, cache.retrieveEdits(31, Integer.MAX_VALUE, buffers));
+    buffers.clear();
+
+    cache.clear();
+    assertMiss(cache, 31);
+    assertEquals(0, cache.getSize());
+  }
+}
@@ -0,0 +1,206 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import static org.apache.hadoop.test.MetricsAsserts.getLongCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.server.datanode.DataNode;
+import org.apache.hadoop.hdfs.server.datanode.DataNodeTestUtils;
+import org.apache.hadoop.hdfs.server.namenode.FSNamesystem;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.Test;
+
+import com.google.common.base.Supplier;
+
+/**
+ * Test processing block reports in the block report processing thread, see
+ * {@link DFSConfigKeys#DFS_NAMENODE_BLOCKREPORT_QUEUE_ENABLED_KEY}.
+ */
+public class TestBlockReportQueue {
+  private static final String NN_METRICS = "NameNodeActivity";
+  private static final short REPLICATION = 3;
+
+  private static Configuration newConf() {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_QUEUE_ENABLED_KEY,
+        true);
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_QUEUE_SIZE_KEY, 4);
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, 1024);
+    return conf;
+  }
+
+  @Test(timeout = 120000)
+  public void testQueuedReports() throws Exception {
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(newConf())
+        .numDataNodes(REPLICATION).build();
+    try {
+      cluster.waitActive();
+      final DistributedFileSystem fs = cluster.getFileSystem();
+      final FSNamesystem fsn = cluster.getNamesystem();
+      final BlockManager bm = fsn.getBlockManager();
+
+      final int numFiles = 20;
+      for (int i = 0; i < numFiles; i++) {
+        Path file = new Path("/file" + i);
+        DFSTestUtil.createFile(fs, file, 4096, REPLICATION, i);
+        DFSTestUtil.waitReplication(fs, file, REPLICATION);
+      }
+      assertEquals(numFiles * 4, fsn.getBlocksTotal());
+
+      // full block reports go through the queue as well
+      for (DataNode dn : cluster.getDataNodes()) {
+        DataNodeTestUtils.triggerBlockReport(dn);
+      }
+      bm.flushBlockOps();
+      assertEquals(0, bm.getUnderReplicatedBlocksCount());
+      assertEquals(0, bm.getMissingBlocksCount());
+      assertTrue(getLongCounter("BlockOpsBatched", getMetrics(NN_METRICS)) > 0);
+
+      // deleted blocks are reported incrementally
+      for (int i = 0; i < numFiles; i += 2) {
+        fs.delete(new Path("/file" + i), false);
+      }
+      for (DataNode dn : cluster.getDataNodes()) {
+        DataNodeTestUtils.triggerDeletionReport(dn);
+      }
+      bm.flushBlockOps();
+      assertEquals(numFiles * 2, fsn.getBlocksTotal());
+      DFSTestUtil.readFile(fs, new Path("/file1"));
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testBlockOpExceptions() throws Exception {
+    final MiniDFSCluster cluster = new MiniDFSCluster.Builder(newConf())
+        .numDataNodes(0).build();
+    try {
+      cluster.waitActive();
+      final BlockManager bm = cluster.getNamesystem().getBlockManager();
+
+      // the exceptions of waited for actions are thrown to the caller
+      try {
+        bm.runBlockOp(new Callable<Void>() {
+          @Override
+          public Void call() throws IOException {
+            throw new IOException("injected");
+          }
+        });
+        fail("Expected IOException is not thrown");
+      } catch (IOException e) {
+        assertEquals("injected", e.getMessage());
+      }
+
+      // the exceptions of queued actions do not stop the processing thread
+      bm.enqueueBlockOp(new Callable<Void>() {
+        @Override
+        public Void call() throws IOException {
+          throw new IOException("injected");
+        }
+      });
+      final boolean[] ran = new boolean[1];
+      bm.runBlockOp(new Callable<Void>() {
+        @Override
+        public Void call() {
+          ran[0] = cluster.getNamesystem().hasWriteLock();
+          return null;
+        }
+      });
+      assertTrue(ran[0]);
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
+  /**
+   * A handler waiting for room in a full queue must not be left waiting for
+   * an action queued after the processing stopped.
+   */
+  @Test(timeout = 60000)
+  public void testStopWithWaitingHandler() throws Exception {
+    final MiniDFSCluster cluster = new MiniDFSCluster.Builder(newConf())
+        .numDataNodes(0).build();
+    try {
+      cluster.waitActive();
+      final FSNamesystem fsn = cluster.getNamesystem();
+      final BlockManager bm = fsn.getBlockManager();
+      final Callable<Void> noop = new Callable<Void>() {
+        @Override
+        public Void call() {
+          return null;
+        }
+      };
+
+      // block the processing thread on the lock and fill the queue
+      fsn.writeLock();
+      try {
+        for (int i = 0; i < 5; i++) {
+          bm.enqueueBlockOp(noop);
+        }
+        final AtomicReference<Throwable> thrown =
+            new AtomicReference<Throwable>();
+        final Thread handler = new Thread() {
+          @Override
+          public void run() {
+            try {
+              bm.runBlockOp(noop);
+            } catch (Throwable t) {
+              thrown.set(t);
+            }
+          }
+        };
+        handler.start();
+        GenericTestUtils.waitFor(new Supplier<Boolean>() {
+          @Override
+          public Boolean get() {
+            return handler.getState() == Thread.State.TIMED_WAITING;
+          }
+        }, 10, 10000);
+
+        bm.stopBlockOps();
+        fsn.writeUnlock();
+        handler.join(10000);
+        assertTrue("The handler is still waiting", !handler.isAlive());
+        assertTrue("Unexpected " + thrown.get(),
+            thrown.get() instanceof IOException);
+      } finally {
+        if (fsn.hasWriteLock()) {
+          fsn.writeUnlock();
+        }
+      }
+    } finally {
+      cluster.shutdown();
+    }
+  }
+}
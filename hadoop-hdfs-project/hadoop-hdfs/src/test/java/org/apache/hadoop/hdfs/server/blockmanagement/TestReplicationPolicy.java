@@ -30,6 +30,7 @@
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -57,6 +58,8 @@
 import org.apache.hadoop.hdfs.server.datanode.DataNodeTestUtils;
 import org.apache.hadoop.hdfs.server.namenode.Namesystem;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage;
+import org.apache.hadoop.hdfs.server.protocol.SlowDiskReports;
+import org.apache.hadoop.hdfs.server.protocol.SlowPeerReports;
 import org.apache.hadoop.net.Node;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
@@ -570,6 +573,70 @@ public void testChooseTargetWithStaleNodes() throws Exception {
       .getDatanodeManager().getHeartbeatManager().heartbeatCheck();
   }
 
+  @Test
+  public void testChooseTargetWithSlowNodes() throws Exception {
+    // dataNodes[2] reports dataNodes[0] as a slow peer
+    dnManager.getSlowNodeTracker().addReports(dataNodes[2].getDatanodeUuid(),
+        SlowPeerReports.create(Collections.singletonMap(
+            dataNodes[0].getDatanodeUuid(), 100.0)),
+        SlowDiskReports.EMPTY_REPORT);
+    assertTrue(dnManager.shouldAvoidSlowDataNodesForWrite());
+    DatanodeStorageInfo[] targets;
+    // We set the datanode[0] as slow, thus should choose datanode[1] since
+    // datanode[1] is on the same rack with datanode[0] (writer)
+    targets = chooseTarget(1);
+    assertEquals(targets.length, 1);
+    assertEquals(storages[1], targets[0]);
+
+    // Every other node is reported as slow for its disks, so the slow nodes
+    // are still chosen rather than failing the write.
+    for (int i = 1; i < dataNodes.length; i++) {
+      dnManager.getSlowNodeTracker().addReports(dataNodes[i].getDatanodeUuid(),
+          SlowPeerReports.EMPTY_REPORT,
+          SlowDiskReports.create(Collections.singletonMap(
+              storages[i].getStorageID(), 100.0)));
+    }
+    targets = chooseTarget(3);
+    assertEquals(targets.length, 3);
+    assertEquals(storages[0], targets[0]);
+  }
+
+  /**
+   * A datanode with one slow volume still receives writes on its other
+   * volumes.
+   */
+  @Test
+  public void testChooseTargetWithSlowStorage() throws Exception {
+    updateHeartbeatForExtraStorage(
+        2* HdfsServerConstants.MIN_BLOCKS_FOR_WRITE*BLOCK_SIZE, 0L,
+        2* HdfsServerConstants.MIN_BLOCKS_FOR_WRITE*BLOCK_SIZE, 0L);
+    final DatanodeStorageInfo extraStorage =
+        dataNodes[5].getStorageInfos()[1];
+    dnManager.getSlowNodeTracker().addReports(dataNodes[5].getDatanodeUuid(),
+        SlowPeerReports.EMPTY_REPORT,
+        SlowDiskReports.create(Collections.singletonMap(
+            storages[5].getStorageID(), 100.0)));
+    assertTrue(dnManager.shouldAvoidSlowDataNodesForWrite());
+
+    DatanodeStorageInfo[] targets;
+    targets = chooseTarget(1, dataNodes[5],
+        new ArrayList<DatanodeStorageInfo>(), null);
+    assertEquals(1, targets.length);
+    assertEquals(extraStorage, targets[0]);
+
+    // Once all its volumes are slow, the datanode is avoided
+    dnManager.getSlowNodeTracker().addReports(dataNodes[5].getDatanodeUuid(),
+        SlowPeerReports.EMPTY_REPORT,
+        SlowDiskReports.create(Collections.singletonMap(
+            extraStorage.getStorageID(), 100.0)));
+    targets = chooseTarget(1, dataNodes[5],
+        new ArrayList<DatanodeStorageInfo>(), null);
+    assertEquals(1, targets.length);
+    assertEquals(storages[4], targets[0]);
+
+    resetHeartbeatForStorages();
+  }
+
   /**
    * In this testcase, we set 3 nodes (dataNodes[0] ~ dataNodes[2]) as stale,
    * and when the number of replicas is less or equal to 3, all the healthy
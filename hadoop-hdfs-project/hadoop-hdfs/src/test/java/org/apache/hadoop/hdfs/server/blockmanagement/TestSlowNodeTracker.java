@@ -0,0 +1,110 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.server.protocol.SlowDiskReports;
+import org.apache.hadoop.hdfs.server.protocol.SlowPeerReports;
+import org.apache.hadoop.util.FakeTimer;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Tests for {@link SlowNodeTracker}.
+ */
+public class TestSlowNodeTracker {
+  private static final long REPORT_INTERVAL_MS = 1000;
+
+  private FakeTimer timer;
+  private SlowNodeTracker tracker;
+
+  @Before
+  public void setup() {
+    Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_DATANODE_OUTLIERS_REPORT_INTERVAL_MS_KEY,
+        REPORT_INTERVAL_MS);
+    timer = new FakeTimer();
+    tracker = new SlowNodeTracker(conf, timer);
+  }
+
+  @Test
+  public void testEmptyReports() {
+    tracker.addReports("dn1", SlowPeerReports.EMPTY_REPORT,
+        SlowDiskReports.EMPTY_REPORT);
+    assertFalse(tracker.haveSlowNodes());
+    assertFalse(tracker.haveSlowStorages());
+    assertFalse(tracker.isSlowNode("dn1"));
+    assertTrue(tracker.getSlowNodes().isEmpty());
+    assertTrue(tracker.getSlowStorages().isEmpty());
+  }
+
+  @Test
+  public void testSlowPeerAndSlowDiskReports() {
+    tracker.addReports("dn1",
+        SlowPeerReports.create(Collections.singletonMap("dn2", 100.0)),
+        SlowDiskReports.EMPTY_REPORT);
+    tracker.addReports("dn3", SlowPeerReports.EMPTY_REPORT,
+        SlowDiskReports.create(Collections.singletonMap("DS-1", 200.0)));
+
+    assertTrue(tracker.haveSlowNodes());
+    assertTrue(tracker.haveSlowStorages());
+    // The reported peer is slow, not the reporter.
+    assertFalse(tracker.isSlowNode("dn1"));
+    assertTrue(tracker.isSlowNode("dn2"));
+    // Only the slow disk of a node is slow, not the node.
+    assertFalse(tracker.isSlowNode("dn3"));
+    assertTrue(tracker.isSlowStorage("DS-1"));
+    assertFalse(tracker.isSlowStorage("DS-2"));
+    assertEquals(ImmutableSet.of("dn2"), tracker.getSlowNodes());
+    assertEquals(ImmutableSet.of("DS-1"), tracker.getSlowStorages());
+  }
+
+  @Test
+  public void testReportsExpire() {
+    tracker.addReports("dn1",
+        SlowPeerReports.create(Collections.singletonMap("dn2", 100.0)),
+        SlowDiskReports.create(Collections.singletonMap("DS-1", 200.0)));
+    timer.advance(REPORT_INTERVAL_MS);
+
+    // A second reporter refreshes the slow peer report for dn2.
+    tracker.addReports("dn3",
+        SlowPeerReports.create(Collections.singletonMap("dn2", 100.0)),
+        SlowDiskReports.EMPTY_REPORT);
+    timer.advance(REPORT_INTERVAL_MS * 2);
+
+    // dn1's reports have expired, dn3's report has not.
+    assertFalse(tracker.isSlowStorage("DS-1"));
+    assertTrue(tracker.isSlowNode("dn2"));
+
+    timer.advance(REPORT_INTERVAL_MS);
+    assertFalse(tracker.isSlowNode("dn2"));
+    assertTrue(tracker.getSlowNodes().isEmpty());
+    assertFalse(tracker.haveSlowNodes());
+    assertFalse(tracker.haveSlowStorages());
+  }
+}
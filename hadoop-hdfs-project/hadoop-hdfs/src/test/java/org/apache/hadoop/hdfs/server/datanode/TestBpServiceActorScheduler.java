@@ -50,6 +50,7 @@ public class TestBpServiceActorScheduler {
 
   private static final long HEARTBEAT_INTERVAL_MS = 5000;      // 5 seconds
   private static final long BLOCK_REPORT_INTERVAL_MS = 10000;  // 10 seconds
+  private static final long OUTLIERS_REPORT_INTERVAL_MS = 10000; // 10 seconds
   private final Random random = new Random(System.nanoTime());
 
   @Test
@@ -166,12 +167,27 @@ public void testScheduleDelayedHeartbeat() {
     }
   }
 
+  @Test
+  public void testOutliersReportScheduling() {
+    for (final long now : getTimestamps()) {
+      Scheduler scheduler = makeMockScheduler(now);
+      assertTrue(scheduler.isOutliersReportDue(now));
+      scheduler.scheduleNextOutliersReport();
+      assertFalse(scheduler.isOutliersReportDue(now));
+      assertFalse(scheduler.isOutliersReportDue(now + 1));
+      assertTrue(scheduler.isOutliersReportDue(
+          now + OUTLIERS_REPORT_INTERVAL_MS));
+    }
+  }
+
   private Scheduler makeMockScheduler(long now) {
     LOG.info("Using now = " + now);
-    Scheduler mockScheduler = spy(new Scheduler(HEARTBEAT_INTERVAL_MS, BLOCK_REPORT_INTERVAL_MS));
+    Scheduler mockScheduler = spy(new Scheduler(HEARTBEAT_INTERVAL_MS,
+        BLOCK_REPORT_INTERVAL_MS, OUTLIERS_REPORT_INTERVAL_MS));
     doReturn(now).when(mockScheduler).monotonicNow();
     mockScheduler.nextBlockReportTime = now;
     mockScheduler.nextHeartbeatTime = now;
+    mockScheduler.nextOutliersReportTime = now;
     return mockScheduler;
   }
 
@@ -0,0 +1,172 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.DFS_CLIENT_CONTEXT;
+import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.DFS_CLIENT_SOCKET_CACHE_EXPIRY_MSEC_KEY;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.ClientContext;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.net.Peer;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Supplier;
+
+/**
+ * Test the DataXceiverServer in the event-driven mode, where the connections
+ * waiting for their next operation do not hold a thread.
+ */
+public class TestDataXceiverEventDriven {
+  private static final int BLOCKSIZE = 4096;
+  private static final int KEEPALIVE_TIMEOUT = 5000;
+
+  private final Configuration conf = new HdfsConfiguration();
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+
+  @Before
+  public void setUp() throws Exception {
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCKSIZE);
+    conf.setBoolean(
+        DFSConfigKeys.DFS_DATANODE_TRANSFER_SERVER_EVENT_DRIVEN_KEY, true);
+    conf.setInt(
+        DFSConfigKeys.DFS_DATANODE_TRANSFER_SERVER_WORKER_THREADS_KEY, 4);
+    conf.setInt(DFSConfigKeys.DFS_DATANODE_SOCKET_REUSE_KEEPALIVE_KEY,
+        KEEPALIVE_TIMEOUT);
+    // Keep the sockets on the client long after the DataNode closes them
+    conf.setLong(DFS_CLIENT_SOCKET_CACHE_EXPIRY_MSEC_KEY, 60000L);
+    conf.set(DFS_CLIENT_CONTEXT, "TestDataXceiverEventDriven");
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(3).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  @Test(timeout=60000)
+  public void testReadWrite() throws Exception {
+    final Path file = new Path("/file");
+    final int length = BLOCKSIZE * 5 + 123;
+    DFSTestUtil.createFile(fs, file, length, (short) 3, 0L);
+    final byte[] expected = DFSTestUtil.readFileBuffer(fs, file);
+    assertEquals(length, expected.length);
+
+    // Positional reads reuse the cached connections, whose next operations
+    // are dispatched by the selector
+    final FSDataInputStream in = fs.open(file);
+    try {
+      for (int i = 0; i < 20; i++) {
+        final int offset = (i * 1237) % (length - 100);
+        final byte[] buf = new byte[100];
+        in.readFully(offset, buf);
+        for (int j = 0; j < buf.length; j++) {
+          assertEquals(expected[offset + j], buf[j]);
+        }
+      }
+    } finally {
+      in.close();
+    }
+
+    // Many files written and read concurrently
+    final Thread[] threads = new Thread[8];
+    final Throwable[] errors = new Throwable[threads.length];
+    for (int i = 0; i < threads.length; i++) {
+      final int index = i;
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            Path p = new Path("/concurrent" + index);
+            DFSTestUtil.createFile(fs, p, BLOCKSIZE * 2 + index, (short) 2,
+                index);
+            for (int j = 0; j < 3; j++) {
+              assertArrayEquals(DFSTestUtil.readFileBuffer(fs, p),
+                  DFSTestUtil.readFileBuffer(fs, p));
+            }
+          } catch (Throwable t) {
+            errors[index] = t;
+          }
+        }
+      };
+      threads[i].start();
+    }
+    for (int i = 0; i < threads.length; i++) {
+      threads[i].join();
+      if (errors[i] != null) {
+        throw new AssertionError(errors[i]);
+      }
+    }
+  }
+
+  @Test(timeout=60000)
+  public void testIdleConnections() throws Exception {
+    final Path file = new Path("/file");
+    DFSTestUtil.createFile(fs, file, 1L, (short) 1, 0L);
+    final DataNode dn = getDataNode(file);
+    DFSTestUtil.readFile(fs, file);
+
+    // The connection kept alive for the client does not hold a thread; the
+    // only one left is the DataXceiverServer itself
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        return dn.getXceiverCount() == 1;
+      }
+    }, 100, KEEPALIVE_TIMEOUT / 2);
+
+    // The DataNode closes the connection after the keepalive timeout
+    Thread.sleep(KEEPALIVE_TIMEOUT + 1500);
+    final Peer peer = ClientContext.getFromConf(conf).getPeerCache()
+        .get(dn.getDatanodeId(), false);
+    assertNotNull(peer);
+    assertEquals(-1, peer.getInputStream().read());
+    peer.close();
+
+    // The client recovers from the closed connections
+    DFSTestUtil.readFile(fs, file);
+  }
+
+  /** @return the DataNode holding the first block of a file */
+  private DataNode getDataNode(Path file) throws Exception {
+    final String name = fs.getFileBlockLocations(file, 0, 1)[0].getNames()[0];
+    for (DataNode dn : cluster.getDataNodes()) {
+      if (name.equals(dn.getDatanodeId().getXferAddr())) {
+        return dn;
+      }
+    }
+    throw new AssertionError("No DataNode at " + name);
+  }
+}
@@ -0,0 +1,88 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.util.Daemon;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test that the {@link DataXceiverSelector} closes the connections it cannot
+ * hand to the workers.
+ */
+public class TestDataXceiverSelector {
+  /** Workers which are always busy. */
+  private static final Executor BUSY = new Executor() {
+    @Override
+    public void execute(Runnable command) {
+      throw new RejectedExecutionException();
+    }
+  };
+
+  private DataXceiverSelector selector;
+  private ServerSocketChannel server;
+  private SocketChannel client;
+  private SocketChannel accepted;
+
+  @Before
+  public void setUp() throws Exception {
+    selector = new DataXceiverSelector(BUSY);
+    new Daemon(selector).start();
+    server = ServerSocketChannel.open();
+    server.socket().bind(new InetSocketAddress("localhost", 0));
+    client = SocketChannel.open(server.socket().getLocalSocketAddress());
+    accepted = server.accept();
+  }
+
+  @After
+  public void tearDown() {
+    selector.stop();
+    IOUtils.cleanup(null, client, accepted, server);
+  }
+
+  @Test(timeout=30000)
+  public void testCloseWhenBusy() throws Exception {
+    final DataXceiver xceiver = mock(DataXceiver.class);
+    assertTrue(selector.watch(xceiver, accepted, 60000));
+    // The next operation arrives while all the workers are busy
+    client.write(ByteBuffer.wrap(new byte[] { 1 }));
+    verify(xceiver, timeout(10000)).closeIdle();
+  }
+
+  @Test(timeout=30000)
+  public void testCloseWhenRegistrationFails() throws Exception {
+    final DataXceiver xceiver = mock(DataXceiver.class);
+    accepted.close();
+    assertTrue(selector.watch(xceiver, accepted, 60000));
+    verify(xceiver, timeout(10000)).closeIdle();
+  }
+}
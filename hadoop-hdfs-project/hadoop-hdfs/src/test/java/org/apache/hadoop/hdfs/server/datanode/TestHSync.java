@@ -31,6 +31,7 @@
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.hdfs.AppendTestUtil;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.DistributedFileSystem;
 import org.apache.hadoop.hdfs.HdfsConfiguration;
 import org.apache.hadoop.hdfs.MiniDFSCluster;
@@ -116,6 +117,55 @@ private void testHSyncOperation(boolean testWithAppend) throws IOException {
     cluster.shutdown();
   }
 
+  /**
+   * Test hsync with back-to-back hsyncs coalesced on the datanode. A force
+   * covers the hsyncs which follow it without new data.
+   */
+  @Test
+  public void testHSyncWithGroupCommit() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_DATANODE_SYNC_GROUP_COMMIT_KEY, true);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf).build();
+    final DistributedFileSystem fs = cluster.getFileSystem();
+
+    final Path p = new Path("/testHSyncWithGroupCommit/foo");
+    final int len = 1 << 16;
+    FSDataOutputStream out = fs.create(p, FsPermission.getDefault(),
+        EnumSet.of(CreateFlag.CREATE, CreateFlag.OVERWRITE, CreateFlag.SYNC_BLOCK),
+        4096, (short) 1, len, null);
+    out.hsync();
+    // hsync on empty file does nothing
+    checkSyncMetric(cluster, 0);
+    out.write(1);
+    out.hsync();
+    checkSyncMetric(cluster, 1);
+    // the data is on disk already
+    out.hsync();
+    checkSyncMetric(cluster, 1);
+    out.write(1);
+    out.hflush();
+    checkSyncMetric(cluster, 1);
+    // the flushed data is synced with the hsync
+    out.hsync();
+    checkSyncMetric(cluster, 2);
+    out.close();
+    // the last packet is covered by the previous sync
+    checkSyncMetric(cluster, 2);
+
+    // same with a file created with out SYNC_BLOCK
+    out = fs.create(p, FsPermission.getDefault(),
+        EnumSet.of(CreateFlag.CREATE, CreateFlag.OVERWRITE),
+        4096, (short) 1, len, null);
+    out.write(1);
+    out.hsync();
+    checkSyncMetric(cluster, 3);
+    out.hsync();
+    checkSyncMetric(cluster, 3);
+    out.close();
+    checkSyncMetric(cluster, 3);
+    cluster.shutdown();
+  }
+
   /** Test hsync on an exact block boundary */
   @Test
   public void testHSyncBlockBoundary() throws Exception {
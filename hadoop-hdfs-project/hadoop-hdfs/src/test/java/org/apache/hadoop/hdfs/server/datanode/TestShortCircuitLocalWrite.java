@@ -0,0 +1,226 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.net.unix.DomainSocket;
+import org.apache.hadoop.net.unix.TemporarySocketDirectory;
+import org.apache.hadoop.test.GenericTestUtils.LogCapturer;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test short-circuit local writes, where the client writes the data of new
+ * blocks to shared memory buffers of the local DataNode.
+ */
+public class TestShortCircuitLocalWrite {
+  private static final int BLOCKSIZE = 8192;
+  private static final String OP = "op: REQUEST_SHORT_CIRCUIT_WRITE_FDS";
+
+  private static TemporarySocketDirectory sockDir;
+
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+  private LogCapturer logs;
+
+  @BeforeClass
+  public static void init() {
+    sockDir = new TemporarySocketDirectory();
+    DomainSocket.disableBindPathValidation();
+  }
+
+  @AfterClass
+  public static void shutdown() throws IOException {
+    sockDir.close();
+  }
+
+  @Before
+  public void before() {
+    Assume.assumeThat(DomainSocket.getLoadingFailureReason(), equalTo(null));
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    if (fs != null) {
+      fs.close();
+      fs = null;
+    }
+    if (logs != null) {
+      logs.stopCapturing();
+      logs = null;
+    }
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  private void startCluster(boolean dnEnabled, int numDataNodes)
+      throws IOException {
+    startCluster(new HdfsConfiguration(), dnEnabled, numDataNodes);
+  }
+
+  private void startCluster(Configuration conf, boolean dnEnabled,
+      int numDataNodes) throws IOException {
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCKSIZE);
+    conf.set(DFSConfigKeys.DFS_DOMAIN_SOCKET_PATH_KEY, new File(
+        sockDir.getDir(), "TestShortCircuitLocalWrite._PORT.sock")
+        .getAbsolutePath());
+    conf.setBoolean(HdfsClientConfigKeys.Write.ShortCircuit.KEY, dnEnabled);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(numDataNodes)
+        .build();
+    cluster.waitActive();
+
+    final Configuration clientConf = new Configuration(conf);
+    clientConf.setBoolean(HdfsClientConfigKeys.Write.ShortCircuit.KEY, true);
+    clientConf.set(HdfsClientConfigKeys.DFS_CLIENT_CONTEXT,
+        "TestShortCircuitLocalWrite" + dnEnabled + numDataNodes);
+    fs = (DistributedFileSystem) DistributedFileSystem.newInstance(
+        cluster.getURI(), clientConf);
+    logs = LogCapturer.captureLogs(DataNode.ClientTraceLog);
+  }
+
+  private static byte[] randomBytes(int length, long seed) {
+    final byte[] bytes = new byte[length];
+    new Random(seed).nextBytes(bytes);
+    return bytes;
+  }
+
+  private void writeAndVerify(Path file, short replication, int length,
+      boolean flush) throws IOException {
+    final byte[] expected = randomBytes(length, length);
+    final FSDataOutputStream out = fs.create(file, replication);
+    try {
+      int written = 0;
+      while (written < length) {
+        final int n = Math.min(1000 + written % 3001, length - written);
+        out.write(expected, written, n);
+        written += n;
+        if (flush) {
+          if (written % 2 == 0) {
+            out.hflush();
+          } else {
+            out.hsync();
+          }
+        }
+      }
+    } finally {
+      out.close();
+    }
+    assertArrayEquals(expected, DFSTestUtil.readFileBuffer(fs, file));
+  }
+
+  @Test(timeout=60000)
+  public void testSingleReplica() throws Exception {
+    startCluster(true, 1);
+    writeAndVerify(new Path("/empty"), (short) 1, 0, false);
+    writeAndVerify(new Path("/small"), (short) 1, 100, false);
+    writeAndVerify(new Path("/file"), (short) 1, BLOCKSIZE * 3 + 123, false);
+    assertTrue(logs.getOutput().contains(OP + ", blockid"));
+    assertFalse(logs.getOutput().contains("success: false"));
+  }
+
+  @Test(timeout=60000)
+  public void testPipeline() throws Exception {
+    startCluster(true, 3);
+    writeAndVerify(new Path("/file"), (short) 3, BLOCKSIZE * 2 + 4567, false);
+    assertTrue(logs.getOutput().contains(OP + ", blockid"));
+
+    // The downstream DataNodes have the data the client wrote locally
+    final Path file = new Path("/file");
+    final byte[] expected = DFSTestUtil.readFileBuffer(fs, file);
+    while (cluster.getDataNodes().size() > 1) {
+      cluster.stopDataNode(0);
+      assertArrayEquals(expected, DFSTestUtil.readFileBuffer(fs, file));
+    }
+  }
+
+  @Test(timeout=60000)
+  public void testFlush() throws Exception {
+    startCluster(true, 3);
+    writeAndVerify(new Path("/file"), (short) 3, BLOCKSIZE * 2 + 4567, true);
+    assertTrue(logs.getOutput().contains(OP + ", blockid"));
+  }
+
+  @Test(timeout=60000)
+  public void testSmallBuffers() throws Exception {
+    // Each packet wraps around the buffers, and the client has to wait for
+    // the DataNode to read the previous ones
+    final Configuration conf = new HdfsConfiguration();
+    conf.setInt(HdfsClientConfigKeys.DFS_CLIENT_WRITE_PACKET_SIZE_KEY, 1500);
+    conf.setInt(
+        DFSConfigKeys.DFS_DATANODE_SHORT_CIRCUIT_WRITE_BUFFER_SIZE_KEY, 2000);
+    startCluster(conf, true, 3);
+    writeAndVerify(new Path("/file"), (short) 3, BLOCKSIZE * 2 + 4567, false);
+    writeAndVerify(new Path("/flushed"), (short) 3, BLOCKSIZE + 1, true);
+    assertTrue(logs.getOutput().contains(OP + ", blockid"));
+  }
+
+  @Test(timeout=60000)
+  public void testReleasedOnFinalize() throws Exception {
+    startCluster(true, 1);
+    final DataNode dn = cluster.getDataNodes().get(0);
+    final Path file = new Path("/file");
+    final byte[] expected = randomBytes(BLOCKSIZE / 2, 0);
+    final FSDataOutputStream out = fs.create(file, (short) 1);
+    final ExtendedBlock block;
+    try {
+      out.write(expected);
+      out.hflush();
+      block = DFSTestUtil.getFirstBlock(fs, file);
+      assertNotNull(dn.getShortCircuitWriteBuffer(block));
+    } finally {
+      out.close();
+    }
+    // Nothing the client writes to the buffers reaches the replica any more
+    assertNull(dn.getShortCircuitWriteBuffer(block));
+    assertArrayEquals(expected, DFSTestUtil.readFileBuffer(fs, file));
+  }
+
+  @Test(timeout=60000)
+  public void testDisabledOnDataNode() throws Exception {
+    // The client falls back to the pipeline
+    startCluster(false, 1);
+    writeAndVerify(new Path("/file"), (short) 1, BLOCKSIZE + 1, false);
+    assertFalse(logs.getOutput().contains(OP));
+  }
+}
@@ -29,6 +29,7 @@
 import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.ReplicaState;
 import org.apache.hadoop.hdfs.server.datanode.*;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.AutoCloseableLock;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsDatasetSpi;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.LengthInputStream;
@@ -240,6 +241,10 @@ public boolean isCached(String bpid, long blockId) {
     return false;
   }
 
+  @Override
+  public void onBlockRead(ExtendedBlock block) {
+  }
+
   @Override
   public Set<File> checkDataDir() {
     return null;
@@ -442,4 +447,13 @@ public boolean getPinning(ExtendedBlock block) throws IOException {
   public boolean isDeletingBlock(String bpid, long blockId) {
     return false;
   }
+
+  @Override
+  public AutoCloseableLock acquireDatasetLock() {
+    return new AutoCloseableLock() {
+      @Override
+      public void close() {
+      }
+    };
+  }
 }
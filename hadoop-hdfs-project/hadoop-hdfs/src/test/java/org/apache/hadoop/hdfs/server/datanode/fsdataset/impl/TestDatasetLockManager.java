@@ -0,0 +1,100 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hdfs.server.datanode.DataNode;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.AutoCloseableLock;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Test the locks of the volumes and block pools of {@link FsDatasetImpl}.
+ */
+public class TestDatasetLockManager {
+  private static final String BPID = "BP-1";
+
+  private final DatasetLockManager locks =
+      new DatasetLockManager(Mockito.mock(DataNode.class), 300L);
+
+  /**
+   * Acquire the locks of some volumes in another thread.
+   * @return whether they were acquired within the timeout
+   */
+  private boolean tryLockVolumesInThread(final String bpid,
+      final String... storageIds) throws InterruptedException {
+    final CountDownLatch acquired = new CountDownLatch(1);
+    final Thread t = new Thread() {
+      @Override
+      public void run() {
+        try (AutoCloseableLock l = locks.lockVolumes(bpid, storageIds)) {
+          acquired.countDown();
+        }
+      }
+    };
+    t.setDaemon(true);
+    t.start();
+    return acquired.await(500, TimeUnit.MILLISECONDS);
+  }
+
+  @Test(timeout=10000)
+  public void testVolumesAreIndependent() throws Exception {
+    try (AutoCloseableLock l = locks.lockVolumes(BPID, "DS-1")) {
+      assertTrue(locks.isVolumeLocked(BPID, "DS-1"));
+      assertFalse(locks.isVolumeLocked(BPID, "DS-2"));
+      assertTrue(tryLockVolumesInThread(BPID, "DS-2"));
+      assertTrue(tryLockVolumesInThread("BP-2", "DS-1"));
+      assertFalse(tryLockVolumesInThread(BPID, "DS-2", "DS-1"));
+    }
+    assertFalse(locks.isVolumeLocked(BPID, "DS-1"));
+  }
+
+  @Test(timeout=10000)
+  public void testDuplicateVolumes() throws Exception {
+    try (AutoCloseableLock l =
+             locks.lockVolumes(BPID, "DS-2", "DS-1", "DS-2")) {
+      assertTrue(locks.isVolumeLocked(BPID, "DS-1"));
+      assertTrue(locks.isVolumeLocked(BPID, "DS-2"));
+    }
+    assertFalse(locks.isVolumeLocked(BPID, "DS-1"));
+    assertFalse(locks.isVolumeLocked(BPID, "DS-2"));
+  }
+
+  @Test(timeout=10000)
+  public void testExclusiveLocks() throws Exception {
+    try (AutoCloseableLock l = locks.lockDataset()) {
+      assertFalse(tryLockVolumesInThread(BPID, "DS-1"));
+      // The holder of the dataset lock may lock the volumes too
+      try (AutoCloseableLock v = locks.lockVolumes(BPID, "DS-1")) {
+        assertTrue(locks.isVolumeLocked(BPID, "DS-1"));
+      }
+    }
+    try (AutoCloseableLock l = locks.lockBlockPool(BPID)) {
+      assertFalse(tryLockVolumesInThread(BPID, "DS-2"));
+      assertTrue(tryLockVolumesInThread("BP-2", "DS-2"));
+    }
+    try (AutoCloseableLock l = locks.readLockBlockPool(BPID)) {
+      assertTrue(tryLockVolumesInThread(BPID, "DS-3"));
+    }
+  }
+}
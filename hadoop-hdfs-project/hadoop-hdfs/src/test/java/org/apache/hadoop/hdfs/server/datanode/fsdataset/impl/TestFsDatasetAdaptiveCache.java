@@ -0,0 +1,195 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
+
+import static org.apache.hadoop.test.MetricsAsserts.assertCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.LocatedBlock;
+import org.apache.hadoop.hdfs.server.datanode.DataNode;
+import org.apache.hadoop.io.nativeio.NativeIO;
+import org.apache.hadoop.io.nativeio.NativeIO.POSIX.CacheManipulator;
+import org.apache.hadoop.io.nativeio.NativeIO.POSIX.NoMlockCacheManipulator;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Supplier;
+
+/**
+ * Test caching of frequently read blocks by {@link FsDatasetCache}.
+ */
+public class TestFsDatasetAdaptiveCache {
+  private static final long PAGE_SIZE =
+      NativeIO.POSIX.getCacheManipulator().getOperatingSystemPageSize();
+  private static final long BLOCK_SIZE = PAGE_SIZE;
+  private static final int NUM_BLOCKS = 4;
+  private static final long CACHE_CAPACITY = 8 * PAGE_SIZE;
+  private static final long ADAPTIVE_CAPACITY = 2 * PAGE_SIZE;
+  private static final int MIN_READS = 3;
+  private static final Path FILE = new Path("/hot");
+
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+  private DataNode dn;
+  private FsDatasetCache cache;
+  private String bpid;
+  private List<LocatedBlock> blocks;
+  private CacheManipulator prevCacheManipulator;
+
+  @Before
+  public void setUp() throws Exception {
+    prevCacheManipulator = NativeIO.POSIX.getCacheManipulator();
+    NativeIO.POSIX.setCacheManipulator(new NoMlockCacheManipulator());
+
+    Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    conf.setLong(DFSConfigKeys.DFS_DATANODE_MAX_LOCKED_MEMORY_KEY,
+        CACHE_CAPACITY);
+    conf.setLong(DFSConfigKeys.DFS_DATANODE_CACHE_ADAPTIVE_MAX_BYTES_KEY,
+        ADAPTIVE_CAPACITY);
+    conf.setInt(DFSConfigKeys.DFS_DATANODE_CACHE_ADAPTIVE_MIN_READS_KEY,
+        MIN_READS);
+    // The test updates the adaptive cache itself
+    conf.setLong(DFSConfigKeys.DFS_DATANODE_CACHE_ADAPTIVE_INTERVAL_MS_KEY,
+        Long.MAX_VALUE / 2);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    cluster.waitActive();
+
+    fs = cluster.getFileSystem();
+    dn = cluster.getDataNodes().get(0);
+    cache = ((FsDatasetImpl) dn.getFSDataset()).cacheManager;
+    bpid = cluster.getNamesystem().getBlockPoolId();
+    DFSTestUtil.createFile(fs, FILE, BLOCK_SIZE * NUM_BLOCKS, (short) 1, 0L);
+    blocks = fs.getClient().getLocatedBlocks(FILE.toString(), 0)
+        .getLocatedBlocks();
+    assertEquals(NUM_BLOCKS, blocks.size());
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+    NativeIO.POSIX.setCacheManipulator(prevCacheManipulator);
+  }
+
+  private void readBlock(int index, int times) throws Exception {
+    byte[] buf = new byte[(int) BLOCK_SIZE];
+    try (FSDataInputStream in = fs.open(FILE)) {
+      for (int i = 0; i < times; i++) {
+        in.readFully(index * BLOCK_SIZE, buf);
+      }
+    }
+  }
+
+  private boolean isCached(int index) {
+    return cache.isCached(bpid,
+        blocks.get(index).getBlock().getBlockId());
+  }
+
+  private void waitForCached(final int... indexes) throws Exception {
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        for (int i = 0; i < NUM_BLOCKS; i++) {
+          boolean expected = false;
+          for (int index : indexes) {
+            expected |= (index == i);
+          }
+          if (isCached(i) != expected) {
+            // Evicted blocks may not have been uncached in time
+            cache.updateAdaptiveCache();
+            return false;
+          }
+        }
+        return true;
+      }
+    }, 100, 30000);
+  }
+
+  @Test(timeout=60000)
+  public void testCacheFrequentlyReadBlocks() throws Exception {
+    assertEquals(CACHE_CAPACITY - ADAPTIVE_CAPACITY,
+        dn.getFSDataset().getCacheCapacity());
+
+    readBlock(0, MIN_READS);
+    readBlock(1, MIN_READS);
+    readBlock(2, MIN_READS - 1);
+    cache.updateAdaptiveCache();
+    waitForCached(0, 1);
+    assertEquals(2, cache.getNumBlocksAdaptivelyCached());
+    assertEquals(ADAPTIVE_CAPACITY, cache.getAdaptiveCacheUsed());
+
+    // Adaptively cached blocks are not reported to the NameNode
+    assertTrue(cache.getCachedBlocks(bpid).isEmpty());
+    assertEquals(0, dn.getFSDataset().getCacheUsed());
+
+    readBlock(0, 1);
+    MetricsRecordBuilder rb = getMetrics(dn.getMetrics().name());
+    assertCounter("BlocksAdaptivelyCached", 2L, rb);
+    assertCounter("CacheBlocksReadHits", 1L, rb);
+    assertCounter("CacheBlocksReadMisses", 3L * MIN_READS - 1, rb);
+
+    // A block the NameNode asks to cache moves out of the adaptive cache
+    long blockId = blocks.get(0).getBlock().getBlockId();
+    dn.getFSDataset().cache(bpid, new long[] {blockId});
+    assertEquals(1, cache.getNumBlocksAdaptivelyCached());
+    assertEquals(PAGE_SIZE, cache.getAdaptiveCacheUsed());
+    assertEquals(1, cache.getNumBlocksCached());
+    assertEquals(PAGE_SIZE, cache.getCacheUsed());
+    assertEquals(1, cache.getCachedBlocks(bpid).size());
+  }
+
+  @Test(timeout=60000)
+  public void testEvictLessFrequentlyReadBlocks() throws Exception {
+    readBlock(0, 4 * MIN_READS);
+    readBlock(1, 4 * MIN_READS);
+    cache.updateAdaptiveCache();
+    waitForCached(0, 1);
+
+    // Read too rarely to replace the cached blocks
+    readBlock(2, MIN_READS);
+    cache.updateAdaptiveCache();
+    assertFalse(isCached(2));
+
+    readBlock(2, 10 * MIN_READS);
+    readBlock(3, 10 * MIN_READS);
+    cache.updateAdaptiveCache();
+    waitForCached(2, 3);
+    assertEquals(ADAPTIVE_CAPACITY, cache.getAdaptiveCacheUsed());
+    MetricsRecordBuilder rb = getMetrics(dn.getMetrics().name());
+    assertCounter("BlocksAdaptivelyUncached", 2L, rb);
+  }
+}
@@ -17,8 +17,10 @@
  */
 package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 
 import org.apache.hadoop.hdfs.protocol.Block;
@@ -30,7 +32,7 @@
  * Unit test for ReplicasMap class
  */
 public class TestReplicaMap {
-  private final ReplicaMap map = new ReplicaMap(TestReplicaMap.class);
+  private final ReplicaMap map = new ReplicaMap();
   private final String bpid = "BP-TEST";
   private final  Block block = new Block(1234, 1234, 1234);
   
@@ -79,6 +81,23 @@ public void testAdd() {
     } catch (IllegalArgumentException expected) { }
   }
   
+  @Test
+  public void testAddIfAbsent() {
+    // Test 1: the existing replica is kept
+    final FinalizedReplica existing = (FinalizedReplica) map.get(bpid, block);
+    assertSame(existing,
+        map.addIfAbsent(bpid, new FinalizedReplica(block, null, null)));
+    assertSame(existing, map.get(bpid, block));
+
+    // Test 2: a new replica is added, also to a new block pool
+    final FinalizedReplica added = new FinalizedReplica(
+        new Block(5678, 5678, 5678), null, null);
+    assertNull(map.addIfAbsent(bpid, added));
+    assertSame(added, map.get(bpid, 5678));
+    assertNull(map.addIfAbsent("BP-OTHER", added));
+    assertEquals(1, map.size("BP-OTHER"));
+  }
+
   @Test
   public void testRemove() {
     // Test 1: null argument throws invalid argument exception
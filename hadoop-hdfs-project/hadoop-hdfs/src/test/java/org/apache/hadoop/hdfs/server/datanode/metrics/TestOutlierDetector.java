@@ -0,0 +1,91 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Tests for {@link OutlierDetector}.
+ */
+public class TestOutlierDetector {
+  private static final double DELTA = 0.0001;
+
+  @Test
+  public void testMedianAndMad() {
+    assertEquals(3.0, OutlierDetector.computeMedian(
+        newList(5.0, 1.0, 3.0)), DELTA);
+    assertEquals(2.5, OutlierDetector.computeMedian(
+        newList(4.0, 1.0, 3.0, 2.0)), DELTA);
+    // Deviations from the median 3 are {2, 1, 0, 1, 97}, their median is 1.
+    assertEquals(1.4826, OutlierDetector.computeMad(
+        newList(1.0, 2.0, 3.0, 4.0, 100.0)), DELTA);
+    assertEquals(0.0, OutlierDetector.computeMad(
+        newList(7.0, 7.0, 7.0)), DELTA);
+  }
+
+  @Test
+  public void testTooFewResources() {
+    OutlierDetector detector = new OutlierDetector(3, 0);
+    Map<String, Double> stats = ImmutableMap.of("r1", 1.0, "r2", 1000.0);
+    assertTrue(detector.getOutliers(stats).isEmpty());
+  }
+
+  @Test
+  public void testSingleOutlier() {
+    OutlierDetector detector = new OutlierDetector(3, 5);
+    Map<String, Double> stats = new HashMap<>();
+    for (int i = 0; i < 10; i++) {
+      stats.put("r" + i, 10.0 + i);
+    }
+    stats.put("slow", 200.0);
+    assertEquals(ImmutableMap.of("slow", 200.0),
+        detector.getOutliers(stats));
+  }
+
+  @Test
+  public void testNoOutliersBelowLowThreshold() {
+    // "slow" is 100 times the median but still below the low threshold.
+    OutlierDetector detector = new OutlierDetector(3, 20);
+    Map<String, Double> stats = ImmutableMap.of(
+        "r1", 0.1, "r2", 0.1, "r3", 0.1, "slow", 10.0);
+    assertTrue(detector.getOutliers(stats).isEmpty());
+  }
+
+  @Test
+  public void testNoOutliersWhenUniform() {
+    OutlierDetector detector = new OutlierDetector(3, 0);
+    Map<String, Double> stats = ImmutableMap.of(
+        "r1", 10.0, "r2", 11.0, "r3", 12.0, "r4", 13.0);
+    assertTrue(detector.getOutliers(stats).isEmpty());
+  }
+
+  private static List<Double> newList(Double... values) {
+    return new ArrayList<>(Arrays.asList(values));
+  }
+}
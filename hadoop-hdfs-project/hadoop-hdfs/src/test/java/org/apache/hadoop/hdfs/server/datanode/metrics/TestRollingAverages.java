@@ -0,0 +1,79 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.apache.hadoop.util.FakeTimer;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link RollingAverages}.
+ */
+public class TestRollingAverages {
+  private static final long WINDOW_MS = 4000;
+  private static final int NUM_SUB_WINDOWS = 4;
+  private static final long SUB_WINDOW_MS = WINDOW_MS / NUM_SUB_WINDOWS;
+  private static final long NANOS_PER_MS = 1000000;
+
+  private FakeTimer timer;
+  private RollingAverages averages;
+
+  @Before
+  public void setup() {
+    timer = new FakeTimer();
+    averages = new RollingAverages(timer, WINDOW_MS, NUM_SUB_WINDOWS);
+  }
+
+  @Test
+  public void testAverages() {
+    averages.add("k1", 2 * NANOS_PER_MS);
+    averages.add("k1", 4 * NANOS_PER_MS);
+    averages.add("k2", 10 * NANOS_PER_MS);
+
+    Map<String, Double> result = averages.getAverages(1);
+    assertEquals(2, result.size());
+    assertEquals(3.0, result.get("k1"), 0.0001);
+    assertEquals(10.0, result.get("k2"), 0.0001);
+
+    // k2 does not have enough samples.
+    result = averages.getAverages(2);
+    assertEquals(1, result.size());
+    assertEquals(3.0, result.get("k1"), 0.0001);
+  }
+
+  @Test
+  public void testOldSubWindowsRollOff() {
+    averages.add("k1", 100 * NANOS_PER_MS);
+    timer.advance(SUB_WINDOW_MS);
+    averages.add("k1", 2 * NANOS_PER_MS);
+    assertEquals(51.0, averages.getAverages(1).get("k1"), 0.0001);
+
+    // The first sample is now out of the window, the second is not.
+    timer.advance(WINDOW_MS - SUB_WINDOW_MS);
+    assertEquals(2.0, averages.getAverages(1).get("k1"), 0.0001);
+
+    // Both samples are out of the window.
+    timer.advance(WINDOW_MS);
+    assertTrue(averages.getAverages(1).isEmpty());
+  }
+}
@@ -21,6 +21,7 @@
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_CACHEREPORT_INTERVAL_MSEC_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_MAX_LOCKED_MEMORY_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_HEARTBEAT_INTERVAL_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_PATH_BASED_CACHE_FULL_RESCAN_INTERVAL_MS;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_PATH_BASED_CACHE_REFRESH_INTERVAL_MS;
 import static org.apache.hadoop.hdfs.protocol.CachePoolInfo.RELATIVE_EXPIRY_NEVER;
 import static org.apache.hadoop.test.GenericTestUtils.assertExceptionContains;
@@ -126,6 +127,9 @@ private static HdfsConfiguration createCachingConf() {
     conf.setLong(DFS_HEARTBEAT_INTERVAL_KEY, 1);
     conf.setLong(DFS_CACHEREPORT_INTERVAL_MSEC_KEY, 1000);
     conf.setLong(DFS_NAMENODE_PATH_BASED_CACHE_REFRESH_INTERVAL_MS, 1000);
+    // Only the first rescan is a full one, the rest are incremental.
+    conf.setLong(DFS_NAMENODE_PATH_BASED_CACHE_FULL_RESCAN_INTERVAL_MS,
+        600000);
     // set low limits here for testing purposes
     conf.setInt(DFSConfigKeys.DFS_NAMENODE_LIST_CACHE_POOLS_NUM_RESPONSES, 2);
     conf.setInt(DFSConfigKeys.DFS_NAMENODE_LIST_CACHE_DIRECTIVES_NUM_RESPONSES,
@@ -1535,4 +1539,41 @@ public void testNoBackingReplica() throws Exception {
       DataNodeTestUtils.setCacheReportsDisabledForTests(cluster, false);
     }
   }
+
+  /**
+   * Tests that the incremental rescans pick up files being added to, renamed
+   * out of and deleted from a cached directory.
+   */
+  @Test(timeout=60000)
+  public void testIncrementalRescan() throws Exception {
+    final Path dir = new Path("/incremental");
+    dfs.mkdirs(dir);
+    dfs.addCachePool(new CachePoolInfo("pool"));
+    dfs.addCacheDirective(new CacheDirectiveInfo.Builder().setPool("pool")
+        .setPath(dir).setReplication((short) 1).build());
+    final CacheDirectiveInfo filter =
+        new CacheDirectiveInfo.Builder().setPath(dir).build();
+    waitForCacheDirectiveStats(dfs, 0, 0, 0, 0, filter,
+        "testIncrementalRescan:0");
+
+    final Path file1 = new Path(dir, "file1");
+    final Path file2 = new Path(dir, "file2");
+    DFSTestUtil.createFile(dfs, file1, 2 * BLOCK_SIZE, (short) 1, 0xF11E);
+    DFSTestUtil.createFile(dfs, file2, BLOCK_SIZE, (short) 1, 0xF11E);
+    waitForCachedBlocks(namenode, 3, 3, "testIncrementalRescan:1");
+    waitForCacheDirectiveStats(dfs, 3 * BLOCK_SIZE, 3 * BLOCK_SIZE, 2, 2,
+        filter, "testIncrementalRescan:1");
+
+    // A file renamed out of the directory is uncached.
+    dfs.rename(file1, new Path("/renamed"));
+    waitForCachedBlocks(namenode, 1, 1, "testIncrementalRescan:2");
+    waitForCacheDirectiveStats(dfs, BLOCK_SIZE, BLOCK_SIZE, 1, 1,
+        filter, "testIncrementalRescan:2");
+
+    // So is a deleted one.
+    dfs.delete(file2, false);
+    waitForCachedBlocks(namenode, 0, 0, "testIncrementalRescan:3");
+    waitForCacheDirectiveStats(dfs, 0, 0, 0, 0, filter,
+        "testIncrementalRescan:3");
+  }
 }
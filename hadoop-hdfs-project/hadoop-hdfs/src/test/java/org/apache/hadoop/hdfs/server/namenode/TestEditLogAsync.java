@@ -0,0 +1,140 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.junit.Test;
+
+/**
+ * Run the NameNode with
+ * {@link DFSConfigKeys#DFS_NAMENODE_EDITS_ASYNC_LOGGING} set.
+ */
+public class TestEditLogAsync {
+  private static final int NUM_THREADS = 8;
+  private static final int NUM_OPS = 50;
+
+  private static Configuration newConf(int queueSize) {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING, true);
+    conf.setInt(
+        DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING_PENDING_QUEUE_SIZE,
+        queueSize);
+    return conf;
+  }
+
+  @Test(timeout = 120000)
+  public void testConcurrentOps() throws Exception {
+    runConcurrentOps(newConf(4096));
+  }
+
+  /** A full queue makes the handlers sync by themselves. */
+  @Test(timeout = 120000)
+  public void testConcurrentOpsWithSmallQueue() throws Exception {
+    runConcurrentOps(newConf(1));
+  }
+
+  private void runConcurrentOps(Configuration conf) throws Exception {
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(1).build();
+    ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+    try {
+      cluster.waitActive();
+      FSEditLog editLog = cluster.getNamesystem().getEditLog();
+      assertTrue(editLog instanceof FSEditLogAsync);
+      assertTrue(((FSEditLogAsync) editLog).isSyncThreadRunning());
+
+      final DistributedFileSystem fs = cluster.getFileSystem();
+      List<Future<Void>> futures = new ArrayList<Future<Void>>();
+      for (int t = 0; t < NUM_THREADS; t++) {
+        final Path dir = new Path("/thread" + t);
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            for (int i = 0; i < NUM_OPS; i++) {
+              Path src = new Path(dir, "file" + i);
+              DFSTestUtil.createFile(fs, src, 1024, (short) 1, i);
+              if (i % 3 == 0) {
+                fs.rename(src, new Path(dir, "renamed" + i));
+              } else if (i % 3 == 1) {
+                fs.delete(src, false);
+              }
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> f : futures) {
+        f.get();
+      }
+      assertEquals(editLog.getLastWrittenTxId(), editLog.getSyncTxId());
+
+      cluster.restartNameNode(true);
+      editLog = cluster.getNamesystem().getEditLog();
+      assertTrue(((FSEditLogAsync) editLog).isSyncThreadRunning());
+      for (int t = 0; t < NUM_THREADS; t++) {
+        for (int i = 0; i < NUM_OPS; i++) {
+          Path dir = new Path("/thread" + t);
+          assertEquals(i % 3 == 0, fs.exists(new Path(dir, "renamed" + i)));
+          assertEquals(i % 3 == 2, fs.exists(new Path(dir, "file" + i)));
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+      cluster.shutdown();
+    }
+  }
+
+  @Test(timeout = 120000)
+  public void testSyncThreadStopsOnClose() throws Exception {
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(newConf(4096))
+        .numDataNodes(0).build();
+    try {
+      cluster.waitActive();
+      DistributedFileSystem fs = cluster.getFileSystem();
+      assertTrue(fs.mkdirs(new Path("/foo")));
+      FSEditLogAsync editLog =
+          (FSEditLogAsync) cluster.getNamesystem().getEditLog();
+      cluster.getNamesystem().writeLock();
+      try {
+        editLog.close();
+      } finally {
+        cluster.getNamesystem().writeUnlock();
+      }
+      assertFalse(editLog.isSyncThreadRunning());
+    } finally {
+      cluster.shutdown();
+    }
+  }
+}
@@ -17,6 +17,9 @@
  */
 package org.apache.hadoop.hdfs.server.namenode;
 
+import static org.apache.hadoop.fs.permission.AclEntryScope.ACCESS;
+import static org.apache.hadoop.fs.permission.AclEntryType.USER;
+import static org.apache.hadoop.hdfs.server.namenode.AclTestHelpers.aclEntry;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -29,7 +32,12 @@
 import java.io.ByteArrayOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.protocol.ErasureCodingPolicy;
@@ -39,6 +47,8 @@
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.StartupOption;
 import org.junit.Assert;
 
+import org.apache.hadoop.fs.permission.AclEntry;
+import org.apache.hadoop.fs.permission.FsAction;
 import org.apache.hadoop.fs.permission.PermissionStatus;
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.conf.Configuration;
@@ -57,14 +67,18 @@
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants.SafeModeAction;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.BlockUCState;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.FileSummary;
 import org.apache.hadoop.hdfs.server.namenode.LeaseManager.Lease;
 import org.apache.hadoop.hdfs.server.namenode.NNStorage.NameNodeDirType;
 import org.apache.hadoop.hdfs.util.MD5FileUtils;
+import org.apache.hadoop.hdfs.util.ReferenceCountMap;
 import org.apache.hadoop.test.GenericTestUtils;
 import org.apache.hadoop.test.PathUtils;
 import org.apache.hadoop.util.Time;
 import org.junit.Test;
 
+import com.google.common.collect.Lists;
+
 import static org.junit.Assert.assertArrayEquals;
 
 public class TestFSImage {
@@ -89,6 +103,196 @@ public void testCompression() throws IOException {
     testPersistHelper(conf);
   }
 
+  @Test
+  public void testParallelSaveAndLoad() throws IOException {
+    Configuration conf = new Configuration();
+    conf.setBoolean(DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_KEY, true);
+    conf.setInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_INODE_THRESHOLD_KEY, 5);
+    conf.setInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_TARGET_SECTIONS_KEY, 4);
+    conf.setInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY, 3);
+    testPersistHelper(conf);
+  }
+
+  /**
+   * Load an image with sub-sections serially and in parallel, and an image
+   * without sub-sections with parallel loading enabled.
+   */
+  @Test
+  public void testLoadImageWithSubSections() throws IOException {
+    Configuration conf = new Configuration();
+    conf.setBoolean(DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_KEY, true);
+    conf.setInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_INODE_THRESHOLD_KEY, 100);
+    conf.setInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_TARGET_SECTIONS_KEY, 8);
+    conf.setInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY, 4);
+    MiniDFSCluster cluster = null;
+    try {
+      cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+      cluster.waitActive();
+      DistributedFileSystem fs = cluster.getFileSystem();
+      final Path snapRoot = new Path("/snap");
+      fs.mkdirs(snapRoot);
+      fs.allowSnapshot(snapRoot);
+      for (int i = 0; i < 200; i++) {
+        DFSTestUtil.createFile(fs, new Path("/snap/d" + (i % 20), "f" + i),
+            10, (short) 1, i);
+      }
+      fs.createSnapshot(snapRoot, "s0");
+      fs.rename(new Path("/snap/d0"), new Path("/moved"));
+      fs.setXAttr(new Path("/moved"), "user.a", new byte[] {1});
+      final long inodes = cluster.getNamesystem().dir.totalInodes();
+      final long blocks = cluster.getNamesystem().getBlocksTotal();
+
+      // The summary of the saved image indexes the sub-sections.
+      saveNamespace(fs);
+      FileSummary summary = loadLatestSummary(cluster);
+      int inodeSubSections = 0, dirSubSections = 0;
+      for (FileSummary.Section s : summary.getSectionsList()) {
+        if (s.getName().equals(
+            FSImageFormatProtobuf.SectionName.INODE_SUB.toString())) {
+          inodeSubSections++;
+        } else if (s.getName().equals(
+            FSImageFormatProtobuf.SectionName.INODE_DIR_SUB.toString())) {
+          dirSubSections++;
+        }
+      }
+      assertTrue(inodeSubSections > 1);
+      assertTrue(dirSubSections > 1);
+
+      for (boolean parallel : new boolean[] {true, false}) {
+        cluster.getConfiguration(0).setBoolean(
+            DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_KEY, parallel);
+        cluster.restartNameNode();
+        cluster.waitActive();
+        fs = cluster.getFileSystem();
+        FSNamesystem fsn = cluster.getNamesystem();
+        assertEquals(inodes, fsn.dir.totalInodes());
+        assertEquals(blocks, fsn.getBlocksTotal());
+        assertTrue(fs.exists(new Path("/moved/f0")));
+        assertTrue(fs.exists(new Path("/snap/.snapshot/s0/d0/f20")));
+        assertEquals(1, fs.getXAttr(new Path("/moved"), "user.a")[0]);
+        DFSTestUtil.readFile(fs, new Path("/snap/d19/f199"));
+      }
+
+      // An image without sub-sections is loaded serially.
+      saveNamespace(fs);
+      assertEquals(0, countSubSections(loadLatestSummary(cluster)));
+      cluster.getConfiguration(0).setBoolean(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_KEY, true);
+      cluster.restartNameNode();
+      cluster.waitActive();
+      assertEquals(inodes, cluster.getNamesystem().dir.totalInodes());
+    } finally {
+      if (cluster != null) {
+        cluster.shutdown();
+      }
+    }
+  }
+
+  /**
+   * Load an image with many inodes sharing a few ACLs in parallel, and check
+   * that every inode still holds a reference to the shared ACL features.
+   */
+  @Test
+  public void testParallelLoadWithAcls() throws IOException {
+    Configuration conf = new Configuration();
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_ACLS_ENABLED_KEY, true);
+    conf.setBoolean(DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_KEY, true);
+    conf.setInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_INODE_THRESHOLD_KEY, 100);
+    conf.setInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_TARGET_SECTIONS_KEY, 8);
+    conf.setInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY, 8);
+    final int numAcls = 3;
+    final int numDirs = 60;
+    final int filesPerDir = 10;
+    MiniDFSCluster cluster = null;
+    try {
+      cluster = new MiniDFSCluster.Builder(conf).numDataNodes(0).build();
+      cluster.waitActive();
+      DistributedFileSystem fs = cluster.getFileSystem();
+      List<Path> paths = new ArrayList<>();
+      for (int i = 0; i < numDirs; i++) {
+        Path dir = new Path("/acls/d" + i);
+        fs.mkdirs(dir);
+        fs.modifyAclEntries(dir, getAcl(i % numAcls));
+        paths.add(dir);
+        for (int j = 0; j < filesPerDir; j++) {
+          Path file = new Path(dir, "f" + j);
+          DFSTestUtil.createFile(fs, file, 0, (short) 1, j);
+          fs.modifyAclEntries(file, getAcl(j % numAcls));
+          paths.add(file);
+        }
+      }
+      saveNamespace(fs);
+
+      // The number of inodes sharing each ACL feature.
+      Map<AclFeature, Long> inodesWithAcl = new HashMap<>();
+      for (Path path : paths) {
+        AclFeature f = cluster.getNamesystem().dir
+            .getINode(path.toString()).getAclFeature();
+        Long n = inodesWithAcl.get(f);
+        inodesWithAcl.put(f, n == null ? 1 : n + 1);
+      }
+      ReferenceCountMap<AclFeature> uniqueAcls =
+          AclStorage.getUniqueAclFeatures();
+      final int uniqueBefore = uniqueAcls.getUniqueElementsSize();
+      Map<AclFeature, Long> refsBefore = new HashMap<>();
+      for (AclFeature f : inodesWithAcl.keySet()) {
+        refsBefore.put(f, uniqueAcls.getReferenceCount(f));
+      }
+
+      cluster.restartNameNode();
+      cluster.waitActive();
+
+      // The features of the previous NameNode are never released, so the
+      // reload adds one reference per inode on top of them.
+      assertEquals(uniqueBefore, uniqueAcls.getUniqueElementsSize());
+      for (Map.Entry<AclFeature, Long> e : inodesWithAcl.entrySet()) {
+        assertEquals(refsBefore.get(e.getKey()) + e.getValue(),
+            uniqueAcls.getReferenceCount(e.getKey()));
+      }
+      fs = cluster.getFileSystem();
+      assertEquals(getAcl(1).get(0),
+          fs.getAclStatus(new Path("/acls/d4/f1")).getEntries().get(0));
+    } finally {
+      if (cluster != null) {
+        cluster.shutdown();
+      }
+    }
+  }
+
+  private static List<AclEntry> getAcl(int i) {
+    return Lists.newArrayList(
+        aclEntry(ACCESS, USER, "user" + i, FsAction.READ_WRITE));
+  }
+
+  private static void saveNamespace(DistributedFileSystem fs)
+      throws IOException {
+    fs.setSafeMode(SafeModeAction.SAFEMODE_ENTER);
+    fs.saveNamespace();
+    fs.setSafeMode(SafeModeAction.SAFEMODE_LEAVE);
+  }
+
+  private static FileSummary loadLatestSummary(MiniDFSCluster cluster)
+      throws IOException {
+    File image = FSImageTestUtil.findLatestImageFile(FSImageTestUtil
+        .getFSImage(cluster.getNameNode()).getStorage().getStorageDir(0));
+    RandomAccessFile raFile = new RandomAccessFile(image, "r");
+    try {
+      return FSImageUtil.loadSummary(raFile);
+    } finally {
+      raFile.close();
+    }
+  }
+
+  private static int countSubSections(FileSummary summary) {
+    int count = 0;
+    for (FileSummary.Section s : summary.getSectionsList()) {
+      if (s.getName().endsWith("_SUB")) {
+        count++;
+      }
+    }
+    return count;
+  }
+
   private void testPersistHelper(Configuration conf) throws IOException {
     MiniDFSCluster cluster = null;
     try {
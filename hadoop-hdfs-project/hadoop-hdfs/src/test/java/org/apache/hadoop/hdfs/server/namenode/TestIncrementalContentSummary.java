@@ -0,0 +1,280 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ContentSummary;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.StorageType;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants;
+import org.apache.hadoop.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the content summaries which the NameNode maintains incrementally, by
+ * comparing them with the summaries computed by walking the subtree.
+ */
+public class TestIncrementalContentSummary {
+  private static final int BLOCKSIZE = 1024;
+  private static final short REPLICATION = 3;
+  private static final long SEED = 0L;
+  private static final Path DIR = new Path("/summary");
+  private static final Path NESTED = new Path(DIR, "nested");
+  private static final Path OUTSIDE = new Path("/outside");
+
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem dfs;
+
+  @Before
+  public void setUp() throws Exception {
+    Configuration conf = new Configuration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCKSIZE);
+    conf.set(DFSConfigKeys.DFS_CONTENT_SUMMARY_INCREMENTAL_DIRECTORIES_KEY,
+        DIR + "," + NESTED);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(REPLICATION)
+        .build();
+    cluster.waitActive();
+    dfs = cluster.getFileSystem();
+    dfs.mkdirs(NESTED);
+    dfs.mkdirs(OUTSIDE);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  private INodeDirectory getDirectory(Path path) throws Exception {
+    return cluster.getNamesystem().getFSDirectory()
+        .getINode(path.toString()).asDirectory();
+  }
+
+  private void verifySummary(Path path) throws Exception {
+    final ContentSummary actual = dfs.getContentSummary(path);
+    final FSNamesystem fsn = cluster.getNamesystem();
+    final ContentSummary expected;
+    fsn.readLock();
+    try {
+      expected = getDirectory(path).computeContentSummary(
+          fsn.getFSDirectory().getBlockStoragePolicySuite());
+    } finally {
+      fsn.readUnlock();
+    }
+    assertEquals(expected.getLength(), actual.getLength());
+    assertEquals(expected.getFileCount(), actual.getFileCount());
+    assertEquals(expected.getDirectoryCount(), actual.getDirectoryCount());
+    assertEquals(expected.getSpaceConsumed(), actual.getSpaceConsumed());
+    for (StorageType t : StorageType.values()) {
+      assertEquals(expected.getTypeConsumed(t), actual.getTypeConsumed(t));
+    }
+    assertEquals(expected.getQuota(), actual.getQuota());
+    assertNotNull(getDirectory(path).getDirectoryWithSummaryFeature());
+  }
+
+  private void verifySummaries() throws Exception {
+    verifySummary(DIR);
+    verifySummary(NESTED);
+  }
+
+  @Test(timeout=60000)
+  public void testNamespaceChanges() throws Exception {
+    verifySummaries();
+    assertNull(getDirectory(OUTSIDE).getDirectoryWithSummaryFeature());
+
+    dfs.mkdirs(new Path(NESTED, "a/b/c"));
+    DFSTestUtil.createFile(dfs, new Path(NESTED, "a/file"), BLOCKSIZE * 2 + 1,
+        REPLICATION, SEED);
+    DFSTestUtil.createFile(dfs, new Path(DIR, "file"), BLOCKSIZE / 2,
+        REPLICATION, SEED);
+    DFSTestUtil.createFile(dfs, new Path(OUTSIDE, "file"), BLOCKSIZE,
+        REPLICATION, SEED);
+    verifySummaries();
+
+    // Renames into, out of and within the subtrees
+    dfs.rename(new Path(OUTSIDE, "file"), new Path(NESTED, "moved"));
+    verifySummaries();
+    dfs.rename(new Path(NESTED, "a"), new Path(DIR, "a"));
+    verifySummaries();
+    dfs.rename(new Path(DIR, "a"), new Path(OUTSIDE, "a"));
+    verifySummaries();
+
+    // Overwrite a file
+    DFSTestUtil.createFile(dfs, new Path(NESTED, "moved"), BLOCKSIZE * 3,
+        REPLICATION, SEED);
+    verifySummaries();
+
+    dfs.setQuota(NESTED, 100, HdfsConstants.QUOTA_DONT_SET);
+    dfs.delete(new Path(NESTED, "moved"), false);
+    dfs.delete(new Path(DIR, "file"), false);
+    verifySummaries();
+
+    // The nested directory goes away with its summary
+    dfs.delete(NESTED, true);
+    verifySummary(DIR);
+    dfs.mkdirs(NESTED);
+    verifySummaries();
+  }
+
+  @Test(timeout=60000)
+  public void testFileChanges() throws Exception {
+    final Path file = new Path(NESTED, "file");
+    verifySummaries();
+
+    // Files being written are counted as they are read
+    FSDataOutputStream out = dfs.create(file, REPLICATION);
+    out.write(new byte[BLOCKSIZE + 10]);
+    out.hflush();
+    verifySummaries();
+    out.close();
+    verifySummaries();
+
+    out = dfs.append(file);
+    out.write(new byte[10]);
+    out.hflush();
+    verifySummaries();
+    out.close();
+    verifySummaries();
+
+    dfs.setReplication(file, (short) 2);
+    verifySummaries();
+
+    // On a block boundary, and within a block
+    dfs.truncate(file, BLOCKSIZE);
+    verifySummaries();
+    dfs.truncate(file, BLOCKSIZE / 2);
+    verifySummaries();
+    // The summaries are also right after the block recovery
+    while (!dfs.isFileClosed(file)) {
+      Thread.sleep(100);
+    }
+    verifySummaries();
+
+    final Path target = new Path(DIR, "target");
+    final Path src = new Path(DIR, "src");
+    DFSTestUtil.createFile(dfs, target, BLOCKSIZE * 2, REPLICATION, SEED);
+    DFSTestUtil.createFile(dfs, src, BLOCKSIZE, REPLICATION, SEED);
+    verifySummaries();
+    dfs.concat(target, new Path[] {src});
+    verifySummaries();
+
+    dfs.setStoragePolicy(target, HdfsConstants.ONESSD_STORAGE_POLICY_NAME);
+    verifySummaries();
+    dfs.setStoragePolicy(NESTED, HdfsConstants.ALLSSD_STORAGE_POLICY_NAME);
+    verifySummaries();
+  }
+
+  @Test(timeout=60000)
+  public void testSnapshots() throws Exception {
+    final Path file = new Path(NESTED, "file");
+    DFSTestUtil.createFile(dfs, file, BLOCKSIZE * 2, REPLICATION, SEED);
+    verifySummaries();
+
+    dfs.allowSnapshot(NESTED);
+    dfs.createSnapshot(NESTED, "s1");
+    verifySummaries();
+    // The deleted file is still counted through the snapshot
+    dfs.delete(file, false);
+    verifySummaries();
+    dfs.deleteSnapshot(NESTED, "s1");
+    verifySummaries();
+
+    DFSTestUtil.createFile(dfs, file, BLOCKSIZE, REPLICATION, SEED);
+    dfs.createSnapshot(NESTED, "s2");
+    dfs.rename(file, new Path(DIR, "file"));
+    verifySummaries();
+
+    // A deleted directory, and a file grown after the snapshot
+    final Path dir = new Path(NESTED, "dir");
+    final Path grown = new Path(dir, "grown");
+    DFSTestUtil.createFile(dfs, grown, BLOCKSIZE, REPLICATION, SEED);
+    dfs.createSnapshot(NESTED, "s3");
+    DFSTestUtil.appendFile(dfs, grown, BLOCKSIZE);
+    verifySummaries();
+    dfs.delete(dir, true);
+    verifySummaries();
+    dfs.deleteSnapshot(NESTED, "s3");
+    verifySummaries();
+    dfs.deleteSnapshot(NESTED, "s2");
+    verifySummaries();
+
+    // Snapshots of the outer directory, holding the nested one
+    dfs.allowSnapshot(DIR);
+    dfs.createSnapshot(DIR, "s4");
+    dfs.rename(new Path(DIR, "file"), new Path(OUTSIDE, "file"));
+    dfs.delete(NESTED, true);
+    verifySummary(DIR);
+    dfs.deleteSnapshot(DIR, "s4");
+    verifySummary(DIR);
+  }
+
+  @Test(timeout=60000)
+  public void testOpenFiles() throws Exception {
+    final Path file = new Path(NESTED, "file");
+    verifySummaries();
+
+    FSDataOutputStream out = dfs.create(file, REPLICATION);
+    out.write(new byte[BLOCKSIZE + 10]);
+    out.hflush();
+    assertEquals(1, getDirectory(DIR).getDirectoryWithSummaryFeature()
+        .getOpenFiles().size());
+    verifySummaries();
+
+    // Open files moved out of and back into the subtrees
+    dfs.rename(file, new Path(OUTSIDE, "file"));
+    assertEquals(0, getDirectory(DIR).getDirectoryWithSummaryFeature()
+        .getOpenFiles().size());
+    verifySummaries();
+    dfs.rename(OUTSIDE, new Path(DIR, "outside"));
+    out.write(new byte[BLOCKSIZE]);
+    out.hflush();
+    verifySummaries();
+
+    // An open file deleted with its directory
+    dfs.delete(new Path(DIR, "outside"), true);
+    IOUtils.closeStream(out);
+    assertEquals(0, getDirectory(DIR).getDirectoryWithSummaryFeature()
+        .getOpenFiles().size());
+    verifySummaries();
+  }
+
+  @Test(timeout=60000)
+  public void testRestart() throws Exception {
+    DFSTestUtil.createFile(dfs, new Path(NESTED, "file"), BLOCKSIZE * 2,
+        REPLICATION, SEED);
+    verifySummaries();
+    cluster.restartNameNode();
+    dfs = cluster.getFileSystem();
+    // The summaries are counted as the namespace is loaded
+    assertNotNull(getDirectory(DIR).getDirectoryWithSummaryFeature());
+    assertNotNull(getDirectory(NESTED).getDirectoryWithSummaryFeature());
+    verifySummaries();
+  }
+}
@@ -0,0 +1,295 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.junit.Test;
+
+/**
+ * Tests for partitioned namespace locking in {@link FSNamesystemLock}.
+ */
+public class TestPartitionedNamespaceLock {
+
+  @Test
+  public void testGetPartition() {
+    FSNamesystemLock lock = new FSNamesystemLock(true, 1, 16);
+    assertTrue(lock.isPartitioned());
+    int tmp = lock.getPartition("/tmp");
+    assertTrue(tmp >= 0 && tmp < 16);
+    assertEquals(tmp, lock.getPartition("/tmp/etl"));
+    assertEquals(tmp, lock.getPartition("/tmp/etl/part-0"));
+    assertEquals(FSNamesystemLock.NO_PARTITION, lock.getPartition("/"));
+    assertEquals(FSNamesystemLock.NO_PARTITION, lock.getPartition("tmp"));
+    assertEquals(FSNamesystemLock.NO_PARTITION,
+        lock.getPartition("/.reserved/.inodes/16386"));
+    assertEquals(FSNamesystemLock.NO_PARTITION,
+        lock.getPartition("/.snapshot"));
+
+    lock = new FSNamesystemLock(true, 2, 16);
+    assertEquals(FSNamesystemLock.NO_PARTITION, lock.getPartition("/tmp"));
+    assertEquals(lock.getPartition("/tmp/etl"),
+        lock.getPartition("/tmp/etl/part-0"));
+    assertEquals(FSNamesystemLock.NO_PARTITION,
+        lock.getPartition("/tmp/.snapshot/s1"));
+
+    lock = new FSNamesystemLock(true);
+    assertFalse(lock.isPartitioned());
+    assertEquals(FSNamesystemLock.NO_PARTITION, lock.getPartition("/tmp"));
+  }
+
+  @Test
+  public void testNoPartitionWhileHoldingCoarseLock() {
+    FSNamesystemLock lock = new FSNamesystemLock(true, 1, 16);
+    lock.lockShared();
+    try {
+      assertEquals(FSNamesystemLock.NO_PARTITION, lock.getPartition("/tmp"));
+    } finally {
+      lock.unlockShared();
+    }
+    lock.lockExclusive();
+    try {
+      assertEquals(FSNamesystemLock.NO_PARTITION, lock.getPartition("/tmp"));
+    } finally {
+      lock.unlockExclusive();
+    }
+    assertNotEquals(FSNamesystemLock.NO_PARTITION, lock.getPartition("/tmp"));
+  }
+
+  @Test(timeout = 30000)
+  public void testDisjointPartitionsDoNotBlock() throws Exception {
+    final FSNamesystemLock lock = new FSNamesystemLock(true, 1, 16);
+    final int p1 = lock.getPartition("/a");
+    final int p2 = findOtherPartition(lock, p1);
+
+    lock.lockPartition(p1, true);
+    try {
+      assertTrue(lock.hasPartitionWriteLock());
+      ExecutorService executor = Executors.newSingleThreadExecutor();
+      try {
+        // A writer in another partition proceeds.
+        Future<Boolean> writer = executor.submit(new Callable<Boolean>() {
+          @Override
+          public Boolean call() {
+            lock.lockPartition(p2, true);
+            try {
+              return lock.hasPartitionWriteLock();
+            } finally {
+              lock.unlockPartition(p2, true);
+            }
+          }
+        });
+        assertTrue(writer.get(10, TimeUnit.SECONDS));
+
+        // A reader of another partition proceeds.
+        Future<Boolean> reader = executor.submit(new Callable<Boolean>() {
+          @Override
+          public Boolean call() {
+            lock.lockPartition(p2, false);
+            try {
+              return !lock.hasPartitionWriteLock();
+            } finally {
+              lock.unlockPartition(p2, false);
+            }
+          }
+        });
+        assertTrue(reader.get(10, TimeUnit.SECONDS));
+      } finally {
+        executor.shutdownNow();
+      }
+    } finally {
+      lock.unlockPartition(p1, true);
+    }
+    assertFalse(lock.hasPartitionWriteLock());
+  }
+
+  @Test(timeout = 30000)
+  public void testUnpartitionedReaderWaitsForPartitionWriter()
+      throws Exception {
+    final FSNamesystemLock lock = new FSNamesystemLock(true, 1, 16);
+    final int p1 = lock.getPartition("/a");
+    final CountDownLatch acquired = new CountDownLatch(1);
+
+    lock.lockPartition(p1, true);
+    Thread reader = new Thread() {
+      @Override
+      public void run() {
+        lock.lockShared();
+        try {
+          acquired.countDown();
+        } finally {
+          lock.unlockShared();
+        }
+      }
+    };
+    try {
+      reader.start();
+      assertFalse(acquired.await(500, TimeUnit.MILLISECONDS));
+    } finally {
+      lock.unlockPartition(p1, true);
+    }
+    assertTrue(acquired.await(10, TimeUnit.SECONDS));
+    reader.join();
+  }
+
+  @Test
+  public void testNestedSharedLockWithinPartition() {
+    FSNamesystemLock lock = new FSNamesystemLock(true, 1, 16);
+    int p1 = lock.getPartition("/a");
+    lock.lockPartition(p1, true);
+    try {
+      // Nested unpartitioned readers only re-enter the coarse lock.
+      lock.lockShared();
+      assertEquals(2, lock.getReadHoldCount());
+      lock.unlockShared();
+    } finally {
+      lock.unlockPartition(p1, true);
+    }
+    assertEquals(0, lock.getReadHoldCount());
+    assertEquals(0, lock.getPartitionLock(p1).getReadLockCount());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testWriteLockWithinPartitionIsRejected() {
+    FSNamesystemLock lock = new FSNamesystemLock(true, 1, 16);
+    int p1 = lock.getPartition("/a");
+    lock.lockPartition(p1, false);
+    try {
+      lock.lockExclusive();
+    } finally {
+      lock.unlockPartition(p1, false);
+    }
+  }
+
+  /**
+   * Run namespace operations on several partitions concurrently, including
+   * ones which have to fall back to the global lock, and verify the result
+   * both in memory and after replaying the edit log.
+   */
+  @Test(timeout = 120000)
+  public void testConcurrentOperations() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_FSLOCK_PARTITION_DEPTH_KEY, 1);
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_FSLOCK_PARTITION_COUNT_KEY, 8);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(0).build();
+    try {
+      cluster.waitActive();
+      final DistributedFileSystem fs = cluster.getFileSystem();
+      final int numPartitions = 6;
+      final int numDirs = 50;
+      final FsPermission perm = new FsPermission((short) 0750);
+
+      ExecutorService executor = Executors.newFixedThreadPool(numPartitions);
+      List<Future<Void>> futures = new ArrayList<Future<Void>>();
+      for (int i = 0; i < numPartitions; i++) {
+        final Path root = new Path("/p" + i);
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            // the first mkdirs modifies the root, the others are confined
+            for (int j = 0; j < numDirs; j++) {
+              Path dir = new Path(root, "d" + j + "/sub");
+              assertTrue(fs.mkdirs(dir));
+              fs.setPermission(dir, perm);
+              fs.setTimes(dir, j, j);
+              FileStatus st = fs.getFileStatus(dir);
+              assertEquals(perm, st.getPermission());
+              assertEquals(j, st.getModificationTime());
+              Path file = new Path(dir, "f");
+              fs.create(file).close();
+              if (j % 2 == 0) {
+                assertTrue(fs.delete(file, false));
+              } else {
+                fs.create(file, true).close();
+              }
+            }
+            assertTrue(fs.delete(new Path(root, "d" + (numDirs - 1)), true));
+            assertEquals(numDirs - 1, fs.listStatus(root).length);
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> f : futures) {
+        f.get();
+      }
+      executor.shutdown();
+
+      // Paths through an INodeReference fall back to the global lock.
+      Path snapRoot = new Path("/p0");
+      fs.allowSnapshot(snapRoot);
+      fs.createSnapshot(snapRoot, "s1");
+      Path renamed = new Path("/p1/moved");
+      fs.rename(new Path("/p0/d0"), renamed);
+      fs.setPermission(renamed, new FsPermission((short) 0700));
+      assertTrue(fs.mkdirs(new Path(renamed, "child")));
+      assertEquals(new FsPermission((short) 0700),
+          fs.getFileStatus(renamed).getPermission());
+      // Deletes of snapshotted inodes also fall back to the global lock.
+      Path snapshotted = new Path("/p0/d2");
+      assertTrue(fs.delete(snapshotted, true));
+      assertFalse(fs.exists(snapshotted));
+
+      final long inodes = cluster.getNamesystem().dir.totalInodes();
+      cluster.restartNameNode();
+      assertEquals(inodes, cluster.getNamesystem().dir.totalInodes());
+      for (int i = 0; i < numPartitions; i++) {
+        FileStatus st = fs.getFileStatus(new Path("/p" + i + "/d1/sub"));
+        assertEquals(perm, st.getPermission());
+        assertEquals(1, st.getModificationTime());
+        assertFalse(fs.exists(new Path("/p" + i + "/d2/sub/f")));
+        assertTrue(fs.exists(new Path("/p" + i + "/d3/sub/f")));
+        assertFalse(fs.exists(new Path("/p" + i + "/d" + (numDirs - 1))));
+      }
+      assertTrue(fs.exists(new Path(renamed, "child")));
+      assertFalse(fs.exists(snapshotted));
+      assertTrue(fs.exists(new Path("/p0/.snapshot/s1/d2/sub")));
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
+  private static int findOtherPartition(FSNamesystemLock lock, int p) {
+    for (int i = 0; ; i++) {
+      int other = lock.getPartition("/b" + i);
+      if (other != p) {
+        return other;
+      }
+    }
+  }
+}
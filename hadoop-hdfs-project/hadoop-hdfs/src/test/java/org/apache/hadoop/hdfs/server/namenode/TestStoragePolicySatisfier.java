@@ -0,0 +1,218 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.StorageType;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants;
+import org.apache.hadoop.hdfs.protocol.LocatedBlock;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import com.google.common.base.Supplier;
+
+/**
+ * Test the storage policy satisfier of the NameNode.
+ */
+public class TestStoragePolicySatisfier {
+  private static final short REPLICATION = 3;
+  private static final long BLOCK_SIZE = 1024;
+  private static final Path DIR = new Path("/cold");
+  private static final Path FILE = new Path(DIR, "file");
+
+  private MiniDFSCluster cluster;
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  /**
+   * Start a cluster with DataNodes having only DISK storages, and as many
+   * having only ARCHIVE storages, and write a file on the DISK storages.
+   */
+  private DistributedFileSystem startCluster(boolean satisfierEnabled)
+      throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    conf.setLong(DFSConfigKeys.DFS_HEARTBEAT_INTERVAL_KEY, 1);
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_REPLICATION_INTERVAL_KEY, 1);
+    conf.setBoolean(DFSConfigKeys.DFS_STORAGE_POLICY_SATISFIER_ENABLED_KEY,
+        satisfierEnabled);
+    conf.setLong(DFSConfigKeys.DFS_STORAGE_POLICY_SATISFIER_INTERVAL_MS_KEY,
+        100);
+    conf.setLong(
+        DFSConfigKeys.DFS_STORAGE_POLICY_SATISFIER_RECHECK_TIMEOUT_MS_KEY,
+        1000);
+
+    StorageType[][] types = new StorageType[REPLICATION * 2][];
+    for (int i = 0; i < types.length; i++) {
+      types[i] = new StorageType[] {
+          i < REPLICATION ? StorageType.DISK : StorageType.ARCHIVE};
+    }
+    cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(types.length).storagesPerDatanode(1)
+        .storageTypes(types).build();
+    cluster.waitActive();
+
+    DistributedFileSystem dfs = cluster.getFileSystem();
+    dfs.mkdirs(DIR);
+    DFSTestUtil.createFile(dfs, FILE, BLOCK_SIZE * 3, REPLICATION, 0L);
+    waitForStorageTypes(dfs, StorageType.DISK);
+    return dfs;
+  }
+
+  private static boolean hasStorageTypes(DistributedFileSystem dfs,
+      StorageType expected) throws IOException {
+    for (LocatedBlock lb : dfs.getClient().getLocatedBlocks(
+        FILE.toString(), 0).getLocatedBlocks()) {
+      if (lb.getStorageTypes().length != REPLICATION) {
+        return false;
+      }
+      for (StorageType type : lb.getStorageTypes()) {
+        if (type != expected) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private static void waitForStorageTypes(final DistributedFileSystem dfs,
+      final StorageType expected) throws TimeoutException,
+      InterruptedException {
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        try {
+          return hasStorageTypes(dfs, expected);
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    }, 100, 30000);
+  }
+
+  @Test(timeout=60000)
+  public void testSatisfyWhenStoragePolicySet() throws Exception {
+    DistributedFileSystem dfs = startCluster(true);
+    dfs.setStoragePolicy(DIR, HdfsConstants.COLD_STORAGE_POLICY_NAME);
+    waitForStorageTypes(dfs, StorageType.ARCHIVE);
+
+    FSNamesystem fsn = cluster.getNamesystem();
+    assertTrue(fsn.getStoragePolicySatisfierBlockMoves() >= REPLICATION * 3);
+
+    // Checked again once the moves are done
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        return cluster.getNamesystem()
+            .getStoragePolicySatisfierScheduledFiles() == 0;
+      }
+    }, 100, 10000);
+    assertEquals(1, fsn.getStoragePolicySatisfierSatisfiedFiles());
+  }
+
+  @Test(timeout=60000)
+  public void testUnsatisfiable() throws Exception {
+    DistributedFileSystem dfs = startCluster(true);
+    // There are no SSD storages
+    dfs.setStoragePolicy(DIR, HdfsConstants.ALLSSD_STORAGE_POLICY_NAME);
+
+    // The file is dropped instead of being checked again
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        return cluster.getNamesystem()
+            .getStoragePolicySatisfierUnsatisfiableFiles() == 1;
+      }
+    }, 100, 10000);
+    FSNamesystem fsn = cluster.getNamesystem();
+    assertEquals(0, fsn.getStoragePolicySatisfierPendingINodes());
+    assertEquals(0, fsn.getStoragePolicySatisfierScheduledFiles());
+    assertEquals(0, fsn.getStoragePolicySatisfierBlockMoves());
+    assertTrue(hasStorageTypes(dfs, StorageType.DISK));
+  }
+
+  @Test(timeout=60000)
+  public void testExpandDirectoryIncrementally() throws Exception {
+    DistributedFileSystem dfs = startCluster(false);
+    final Path dir = new Path("/large");
+    final int numFiles = 5;
+    for (int i = 0; i < numFiles; i++) {
+      dfs.create(new Path(dir, "file" + i)).close();
+    }
+
+    Configuration conf = new HdfsConfiguration();
+    conf.setInt(
+        DFSConfigKeys.DFS_STORAGE_POLICY_SATISFIER_MAX_BLOCKS_PER_ITERATION_KEY,
+        2);
+    FSNamesystem fsn = cluster.getNamesystem();
+    StoragePolicySatisfier satisfier = new StoragePolicySatisfier(fsn, conf);
+    satisfier.add(fsn.getFSDirectory().getINode(dir.toString()).getId());
+
+    // Each iteration queues at most as many children as blocks it examines,
+    // and the directory is queued again until all its children are
+    int iterations = 0;
+    while (satisfier.getPendingCount() > 0) {
+      satisfier.satisfy();
+      assertTrue(satisfier.getPendingCount() <= 3);
+      iterations++;
+    }
+    assertEquals(numFiles, satisfier.getFilesSatisfied());
+    assertEquals(5, iterations);
+  }
+
+  @Test(timeout=60000)
+  public void testSatisfyOnDemand() throws Exception {
+    DistributedFileSystem dfs = startCluster(false);
+    dfs.setStoragePolicy(DIR, HdfsConstants.COLD_STORAGE_POLICY_NAME);
+    try {
+      dfs.satisfyStoragePolicy(DIR);
+      fail("The storage policy satisfier is disabled");
+    } catch (IOException e) {
+      GenericTestUtils.assertExceptionContains(
+          DFSConfigKeys.DFS_STORAGE_POLICY_SATISFIER_ENABLED_KEY, e);
+    }
+
+    cluster.getConfiguration(0).setBoolean(
+        DFSConfigKeys.DFS_STORAGE_POLICY_SATISFIER_ENABLED_KEY, true);
+    cluster.restartNameNode(true);
+    cluster.waitActive();
+    dfs = cluster.getFileSystem();
+    dfs.satisfyStoragePolicy(DIR);
+    waitForStorageTypes(dfs, StorageType.ARCHIVE);
+  }
+}
@@ -0,0 +1,141 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode.ha;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
+import org.apache.hadoop.hdfs.qjournal.MiniQJMHACluster;
+import org.apache.hadoop.hdfs.server.namenode.FSNamesystem;
+import org.apache.hadoop.hdfs.server.namenode.NameNode;
+import org.apache.hadoop.hdfs.server.namenode.NameNodeAdapter;
+import org.apache.hadoop.test.GenericTestUtils.LogCapturer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test reading from the standby NameNode through
+ * {@link ObserverReadProxyProvider}, with the clients aligned with the
+ * namespace by the state context.
+ */
+public class TestStandbyConsistentReads {
+  private static final int NUM_READS = 10;
+
+  private MiniQJMHACluster qjmhaCluster;
+  private MiniDFSCluster cluster;
+  private FileSystem fs;
+
+  @Before
+  public void setUp() throws Exception {
+    Configuration conf = new Configuration();
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_STATE_CONTEXT_ENABLED_KEY, true);
+    // Let the standby catch up quickly by tailing the in-progress segment,
+    // without the active ever rolling its edit log
+    conf.setBoolean(DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_KEY, true);
+    conf.set(DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_KEY, "100ms");
+    conf.setInt(DFSConfigKeys.DFS_HA_LOGROLL_PERIOD_KEY, -1);
+    // Wait long enough for the standby not to fall back to the active
+    conf.setLong(DFSConfigKeys.DFS_NAMENODE_STATE_CONTEXT_MAX_WAIT_MS_KEY,
+        30000);
+    // Let every read be due an access time update
+    conf.setLong(DFSConfigKeys.DFS_NAMENODE_ACCESSTIME_PRECISION_KEY, 1);
+    // No datanodes, so the client is the only one calling the standby
+    qjmhaCluster = new MiniQJMHACluster.Builder(conf).build();
+    cluster = qjmhaCluster.getDfsCluster();
+    cluster.waitActive();
+    cluster.transitionToActive(0);
+
+    Configuration clientConf = new Configuration(conf);
+    String logicalName = HATestUtil.getLogicalHostname(cluster);
+    HATestUtil.setFailoverConfigurations(cluster, clientConf, logicalName);
+    clientConf.set(HdfsClientConfigKeys.Failover.PROXY_PROVIDER_KEY_PREFIX
+        + "." + logicalName, ObserverReadProxyProvider.class.getName());
+    fs = FileSystem.get(new URI("hdfs://" + logicalName), clientConf);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (fs != null) {
+      fs.close();
+    }
+    if (qjmhaCluster != null) {
+      qjmhaCluster.shutdown();
+    }
+  }
+
+  private long getProcessedCalls(int nnIndex) {
+    NameNode nn = cluster.getNameNode(nnIndex);
+    return NameNodeAdapter.getRpcServer(nn).getRpcMetrics()
+        .getProcessingSampleCount();
+  }
+
+  @Test(timeout=60000)
+  public void testReadYourWritesFromStandby() throws Exception {
+    long standbyCalls = getProcessedCalls(1);
+    for (int i = 0; i < NUM_READS; i++) {
+      Path dir = new Path("/dir" + i);
+      // The write goes to the active, the read waits for the standby to
+      // catch up with it
+      fs.mkdirs(dir);
+      assertTrue(fs.getFileStatus(dir).isDirectory());
+    }
+    assertTrue(getProcessedCalls(1) - standbyCalls >= NUM_READS);
+  }
+
+  @Test(timeout=60000)
+  public void testStandbyReadSkipsAccessTime() throws Exception {
+    Path file = new Path("/file");
+    fs.create(file).close();
+    long atime = NameNodeAdapter.getFileInfo(cluster.getNameNode(0),
+        file.toString(), false).getAccessTime();
+    Thread.sleep(10);
+
+    // The standby serves the open without trying to update the access time
+    LogCapturer logs = LogCapturer.captureLogs(FSNamesystem.LOG);
+    try {
+      fs.open(file).close();
+    } finally {
+      logs.stopCapturing();
+    }
+    assertFalse(logs.getOutput(), logs.getOutput().contains("access time"));
+    assertEquals(atime, NameNodeAdapter.getFileInfo(cluster.getNameNode(0),
+        file.toString(), false).getAccessTime());
+  }
+
+  @Test(timeout=60000)
+  public void testReadFallsBackToActive() throws Exception {
+    Path dir = new Path("/dir");
+    fs.mkdirs(dir);
+    cluster.shutdownNameNode(1);
+    long activeCalls = getProcessedCalls(0);
+    for (int i = 0; i < NUM_READS; i++) {
+      assertTrue(fs.getFileStatus(dir).isDirectory());
+    }
+    assertTrue(getProcessedCalls(0) - activeCalls >= NUM_READS);
+  }
+}
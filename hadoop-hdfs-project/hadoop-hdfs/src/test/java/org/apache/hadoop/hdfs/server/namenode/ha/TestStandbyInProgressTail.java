@@ -0,0 +1,109 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode.ha;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.qjournal.MiniQJMHACluster;
+import org.apache.hadoop.hdfs.server.namenode.NameNode;
+import org.apache.hadoop.hdfs.server.namenode.NameNodeAdapter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the standby tailing the in-progress edit log segment from the
+ * JournalNodes, without the active rolling its edit log.
+ */
+public class TestStandbyInProgressTail {
+  private MiniQJMHACluster qjmhaCluster;
+  private MiniDFSCluster cluster;
+
+  @Before
+  public void setUp() throws Exception {
+    Configuration conf = new Configuration();
+    conf.setBoolean(DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_KEY, true);
+    conf.setInt(DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_KEY, 1);
+    // The standby never asks the active to roll
+    conf.setInt(DFSConfigKeys.DFS_HA_LOGROLL_PERIOD_KEY, -1);
+    qjmhaCluster = new MiniQJMHACluster.Builder(conf).build();
+    cluster = qjmhaCluster.getDfsCluster();
+    cluster.waitActive();
+    cluster.transitionToActive(0);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (qjmhaCluster != null) {
+      qjmhaCluster.shutdown();
+    }
+  }
+
+  private static boolean exists(NameNode nn, String path)
+      throws IOException {
+    return NameNodeAdapter.getFileInfo(nn, path, false) != null;
+  }
+
+  @Test(timeout=60000)
+  public void testTailInProgressSegment() throws Exception {
+    NameNode standby = cluster.getNameNode(1);
+    FileSystem fs = cluster.getFileSystem(0);
+
+    fs.mkdirs(new Path("/test1"));
+    fs.mkdirs(new Path("/test2"));
+    assertNull(NameNodeAdapter.getFileInfo(standby, "/test1", false));
+    standby.getNamesystem().getEditLogTailer().doTailEdits();
+    assertTrue(exists(standby, "/test1"));
+    assertTrue(exists(standby, "/test2"));
+    // The standby caught up without the active finalizing its segment
+    assertEquals(
+        cluster.getNameNode(0).getFSImage().getEditLog().getLastWrittenTxId(),
+        standby.getFSImage().getLastAppliedTxId());
+  }
+
+  @Test(timeout=60000)
+  public void testFailoverAfterInProgressTail() throws Exception {
+    NameNode standby = cluster.getNameNode(1);
+    FileSystem fs = cluster.getFileSystem(0);
+    fs.mkdirs(new Path("/test1"));
+    standby.getNamesystem().getEditLogTailer().doTailEdits();
+    assertTrue(exists(standby, "/test1"));
+    // Not tailed before the failover
+    fs.mkdirs(new Path("/test2"));
+
+    cluster.transitionToStandby(0);
+    cluster.transitionToActive(1);
+    assertTrue(exists(standby, "/test2"));
+    cluster.getFileSystem(1).mkdirs(new Path("/test3"));
+
+    // The old active tails the edits of the new one
+    cluster.getNameNode(0).getNamesystem().getEditLogTailer().doTailEdits();
+    assertNotNull(NameNodeAdapter.getFileInfo(cluster.getNameNode(0),
+        "/test3", false));
+  }
+}
@@ -78,6 +78,12 @@ public void initializeMemberVariables() {
 
     // Some properties have moved to HdfsClientConfigKeys
     xmlPropsToSkipCompare.add("dfs.client.short.circuit.replica.stale.threshold.ms");
+    // Defined in HdfsClientConfigKeys.VectoredRead
+    xmlPrefixToSkipCompare.add("dfs.client.read.vectored");
+    // Defined in HdfsClientConfigKeys.MetadataCache
+    xmlPrefixToSkipCompare.add("dfs.client.metadata-cache");
+    // Defined in HdfsClientConfigKeys.Write.ShortCircuit
+    xmlPrefixToSkipCompare.add("dfs.client.write.shortcircuit");
 
     // Ignore HTrace properties
     xmlPropsToSkipCompare.add("fs.client.htrace");